@@ -0,0 +1,44 @@
+package org.boplicity.p1.benchmark;
+
+import org.boplicity.p1.testutil.TestObjectFactory;
+
+import java.nio.charset.StandardCharsets;
+
+public enum BenchmarkTelegram {
+
+    // Short DSMR 2.2 telegram with the gas reading on a continuation line
+    DSMR22 {
+        @Override
+        public String asString() {
+            return TestObjectFactory.getTestDatagram();
+        }
+    },
+
+    // DSMR 5 telegram with per-phase lines, M-Bus channel and CRC
+    DSMR5 {
+        @Override
+        public String asString() {
+            return TestObjectFactory.getDsmr5Datagram();
+        }
+    },
+
+    // DSMR 5 telegram with line noise in the values and a truncated tail
+    CORRUPTED {
+        @Override
+        public String asString() {
+            char[] chars = TestObjectFactory.getDsmr5Datagram().toCharArray();
+
+            for (int i = 7; i < chars.length; i += 23) {
+                chars[i] = (char) ((chars[i] ^ 0x15) & 0x7f);
+            }
+
+            return new String(chars, 0, chars.length * 3 / 4);
+        }
+    };
+
+    public abstract String asString();
+
+    public byte[] asBytes() {
+        return asString().getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,94 @@
+package org.boplicity.p1.benchmark;
+
+import org.boplicity.p1.codec.CompressedBlock;
+import org.boplicity.p1.codec.MeasurementCompressor;
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compresses and decompresses a day of one-second readings. The <code>rawMegabytes</code> counter gives the
+ * throughput in MB/s of uncompressed measurements; the compression ratio is printed at setup.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CompressionBenchmark {
+
+    private static final int DAY = 24 * 3600;
+
+    // Eight longs per measurement
+    private static final double RAW_MEGABYTES = DAY * 64 / (1024.0 * 1024.0);
+
+    private List<CompactMeasurement> measurements;
+    private List<CompressedBlock> blocks;
+
+    @Setup
+    public void setUp() {
+        measurements = TestObjectFactory.getSyntheticMeasurements(DAY, 42);
+
+        MeasurementCompressor compressor = compress();
+        blocks = compressor.getBlocks();
+
+        System.out.printf("%n%d measurements, %.1f MB raw, %d bytes compressed, ratio %.1f%n", DAY, RAW_MEGABYTES,
+                compressor.getCompressedSize(), compressor.getCompressionRatio());
+    }
+
+    @Benchmark
+    public MeasurementCompressor compress(Throughput throughput) {
+        throughput.rawMegabytes += RAW_MEGABYTES;
+
+        return compress();
+    }
+
+    @Benchmark
+    public void decompress(Throughput throughput, Blackhole blackhole) {
+        throughput.rawMegabytes += RAW_MEGABYTES;
+
+        for (CompressedBlock block : blocks) {
+            block.decode(blackhole::consume);
+        }
+    }
+
+    private MeasurementCompressor compress() {
+        MeasurementCompressor compressor = new MeasurementCompressor();
+
+        for (CompactMeasurement measurement : measurements) {
+            compressor.append(measurement);
+        }
+
+        compressor.flush();
+
+        return compressor;
+    }
+
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Throughput {
+
+        public double rawMegabytes;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            rawMegabytes = 0;
+        }
+    }
+}
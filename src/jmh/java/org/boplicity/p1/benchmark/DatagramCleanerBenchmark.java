@@ -0,0 +1,40 @@
+package org.boplicity.p1.benchmark;
+
+import org.boplicity.p1.parser.DatagramCleaner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DatagramCleanerBenchmark {
+
+    @Param({"DSMR22", "DSMR5", "CORRUPTED"})
+    public BenchmarkTelegram telegram;
+
+    private String datagram;
+
+    @Setup
+    public void setup() {
+        datagram = telegram.asString();
+    }
+
+    @Benchmark
+    public String[] asArray() {
+        return DatagramCleaner.asArray(datagram);
+    }
+}
@@ -0,0 +1,64 @@
+package org.boplicity.p1.benchmark;
+
+import org.boplicity.p1.demand.DemandTracker;
+import org.joda.time.DateTimeZone;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Samples at the DSMR 5 rate of one per second going into a demand tracker with full rolling windows, so every sample
+ * evicts one. Quarters close every 900 samples.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DemandTrackerBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int windowCount;
+
+    private DemandTracker tracker;
+
+    private long timestamp;
+    private long consumptionWh;
+
+    @Setup
+    public void setUp() {
+        long[] windowLengths = new long[windowCount];
+
+        for (int i = 0; i < windowCount; i++) {
+            windowLengths[i] = (i + 1) * 60000L;
+        }
+
+        tracker = new DemandTracker(demand -> {
+        }, DateTimeZone.UTC, windowLengths);
+
+        for (int i = 0; i < windowCount * 60; i++) {
+            add();
+        }
+    }
+
+    @Benchmark
+    public long add() {
+        timestamp += 1000;
+        consumptionWh += timestamp % 3000 == 0 ? 1 : 0;
+
+        tracker.add(timestamp, 500 + timestamp % 7000 / 1000 * 100, consumptionWh);
+
+        return timestamp;
+    }
+}
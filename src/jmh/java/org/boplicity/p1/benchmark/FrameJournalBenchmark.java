@@ -0,0 +1,98 @@
+package org.boplicity.p1.benchmark;
+
+import org.boplicity.p1.journal.FrameJournal;
+import org.boplicity.p1.journal.JournalReader;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Appends DSMR 5 frames with a sync per frame or grouped syncs, and reads a journal of 10,000 frames back.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FrameJournalBenchmark {
+
+    private static final int REPLAY_FRAMES = 10000;
+
+    @Param({"0", "200"})
+    public long syncIntervalMillis;
+
+    private File directory;
+    private File replayDirectory;
+    private FrameJournal frameJournal;
+    private ByteBuffer frame;
+
+    @Setup
+    public void setUp() throws IOException {
+        frame = ByteBuffer.wrap(BenchmarkTelegram.DSMR5.asBytes());
+
+        directory = Files.createTempDirectory("journal-benchmark").toFile();
+        frameJournal = new FrameJournal(directory);
+        frameJournal.setSyncIntervalMillis(syncIntervalMillis);
+
+        replayDirectory = Files.createTempDirectory("journal-replay").toFile();
+        FrameJournal replayJournal = new FrameJournal(replayDirectory);
+
+        for (int i = 0; i < REPLAY_FRAMES; i++) {
+            replayJournal.append(frame, i);
+        }
+
+        replayJournal.close();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        frameJournal.close();
+        delete(directory);
+        delete(replayDirectory);
+    }
+
+    @Benchmark
+    public long append() throws IOException {
+        return frameJournal.append(frame, System.currentTimeMillis());
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    public long replay() throws IOException {
+        JournalReader reader = JournalReader.open(replayDirectory, 0);
+
+        try {
+            return reader.replay(frame -> { });
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+
+        file.delete();
+    }
+}
@@ -0,0 +1,68 @@
+package org.boplicity.p1.benchmark;
+
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.parser.ByteDatagramParser;
+import org.boplicity.p1.parser.IncrementalDatagramParser;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a stream of consecutive DSMR 5 telegrams in which only the timestamp, power and voltage lines change, from
+ * scratch and incrementally.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class IncrementalParserBenchmark {
+
+    private byte[][] datagrams;
+    private int next;
+
+    private ByteDatagramParser byteDatagramParser;
+    private IncrementalDatagramParser incrementalDatagramParser;
+
+    @Setup
+    public void setUp() {
+        List<String> stream = TestObjectFactory.getDsmr5Datagrams(256, 1);
+        datagrams = new byte[stream.size()][];
+
+        for (int i = 0; i < datagrams.length; i++) {
+            datagrams[i] = stream.get(i).getBytes(StandardCharsets.US_ASCII);
+        }
+
+        byteDatagramParser = new ByteDatagramParser();
+        incrementalDatagramParser = new IncrementalDatagramParser();
+    }
+
+    @Benchmark
+    public SmartMeterMeasurement full() {
+        return byteDatagramParser.parse(nextDatagram());
+    }
+
+    @Benchmark
+    public SmartMeterMeasurement incremental() {
+        return incrementalDatagramParser.parse(nextDatagram());
+    }
+
+    private byte[] nextDatagram() {
+        next = (next + 1) & (datagrams.length - 1);
+
+        return datagrams[next];
+    }
+}
@@ -0,0 +1,66 @@
+package org.boplicity.p1.benchmark;
+
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.parser.ByteDatagramParser;
+import org.boplicity.p1.parser.DatagramParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A consumer that only reads the current power, with every value decoded up front or only the one it reads.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LazyMeasurementBenchmark {
+
+    @Param({"DSMR22", "DSMR5"})
+    public BenchmarkTelegram telegram;
+
+    private String datagram;
+    private byte[] datagramBytes;
+
+    private DatagramParser datagramParser = new DatagramParser();
+    private ByteDatagramParser byteDatagramParser = new ByteDatagramParser();
+
+    @Setup
+    public void setUp() {
+        datagram = telegram.asString();
+        datagramBytes = telegram.asBytes();
+    }
+
+    @Benchmark
+    public BigDecimal datagramParserSingleField() {
+        return datagramParser.parse(datagram).getCurrentPowerConsumptionW();
+    }
+
+    @Benchmark
+    public BigDecimal eagerSingleField() {
+        return byteDatagramParser.parse(datagramBytes).getCurrentPowerConsumptionW();
+    }
+
+    @Benchmark
+    public BigDecimal lazySingleField() {
+        return byteDatagramParser.parseLazy(datagramBytes, 0, datagramBytes.length).getCurrentPowerConsumptionW();
+    }
+
+    @Benchmark
+    public SmartMeterMeasurement lazyAllFields() {
+        return new SmartMeterMeasurement(byteDatagramParser.parseLazy(datagramBytes, 0, datagramBytes.length));
+    }
+}
@@ -0,0 +1,82 @@
+package org.boplicity.p1.benchmark;
+
+import org.boplicity.p1.export.ExportFormat;
+import org.boplicity.p1.export.MeasurementExporter;
+import org.boplicity.p1.model.CompactMeasurement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Batches of a thousand measurements encoded, compressed and handed to a sink that discards them, per measurement.
+ * Each invocation waits for its batch to be sent, so the time of the exporter's thread is included.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MeasurementExporterBenchmark {
+
+    private static final int BATCH_SIZE = 1000;
+
+    @Param({"LINE_PROTOCOL", "CSV"})
+    public ExportFormat exportFormat;
+
+    @Param({"true", "false"})
+    public boolean compressed;
+
+    private MeasurementExporter exporter;
+    private CompactMeasurement[] measurements;
+
+    @Setup
+    public void setUp() {
+        exporter = new MeasurementExporter((bytes, length, format, gzipped) -> {
+        }, exportFormat);
+        exporter.setCompressed(compressed);
+        exporter.init();
+
+        measurements = new CompactMeasurement[BATCH_SIZE];
+
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            measurements[i] = new CompactMeasurement(1557301383000L + i * 1000L, 4347922 + i / 8, 3513714, 348098,
+                    835640, 425 + i % 97, 0, 2962133 + i / 300);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        exporter.destroy();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public long exportBatch() {
+        long batchCount = exporter.getBatchCount();
+
+        for (CompactMeasurement measurement : measurements) {
+            exporter.export("E0001", measurement);
+        }
+
+        exporter.flush();
+
+        while (exporter.getBatchCount() == batchCount) {
+            Thread.yield();
+        }
+
+        return exporter.getBatchCount();
+    }
+}
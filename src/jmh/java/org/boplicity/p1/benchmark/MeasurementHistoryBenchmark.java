@@ -0,0 +1,72 @@
+package org.boplicity.p1.benchmark;
+
+import org.boplicity.p1.history.Aggregate;
+import org.boplicity.p1.history.HistorySlice;
+import org.boplicity.p1.history.MeasurementHistory;
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A day of readings a second apart. Each call adds a reading and asks for the aggregates of the current hour, with
+ * and without the cache, or copies out the last hour.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MeasurementHistoryBenchmark {
+
+    private static final long HOUR = 3600000;
+
+    @Param({"256", "0"})
+    public int cacheSize;
+
+    private MeasurementHistory history;
+    private long timestamp = 1557273600000L;
+
+    @Setup
+    public void setUp() {
+        history = new MeasurementHistory(MeasurementHistory.DEFAULT_CAPACITY);
+        history.setCacheSize(cacheSize);
+
+        for (int i = 0; i < MeasurementHistory.DEFAULT_CAPACITY; i++) {
+            add();
+        }
+    }
+
+    @Benchmark
+    public Aggregate addAndAggregate() {
+        add();
+
+        long hour = timestamp / HOUR * HOUR;
+
+        return history.aggregate(MeasurementField.CURRENT_POWER_CONSUMPTION_W, hour, hour + HOUR);
+    }
+
+    @Benchmark
+    public HistorySlice rangeLastHour() {
+        return history.range(timestamp - HOUR, timestamp + 1);
+    }
+
+    private void add() {
+        timestamp += 1000;
+
+        history.add(new CompactMeasurement(timestamp, 4347922 + timestamp / 8000, 3513714, 348098, 835640,
+                425 + timestamp / 1000 % 97, 0, 2962133));
+    }
+}
@@ -0,0 +1,75 @@
+package org.boplicity.p1.benchmark;
+
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+import org.boplicity.p1.registry.MeterRegistry;
+import org.boplicity.p1.registry.MeterSnapshot;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ingest threads updating a registry of 10,000 meters while query threads take snapshots.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Group)
+public class MeterRegistryBenchmark {
+
+    private static final int METER_COUNT = 10000;
+
+    private MeterRegistry registry;
+    private String[] equipmentIds;
+    private CompactMeasurement measurement;
+
+    @Setup
+    public void setUp() {
+        registry = new MeterRegistry();
+        equipmentIds = new String[METER_COUNT];
+
+        CompactMeasurement.Builder builder = new CompactMeasurement.Builder().timestamp(System.currentTimeMillis());
+
+        for (MeasurementField field : MeasurementField.values()) {
+            builder.set(field, 1000);
+        }
+
+        measurement = builder.build();
+
+        for (int i = 0; i < METER_COUNT; i++) {
+            equipmentIds[i] = "E" + i;
+
+            for (int j = 0; j < MeterRegistry.DEFAULT_HISTORY_SIZE; j++) {
+                registry.update(equipmentIds[i], measurement);
+            }
+        }
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public void update() {
+        registry.update(equipmentIds[ThreadLocalRandom.current().nextInt(METER_COUNT)], measurement);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public MeterSnapshot snapshot() {
+        return registry.snapshot(equipmentIds[ThreadLocalRandom.current().nextInt(METER_COUNT)]);
+    }
+}
@@ -0,0 +1,60 @@
+package org.boplicity.p1.benchmark;
+
+import org.boplicity.p1.device.SmartMeterListenerImpl;
+import org.boplicity.p1.device.TelegramFramer;
+import org.boplicity.p1.metrics.MeterMetrics;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs a DSMR 5 telegram from the framer through parsing and publication with metrics switched on and off; the
+ * difference is the cost of the instrumentation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricsBenchmark {
+
+    @Param({"true", "false"})
+    private boolean enabled;
+
+    private byte[] telegram;
+    private SmartMeterListenerImpl listener;
+    private TelegramFramer telegramFramer;
+
+    @Setup
+    public void setUp() {
+        MeterMetrics metrics = new MeterMetrics();
+        metrics.setEnabled(enabled);
+
+        listener = new SmartMeterListenerImpl();
+        listener.setMetrics(metrics);
+
+        telegramFramer = new TelegramFramer(frame -> listener.put(frame));
+        telegramFramer.setMetrics(metrics);
+
+        telegram = (BenchmarkTelegram.DSMR5.asString() + "\r\n").getBytes();
+    }
+
+    @Benchmark
+    public SmartMeterMeasurement frameToMeasurement() {
+        telegramFramer.feed(telegram, 0, telegram.length);
+
+        return listener.getCurrentMeasurement();
+    }
+}
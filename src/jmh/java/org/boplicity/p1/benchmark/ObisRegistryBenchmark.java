@@ -0,0 +1,74 @@
+package org.boplicity.p1.benchmark;
+
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.parser.ObisHandler;
+import org.boplicity.p1.parser.ObisRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Looks up every code of a DSMR 5 telegram in registries of growing size; the cost should stay the same.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ObisRegistryBenchmark {
+
+    @Param({"0", "100", "1000"})
+    private int extraCodes;
+
+    private ObisRegistry obisRegistry;
+    private byte[][] codes;
+
+    @Setup
+    public void setUp() {
+        obisRegistry = ObisRegistry.dsmr();
+
+        ObisHandler ignore = new ObisHandler() {
+            @Override
+            public void handle(byte[] bytes, int from, int end, SmartMeterMeasurement measurement) {
+            }
+        };
+
+        for (int i = 0; i < extraCodes; i++) {
+            obisRegistry.register("0-0:" + (100 + i / 10) + "." + (i % 10) + ".0", ignore);
+        }
+
+        String[] lines = BenchmarkTelegram.DSMR5.asString().split("\r\n");
+        codes = new byte[lines.length][];
+
+        for (int i = 0; i < lines.length; i++) {
+            int valueStart = lines[i].indexOf('(');
+            codes[i] = (valueStart < 0 ? lines[i] : lines[i].substring(0, valueStart))
+                    .getBytes(StandardCharsets.US_ASCII);
+        }
+    }
+
+    @Benchmark
+    public int lookup() {
+        int found = 0;
+
+        for (byte[] code : codes) {
+            if (obisRegistry.get(code, 0, code.length) != null) {
+                found++;
+            }
+        }
+
+        return found;
+    }
+}
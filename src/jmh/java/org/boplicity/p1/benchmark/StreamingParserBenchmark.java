@@ -0,0 +1,72 @@
+package org.boplicity.p1.benchmark;
+
+import org.boplicity.p1.device.StreamingTelegramParser;
+import org.boplicity.p1.device.TelegramFramer;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.parser.ByteDatagramParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Feeds a telegram in serial-port sized chunks, either framed first and parsed after the last byte, or parsed while
+ * it arrives.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StreamingParserBenchmark {
+
+    private static final int CHUNK_SIZE = 64;
+
+    @Param({"DSMR22", "DSMR5"})
+    public BenchmarkTelegram telegram;
+
+    private byte[] datagram;
+
+    private TelegramFramer telegramFramer;
+    private StreamingTelegramParser streamingTelegramParser;
+
+    private SmartMeterMeasurement measurement;
+
+    @Setup
+    public void setUp() {
+        datagram = (telegram.asString() + "\r\n").getBytes();
+
+        final ByteDatagramParser byteDatagramParser = new ByteDatagramParser();
+
+        telegramFramer = new TelegramFramer(frame -> measurement = byteDatagramParser.parse(frame));
+        streamingTelegramParser = new StreamingTelegramParser(parsed -> measurement = parsed);
+    }
+
+    @Benchmark
+    public SmartMeterMeasurement framedThenParsed() {
+        for (int offset = 0; offset < datagram.length; offset += CHUNK_SIZE) {
+            telegramFramer.feed(datagram, offset, Math.min(CHUNK_SIZE, datagram.length - offset));
+        }
+
+        return measurement;
+    }
+
+    @Benchmark
+    public SmartMeterMeasurement streaming() {
+        for (int offset = 0; offset < datagram.length; offset += CHUNK_SIZE) {
+            streamingTelegramParser.feed(datagram, offset, Math.min(CHUNK_SIZE, datagram.length - offset));
+        }
+
+        return measurement;
+    }
+}
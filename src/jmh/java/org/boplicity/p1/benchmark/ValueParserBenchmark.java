@@ -0,0 +1,50 @@
+package org.boplicity.p1.benchmark;
+
+import org.boplicity.p1.parser.CubicMetreValueParser;
+import org.boplicity.p1.parser.KwhValueParser;
+import org.boplicity.p1.parser.ValueParser;
+import org.boplicity.p1.parser.WattValueParser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ValueParserBenchmark {
+
+    private ValueParser kwhValueParser = new KwhValueParser();
+    private ValueParser wattValueParser = new WattValueParser();
+    private ValueParser cubicMetreValueParser = new CubicMetreValueParser();
+
+    private String kwhLine = "1-0:1.8.1(004347.922*kWh)";
+    private String wattLine = "1-0:1.7.0(00.425*kW)";
+    private String cubicMetreLine = "0-1:24.3.0(130206140000)(00)(60)(1)(0-1:24.2.0)(m3)(00047.057)";
+
+    @Benchmark
+    public BigDecimal kwh() {
+        return kwhValueParser.parse(kwhLine);
+    }
+
+    @Benchmark
+    public BigDecimal watt() {
+        return wattValueParser.parse(wattLine);
+    }
+
+    @Benchmark
+    public BigDecimal cubicMetre() {
+        return cubicMetreValueParser.parse(cubicMetreLine);
+    }
+}
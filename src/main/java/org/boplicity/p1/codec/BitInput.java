@@ -0,0 +1,37 @@
+package org.boplicity.p1.codec;
+
+/**
+ * Reads what a {@link BitOutput} wrote.
+ */
+final class BitInput {
+
+    private final long[] words;
+    private long position;
+
+    BitInput(long[] words) {
+        this.words = words;
+    }
+
+    long read(int bits) {
+        int index = (int) (position >>> 6);
+        int offset = (int) (position & 63);
+        int free = 64 - offset;
+
+        long result;
+
+        if (bits <= free) {
+            result = words[index] << offset >>> (64 - bits);
+        } else {
+            int rest = bits - free;
+            result = words[index] << offset >>> (64 - bits) | words[index + 1] >>> (64 - rest);
+        }
+
+        position += bits;
+
+        return result;
+    }
+
+    boolean readBit() {
+        return read(1) != 0;
+    }
+}
@@ -0,0 +1,51 @@
+package org.boplicity.p1.codec;
+
+import java.util.Arrays;
+
+/**
+ * Writes values of any width up to 64 bits, most significant bit first, into a growing array of longs.
+ */
+final class BitOutput {
+
+    private long[] words = new long[16];
+    private long bitLength;
+
+    void write(long value, int bits) {
+        if (bits < 64) {
+            value &= (1L << bits) - 1;
+        }
+
+        int index = (int) (bitLength >>> 6);
+        int free = 64 - (int) (bitLength & 63);
+
+        if (index + 1 >= words.length) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+
+        if (bits <= free) {
+            words[index] |= value << (free - bits);
+        } else {
+            words[index] |= value >>> (bits - free);
+            words[index + 1] |= value << (64 - (bits - free));
+        }
+
+        bitLength += bits;
+    }
+
+    void writeBit(boolean bit) {
+        write(bit ? 1 : 0, 1);
+    }
+
+    long getBitLength() {
+        return bitLength;
+    }
+
+    long[] toWords() {
+        return Arrays.copyOf(words, (int) ((bitLength + 63) >>> 6));
+    }
+
+    void reset() {
+        Arrays.fill(words, 0);
+        bitLength = 0;
+    }
+}
@@ -0,0 +1,165 @@
+package org.boplicity.p1.codec;
+
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A run of measurements compressed by a {@link MeasurementCompressor}. Blocks decode independently of each other, so
+ * a query only needs to decode the blocks that overlap its range.
+ */
+public final class CompressedBlock {
+
+    static final MeasurementField[] FIELDS = MeasurementField.values();
+
+    // Delta-of-delta buckets for timestamps: control bits, then the zigzag encoded value in this many bits
+    static final int[] TIMESTAMP_BUCKET_BITS = {7, 9, 12};
+
+    // Changed values are written as the number of significant bits of their zigzag delta, minus one, in 6 bits
+    static final int LENGTH_BITS = 6;
+
+    private final int count;
+    private final long firstTimestamp;
+    private final long lastTimestamp;
+    private final long bitLength;
+    private final long[] words;
+
+    CompressedBlock(int count, long firstTimestamp, long lastTimestamp, long bitLength, long[] words) {
+        this.count = count;
+        this.firstTimestamp = firstTimestamp;
+        this.lastTimestamp = lastTimestamp;
+        this.bitLength = bitLength;
+        this.words = words;
+    }
+
+    /**
+     * Reads a block written by {@link #writeTo(ByteBuffer)}.
+     */
+    public static CompressedBlock readFrom(ByteBuffer in) {
+        int count = in.getInt();
+        long firstTimestamp = in.getLong();
+        long lastTimestamp = in.getLong();
+        long bitLength = in.getLong();
+
+        if (count < 0 || bitLength < 0 || (bitLength + 63) >>> 6 > in.remaining() / 8) {
+            throw new IllegalArgumentException("Not a compressed block");
+        }
+
+        long[] words = new long[(int) ((bitLength + 63) >>> 6)];
+
+        for (int i = 0; i < words.length; i++) {
+            words[i] = in.getLong();
+        }
+
+        return new CompressedBlock(count, firstTimestamp, lastTimestamp, bitLength, words);
+    }
+
+    public void writeTo(ByteBuffer out) {
+        out.putInt(count);
+        out.putLong(firstTimestamp);
+        out.putLong(lastTimestamp);
+        out.putLong(bitLength);
+
+        for (long word : words) {
+            out.putLong(word);
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    /**
+     * Returns the size of the compressed data in bytes, without the block header.
+     */
+    public int getSize() {
+        return (int) ((bitLength + 7) >>> 3);
+    }
+
+    public List<CompactMeasurement> decode() {
+        final List<CompactMeasurement> result = new ArrayList<CompactMeasurement>(count);
+
+        decode(new Consumer<CompactMeasurement>() {
+            @Override
+            public void accept(CompactMeasurement measurement) {
+                result.add(measurement);
+            }
+        });
+
+        return result;
+    }
+
+    public void decode(Consumer<CompactMeasurement> consumer) {
+        if (count == 0) {
+            return;
+        }
+
+        BitInput input = new BitInput(words);
+        CompactMeasurement.Builder builder = new CompactMeasurement.Builder();
+
+        long timestamp = input.read(64);
+        long delta = 0;
+        long[] values = new long[FIELDS.length];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = input.read(64);
+        }
+
+        consumer.accept(build(builder, timestamp, values));
+
+        for (int row = 1; row < count; row++) {
+            delta += readDeltaOfDelta(input);
+            timestamp += delta;
+
+            for (int i = 0; i < values.length; i++) {
+                if (input.readBit()) {
+                    long zigzag = input.read((int) input.read(LENGTH_BITS) + 1);
+                    values[i] += zigzag >>> 1 ^ -(zigzag & 1);
+                }
+            }
+
+            consumer.accept(build(builder, timestamp, values));
+        }
+    }
+
+    private static long readDeltaOfDelta(BitInput input) {
+        if (!input.readBit()) {
+            return 0;
+        }
+
+        int bits = 64;
+
+        for (int bucketBits : TIMESTAMP_BUCKET_BITS) {
+            if (!input.readBit()) {
+                bits = bucketBits;
+                break;
+            }
+        }
+
+        long zigzag = input.read(bits);
+
+        return zigzag >>> 1 ^ -(zigzag & 1);
+    }
+
+    private static CompactMeasurement build(CompactMeasurement.Builder builder, long timestamp, long[] values) {
+        builder.timestamp(timestamp);
+
+        for (int i = 0; i < values.length; i++) {
+            builder.set(FIELDS[i], values[i]);
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,215 @@
+package org.boplicity.p1.codec;
+
+import org.boplicity.p1.model.CompactMeasurement;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Compresses a stream of measurements in the manner of Facebook's Gorilla: timestamps as the difference between
+ * consecutive deltas, values as the difference to the previous value, both bit-packed. A register that did not change
+ * takes a single bit, a timestamp on a steady interval too. Measurements are grouped into blocks that decode on their
+ * own, so range queries only decode the blocks they overlap.
+ * <p>
+ * Appending is not thread safe.
+ */
+public class MeasurementCompressor {
+
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    // A CompactMeasurement holds its timestamp and values as longs
+    private static final int RAW_SIZE = (CompressedBlock.FIELDS.length + 1) * 8;
+
+    private int blockSize;
+    private List<CompressedBlock> blocks = new ArrayList<CompressedBlock>();
+
+    private BitOutput output = new BitOutput();
+    private int count;
+    private long firstTimestamp;
+    private long timestamp;
+    private long delta;
+    private long[] values = new long[CompressedBlock.FIELDS.length];
+
+    private long measurementCount;
+    private long compressedSize;
+
+    public MeasurementCompressor() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+
+    public MeasurementCompressor(int blockSize) {
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the measurement has no timestamp or is older than the previous one
+     */
+    public void append(CompactMeasurement measurement) {
+        long newTimestamp = measurement.getTimestamp();
+
+        if (newTimestamp == CompactMeasurement.NO_VALUE || (measurementCount > 0 && newTimestamp < timestamp)) {
+            throw new IllegalArgumentException("Timestamp " + newTimestamp + " before " + timestamp);
+        }
+
+        if (count == 0) {
+            output.write(newTimestamp, 64);
+
+            for (int i = 0; i < values.length; i++) {
+                values[i] = measurement.get(CompressedBlock.FIELDS[i]);
+                output.write(values[i], 64);
+            }
+
+            firstTimestamp = newTimestamp;
+            delta = 0;
+        } else {
+            long newDelta = newTimestamp - timestamp;
+            writeDeltaOfDelta(newDelta - delta);
+            delta = newDelta;
+
+            for (int i = 0; i < values.length; i++) {
+                long value = measurement.get(CompressedBlock.FIELDS[i]);
+                long valueDelta = value - values[i];
+
+                if (valueDelta == 0) {
+                    output.writeBit(false);
+                } else {
+                    long zigzag = valueDelta << 1 ^ valueDelta >> 63;
+                    int bits = 64 - Long.numberOfLeadingZeros(zigzag);
+
+                    output.writeBit(true);
+                    output.write(bits - 1, CompressedBlock.LENGTH_BITS);
+                    output.write(zigzag, bits);
+                    values[i] = value;
+                }
+            }
+        }
+
+        timestamp = newTimestamp;
+        count++;
+        measurementCount++;
+
+        if (count == blockSize) {
+            flush();
+        }
+    }
+
+    /**
+     * Closes the current block, even if it is not full.
+     */
+    public void flush() {
+        if (count > 0) {
+            CompressedBlock block = currentBlock();
+
+            blocks.add(block);
+            compressedSize += block.getSize();
+
+            output.reset();
+            count = 0;
+        }
+    }
+
+    /**
+     * Returns the closed blocks.
+     */
+    public List<CompressedBlock> getBlocks() {
+        return Collections.unmodifiableList(blocks);
+    }
+
+    /**
+     * Passes the measurements with a timestamp in <code>[from, to)</code> to the consumer, oldest first, including
+     * those in the current block.
+     */
+    public void query(long from, long to, final Consumer<CompactMeasurement> consumer) {
+        List<CompressedBlock> candidates = new ArrayList<CompressedBlock>();
+
+        for (int i = firstBlockEndingAtOrAfter(from); i < blocks.size(); i++) {
+            if (blocks.get(i).getFirstTimestamp() >= to) {
+                break;
+            }
+            candidates.add(blocks.get(i));
+        }
+
+        if (count > 0 && firstTimestamp < to && timestamp >= from) {
+            candidates.add(currentBlock());
+        }
+
+        final long rangeFrom = from;
+        final long rangeTo = to;
+
+        for (CompressedBlock block : candidates) {
+            block.decode(new Consumer<CompactMeasurement>() {
+                @Override
+                public void accept(CompactMeasurement measurement) {
+                    if (measurement.getTimestamp() >= rangeFrom && measurement.getTimestamp() < rangeTo) {
+                        consumer.accept(measurement);
+                    }
+                }
+            });
+        }
+    }
+
+    public long getMeasurementCount() {
+        return measurementCount;
+    }
+
+    /**
+     * Returns the size of the closed blocks' data in bytes.
+     */
+    public long getCompressedSize() {
+        return compressedSize;
+    }
+
+    /**
+     * Returns how many times smaller the closed blocks are than the same measurements as eight longs each.
+     */
+    public double getCompressionRatio() {
+        long compressedCount = measurementCount - count;
+
+        return compressedSize == 0 ? 0 : (double) compressedCount * RAW_SIZE / compressedSize;
+    }
+
+    private void writeDeltaOfDelta(long deltaOfDelta) {
+        if (deltaOfDelta == 0) {
+            output.writeBit(false);
+            return;
+        }
+
+        long zigzag = deltaOfDelta << 1 ^ deltaOfDelta >> 63;
+        int[] bucketBits = CompressedBlock.TIMESTAMP_BUCKET_BITS;
+
+        for (int i = 0; i < bucketBits.length; i++) {
+            if (zigzag >>> bucketBits[i] == 0) {
+                // i + 1 ones and a zero
+                output.write((1L << (i + 2)) - 2, i + 2);
+                output.write(zigzag, bucketBits[i]);
+                return;
+            }
+        }
+
+        output.write((1L << (bucketBits.length + 1)) - 1, bucketBits.length + 1);
+        output.write(zigzag, 64);
+    }
+
+    private CompressedBlock currentBlock() {
+        return new CompressedBlock(count, firstTimestamp, timestamp, output.getBitLength(), output.toWords());
+    }
+
+    private int firstBlockEndingAtOrAfter(long from) {
+        int low = 0;
+        int high = blocks.size();
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (blocks.get(middle).getLastTimestamp() < from) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+}
@@ -0,0 +1,47 @@
+package org.boplicity.p1.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * LEB128 variable length integers: seven bits per byte, least significant group first, high bit set on all but the
+ * last byte. Signed values are zigzag encoded first, so small negative numbers stay short.
+ */
+final class VarInts {
+
+    private VarInts() {
+    }
+
+    static void putVarLong(ByteBuffer out, long value) {
+        while ((value & ~0x7fL) != 0) {
+            out.put((byte) (value & 0x7f | 0x80));
+            value >>>= 7;
+        }
+
+        out.put((byte) value);
+    }
+
+    static long getVarLong(ByteBuffer in) {
+        long value = 0;
+
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7f) << shift;
+
+            if (b >= 0) {
+                return value;
+            }
+        }
+
+        throw new IllegalArgumentException("Malformed variable length integer");
+    }
+
+    static void putSignedVarLong(ByteBuffer out, long value) {
+        putVarLong(out, value << 1 ^ value >> 63);
+    }
+
+    static long getSignedVarLong(ByteBuffer in) {
+        long value = getVarLong(in);
+
+        return value >>> 1 ^ -(value & 1);
+    }
+}
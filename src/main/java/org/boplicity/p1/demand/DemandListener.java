@@ -0,0 +1,6 @@
+package org.boplicity.p1.demand;
+
+public interface DemandListener {
+
+    void onQuarterHour(QuarterHourDemand demand);
+}
@@ -0,0 +1,269 @@
+package org.boplicity.p1.demand;
+
+import org.boplicity.p1.device.MeasurementSubscriber;
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.rollup.RollupInterval;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Tracks the demand measures of capacity tariffs while measurements arrive: rolling averages and maxima of the current
+ * power consumption over any number of windows, like the last minute and the last five minutes, and the average demand
+ * of every quarter of an hour with the peak of the month.
+ * <p>
+ * Every sample is handled in constant time without allocating; only closing a quarter of an hour creates a
+ * {@link QuarterHourDemand}. The rolling windows hold their samples in rings sized for one sample per second, the
+ * DSMR 5 rate; when samples come in faster the oldest leave a window early, see {@link #getOverrunCount()}.
+ * <p>
+ * The demand of a quarter is the increase of the consumption registers, normal and low rate together, between its
+ * boundaries. The register values at a boundary are interpolated between the last reading before and the first reading
+ * after it, so gaps in the readings are spread evenly over the quarters they span. A register going down is taken as
+ * a counter reset and adds nothing. Quarters and months are aligned to the local time of the time zone.
+ */
+public class DemandTracker implements MeasurementSubscriber {
+
+    static final long SAMPLE_INTERVAL = DateTimeConstants.MILLIS_PER_SECOND;
+
+    private static final RollupInterval QUARTER_HOUR = RollupInterval.QUARTER_HOUR;
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private DemandListener demandListener;
+    private DateTimeZone zone;
+    private RollingWindow[] windows;
+
+    private long lastTimestamp = Long.MIN_VALUE;
+    private long lateSampleCount;
+
+    // The registers with the counter resets taken out, so they only go up
+    private long lastRegisters = CompactMeasurement.NO_VALUE;
+    private long registerOffset;
+    private long lastEnergyTimestamp;
+    private long lastEnergy;
+    private long counterResetCount;
+
+    private long quarterStart = CompactMeasurement.NO_VALUE;
+    private long quarterEnd;
+    private double quarterStartEnergy;
+    private boolean quarterComplete;
+
+    private long monthEnd = Long.MIN_VALUE;
+    private double monthlyPeakW = Double.NaN;
+    private long monthlyPeakStart = CompactMeasurement.NO_VALUE;
+
+    /**
+     * @param windowLengths the lengths of the rolling windows in millis
+     */
+    public DemandTracker(DemandListener demandListener, DateTimeZone zone, long... windowLengths) {
+        this.demandListener = demandListener;
+        this.zone = zone;
+        this.windows = new RollingWindow[windowLengths.length];
+
+        for (int i = 0; i < windowLengths.length; i++) {
+            if (windowLengths[i] <= 0) {
+                throw new IllegalArgumentException("Window length must be positive: " + windowLengths[i]);
+            }
+
+            windows[i] = new RollingWindow(windowLengths[i], (int) (windowLengths[i] / SAMPLE_INTERVAL) + 1);
+        }
+    }
+
+    /**
+     * Converts the measurement; use {@link #add(CompactMeasurement)} to stay allocation free.
+     */
+    @Override
+    public void onMeasurement(SmartMeterMeasurement measurement) {
+        try {
+            add(CompactMeasurement.of(measurement));
+        } catch (RuntimeException e) {
+            logger.error(e.toString(), e);
+        }
+    }
+
+    public void add(CompactMeasurement measurement) {
+        long low = measurement.getElectricityConsumptionLowRateWh();
+        long normal = measurement.getElectricityConsumptionNormalRateWh();
+        long consumption = CompactMeasurement.NO_VALUE;
+
+        if (low != CompactMeasurement.NO_VALUE || normal != CompactMeasurement.NO_VALUE) {
+            consumption = (low != CompactMeasurement.NO_VALUE ? low : 0)
+                    + (normal != CompactMeasurement.NO_VALUE ? normal : 0);
+        }
+
+        add(measurement.getTimestamp(), measurement.getCurrentPowerConsumptionW(), consumption);
+    }
+
+    /**
+     * Adds a sample. Samples older than the last one are dropped and counted, see {@link #getLateSampleCount()}.
+     *
+     * @param powerW        the current power consumption, or {@link CompactMeasurement#NO_VALUE}
+     * @param consumptionWh the sum of the consumption registers, or {@link CompactMeasurement#NO_VALUE}
+     */
+    public synchronized void add(long timestamp, long powerW, long consumptionWh) {
+        if (timestamp == CompactMeasurement.NO_VALUE) {
+            return;
+        }
+
+        if (timestamp < lastTimestamp) {
+            lateSampleCount++;
+            return;
+        }
+
+        lastTimestamp = timestamp;
+
+        for (RollingWindow window : windows) {
+            if (powerW != CompactMeasurement.NO_VALUE) {
+                window.add(timestamp, powerW);
+            } else {
+                window.expire(timestamp);
+            }
+        }
+
+        if (consumptionWh != CompactMeasurement.NO_VALUE) {
+            addRegisters(timestamp, consumptionWh);
+        }
+    }
+
+    public int getWindowCount() {
+        return windows.length;
+    }
+
+    public long getWindowLength(int window) {
+        return windows[window].length;
+    }
+
+    /**
+     * Returns the average power consumption in W over the window ending at the last sample, NaN without samples.
+     */
+    public synchronized double getAverageW(int window) {
+        return windows[window].getAverage();
+    }
+
+    /**
+     * Returns the highest power consumption in W within the window ending at the last sample,
+     * {@link CompactMeasurement#NO_VALUE} without samples.
+     */
+    public synchronized long getMaxW(int window) {
+        return windows[window].getMax();
+    }
+
+    public synchronized int getSampleCount(int window) {
+        return windows[window].getSampleCount();
+    }
+
+    /**
+     * Returns the highest average demand in W of the complete quarters of the current month, NaN before the first
+     * one.
+     */
+    public synchronized double getMonthlyPeakW() {
+        return monthlyPeakW;
+    }
+
+    /**
+     * Returns the start of the quarter with the monthly peak, {@link CompactMeasurement#NO_VALUE} before the first one.
+     */
+    public synchronized long getMonthlyPeakStart() {
+        return monthlyPeakStart;
+    }
+
+    /**
+     * Returns the start of the quarter in progress, {@link CompactMeasurement#NO_VALUE} before the first reading of
+     * the registers.
+     */
+    public synchronized long getQuarterStart() {
+        return quarterStart;
+    }
+
+    /**
+     * Returns the consumption in Wh of the quarter in progress up to the last reading, which says how much room is
+     * left below a demand limit. NaN before the first reading of the registers.
+     */
+    public synchronized double getQuarterEnergyWh() {
+        return quarterStart == CompactMeasurement.NO_VALUE ? Double.NaN : lastEnergy - quarterStartEnergy;
+    }
+
+    /**
+     * Returns the number of samples that were dropped because they were older than the last one.
+     */
+    public synchronized long getLateSampleCount() {
+        return lateSampleCount;
+    }
+
+    public synchronized long getCounterResetCount() {
+        return counterResetCount;
+    }
+
+    /**
+     * Returns the number of samples that left a window early because samples came in more often than once a second.
+     */
+    public synchronized long getOverrunCount() {
+        long count = 0;
+
+        for (RollingWindow window : windows) {
+            count += window.getOverrunCount();
+        }
+
+        return count;
+    }
+
+    private void addRegisters(long timestamp, long registers) {
+        if (lastRegisters != CompactMeasurement.NO_VALUE && registers < lastRegisters) {
+            registerOffset += lastRegisters - registers;
+            counterResetCount++;
+        }
+
+        lastRegisters = registers;
+
+        long energy = registers + registerOffset;
+
+        if (quarterStart == CompactMeasurement.NO_VALUE) {
+            long start = QUARTER_HOUR.start(timestamp, zone);
+            startQuarter(start, energy, timestamp == start);
+        }
+
+        while (timestamp >= quarterEnd) {
+            double boundaryEnergy = lastEnergy + (double) (energy - lastEnergy) * (quarterEnd - lastEnergyTimestamp)
+                    / (timestamp - lastEnergyTimestamp);
+
+            closeQuarter(boundaryEnergy);
+            startQuarter(quarterEnd, boundaryEnergy, true);
+        }
+
+        lastEnergyTimestamp = timestamp;
+        lastEnergy = energy;
+    }
+
+    private void startQuarter(long start, double energy, boolean complete) {
+        if (start >= monthEnd) {
+            DateTime month = new DateTime(start, zone).withDayOfMonth(1).withTimeAtStartOfDay();
+
+            monthEnd = month.plusMonths(1).getMillis();
+            monthlyPeakW = Double.NaN;
+            monthlyPeakStart = CompactMeasurement.NO_VALUE;
+        }
+
+        quarterStart = start;
+        quarterEnd = QUARTER_HOUR.end(start, zone);
+        quarterStartEnergy = energy;
+        quarterComplete = complete;
+    }
+
+    private void closeQuarter(double endEnergy) {
+        double energyWh = endEnergy - quarterStartEnergy;
+        double demandW = energyWh * DateTimeConstants.MILLIS_PER_HOUR / (quarterEnd - quarterStart);
+        boolean peak = false;
+
+        if (quarterComplete && !(demandW <= monthlyPeakW)) {
+            monthlyPeakW = demandW;
+            monthlyPeakStart = quarterStart;
+            peak = true;
+        }
+
+        demandListener.onQuarterHour(new QuarterHourDemand(quarterStart, quarterEnd, energyWh, demandW,
+                quarterComplete, peak));
+    }
+}
@@ -0,0 +1,66 @@
+package org.boplicity.p1.demand;
+
+/**
+ * The electricity consumed in one closed quarter of an hour, taken from the cumulative consumption registers, and the
+ * average demand that amounts to.
+ */
+public class QuarterHourDemand {
+
+    private long start;
+    private long end;
+    private double energyWh;
+    private double averageDemandW;
+    private boolean complete;
+    private boolean monthlyPeak;
+
+    QuarterHourDemand(long start, long end, double energyWh, double averageDemandW, boolean complete,
+                      boolean monthlyPeak) {
+        this.start = start;
+        this.end = end;
+        this.energyWh = energyWh;
+        this.averageDemandW = averageDemandW;
+        this.complete = complete;
+        this.monthlyPeak = monthlyPeak;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    /**
+     * Returns the consumption in Wh. The register values at the boundaries are interpolated between the readings
+     * around them.
+     */
+    public double getEnergyWh() {
+        return energyWh;
+    }
+
+    public double getAverageDemandW() {
+        return averageDemandW;
+    }
+
+    /**
+     * Returns false for the first quarter of the tracker, which only covers the part after the first reading.
+     * Incomplete quarters don't count towards the monthly peak.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    /**
+     * Returns true if this quarter raised the peak of its month.
+     */
+    public boolean isMonthlyPeak() {
+        return monthlyPeak;
+    }
+
+    @Override
+    public String toString() {
+        return "QuarterHourDemand{" + start + "-" + end + ", energyWh=" + energyWh + ", averageDemandW="
+                + averageDemandW + ", complete=" + complete + ", monthlyPeak=" + monthlyPeak + "}";
+    }
+}
@@ -0,0 +1,107 @@
+package org.boplicity.p1.demand;
+
+import org.boplicity.p1.model.CompactMeasurement;
+
+/**
+ * The samples of the last stretch of time, in fixed-size rings of primitives, with their running sum and a monotonic
+ * queue of the samples that can still become the maximum. Adding a sample takes amortized constant time: every sample
+ * enters and leaves the ring and the queue once.
+ */
+class RollingWindow {
+
+    final long length;
+
+    private final int capacity;
+    private final long[] timestamps;
+    private final long[] values;
+
+    // Slots of samples with decreasing values, the head being the maximum of the window
+    private final int[] maxQueue;
+
+    private int head;
+    private int size;
+    private int maxHead;
+    private int maxSize;
+
+    private long sum;
+    private long overrunCount;
+
+    RollingWindow(long length, int capacity) {
+        this.length = length;
+        this.capacity = capacity;
+
+        timestamps = new long[capacity];
+        values = new long[capacity];
+        maxQueue = new int[capacity];
+    }
+
+    void add(long timestamp, long value) {
+        expire(timestamp);
+
+        if (size == capacity) {
+            evict();
+            overrunCount++;
+        }
+
+        while (maxSize > 0 && values[maxQueue[wrap(maxHead + maxSize - 1)]] <= value) {
+            maxSize--;
+        }
+
+        int slot = wrap(head + size);
+
+        maxQueue[wrap(maxHead + maxSize)] = slot;
+        maxSize++;
+
+        timestamps[slot] = timestamp;
+        values[slot] = value;
+        sum += value;
+        size++;
+    }
+
+    /**
+     * Drops the samples that are no longer within the window ending at the given time.
+     */
+    void expire(long timestamp) {
+        long from = timestamp - length;
+
+        while (size > 0 && timestamps[head] <= from) {
+            evict();
+        }
+    }
+
+    int getSampleCount() {
+        return size;
+    }
+
+    double getAverage() {
+        return size == 0 ? Double.NaN : (double) sum / size;
+    }
+
+    long getMax() {
+        return size == 0 ? CompactMeasurement.NO_VALUE : values[maxQueue[maxHead]];
+    }
+
+    /**
+     * Returns the number of samples pushed out by a newer one before their time was up, because samples came in
+     * faster than the ring was sized for.
+     */
+    long getOverrunCount() {
+        return overrunCount;
+    }
+
+    // The queue only holds samples in the ring, so the oldest sample is either its head or not in it
+    private void evict() {
+        if (maxQueue[maxHead] == head) {
+            maxHead = wrap(maxHead + 1);
+            maxSize--;
+        }
+
+        sum -= values[head];
+        head = wrap(head + 1);
+        size--;
+    }
+
+    private int wrap(int index) {
+        return index >= capacity ? index - capacity : index;
+    }
+}
@@ -0,0 +1,217 @@
+package org.boplicity.p1.device;
+
+import org.boplicity.p1.metrics.MeterMetrics;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decouples reading from parsing. Frames are queued by the reading thread and handed to the delegate listener by a
+ * dedicated worker thread, so a slow parse or a GC pause in the delegate does not hold up the serial port. Measurements
+ * that were parsed while they arrived are queued the same way, with the same capacity and backpressure policy; they can
+ * only be passed to a delegate that is a {@link MeasurementListener}.
+ * <p>
+ * Only frames take the lock-free {@link FrameQueue}. Measurements go through an {@link ArrayBlockingQueue}, which takes
+ * a lock; they arrive once per telegram, so it is not contended like the frame path of a fast reader.
+ */
+public class AsyncSmartMeterListener implements MeasurementListener {
+
+    private static final int SPINS_BEFORE_PARKING = 100;
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private SmartMeterListener delegate;
+    private FrameQueue frameQueue;
+    private BlockingQueue<SmartMeterMeasurement> measurementQueue;
+    private AtomicLong droppedMeasurementCount = new AtomicLong();
+    private MeterMetrics metrics = new MeterMetrics();
+
+    private Thread worker;
+    private volatile boolean running;
+    private volatile boolean workerParked;
+
+    public AsyncSmartMeterListener(SmartMeterListener delegate) {
+        this(delegate, 16, BackpressurePolicy.DROP_OLDEST);
+    }
+
+    public AsyncSmartMeterListener(SmartMeterListener delegate, int capacity, BackpressurePolicy backpressurePolicy) {
+        this.delegate = delegate;
+        this.frameQueue = new FrameQueue(capacity, backpressurePolicy);
+        this.measurementQueue = new ArrayBlockingQueue<SmartMeterMeasurement>(frameQueue.getCapacity());
+    }
+
+    public void init() {
+        running = true;
+
+        worker = new Thread("p1-parser") {
+            @Override
+            public void run() {
+                work();
+            }
+        };
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    public void destroy() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(worker);
+        worker.join();
+    }
+
+    @Override
+    public void put(String datagram) {
+        put(ByteBuffer.wrap(datagram.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    @Override
+    public void put(ByteBuffer datagram) {
+        long dropped = frameQueue.getDroppedCount();
+
+        // Publishes the tail with a volatile store, ordered before the read of the flag below
+        frameQueue.offer(datagram);
+
+        metrics.framesDropped(frameQueue.getDroppedCount() - dropped);
+
+        if (workerParked) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * Queues a measurement that is already parsed for the delegate, which must be a {@link MeasurementListener}.
+     */
+    @Override
+    public void put(SmartMeterMeasurement measurement) {
+        if (!(delegate instanceof MeasurementListener)) {
+            throw new IllegalStateException(delegate.getClass().getName() + " does not accept parsed measurements");
+        }
+
+        boolean queued;
+
+        switch (frameQueue.getBackpressurePolicy()) {
+            case BLOCK:
+                try {
+                    measurementQueue.put(measurement);
+                    queued = true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    queued = false;
+                }
+                break;
+            case DROP_OLDEST:
+                while (!measurementQueue.offer(measurement)) {
+                    if (measurementQueue.poll() != null) {
+                        droppedMeasurementCount.incrementAndGet();
+                        metrics.framesDropped(1);
+                    }
+                }
+                queued = true;
+                break;
+            default:
+                queued = measurementQueue.offer(measurement);
+        }
+
+        if (!queued) {
+            droppedMeasurementCount.incrementAndGet();
+            metrics.framesDropped(1);
+        }
+
+        if (workerParked) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    @Override
+    public SmartMeterMeasurement getCurrentMeasurement() {
+        return delegate.getCurrentMeasurement();
+    }
+
+    public MeterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics that frames dropped by the queue are reported to.
+     */
+    public void setMetrics(MeterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public SmartMeterListener getDelegate() {
+        return delegate;
+    }
+
+    public FrameQueue getFrameQueue() {
+        return frameQueue;
+    }
+
+    public int getQueueDepth() {
+        return frameQueue.size() + measurementQueue.size();
+    }
+
+    public long getDroppedCount() {
+        return frameQueue.getDroppedCount() + droppedMeasurementCount.get();
+    }
+
+    private void work() {
+        FrameHandler frameHandler = new FrameHandler() {
+            @Override
+            public void onFrame(ByteBuffer frame) {
+                try {
+                    delegate.put(frame);
+                } catch (RuntimeException e) {
+                    logger.error(e.toString(), e);
+                }
+            }
+        };
+
+        int idle = 0;
+
+        while (running) {
+            if (frameQueue.poll(frameHandler) | pollMeasurement()) {
+                idle = 0;
+            } else if (++idle < SPINS_BEFORE_PARKING) {
+                Thread.yield();
+            } else {
+                workerParked = true;
+
+                // Check again, the producer may have missed the flag. Raising the flag and reading the tail are both
+                // volatile, as are the producer's store of the tail and read of the flag, so one of us sees the other
+                if (getQueueDepth() == 0) {
+                    LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+                }
+
+                workerParked = false;
+            }
+        }
+
+        while (frameQueue.poll(frameHandler) | pollMeasurement()) {
+            // Drain what is left
+        }
+    }
+
+    private boolean pollMeasurement() {
+        SmartMeterMeasurement measurement = measurementQueue.poll();
+
+        if (measurement == null) {
+            return false;
+        }
+
+        try {
+            ((MeasurementListener) delegate).put(measurement);
+        } catch (RuntimeException e) {
+            logger.error(e.toString(), e);
+        }
+
+        return true;
+    }
+}
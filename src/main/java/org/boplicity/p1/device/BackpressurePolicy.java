@@ -0,0 +1,22 @@
+package org.boplicity.p1.device;
+
+/**
+ * What a full {@link FrameQueue} does with a new frame.
+ */
+public enum BackpressurePolicy {
+
+    /**
+     * Discard the oldest waiting frame to make room for the new one.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Discard the new frame.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Wait until the consumer has made room.
+     */
+    BLOCK
+}
@@ -0,0 +1,67 @@
+package org.boplicity.p1.device;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Searches byte arrays eight bytes at a time by treating each long as a vector of bytes (SWAR).
+ */
+public final class ByteScanner {
+
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private ByteScanner() {
+    }
+
+    /**
+     * Returns a view for {@link #indexOf(ByteBuffer, int, int, byte, byte)} on the given array.
+     */
+    public static ByteBuffer wordView(byte[] bytes) {
+        return ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Finds the first occurrence of either of two bytes in <code>[from, to)</code> of the view's backing array.
+     *
+     * @return the index of the first match, or -1
+     */
+    public static int indexOf(ByteBuffer words, int from, int to, byte first, byte second) {
+        long firstPattern = broadcast(first);
+        long secondPattern = broadcast(second);
+
+        int position = from;
+
+        for (; position + 8 <= to; position += 8) {
+            long word = words.getLong(position);
+            long matches = zeroBytes(word ^ firstPattern) | zeroBytes(word ^ secondPattern);
+
+            if (matches != 0) {
+                return position + (Long.numberOfTrailingZeros(matches) >>> 3);
+            }
+        }
+
+        byte[] bytes = words.array();
+
+        for (; position < to; position++) {
+            if (bytes[position] == first || bytes[position] == second) {
+                return position;
+            }
+        }
+
+        return -1;
+    }
+
+    public static int indexOf(ByteBuffer words, int from, int to, byte value) {
+        return indexOf(words, from, to, value, value);
+    }
+
+    private static long broadcast(byte value) {
+        return (value & 0xffL) * LOW_BITS;
+    }
+
+    // Sets the high bit of the lowest zero byte; bits above it may be false positives, which is fine for a search
+    private static long zeroBytes(long word) {
+        return (word - LOW_BITS) & ~word & HIGH_BITS;
+    }
+}
@@ -0,0 +1,27 @@
+package org.boplicity.p1.device;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where the bytes of a meter come from: a serial port, or a pseudo-terminal or stream in tests. A source is opened and
+ * closed again by the {@link ConnectionManager} for every connection attempt, and only used by its thread.
+ */
+public interface ByteSource extends Closeable {
+
+    String getName();
+
+    /**
+     * Opens the source at the given line settings. Sources that have no line, like streams, ignore them.
+     *
+     * @param readTimeout the longest time in millis a read may wait for bytes
+     */
+    void open(LineSettings lineSettings, int readTimeout) throws IOException;
+
+    /**
+     * Reads the bytes that arrived, waiting for at most the read timeout.
+     *
+     * @return the number of bytes read, 0 if none arrived in time, or -1 if the source is gone
+     */
+    int read(byte[] bytes, int offset, int length) throws IOException;
+}
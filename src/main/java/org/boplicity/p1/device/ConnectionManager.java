@@ -0,0 +1,344 @@
+package org.boplicity.p1.device;
+
+import org.boplicity.p1.metrics.MeterMetrics;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a meter connected: reads its {@link ByteSource} on a thread of its own and feeds the bytes to a
+ * {@link TelegramReceiver}. The line settings are detected from the first valid telegram: DSMR 4 and 5 settings are
+ * tried first, then DSMR 2.2 and 3, until one yields a telegram within the detection timeout. The detected settings are
+ * kept until a connection at them stays silent for the stall timeout.
+ * <p>
+ * A read error, or no valid telegram for the stall timeout, closes the source and opens it again after a backoff that
+ * doubles with every failure in a row, up to a maximum. The backoff is jittered, so gateways that lose their meters at
+ * the same time don't retry in lockstep. A valid telegram resets it. A runtime exception from the receiver, such as
+ * one thrown by the listener, is logged and handled like a read error, after dropping the partial telegram.
+ */
+public class ConnectionManager {
+
+    private static final int READ_BUFFER_SIZE = 4096;
+    private static final LineSettings[] DETECTION_ORDER = {LineSettings.BAUD_115200_8N1, LineSettings.BAUD_9600_7E1};
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ByteSource byteSource;
+    private final TelegramReceiver telegramReceiver;
+
+    private LineSettings[] candidates = DETECTION_ORDER;
+    private volatile LineSettings lineSettings;
+
+    private int readTimeout = 250;
+    private long detectionTimeout = 12000;
+    private long stallTimeout = 30000;
+    private long initialBackoff = 500;
+    private long maxBackoff = 60000;
+
+    private MeterMetrics metrics;
+
+    private volatile boolean running;
+    private volatile boolean connected;
+    private Thread thread;
+
+    private AtomicLong connectCount = new AtomicLong();
+    private AtomicLong failureCount = new AtomicLong();
+    private AtomicLong stallCount = new AtomicLong();
+
+    public ConnectionManager(ByteSource byteSource, TelegramReceiver telegramReceiver) {
+        this.byteSource = byteSource;
+        this.telegramReceiver = telegramReceiver;
+    }
+
+    public void init() {
+        running = true;
+
+        thread = new Thread("p1-connection-" + byteSource.getName()) {
+            @Override
+            public void run() {
+                connect();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public void destroy() throws InterruptedException {
+        running = false;
+
+        if (thread != null) {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
+    /**
+     * Returns the line settings the meter was last received at, null until the first valid telegram.
+     */
+    public LineSettings getLineSettings() {
+        return lineSettings;
+    }
+
+    /**
+     * Fixes the line settings, skipping the detection; null to detect them.
+     */
+    public void setLineSettings(LineSettings lineSettings) {
+        this.lineSettings = lineSettings;
+
+        if (lineSettings != null) {
+            candidates = new LineSettings[]{lineSettings};
+        } else {
+            candidates = DETECTION_ORDER;
+        }
+    }
+
+    /**
+     * Returns whether the source is open. It may still be detecting the line settings.
+     */
+    public boolean isConnected() {
+        return connected;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    /**
+     * Sets the longest time in millis a read waits for bytes, which bounds how long stopping and stall detection take.
+     */
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    public long getDetectionTimeout() {
+        return detectionTimeout;
+    }
+
+    /**
+     * Sets how long to wait for a valid telegram at line settings that are not known to work, in millis. Should be
+     * longer than the telegram interval, which is ten seconds up to DSMR 4.
+     */
+    public void setDetectionTimeout(long detectionTimeout) {
+        this.detectionTimeout = detectionTimeout;
+    }
+
+    public long getStallTimeout() {
+        return stallTimeout;
+    }
+
+    /**
+     * Sets how long a connection may go without a valid telegram before it is reopened, in millis.
+     */
+    public void setStallTimeout(long stallTimeout) {
+        this.stallTimeout = stallTimeout;
+    }
+
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public void setInitialBackoff(long initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public void setMaxBackoff(long maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    public MeterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reports read errors to the metrics; null to report nothing.
+     */
+    public void setMetrics(MeterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Returns how often the source was opened.
+     */
+    public long getConnectCount() {
+        return connectCount.get();
+    }
+
+    /**
+     * Returns how often the source was reopened after a backoff: after failing to open, a read error, a stall, or a
+     * round of detection without a telegram.
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    public long getStallCount() {
+        return stallCount.get();
+    }
+
+    private void connect() {
+        byte[] buffer = new byte[READ_BUFFER_SIZE];
+        int failures = 0;
+        int candidate = 0;
+        int candidatesTried = 0;
+
+        while (running) {
+            LineSettings[] currentCandidates = candidates;
+            LineSettings detected = lineSettings;
+            LineSettings settings = detected != null ? detected : currentCandidates[candidate % currentCandidates.length];
+
+            boolean opened = false;
+            boolean received = false;
+            boolean crashed = false;
+
+            try {
+                byteSource.open(settings, readTimeout);
+                opened = true;
+                connected = true;
+                connectCount.incrementAndGet();
+
+                received = read(settings, detected != null, buffer);
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn(byteSource.getName() + " failed: " + e);
+
+                    if (opened && metrics != null) {
+                        metrics.readError();
+                    }
+                }
+            } catch (RuntimeException e) {
+                // A telegram that could not be handled, or a failing listener; start over from a clean state
+                logger.error(e.toString(), e);
+                crashed = true;
+                telegramReceiver.reset();
+            } finally {
+                if (opened) {
+                    connected = false;
+                    close();
+                }
+            }
+
+            if (!running) {
+                return;
+            }
+
+            if (received) {
+                failures = 0;
+                candidatesTried = 0;
+            } else if (crashed) {
+                // Not the line settings' fault, so retry them
+            } else if (opened && detected == null) {
+                if (++candidatesTried < currentCandidates.length) {
+                    // Try the next settings right away
+                    candidate++;
+                    continue;
+                }
+
+                candidatesTried = 0;
+                candidate++;
+            } else if (opened && currentCandidates.length > 1) {
+                // Nothing at the settings that worked before, so the meter may have been replaced
+                lineSettings = null;
+                candidate = indexOf(currentCandidates, detected) + 1;
+                candidatesTried = 0;
+            }
+
+            failureCount.incrementAndGet();
+            backoff(++failures);
+        }
+    }
+
+    /**
+     * Reads until the connection stalls or fails.
+     *
+     * @return whether a valid telegram was received before the stall
+     */
+    private boolean read(LineSettings settings, boolean known, byte[] buffer) throws IOException {
+        telegramReceiver.setChecksumRequired(settings.isChecksumRequired());
+
+        long frameCount = telegramReceiver.getFrameCount();
+        long lastProgress = System.nanoTime();
+        boolean received = false;
+
+        while (running) {
+            int count = byteSource.read(buffer, 0, buffer.length);
+
+            if (count < 0) {
+                throw new EOFException(byteSource.getName() + " is gone");
+            }
+
+            if (count > 0) {
+                telegramReceiver.feed(buffer, 0, count);
+            }
+
+            long now = System.nanoTime();
+            long currentFrameCount = telegramReceiver.getFrameCount();
+
+            if (currentFrameCount != frameCount) {
+                frameCount = currentFrameCount;
+                lastProgress = now;
+
+                if (!received) {
+                    received = true;
+
+                    if (lineSettings != settings) {
+                        logger.info("Receiving telegrams from " + byteSource.getName() + " at " + settings);
+                        lineSettings = settings;
+                    }
+                }
+            } else {
+                long timeout = received || known ? stallTimeout : detectionTimeout;
+
+                if (now - lastProgress > TimeUnit.MILLISECONDS.toNanos(timeout)) {
+                    if (received || known) {
+                        stallCount.incrementAndGet();
+                        logger.warn("No telegrams from " + byteSource.getName() + " for " + timeout + " ms");
+                    } else {
+                        logger.info("No telegrams from " + byteSource.getName() + " at " + settings);
+                    }
+                    return received;
+                }
+            }
+        }
+
+        return received;
+    }
+
+    // Sleeps for half the exponential backoff plus a random part of the other half
+    private void backoff(int failures) {
+        long delay = Math.min(maxBackoff, initialBackoff << Math.min(failures - 1, 20));
+        long jittered = delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+
+        try {
+            Thread.sleep(jittered);
+        } catch (InterruptedException e) {
+            // Stopped by destroy
+        }
+    }
+
+    private static int indexOf(LineSettings[] candidates, LineSettings lineSettings) {
+        for (int i = 0; i < candidates.length; i++) {
+            if (candidates[i] == lineSettings) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private void close() {
+        try {
+            byteSource.close();
+        } catch (IOException e) {
+            logger.error(e.toString(), e);
+        }
+    }
+}
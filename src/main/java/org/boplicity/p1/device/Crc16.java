@@ -0,0 +1,61 @@
+package org.boplicity.p1.device;
+
+/**
+ * The CRC16 of DSMR 4 and 5 telegrams (polynomial 0x8005, reflected, initial value 0). Processes four bytes per step
+ * using slicing-by-4 lookup tables.
+ */
+public final class Crc16 {
+
+    private static final int POLYNOMIAL = 0xA001; // 0x8005 reflected
+
+    private static final int[][] TABLES = new int[4][256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ POLYNOMIAL : crc >>> 1;
+            }
+
+            TABLES[0][i] = crc;
+        }
+
+        for (int i = 0; i < 256; i++) {
+            for (int table = 1; table < 4; table++) {
+                int previous = TABLES[table - 1][i];
+                TABLES[table][i] = (previous >>> 8) ^ TABLES[0][previous & 0xff];
+            }
+        }
+    }
+
+    private Crc16() {
+    }
+
+    /**
+     * Continues the CRC over <code>[from, to)</code>. Start with 0 for a new telegram.
+     */
+    public static int update(int crc, byte[] bytes, int from, int to) {
+        int[] table0 = TABLES[0];
+        int[] table1 = TABLES[1];
+        int[] table2 = TABLES[2];
+        int[] table3 = TABLES[3];
+
+        int position = from;
+
+        for (; position + 4 <= to; position += 4) {
+            crc ^= (bytes[position] & 0xff) | (bytes[position + 1] & 0xff) << 8;
+
+            crc = table3[crc & 0xff]
+                    ^ table2[crc >>> 8]
+                    ^ table1[bytes[position + 2] & 0xff]
+                    ^ table0[bytes[position + 3] & 0xff];
+        }
+
+        for (; position < to; position++) {
+            crc = (crc >>> 8) ^ table0[(crc ^ bytes[position]) & 0xff];
+        }
+
+        return crc;
+    }
+}
@@ -0,0 +1,12 @@
+package org.boplicity.p1.device;
+
+import java.nio.ByteBuffer;
+
+public interface FrameHandler {
+
+    /**
+     * Receives a complete frame, from the "/" up to and including the checksum. The remaining bytes of the buffer are
+     * the frame; the buffer is a view on the reader's buffer and is only valid for the duration of the call.
+     */
+    void onFrame(ByteBuffer frame);
+}
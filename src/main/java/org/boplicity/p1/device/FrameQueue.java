@@ -0,0 +1,185 @@
+package org.boplicity.p1.device;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free hand-off of frames from one producer to one consumer. Every slot owns a byte array that is reused
+ * for the frames passing through it, so a frame is copied once on the way in and handed to the consumer as a view.
+ * The consumer takes the array of the frame it handles and leaves a spare one in its place, so the slot is free again
+ * before the frame is handled and a slow consumer only ever holds up frames that are still waiting.
+ * <p>
+ * Each slot carries a sequence number telling whether it is free for position <code>p</code> (sequence p) or holds the
+ * frame of position <code>p</code> (sequence p + 1). The read position is claimed with a CAS so the producer can
+ * discard the oldest frame under {@link BackpressurePolicy#DROP_OLDEST}.
+ */
+public class FrameQueue {
+
+    private final int capacity;
+    private final int mask;
+    private final BackpressurePolicy backpressurePolicy;
+
+    private final AtomicLongArray sequences;
+    private final byte[][] buffers;
+    private final ByteBuffer[] views;
+
+    // Owned by the consumer, swapped with the array of the slot it polls
+    private byte[] spareBuffer = new byte[1024];
+    private ByteBuffer spareView = ByteBuffer.wrap(spareBuffer);
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private final AtomicLong offeredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    public FrameQueue(int capacity, BackpressurePolicy backpressurePolicy) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("Capacity must be at least 2: " + capacity);
+        }
+
+        this.capacity = Integer.highestOneBit(capacity - 1) << 1;
+        this.mask = this.capacity - 1;
+        this.backpressurePolicy = backpressurePolicy;
+
+        sequences = new AtomicLongArray(this.capacity);
+        buffers = new byte[this.capacity][];
+        views = new ByteBuffer[this.capacity];
+
+        for (int i = 0; i < this.capacity; i++) {
+            sequences.set(i, i);
+            buffers[i] = new byte[1024];
+            views[i] = ByteBuffer.wrap(buffers[i]);
+        }
+    }
+
+    /**
+     * Copies the remaining bytes of the frame into the queue. Must only be called from the producer thread.
+     *
+     * @return false if the frame was dropped
+     */
+    public boolean offer(ByteBuffer frame) {
+        offeredCount.incrementAndGet();
+
+        long position = tail.get();
+        int index = (int) position & mask;
+
+        while (sequences.get(index) != position) {
+            if (backpressurePolicy == BackpressurePolicy.DROP_NEWEST) {
+                droppedCount.incrementAndGet();
+                return false;
+            }
+
+            makeRoom();
+        }
+
+        int length = frame.remaining();
+
+        if (buffers[index].length < length) {
+            buffers[index] = new byte[Math.max(length, buffers[index].length * 2)];
+            views[index] = ByteBuffer.wrap(buffers[index]);
+        }
+
+        frame.duplicate().get(buffers[index], 0, length);
+
+        ByteBuffer view = views[index];
+        view.clear();
+        view.limit(length);
+
+        sequences.lazySet(index, position + 1);
+
+        // A full volatile store, not lazySet: a consumer that parks checks the tail after raising its flag, and the
+        // producer reads that flag next, so the two must not be reordered or both can miss the other
+        tail.set(position + 1);
+
+        return true;
+    }
+
+    /**
+     * Hands the oldest frame to the handler. Its slot is freed before the handler is called. Must only be called from
+     * the consumer thread.
+     *
+     * @return false if the queue was empty
+     */
+    public boolean poll(FrameHandler frameHandler) {
+        long position = claim();
+
+        if (position < 0) {
+            return false;
+        }
+
+        int index = (int) position & mask;
+
+        byte[] buffer = buffers[index];
+        ByteBuffer view = views[index];
+
+        buffers[index] = spareBuffer;
+        views[index] = spareView;
+        sequences.lazySet(index, position + capacity);
+
+        spareBuffer = buffer;
+        spareView = view;
+
+        frameHandler.onFrame(view);
+
+        return true;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public BackpressurePolicy getBackpressurePolicy() {
+        return backpressurePolicy;
+    }
+
+    /**
+     * Returns the number of frames waiting, not counting one that is being handled.
+     */
+    public int size() {
+        return (int) Math.max(0, tail.get() - head.get());
+    }
+
+    public long getOfferedCount() {
+        return offeredCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    private long claim() {
+        while (true) {
+            long position = head.get();
+            long sequence = sequences.get((int) position & mask);
+
+            if (sequence < position + 1) {
+                return -1;
+            }
+
+            if (sequence == position + 1 && head.compareAndSet(position, position + 1)) {
+                return position;
+            }
+        }
+    }
+
+    // Waits for the consumer, or discards the oldest waiting frame
+    private void makeRoom() {
+        if (backpressurePolicy == BackpressurePolicy.BLOCK) {
+            LockSupport.parkNanos(10000);
+            return;
+        }
+
+        long oldest = claim();
+
+        if (oldest >= 0) {
+            droppedCount.incrementAndGet();
+            sequences.lazySet((int) oldest & mask, oldest + capacity);
+        } else {
+            // The consumer claimed the frame in the slot and is about to free it
+            Thread.yield();
+        }
+    }
+}
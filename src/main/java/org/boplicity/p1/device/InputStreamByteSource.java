@@ -0,0 +1,86 @@
+package org.boplicity.p1.device;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Callable;
+
+/**
+ * A source that reads a stream, opened anew for every connection, like a pseudo-terminal standing in for the serial
+ * port or an in-memory stream in tests. The stream's {@link InputStream#available()} is polled so reads return after
+ * the read timeout; the end of a stream therefore looks like a meter that stopped sending.
+ */
+public class InputStreamByteSource implements ByteSource {
+
+    private static final long POLL_INTERVAL = 10;
+
+    private final String name;
+    private final Callable<? extends InputStream> opener;
+
+    private InputStream inputStream;
+    private int readTimeout;
+
+    public InputStreamByteSource(String name, Callable<? extends InputStream> opener) {
+        this.name = name;
+        this.opener = opener;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void open(LineSettings lineSettings, int readTimeout) throws IOException {
+        try {
+            inputStream = opener.call();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Could not open " + name, e);
+        }
+
+        if (inputStream == null) {
+            throw new IOException("Could not open " + name);
+        }
+
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        long deadline = System.nanoTime() + readTimeout * 1000000L;
+
+        while (true) {
+            int available = inputStream.available();
+
+            if (available > 0) {
+                return inputStream.read(bytes, offset, Math.min(length, available));
+            }
+
+            if (System.nanoTime() - deadline >= 0) {
+                return 0;
+            }
+
+            try {
+                Thread.sleep(POLL_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted reading " + name);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (inputStream != null) {
+            inputStream.close();
+            inputStream = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
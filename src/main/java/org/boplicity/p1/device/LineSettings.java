@@ -0,0 +1,49 @@
+package org.boplicity.p1.device;
+
+import gnu.io.SerialPort;
+
+/**
+ * The serial line settings of the P1 port. Meters up to DSMR 3 send at 9600 baud, 7 data bits and even parity without
+ * a checksum; DSMR 4 and later send at 115200 baud, 8 data bits and no parity, and end every telegram in a CRC16.
+ */
+public enum LineSettings {
+
+    BAUD_9600_7E1(9600, SerialPort.DATABITS_7, SerialPort.PARITY_EVEN, false),
+    BAUD_115200_8N1(115200, SerialPort.DATABITS_8, SerialPort.PARITY_NONE, true);
+
+    private final int baudRate;
+    private final int dataBits;
+    private final int parity;
+    private final boolean checksumRequired;
+
+    LineSettings(int baudRate, int dataBits, int parity, boolean checksumRequired) {
+        this.baudRate = baudRate;
+        this.dataBits = dataBits;
+        this.parity = parity;
+        this.checksumRequired = checksumRequired;
+    }
+
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    public int getDataBits() {
+        return dataBits;
+    }
+
+    public int getStopBits() {
+        return SerialPort.STOPBITS_1;
+    }
+
+    public int getParity() {
+        return parity;
+    }
+
+    /**
+     * Returns whether telegrams at these settings always carry a checksum. Requiring it keeps the garbage read at the
+     * wrong baud rate from passing as a frame.
+     */
+    public boolean isChecksumRequired() {
+        return checksumRequired;
+    }
+}
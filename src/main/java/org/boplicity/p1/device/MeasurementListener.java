@@ -0,0 +1,15 @@
+package org.boplicity.p1.device;
+
+import org.boplicity.p1.model.SmartMeterMeasurement;
+
+/**
+ * A listener that also accepts measurements that were parsed while their telegram arrived, as the device hands them
+ * over with {@link SmartMeterDevice#setStreamingParsing streaming parsing}.
+ */
+public interface MeasurementListener extends SmartMeterListener {
+
+    /**
+     * Receives a measurement that was parsed while its telegram arrived, see {@link StreamingTelegramParser}.
+     */
+    void put(SmartMeterMeasurement measurement);
+}
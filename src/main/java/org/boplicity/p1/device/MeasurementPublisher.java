@@ -0,0 +1,67 @@
+package org.boplicity.p1.device;
+
+import org.boplicity.p1.model.SmartMeterMeasurement;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes measurements to subscribers as they are parsed. Publishing walks an immutable snapshot of the subscriptions
+ * and takes no locks.
+ */
+public class MeasurementPublisher {
+
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<Subscription>();
+
+    private final AtomicLong publishedCount = new AtomicLong();
+
+    /**
+     * Subscribes to be called on the publishing thread, right after each measurement is parsed. The subscriber must be
+     * quick as it holds up the reader.
+     */
+    public Subscription subscribe(MeasurementSubscriber subscriber) {
+        return add(new Subscription(this, subscriber, null, 0));
+    }
+
+    /**
+     * Subscribes to be called on the executor, keeping at most <code>bufferSize</code> measurements waiting. Calls for
+     * one subscription never overlap.
+     */
+    public Subscription subscribe(MeasurementSubscriber subscriber, Executor executor, int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("Buffer size must be at least 1: " + bufferSize);
+        }
+
+        return add(new Subscription(this, subscriber, executor, bufferSize));
+    }
+
+    public void publish(SmartMeterMeasurement measurement) {
+        publishedCount.incrementAndGet();
+
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(measurement);
+        }
+    }
+
+    /**
+     * Returns the number of measurements published so far, which tells pollers how many readings they missed.
+     */
+    public long getPublishedCount() {
+        return publishedCount.get();
+    }
+
+    public int getSubscriberCount() {
+        return subscriptions.size();
+    }
+
+    void remove(Subscription subscription) {
+        subscriptions.remove(subscription);
+    }
+
+    private Subscription add(Subscription subscription) {
+        subscriptions.add(subscription);
+        return subscription;
+    }
+}
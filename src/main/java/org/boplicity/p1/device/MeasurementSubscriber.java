@@ -0,0 +1,11 @@
+package org.boplicity.p1.device;
+
+import org.boplicity.p1.model.SmartMeterMeasurement;
+
+public interface MeasurementSubscriber {
+
+    /**
+     * Receives a newly parsed measurement. Measurements are published once and must not be modified.
+     */
+    void onMeasurement(SmartMeterMeasurement measurement);
+}
@@ -0,0 +1,25 @@
+package org.boplicity.p1.device;
+
+/**
+ * How a {@link SmartMeterListenerImpl} turns raw datagrams into measurements.
+ */
+public enum ParseMode {
+
+    /**
+     * Decodes every value of every telegram.
+     */
+    EAGER,
+
+    /**
+     * Only decodes the lines that changed since the previous telegram, see
+     * {@link org.boplicity.p1.parser.IncrementalDatagramParser}. Only for listeners that receive the telegrams of a
+     * single meter from a single thread.
+     */
+    INCREMENTAL,
+
+    /**
+     * Decodes a value when it is read, see {@link org.boplicity.p1.parser.LazySmartMeterMeasurement}. Pays off when
+     * the subscribers read only a few values.
+     */
+    LAZY
+}
@@ -0,0 +1,77 @@
+package org.boplicity.p1.device;
+
+import gnu.io.CommPortIdentifier;
+import gnu.io.NoSuchPortException;
+import gnu.io.PortInUseException;
+import gnu.io.SerialPort;
+import gnu.io.UnsupportedCommOperationException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A serial port opened through RXTX. The port is looked up by name rather than by enumerating every port of the
+ * system, and reads block for at most the read timeout.
+ */
+public class SerialByteSource implements ByteSource {
+
+    private static final String OWNER = "p1meter";
+    private static final int OPEN_TIMEOUT = 100;
+
+    private final String portName;
+
+    private SerialPort serialPort;
+    private InputStream inputStream;
+
+    public SerialByteSource(String portName) {
+        this.portName = portName;
+    }
+
+    @Override
+    public String getName() {
+        return portName;
+    }
+
+    @Override
+    public void open(LineSettings lineSettings, int readTimeout) throws IOException {
+        try {
+            serialPort = (SerialPort) CommPortIdentifier.getPortIdentifier(portName).open(OWNER, OPEN_TIMEOUT);
+        } catch (NoSuchPortException e) {
+            throw new IOException("No such port: " + portName, e);
+        } catch (PortInUseException e) {
+            throw new IOException("Port " + portName + " is in use by " + e.currentOwner, e);
+        }
+
+        try {
+            serialPort.setSerialPortParams(lineSettings.getBaudRate(), lineSettings.getDataBits(),
+                    lineSettings.getStopBits(), lineSettings.getParity());
+            serialPort.enableReceiveTimeout(readTimeout);
+            inputStream = serialPort.getInputStream();
+        } catch (UnsupportedCommOperationException e) {
+            close();
+            throw new IOException("Port " + portName + " does not support " + lineSettings, e);
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+        return inputStream.read(bytes, offset, length);
+    }
+
+    @Override
+    public void close() {
+        if (serialPort != null) {
+            serialPort.close();
+            serialPort = null;
+            inputStream = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return portName;
+    }
+}
@@ -1,91 +1,256 @@
 package org.boplicity.p1.device;
 
-import gnu.io.*;
+import org.boplicity.p1.journal.FrameJournal;
+import org.boplicity.p1.metrics.MeterMetrics;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.ByteBuffer;
-import java.util.Enumeration;
-import java.util.TooManyListenersException;
 
-public class SmartMeterDevice implements SerialPortEventListener {
+/**
+ * Reads the P1 port of a meter and hands the telegrams to the listener. The port is kept open by a
+ * {@link ConnectionManager}, which detects the line settings and reconnects after errors and stalls.
+ */
+public class SmartMeterDevice implements TelegramReceiver {
 
     private Logger logger = LoggerFactory.getLogger(getClass());
 
-    private SerialPort serialPort;
     private String portName = "/dev/ttyUSB0";
-    private ByteBuffer readByteBuffer;
-    private final int START_CHARACTER = 47; // "/"
-    private final int FINISH_CHARACTER = 33; // "!";
+    private ByteSource byteSource;
+    private LineSettings lineSettings;
+    private ConnectionManager connectionManager;
 
     private SmartMeterListener smartMeterListener;
 
-    protected int maxBufferSize = 1024;
+    private MeterMetrics metrics = new MeterMetrics();
+
+    private TelegramFramer telegramFramer = new TelegramFramer(this::frameCompleted);
+    private volatile StreamingTelegramParser streamingTelegramParser;
+    private volatile FrameJournal frameJournal;
+
+    public SmartMeterDevice() {
+        telegramFramer.setMetrics(metrics);
+    }
 
     public void init() {
+        ByteSource source = byteSource != null ? byteSource : new SerialByteSource(portName);
+
+        logger.info("Initializing SmartMeterDevice on " + source.getName());
+
+        metrics.registerMBean(source.getName());
+
+        connectionManager = new ConnectionManager(source, this);
+        connectionManager.setLineSettings(lineSettings);
+        connectionManager.setMetrics(metrics);
+        connectionManager.init();
+    }
+
+    public void destroy() throws InterruptedException {
+        if (connectionManager != null) {
+            connectionManager.destroy();
+        }
+
+        metrics.unregisterMBean();
+    }
+
+    @Override
+    public void feed(byte[] bytes, int offset, int length) {
+        StreamingTelegramParser parser = streamingTelegramParser;
+
+        if (parser == null) {
+            telegramFramer.feed(bytes, offset, length);
+        } else {
+            parser.feed(bytes, offset, length);
+        }
+    }
+
+    @Override
+    public long getFrameCount() {
+        StreamingTelegramParser parser = streamingTelegramParser;
+
+        return parser == null ? telegramFramer.getFrameCount() : parser.getFrameCount();
+    }
+
+    @Override
+    public void setChecksumRequired(boolean checksumRequired) {
+        telegramFramer.setChecksumRequired(checksumRequired);
+
+        StreamingTelegramParser parser = streamingTelegramParser;
+
+        if (parser != null) {
+            parser.setChecksumRequired(checksumRequired);
+        }
+    }
+
+    @Override
+    public void reset() {
+        telegramFramer.reset();
+
+        StreamingTelegramParser parser = streamingTelegramParser;
+
+        if (parser != null) {
+            parser.reset();
+        }
+    }
+
+    void read(InputStream inputStream) throws IOException {
+        StreamingTelegramParser parser = streamingTelegramParser;
+
+        if (parser == null) {
+            telegramFramer.readAvailable(inputStream);
+        } else {
+            parser.readAvailable(inputStream);
+        }
+    }
+
+    private void frameCompleted(ByteBuffer frame) {
+        FrameJournal journal = frameJournal;
 
-        logger.info("Initializing SmartMeterDevice");
+        if (journal != null) {
+            journal.onFrame(frame);
+        }
 
-        Enumeration<CommPortIdentifier> portList = CommPortIdentifier.getPortIdentifiers();
+        smartMeterListener.put(frame);
+    }
 
-        int count = 0;
+    public TelegramFramer getTelegramFramer() {
+        return telegramFramer;
+    }
 
-        while (portList.hasMoreElements()) {
-            count++;
-            CommPortIdentifier commPortIdentifier = portList.nextElement();
-            logger.info("Port found: " + commPortIdentifier.getName());
+    public boolean isStreamingParsing() {
+        return streamingTelegramParser != null;
+    }
 
-            if (commPortIdentifier.getName().equals(portName)) {
-                try {
-                    serialPort = (SerialPort) commPortIdentifier.open("p1meter", 2000);
-                } catch (PortInUseException e) {
-                    logger.error(e.toString(), e);
-                }
+    /**
+     * Parses telegrams while they arrive and hands the measurements to the listener, instead of handing it the raw
+     * frames. Saves the parse after the last byte; the listener must be a {@link MeasurementListener} and there can
+     * be no {@link #setFrameJournal frame journal}.
+     *
+     * @throws IllegalStateException if the listener does not accept measurements or a frame journal is set
+     */
+    public void setStreamingParsing(boolean streamingParsing) {
+        if (streamingParsing && smartMeterListener != null && !acceptsMeasurements(smartMeterListener)) {
+            throw new IllegalStateException(smartMeterListener.getClass().getName()
+                    + " does not accept parsed measurements");
+        }
 
-                try {
-                    serialPort.addEventListener(this);
-                } catch (TooManyListenersException e) {
-                    logger.error(e.toString(), e);
-                }
+        if (streamingParsing && frameJournal != null) {
+            throw new IllegalStateException("Frames can not be journaled with streaming parsing");
+        }
 
-                serialPort.notifyOnDataAvailable(true);
+        if (!streamingParsing) {
+            streamingTelegramParser = null;
+        } else if (streamingTelegramParser == null) {
+            StreamingTelegramParser parser = new StreamingTelegramParser(
+                    measurement -> ((MeasurementListener) smartMeterListener).put(measurement));
+            parser.setChecksumRequired(telegramFramer.isChecksumRequired());
+            parser.setMetrics(metrics);
+            streamingTelegramParser = parser;
+        }
+    }
 
-                try {
-                    serialPort.setSerialPortParams(9600, SerialPort.DATABITS_7, SerialPort.STOPBITS_1,
-                            SerialPort.PARITY_EVEN);
-                } catch (UnsupportedCommOperationException e) {
-                    logger.error(e.toString(), e);
-                }
-            }
+    public FrameJournal getFrameJournal() {
+        return frameJournal;
+    }
+
+    /**
+     * Writes every frame to the journal before passing it to the listener; null to stop. Not possible with
+     * {@link #setStreamingParsing streaming parsing}, which never holds a complete frame: turn it off to journal.
+     *
+     * @throws IllegalStateException if streaming parsing is on
+     */
+    public void setFrameJournal(FrameJournal frameJournal) {
+        if (frameJournal != null && streamingTelegramParser != null) {
+            throw new IllegalStateException("Frames can not be journaled with streaming parsing");
         }
 
-        readByteBuffer = ByteBuffer.allocate(maxBufferSize);
+        this.frameJournal = frameJournal;
+    }
+
+    public String getPortName() {
+        return portName;
+    }
 
-        logger.info("Finished initializing SmartMeterDevice. Found " + count + " devices");
+    public void setPortName(String portName) {
+        this.portName = portName;
     }
 
-    public void serialEvent(SerialPortEvent serialPortEvent) {
-        if (serialPortEvent.getEventType() == SerialPortEvent.DATA_AVAILABLE) {
+    public ByteSource getByteSource() {
+        return byteSource;
+    }
 
-            try {
-                int nextByte;
+    /**
+     * Reads from the given source instead of the serial port, like a pseudo-terminal or a stream in tests.
+     */
+    public void setByteSource(ByteSource byteSource) {
+        this.byteSource = byteSource;
+    }
 
-                while ((nextByte = serialPort.getInputStream().read()) != -1) {
-                    readByteBuffer.put((byte) nextByte);
+    public LineSettings getLineSettings() {
+        return connectionManager != null ? connectionManager.getLineSettings() : lineSettings;
+    }
 
-                    if (nextByte == FINISH_CHARACTER) {
-                        smartMeterListener.put(new String(readByteBuffer.array()));
-                        readByteBuffer.clear();
-                    }
-                }
-            } catch (IOException e) {
-                logger.error(e.toString(), e);
-            }
+    /**
+     * Fixes the line settings of the port; by default they are detected from the first valid telegram.
+     */
+    public void setLineSettings(LineSettings lineSettings) {
+        this.lineSettings = lineSettings;
+    }
+
+    public ConnectionManager getConnectionManager() {
+        return connectionManager;
+    }
+
+    public MeterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Replaces the metrics of this device, which it has an instance of its own of, and shares them with the listener.
+     */
+    public void setMetrics(MeterMetrics metrics) {
+        this.metrics = metrics;
+        telegramFramer.setMetrics(metrics);
+
+        if (streamingTelegramParser != null) {
+            streamingTelegramParser.setMetrics(metrics);
         }
+
+        shareMetrics(smartMeterListener, metrics);
     }
 
+    /**
+     * Sets the listener; with {@link #setStreamingParsing streaming parsing} it must be a {@link MeasurementListener}.
+     * The listener reports to the metrics of this device from then on, so the publish latency is measured from the
+     * frames of this meter.
+     */
     public void setSmartMeterListener(SmartMeterListener smartMeterListener) {
+        if (streamingTelegramParser != null && !acceptsMeasurements(smartMeterListener)) {
+            throw new IllegalArgumentException(smartMeterListener.getClass().getName()
+                    + " does not accept parsed measurements");
+        }
+
         this.smartMeterListener = smartMeterListener;
+        shareMetrics(smartMeterListener, metrics);
+    }
+
+    private static void shareMetrics(SmartMeterListener listener, MeterMetrics metrics) {
+        if (listener instanceof AsyncSmartMeterListener) {
+            ((AsyncSmartMeterListener) listener).setMetrics(metrics);
+            shareMetrics(((AsyncSmartMeterListener) listener).getDelegate(), metrics);
+        } else if (listener instanceof SmartMeterListenerImpl) {
+            ((SmartMeterListenerImpl) listener).setMetrics(metrics);
+        }
+    }
+
+    // An async listener passes the measurements on to its delegate
+    private static boolean acceptsMeasurements(SmartMeterListener listener) {
+        if (listener instanceof AsyncSmartMeterListener) {
+            return acceptsMeasurements(((AsyncSmartMeterListener) listener).getDelegate());
+        }
+
+        return listener instanceof MeasurementListener;
     }
 }
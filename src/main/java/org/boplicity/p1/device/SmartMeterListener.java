@@ -2,8 +2,18 @@ package org.boplicity.p1.device;
 
 import org.boplicity.p1.model.SmartMeterMeasurement;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public interface SmartMeterListener {
     void put(String datagram);
 
+    /**
+     * Receives the raw bytes of a datagram. The buffer is only valid for the duration of the call.
+     */
+    default void put(ByteBuffer datagram) {
+        put(StandardCharsets.US_ASCII.decode(datagram.duplicate()).toString());
+    }
+
     SmartMeterMeasurement getCurrentMeasurement();
 }
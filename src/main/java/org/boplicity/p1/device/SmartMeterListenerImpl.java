@@ -1,21 +1,39 @@
 package org.boplicity.p1.device;
 
+import org.boplicity.p1.history.MeasurementHistory;
+import org.boplicity.p1.metrics.MeterMetrics;
 import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.parser.ByteDatagramParser;
 import org.boplicity.p1.parser.DatagramParser;
+import org.boplicity.p1.parser.IncrementalDatagramParser;
 import org.joda.time.DateTime;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-public class SmartMeterListenerImpl implements SmartMeterListener {
+import java.nio.ByteBuffer;
+import java.util.concurrent.Executor;
+
+public class SmartMeterListenerImpl implements MeasurementListener {
 
     private Logger logger = LoggerFactory.getLogger(getClass());
 
-    private SmartMeterMeasurement currentMeasurement;
+    private volatile SmartMeterMeasurement currentMeasurement;
+
+    private MeasurementPublisher measurementPublisher = new MeasurementPublisher();
 
     private DatagramParser datagramParser;
+    private ByteDatagramParser byteDatagramParser;
+    private volatile IncrementalDatagramParser incrementalDatagramParser;
+    private volatile ParseMode parseMode = ParseMode.EAGER;
+
+    private MeterMetrics metrics = new MeterMetrics();
+
+    private volatile MeasurementHistory history;
 
     public SmartMeterListenerImpl() {
         datagramParser = new DatagramParser();
+        byteDatagramParser = new ByteDatagramParser();
+        byteDatagramParser.setMetrics(metrics);
     }
 
     @Override
@@ -25,14 +43,140 @@ public class SmartMeterListenerImpl implements SmartMeterListener {
             logger.trace(datagram);
         }
 
-        SmartMeterMeasurement measurement = datagramParser.parse(datagram);
-        measurement.setTimestamp(new DateTime());
+        long start = metrics.startTimer();
+        SmartMeterMeasurement measurement;
 
-        currentMeasurement = measurement;
+        try {
+            measurement = datagramParser.parse(datagram);
+        } catch (RuntimeException e) {
+            metrics.parseError();
+            throw e;
+        }
+
+        metrics.parsed(start);
+        publish(measurement);
+    }
+
+    @Override
+    public void put(ByteBuffer datagram) {
+
+        SmartMeterMeasurement measurement;
+
+        try {
+            IncrementalDatagramParser incremental = incrementalDatagramParser;
+
+            switch (parseMode) {
+                case INCREMENTAL:
+                    // The parser is gone if the mode changed meanwhile
+                    measurement = incremental == null ? byteDatagramParser.parse(datagram) : incremental.parse(datagram);
+                    break;
+                case LAZY:
+                    measurement = byteDatagramParser.parseLazy(datagram);
+                    break;
+                default:
+                    measurement = byteDatagramParser.parse(datagram);
+            }
+        } catch (RuntimeException e) {
+            metrics.parseError();
+            throw e;
+        }
+
+        publish(measurement);
+    }
+
+    @Override
+    public void put(SmartMeterMeasurement measurement) {
+
+        publish(measurement);
     }
 
     @Override
     public SmartMeterMeasurement getCurrentMeasurement() {
         return currentMeasurement;
     }
+
+    /**
+     * Returns the number of measurements parsed so far.
+     */
+    public long getMeasurementCount() {
+        return measurementPublisher.getPublishedCount();
+    }
+
+    public MeterMetrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(MeterMetrics metrics) {
+        this.metrics = metrics;
+        byteDatagramParser.setMetrics(metrics);
+
+        if (incrementalDatagramParser != null) {
+            incrementalDatagramParser.setMetrics(metrics);
+        }
+    }
+
+    public MeasurementHistory getHistory() {
+        return history;
+    }
+
+    /**
+     * Keeps the recent measurements in the history, before subscribers see them; null to keep none.
+     */
+    public void setHistory(MeasurementHistory history) {
+        this.history = history;
+    }
+
+    public ParseMode getParseMode() {
+        return parseMode;
+    }
+
+    /**
+     * Sets how raw datagrams are parsed; datagrams passed as a string are always parsed eagerly. Defaults to
+     * {@link ParseMode#EAGER}.
+     */
+    public void setParseMode(ParseMode parseMode) {
+        if (parseMode == ParseMode.INCREMENTAL && incrementalDatagramParser == null) {
+            IncrementalDatagramParser parser = new IncrementalDatagramParser(byteDatagramParser.getObisRegistry());
+            parser.setMetrics(metrics);
+            incrementalDatagramParser = parser;
+        } else if (parseMode != ParseMode.INCREMENTAL) {
+            incrementalDatagramParser = null;
+        }
+
+        this.parseMode = parseMode;
+    }
+
+    public boolean isIncrementalParsing() {
+        return parseMode == ParseMode.INCREMENTAL;
+    }
+
+    /**
+     * Decodes only the lines of a telegram that changed since the previous one, see {@link ParseMode#INCREMENTAL}.
+     */
+    public void setIncrementalParsing(boolean incrementalParsing) {
+        setParseMode(incrementalParsing ? ParseMode.INCREMENTAL : ParseMode.EAGER);
+    }
+
+    public Subscription subscribe(MeasurementSubscriber subscriber) {
+        return measurementPublisher.subscribe(subscriber);
+    }
+
+    public Subscription subscribe(MeasurementSubscriber subscriber, Executor executor, int bufferSize) {
+        return measurementPublisher.subscribe(subscriber, executor, bufferSize);
+    }
+
+    private void publish(SmartMeterMeasurement measurement) {
+        measurement.setTimestamp(new DateTime());
+
+        currentMeasurement = measurement;
+
+        MeasurementHistory currentHistory = history;
+
+        if (currentHistory != null) {
+            currentHistory.onMeasurement(measurement);
+        }
+
+        metrics.measurementPublished();
+        measurementPublisher.publish(measurement);
+    }
 }
@@ -1,45 +1,70 @@
 package org.boplicity.p1.device;
 
 import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.parser.ByteDatagramParser;
+import org.boplicity.p1.simulator.DsmrVersion;
+import org.boplicity.p1.simulator.VirtualMeter;
 import org.joda.time.DateTime;
 
-import java.math.BigDecimal;
-import java.util.Random;
+/**
+ * Stands in for a meter during development: a {@link VirtualMeter} sends a telegram every ten seconds, which is parsed
+ * like a real one.
+ */
+public class SmartMeterListenerMock implements MeasurementListener {
 
-public class SmartMeterListenerMock implements SmartMeterListener {
+    private volatile SmartMeterMeasurement smartMeterMeasurement;
 
-    private SmartMeterMeasurement smartMeterMeasurement;
-    private Random random = new Random();
+    private VirtualMeter virtualMeter;
+    private ByteDatagramParser byteDatagramParser = new ByteDatagramParser();
+    private Thread thread;
 
     public void init() {
-        smartMeterMeasurement = new SmartMeterMeasurement();
-        smartMeterMeasurement.setTimestamp(new DateTime());
-        smartMeterMeasurement.setCurrentPowerProductionW(new BigDecimal(100));
-        smartMeterMeasurement.setCurrentPowerProductionW(new BigDecimal(0));
+        virtualMeter = new VirtualMeter(DsmrVersion.DSMR4, 0, System.nanoTime(), System.currentTimeMillis());
+        readMeter();
 
         loadDummyData();
     }
 
+    public void destroy() throws InterruptedException {
+        if (thread != null) {
+            thread.interrupt();
+            thread.join();
+        }
+    }
+
     private void loadDummyData() {
-        Thread thread = new Thread() {
+        thread = new Thread("p1-listener-mock") {
             public void run() {
                 try {
-                    sleep(10000);
-                    smartMeterMeasurement.setTimestamp(new DateTime());
-                    smartMeterMeasurement.setCurrentPowerConsumptionW(new BigDecimal(random.nextInt(2500)));
-                    smartMeterMeasurement.setCurrentPowerProductionW(new BigDecimal(random.nextInt(1600)));
+                    while (!isInterrupted()) {
+                        sleep(virtualMeter.getVersion().getTelegramInterval());
+                        readMeter();
+                    }
                 } catch (InterruptedException e) {
-                    e.printStackTrace();
+                    // Stopped by destroy
                 }
             }
         };
+        thread.setDaemon(true);
         thread.start();
     }
 
+    private void readMeter() {
+        virtualMeter.advanceTo(System.currentTimeMillis());
+
+        SmartMeterMeasurement measurement = byteDatagramParser.parse(virtualMeter.writeTelegram());
+        measurement.setTimestamp(new DateTime(virtualMeter.getTime()));
+        smartMeterMeasurement = measurement;
+    }
+
     @Override
     public void put(String datagram) {
     }
 
+    @Override
+    public void put(SmartMeterMeasurement measurement) {
+    }
+
     @Override
     public SmartMeterMeasurement getCurrentMeasurement() {
         return smartMeterMeasurement;
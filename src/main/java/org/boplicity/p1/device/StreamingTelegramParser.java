@@ -0,0 +1,393 @@
+package org.boplicity.p1.device;
+
+import org.boplicity.p1.metrics.MeterMetrics;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.parser.ObisHandler;
+import org.boplicity.p1.parser.ObisRegistry;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Frames and parses telegrams in one pass while their bytes arrive, so a measurement is complete as soon as the
+ * checksum after the "!" has been read. Bytes can be fed in chunks of any size. Every line is decoded by its
+ * {@link ObisHandler} once its line feed arrives, straight from the chunk; only a line that is split over two chunks,
+ * or a DSMR 2.2 gas reading continued on the next line, is copied into a small line buffer.
+ * <p>
+ * Frames are delimited and checked like {@link TelegramFramer} does: a "/" inside a frame restarts it and frames with
+ * a checksum that does not match are dropped. Not thread-safe; feed it from the reading thread.
+ */
+public class StreamingTelegramParser implements TelegramReceiver {
+
+    private static final byte START_CHARACTER = '/';
+    private static final byte FINISH_CHARACTER = '!';
+    private static final byte LINE_FEED = '\n';
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte VALUE_START = '(';
+    private static final byte[] GAS_LINE_CONTINUATION = {'(', 'm', '3', ')'};
+    private static final int CHECKSUM_LENGTH = 4;
+
+    private static final int HUNTING = 0;
+    private static final int IN_FRAME = 1;
+    private static final int IN_CHECKSUM = 2;
+
+    private ObisRegistry obisRegistry;
+    private MeasurementSubscriber subscriber;
+    private MeterMetrics metrics;
+
+    private byte[] chunk = new byte[1024];
+
+    // The start of a line that did not end in the chunk it started in, or a gas line waiting for its continuation
+    private byte[] line = new byte[128];
+    private int lineLength;
+    private ObisHandler pendingHandler;
+    private int pendingValueStart;
+
+    private SmartMeterMeasurement measurement;
+    private int state = HUNTING;
+    private int crc;
+    private int checksum;
+    private int checksumLength;
+
+    private boolean checksumRequired;
+
+    private long frameCount;
+    private long resyncCount;
+    private long corruptFrameCount;
+
+    public StreamingTelegramParser(MeasurementSubscriber subscriber) {
+        this(ObisRegistry.dsmr(), subscriber);
+    }
+
+    public StreamingTelegramParser(ObisRegistry obisRegistry, MeasurementSubscriber subscriber) {
+        this.obisRegistry = obisRegistry;
+        this.subscriber = subscriber;
+    }
+
+    /**
+     * Reads the bytes the stream has available without blocking.
+     */
+    public void readAvailable(InputStream inputStream) throws IOException {
+        int available;
+
+        while ((available = inputStream.available()) > 0) {
+            int count = inputStream.read(chunk, 0, Math.min(available, chunk.length));
+
+            if (count <= 0) {
+                return;
+            }
+
+            feed(chunk, 0, count);
+        }
+    }
+
+    @Override
+    public void feed(byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        int position = offset;
+
+        while (position < end) {
+            if (state == HUNTING) {
+                int start = indexOf(bytes, position, end, START_CHARACTER);
+
+                if (start < 0) {
+                    return;
+                }
+
+                startFrame(bytes, start);
+                position = start + 1;
+            } else if (state == IN_FRAME) {
+                position = scanFrame(bytes, position, end);
+            } else {
+                int digit = hexValue(bytes[position]);
+
+                if (digit < 0) {
+                    complete();
+                } else {
+                    checksum = checksum << 4 | digit;
+                    position++;
+
+                    if (++checksumLength == CHECKSUM_LENGTH) {
+                        complete();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Handles a frame that is waiting for its checksum to be terminated, as happens at the end of a stream.
+     */
+    public void finish() {
+        if (state == IN_CHECKSUM) {
+            complete();
+        }
+    }
+
+    @Override
+    public void reset() {
+        measurement = null;
+        lineLength = 0;
+        pendingHandler = null;
+        state = HUNTING;
+    }
+
+    public ObisRegistry getObisRegistry() {
+        return obisRegistry;
+    }
+
+    public MeterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reports frames, checksum failures, resyncs and unknown lines to the metrics; null to report nothing.
+     */
+    public void setMetrics(MeterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public boolean isChecksumRequired() {
+        return checksumRequired;
+    }
+
+    /**
+     * Drops frames that do not end in a checksum, for meters that are known to speak DSMR 4 or later.
+     */
+    @Override
+    public void setChecksumRequired(boolean checksumRequired) {
+        this.checksumRequired = checksumRequired;
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns how often a partial frame was abandoned because a new frame started.
+     */
+    public long getResyncCount() {
+        return resyncCount;
+    }
+
+    /**
+     * Returns the number of frames dropped because of a wrong or missing checksum.
+     */
+    public long getCorruptFrameCount() {
+        return corruptFrameCount;
+    }
+
+    // Handles the lines up to the end of the chunk, the end of the frame or a new frame, and returns where it stopped
+    private int scanFrame(byte[] bytes, int from, int end) {
+        int lineStart = from;
+
+        for (int i = from; i < end; i++) {
+            byte b = bytes[i];
+
+            if (b == LINE_FEED) {
+                crc = Crc16.update(crc, bytes, lineStart, i + 1);
+
+                if (lineLength > 0 || pendingHandler != null) {
+                    append(bytes, lineStart, i);
+                    completeLine(line, 0, lineLength);
+                } else {
+                    completeLine(bytes, lineStart, i);
+                }
+
+                lineStart = i + 1;
+            } else if (b == FINISH_CHARACTER) {
+                crc = Crc16.update(crc, bytes, lineStart, i + 1);
+
+                if (lineLength > 0 || pendingHandler != null) {
+                    append(bytes, lineStart, i);
+                    flushLine();
+                }
+
+                if (metrics != null) {
+                    metrics.frameFinished();
+                }
+
+                checksum = 0;
+                checksumLength = 0;
+                state = IN_CHECKSUM;
+
+                return i + 1;
+            } else if (b == START_CHARACTER) {
+                resyncCount++;
+
+                if (metrics != null) {
+                    metrics.resync();
+                }
+
+                startFrame(bytes, i);
+                lineStart = i + 1;
+            }
+        }
+
+        crc = Crc16.update(crc, bytes, lineStart, end);
+        append(bytes, lineStart, end);
+
+        return end;
+    }
+
+    private void startFrame(byte[] bytes, int start) {
+        measurement = new SmartMeterMeasurement();
+        crc = Crc16.update(0, bytes, start, start + 1);
+        lineLength = 0;
+        pendingHandler = null;
+        state = IN_FRAME;
+    }
+
+    // Decodes the line in [from, end), where end is the line feed, unless it is a gas line that continues
+    private void completeLine(byte[] bytes, int from, int end) {
+        int valueEnd = trimCarriageReturns(bytes, from, end);
+
+        ObisHandler handler = pendingHandler;
+        int valueStart = pendingValueStart;
+
+        if (handler == null) {
+            valueStart = indexOf(bytes, from, valueEnd, VALUE_START);
+            handler = valueStart < 0 ? null : obisRegistry.get(bytes, from, valueStart);
+
+            if (handler == null) {
+                if (valueStart >= 0 && metrics != null) {
+                    metrics.unknownLine();
+                }
+
+                lineLength = 0;
+                return;
+            }
+        }
+
+        if (endsWith(bytes, from, valueEnd, GAS_LINE_CONTINUATION)) {
+            if (bytes != line) {
+                lineLength = 0;
+                append(bytes, from, end);
+                valueStart -= from;
+            }
+
+            append(LINE_FEED);
+            pendingHandler = handler;
+            pendingValueStart = valueStart;
+            return;
+        }
+
+        handler.handle(bytes, valueStart, valueEnd, measurement);
+
+        pendingHandler = null;
+        lineLength = 0;
+    }
+
+    // Decodes what is left in the line buffer when the frame ends
+    private void flushLine() {
+        if (pendingHandler != null) {
+            pendingHandler.handle(line, pendingValueStart, trimCarriageReturns(line, 0, lineLength), measurement);
+        } else {
+            int valueEnd = trimCarriageReturns(line, 0, lineLength);
+            int valueStart = indexOf(line, 0, valueEnd, VALUE_START);
+            ObisHandler handler = valueStart < 0 ? null : obisRegistry.get(line, 0, valueStart);
+
+            if (handler != null) {
+                handler.handle(line, valueStart, valueEnd, measurement);
+            }
+        }
+
+        pendingHandler = null;
+        lineLength = 0;
+    }
+
+    private void complete() {
+        boolean valid = checksumLength == 0 ? !checksumRequired
+                : checksumLength == CHECKSUM_LENGTH && checksum == crc;
+
+        SmartMeterMeasurement result = measurement;
+
+        measurement = null;
+        state = HUNTING;
+
+        if (valid) {
+            frameCount++;
+
+            if (metrics != null) {
+                metrics.frameReceived();
+            }
+
+            subscriber.onMeasurement(result);
+        } else {
+            corruptFrameCount++;
+
+            if (metrics != null) {
+                metrics.crcFailure();
+            }
+        }
+    }
+
+    private void append(byte[] bytes, int from, int end) {
+        int length = end - from;
+
+        if (lineLength + length > line.length) {
+            byte[] grown = new byte[Math.max(lineLength + length, line.length * 2)];
+            System.arraycopy(line, 0, grown, 0, lineLength);
+            line = grown;
+        }
+
+        System.arraycopy(bytes, from, line, lineLength, length);
+        lineLength += length;
+    }
+
+    private void append(byte b) {
+        if (lineLength == line.length) {
+            byte[] grown = new byte[line.length * 2];
+            System.arraycopy(line, 0, grown, 0, lineLength);
+            line = grown;
+        }
+
+        line[lineLength++] = b;
+    }
+
+    private static int indexOf(byte[] bytes, int from, int end, byte value) {
+        for (int i = from; i < end; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int trimCarriageReturns(byte[] bytes, int from, int end) {
+        while (end > from && bytes[end - 1] == CARRIAGE_RETURN) {
+            end--;
+        }
+
+        return end;
+    }
+
+    private static boolean endsWith(byte[] bytes, int from, int end, byte[] suffix) {
+        if (end - from < suffix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < suffix.length; i++) {
+            if (bytes[end - suffix.length + i] != suffix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,115 @@
+package org.boplicity.p1.device;
+
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A subscriber's registration with a {@link MeasurementPublisher}. Asynchronous subscriptions buffer up to a fixed
+ * number of measurements; when the subscriber falls behind the oldest ones are dropped, so with a buffer size of 1 a
+ * slow subscriber always gets the latest measurement.
+ */
+public class Subscription {
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final MeasurementPublisher publisher;
+    private final MeasurementSubscriber subscriber;
+    private final Executor executor;
+    private final int bufferSize;
+
+    private final Queue<SmartMeterMeasurement> buffer = new ConcurrentLinkedQueue<SmartMeterMeasurement>();
+    private final AtomicInteger buffered = new AtomicInteger();
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+
+    private volatile boolean cancelled;
+
+    private final Runnable drain = new Runnable() {
+        @Override
+        public void run() {
+            drain();
+        }
+    };
+
+    Subscription(MeasurementPublisher publisher, MeasurementSubscriber subscriber, Executor executor, int bufferSize) {
+        this.publisher = publisher;
+        this.subscriber = subscriber;
+        this.executor = executor;
+        this.bufferSize = bufferSize;
+    }
+
+    public void cancel() {
+        cancelled = true;
+        publisher.remove(this);
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /**
+     * Returns the number of measurements this subscriber missed because it was too slow.
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    void offer(SmartMeterMeasurement measurement) {
+        if (cancelled) {
+            return;
+        }
+
+        if (executor == null) {
+            deliver(measurement);
+            return;
+        }
+
+        buffer.offer(measurement);
+
+        if (buffered.incrementAndGet() > bufferSize && buffer.poll() != null) {
+            buffered.decrementAndGet();
+            droppedCount.incrementAndGet();
+        }
+
+        if (pending.getAndIncrement() == 0) {
+            executor.execute(drain);
+        }
+    }
+
+    private void drain() {
+        int missed = 1;
+
+        do {
+            SmartMeterMeasurement measurement;
+
+            while (!cancelled && (measurement = buffer.poll()) != null) {
+                buffered.decrementAndGet();
+                deliver(measurement);
+            }
+
+            missed = pending.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void deliver(SmartMeterMeasurement measurement) {
+        try {
+            subscriber.onMeasurement(measurement);
+            deliveredCount.incrementAndGet();
+        } catch (RuntimeException e) {
+            logger.error(e.toString(), e);
+        }
+    }
+}
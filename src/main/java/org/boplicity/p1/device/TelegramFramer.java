@@ -0,0 +1,319 @@
+package org.boplicity.p1.device;
+
+import org.boplicity.p1.metrics.MeterMetrics;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Cuts a byte stream into telegrams running from "/" up to "!" and the optional four character checksum. Bytes are
+ * read in bulk into a single reusable buffer and frames are handed out as views on that buffer, so nothing is copied
+ * on the way to the {@link FrameHandler}. Bytes outside a frame are skipped, a "/" inside a frame restarts it and the
+ * buffer grows as needed, so there is no limit on the frame size.
+ * <p>
+ * The CRC16 is computed while the bytes arrive. Frames with a checksum that does not match are dropped before they
+ * reach the handler. Frames without a checksum (DSMR 2.2) are passed on unless a checksum is required, as soon as the
+ * line end after the "!" arrives; the framer never waits for the next telegram to complete one.
+ */
+public class TelegramFramer implements TelegramReceiver {
+
+    private static final byte START_CHARACTER = '/';
+    private static final byte FINISH_CHARACTER = '!';
+    private static final int CHECKSUM_LENGTH = 4;
+
+    private static final int HUNTING = 0;
+    private static final int IN_FRAME = 1;
+    private static final int IN_CHECKSUM = 2;
+
+    private FrameHandler frameHandler;
+    private MeterMetrics metrics;
+
+    private byte[] buffer;
+    private ByteBuffer words;
+    private ByteBuffer frameView;
+
+    private int limit;
+    private int position;
+    private int frameStart = -1;
+    private int checksumLength;
+    private int checksum;
+    private int crc;
+    private int state = HUNTING;
+
+    private boolean checksumRequired;
+
+    private long frameCount;
+    private long resyncCount;
+    private long corruptFrameCount;
+
+    public TelegramFramer(FrameHandler frameHandler) {
+        this(frameHandler, 1024);
+    }
+
+    public TelegramFramer(FrameHandler frameHandler, int initialCapacity) {
+        this.frameHandler = frameHandler;
+        allocate(initialCapacity);
+    }
+
+    /**
+     * Performs a single bulk read, blocking as the stream does, and handles every frame completed by it.
+     *
+     * @return the number of bytes read, or -1 at the end of the stream
+     */
+    public int readFrom(InputStream inputStream) throws IOException {
+        ensureSpace();
+
+        int count = inputStream.read(buffer, limit, buffer.length - limit);
+
+        if (count < 0) {
+            finish();
+        } else {
+            limit += count;
+            scan();
+        }
+
+        return count;
+    }
+
+    /**
+     * Reads the bytes the stream has available without blocking.
+     */
+    public void readAvailable(InputStream inputStream) throws IOException {
+        int available;
+
+        while ((available = inputStream.available()) > 0) {
+            ensureSpace();
+
+            int count = inputStream.read(buffer, limit, Math.min(available, buffer.length - limit));
+
+            if (count <= 0) {
+                return;
+            }
+
+            limit += count;
+            scan();
+        }
+    }
+
+    @Override
+    public void feed(byte[] bytes, int offset, int length) {
+        while (length > 0) {
+            ensureSpace();
+
+            int count = Math.min(length, buffer.length - limit);
+            System.arraycopy(bytes, offset, buffer, limit, count);
+
+            limit += count;
+            offset += count;
+            length -= count;
+            scan();
+        }
+    }
+
+    public void feed(ByteBuffer bytes) {
+        while (bytes.hasRemaining()) {
+            ensureSpace();
+
+            int count = Math.min(bytes.remaining(), buffer.length - limit);
+            bytes.get(buffer, limit, count);
+
+            limit += count;
+            scan();
+        }
+    }
+
+    /**
+     * Handles a frame that is waiting for its checksum to be terminated, as happens at the end of a stream.
+     */
+    public void finish() {
+        if (state == IN_CHECKSUM) {
+            complete(position);
+        }
+    }
+
+    @Override
+    public void reset() {
+        limit = 0;
+        position = 0;
+        frameStart = -1;
+        state = HUNTING;
+    }
+
+    public boolean isChecksumRequired() {
+        return checksumRequired;
+    }
+
+    /**
+     * Drops frames that do not end in a checksum, for meters that are known to speak DSMR 4 or later.
+     */
+    @Override
+    public void setChecksumRequired(boolean checksumRequired) {
+        this.checksumRequired = checksumRequired;
+    }
+
+    public MeterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reports frames, checksum failures, resyncs and buffer growth to the metrics; null to report nothing.
+     */
+    public void setMetrics(MeterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    /**
+     * Returns how often a partial frame was abandoned because a new frame started.
+     */
+    public long getResyncCount() {
+        return resyncCount;
+    }
+
+    /**
+     * Returns the number of frames dropped because of a wrong or missing checksum.
+     */
+    public long getCorruptFrameCount() {
+        return corruptFrameCount;
+    }
+
+    private void scan() {
+        while (position < limit) {
+            if (state == HUNTING) {
+                int start = ByteScanner.indexOf(words, position, limit, START_CHARACTER);
+
+                if (start < 0) {
+                    position = limit;
+                } else {
+                    startFrame(start);
+                }
+            } else if (state == IN_FRAME) {
+                int found = ByteScanner.indexOf(words, position, limit, FINISH_CHARACTER, START_CHARACTER);
+
+                if (found < 0) {
+                    crc = Crc16.update(crc, buffer, position, limit);
+                    position = limit;
+                } else if (buffer[found] == START_CHARACTER) {
+                    resyncCount++;
+                    if (metrics != null) {
+                        metrics.resync();
+                    }
+                    startFrame(found);
+                } else {
+                    crc = Crc16.update(crc, buffer, position, found + 1);
+                    position = found + 1;
+                    if (metrics != null) {
+                        metrics.frameFinished();
+                    }
+                    checksumLength = 0;
+                    checksum = 0;
+                    state = IN_CHECKSUM;
+                }
+            } else {
+                // Any byte that is not a hex digit, usually the line end, ends the checksum, or the frame for DSMR 2.2
+                int digit = hexValue(buffer[position]);
+
+                if (digit >= 0) {
+                    checksum = checksum << 4 | digit;
+                    position++;
+
+                    if (++checksumLength == CHECKSUM_LENGTH) {
+                        complete(position);
+                    }
+                } else {
+                    complete(position);
+                }
+            }
+        }
+
+        if (state == HUNTING) {
+            limit = 0;
+            position = 0;
+        }
+    }
+
+    private void startFrame(int start) {
+        frameStart = start;
+        position = start + 1;
+        crc = Crc16.update(0, buffer, start, position);
+        state = IN_FRAME;
+    }
+
+    private void complete(int frameEnd) {
+        boolean valid = checksumLength == 0 ? !checksumRequired
+                : checksumLength == CHECKSUM_LENGTH && checksum == crc;
+
+        if (valid) {
+            emit(frameEnd);
+        } else {
+            corruptFrameCount++;
+            if (metrics != null) {
+                metrics.crcFailure();
+            }
+            frameStart = -1;
+            state = HUNTING;
+        }
+    }
+
+    private void emit(int frameEnd) {
+        frameCount++;
+        if (metrics != null) {
+            metrics.frameReceived();
+        }
+
+        frameView.clear();
+        frameView.position(frameStart);
+        frameView.limit(frameEnd);
+
+        frameStart = -1;
+        state = HUNTING;
+
+        frameHandler.onFrame(frameView);
+    }
+
+    private void ensureSpace() {
+        if (limit < buffer.length) {
+            return;
+        }
+
+        if (frameStart > 0) {
+            int length = limit - frameStart;
+            System.arraycopy(buffer, frameStart, buffer, 0, length);
+
+            position -= frameStart;
+            limit = length;
+            frameStart = 0;
+        } else {
+            byte[] previous = buffer;
+            allocate(buffer.length * 2);
+            if (metrics != null) {
+                metrics.bufferGrown();
+            }
+            System.arraycopy(previous, 0, buffer, 0, limit);
+        }
+    }
+
+    private void allocate(int capacity) {
+        buffer = new byte[capacity];
+        words = ByteScanner.wordView(buffer);
+        frameView = ByteBuffer.wrap(buffer);
+    }
+
+    private static int hexValue(byte b) {
+        if (b >= '0' && b <= '9') {
+            return b - '0';
+        }
+        if (b >= 'A' && b <= 'F') {
+            return b - 'A' + 10;
+        }
+        if (b >= 'a' && b <= 'f') {
+            return b - 'a' + 10;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,22 @@
+package org.boplicity.p1.device;
+
+/**
+ * Takes the bytes read from a meter and cuts them into telegrams, like a {@link TelegramFramer} or a
+ * {@link StreamingTelegramParser}.
+ */
+public interface TelegramReceiver {
+
+    void feed(byte[] bytes, int offset, int length);
+
+    /**
+     * Returns the number of valid telegrams received so far.
+     */
+    long getFrameCount();
+
+    void setChecksumRequired(boolean checksumRequired);
+
+    /**
+     * Drops a partly received telegram, so the next one is cut from its start.
+     */
+    void reset();
+}
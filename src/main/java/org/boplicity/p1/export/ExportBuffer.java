@@ -0,0 +1,113 @@
+package org.boplicity.p1.export;
+
+import java.util.Arrays;
+
+/**
+ * A growable byte array that numbers and ASCII text are written into directly, without building strings.
+ */
+final class ExportBuffer {
+
+    private static final long[] POWERS_OF_TEN = {
+            1L, 10L, 100L, 1000L, 10000L, 100000L, 1000000L, 10000000L, 100000000L, 1000000000L
+    };
+
+    private byte[] bytes;
+    private int size;
+
+    ExportBuffer(int capacity) {
+        bytes = new byte[capacity];
+    }
+
+    byte[] array() {
+        return bytes;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void reset() {
+        size = 0;
+    }
+
+    void write(byte b) {
+        ensure(1);
+        bytes[size++] = b;
+    }
+
+    void write(byte[] source) {
+        ensure(source.length);
+        System.arraycopy(source, 0, bytes, size, source.length);
+        size += source.length;
+    }
+
+    /**
+     * Writes the characters of a string, with anything outside ASCII replaced by a question mark.
+     */
+    void writeAscii(CharSequence text) {
+        int length = text.length();
+        ensure(length);
+
+        for (int i = 0; i < length; i++) {
+            char c = text.charAt(i);
+            bytes[size++] = c < 0x80 ? (byte) c : (byte) '?';
+        }
+    }
+
+    /**
+     * Writes a number; {@link Long#MIN_VALUE} is not supported.
+     */
+    void writeLong(long value) {
+        if (value < 0) {
+            write((byte) '-');
+            value = -value;
+        }
+
+        int digits = 1;
+
+        for (long rest = value; rest >= 10; rest /= 10) {
+            digits++;
+        }
+
+        writeDigits(value, digits);
+    }
+
+    /**
+     * Writes a fixed-point number with the given number of decimals, like 12345 with scale 3 as 12.345.
+     */
+    void writeDecimal(long unscaled, int scale) {
+        if (scale == 0) {
+            writeLong(unscaled);
+            return;
+        }
+
+        if (unscaled < 0) {
+            write((byte) '-');
+            unscaled = -unscaled;
+        }
+
+        long divisor = POWERS_OF_TEN[scale];
+
+        writeLong(unscaled / divisor);
+        write((byte) '.');
+        writeDigits(unscaled % divisor, scale);
+    }
+
+    // Writes the lowest digits of the value, padded with zeros
+    private void writeDigits(long value, int digits) {
+        ensure(digits);
+
+        for (int i = size + digits - 1; i >= size; i--) {
+            bytes[i] = (byte) ('0' + value % 10);
+            value /= 10;
+        }
+
+        size += digits;
+    }
+
+    private void ensure(int count) {
+        if (size + count > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(size + count, bytes.length * 2));
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package org.boplicity.p1.export;
+
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+
+/**
+ * The text formats measurements are exported in. Fields are named after {@link MeasurementField} in lower case and
+ * written as decimals; fields the meter didn't report are left out.
+ */
+public enum ExportFormat {
+
+    /**
+     * The line protocol of InfluxDB and compatible databases, one point per measurement in the {@code p1} measurement,
+     * tagged with the equipment id and timestamped in nanoseconds.
+     */
+    LINE_PROTOCOL("text/plain; charset=utf-8", "lp") {
+        @Override
+        void writeHeader(ExportBuffer buffer) {
+        }
+
+        @Override
+        void write(ExportBuffer buffer, String equipmentId, CompactMeasurement measurement) {
+            buffer.write(MEASUREMENT_NAME);
+
+            if (equipmentId != null && !equipmentId.isEmpty()) {
+                buffer.write(EQUIPMENT_ID_TAG);
+                writeEscaped(buffer, equipmentId);
+            }
+
+            byte separator = ' ';
+
+            for (int i = 0; i < FIELDS.length; i++) {
+                long value = measurement.get(FIELDS[i]);
+
+                if (value != CompactMeasurement.NO_VALUE) {
+                    buffer.write(separator);
+                    buffer.write(FIELD_NAMES[i]);
+                    buffer.write((byte) '=');
+                    buffer.writeDecimal(value, FIELDS[i].getScale());
+                    separator = ',';
+                }
+            }
+
+            buffer.write((byte) ' ');
+            buffer.writeLong(measurement.getTimestamp());
+            buffer.write(MILLIS_TO_NANOS);
+            buffer.write((byte) '\n');
+        }
+
+        // Commas, spaces and equal signs end a tag value unless escaped, which makes backslashes special too. Line
+        // breaks can not be escaped, so control characters are replaced like non-ASCII ones
+        private void writeEscaped(ExportBuffer buffer, String value) {
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+
+                if (c == ',' || c == ' ' || c == '=' || c == '\\') {
+                    buffer.write((byte) '\\');
+                }
+
+                buffer.write(c >= 0x20 && c < 0x7f ? (byte) c : (byte) '?');
+            }
+        }
+    },
+
+    /**
+     * Comma separated values with a header line per batch: the timestamp in millis, the equipment id and a column for
+     * every field, empty when not reported.
+     */
+    CSV("text/csv; charset=utf-8", "csv") {
+        @Override
+        void writeHeader(ExportBuffer buffer) {
+            buffer.write(CSV_HEADER);
+        }
+
+        @Override
+        void write(ExportBuffer buffer, String equipmentId, CompactMeasurement measurement) {
+            buffer.writeLong(measurement.getTimestamp());
+            buffer.write((byte) ',');
+
+            if (equipmentId != null) {
+                writeQuoted(buffer, equipmentId);
+            }
+
+            for (int i = 0; i < FIELDS.length; i++) {
+                long value = measurement.get(FIELDS[i]);
+
+                buffer.write((byte) ',');
+
+                if (value != CompactMeasurement.NO_VALUE) {
+                    buffer.writeDecimal(value, FIELDS[i].getScale());
+                }
+            }
+
+            buffer.write((byte) '\n');
+        }
+
+        private void writeQuoted(ExportBuffer buffer, String value) {
+            boolean quoted = false;
+
+            for (int i = 0; i < value.length() && !quoted; i++) {
+                char c = value.charAt(i);
+                quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+
+            if (!quoted) {
+                buffer.writeAscii(value);
+                return;
+            }
+
+            buffer.write((byte) '"');
+
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+
+                if (c == '"') {
+                    buffer.write((byte) '"');
+                }
+
+                buffer.write(c < 0x80 ? (byte) c : (byte) '?');
+            }
+
+            buffer.write((byte) '"');
+        }
+    };
+
+    private static final MeasurementField[] FIELDS = MeasurementField.values();
+    private static final byte[][] FIELD_NAMES = new byte[FIELDS.length][];
+
+    private static final byte[] MEASUREMENT_NAME = ascii("p1");
+    private static final byte[] EQUIPMENT_ID_TAG = ascii(",equipment_id=");
+    private static final byte[] MILLIS_TO_NANOS = ascii("000000");
+    private static final byte[] CSV_HEADER;
+
+    static {
+        StringBuilder header = new StringBuilder("timestamp,equipment_id");
+
+        for (int i = 0; i < FIELDS.length; i++) {
+            String name = FIELDS[i].name().toLowerCase(Locale.ROOT);
+
+            FIELD_NAMES[i] = ascii(name);
+            header.append(',').append(name);
+        }
+
+        CSV_HEADER = ascii(header.append('\n').toString());
+    }
+
+    private final String contentType;
+    private final String extension;
+
+    ExportFormat(String contentType, String extension) {
+        this.contentType = contentType;
+        this.extension = extension;
+    }
+
+    public String getContentType() {
+        return contentType;
+    }
+
+    /**
+     * Returns the file extension of uncompressed batches, without the dot.
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Writes what starts every batch.
+     */
+    abstract void writeHeader(ExportBuffer buffer);
+
+    /**
+     * Writes one measurement, which must have a timestamp.
+     */
+    abstract void write(ExportBuffer buffer, String equipmentId, CompactMeasurement measurement);
+
+    private static byte[] ascii(String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,18 @@
+package org.boplicity.p1.export;
+
+import java.io.IOException;
+
+/**
+ * Where the {@link MeasurementExporter} delivers its batches, like a file or a time series database. Only called by
+ * the exporter's thread.
+ */
+public interface ExportSink {
+
+    /**
+     * Delivers a batch. Throwing an exception has the batch retried later, unless it is a
+     * {@link RejectedBatchException}.
+     *
+     * @param compressed whether the bytes are gzipped
+     */
+    void send(byte[] bytes, int length, ExportFormat exportFormat, boolean compressed) throws IOException;
+}
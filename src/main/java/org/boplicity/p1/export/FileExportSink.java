@@ -0,0 +1,40 @@
+package org.boplicity.p1.export;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Writes every batch to a file of its own in a directory, for a collector that picks them up. A file only appears under
+ * its final name once it is complete.
+ */
+public class FileExportSink implements ExportSink {
+
+    private final File directory;
+    private long sequence;
+
+    public FileExportSink(File directory) {
+        this.directory = directory;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    @Override
+    public void send(byte[] bytes, int length, ExportFormat exportFormat, boolean compressed) throws IOException {
+        String name = String.format("export-%d-%06d.%s%s", System.currentTimeMillis(), sequence++,
+                exportFormat.getExtension(), compressed ? ".gz" : "");
+
+        File file = new File(directory, name);
+        File temporary = new File(directory, "." + name + ".tmp");
+
+        try (FileOutputStream out = new FileOutputStream(temporary)) {
+            out.write(bytes, 0, length);
+        }
+
+        Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+    }
+}
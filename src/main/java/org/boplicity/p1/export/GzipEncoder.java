@@ -0,0 +1,67 @@
+package org.boplicity.p1.export;
+
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses into the gzip format with a deflater and output buffer that are reused for every batch, where a
+ * GZIPOutputStream would allocate both each time.
+ */
+final class GzipEncoder {
+
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+    private static final int TRAILER_SIZE = 8;
+
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final CRC32 crc = new CRC32();
+
+    private byte[] output = new byte[64 * 1024];
+    private int size;
+
+    void compress(byte[] bytes, int offset, int length) {
+        deflater.reset();
+        deflater.setInput(bytes, offset, length);
+        deflater.finish();
+
+        crc.reset();
+        crc.update(bytes, offset, length);
+
+        System.arraycopy(HEADER, 0, output, 0, HEADER.length);
+        size = HEADER.length;
+
+        while (!deflater.finished()) {
+            if (size == output.length) {
+                output = Arrays.copyOf(output, output.length * 2);
+            }
+
+            size += deflater.deflate(output, size, output.length - size);
+        }
+
+        if (size + TRAILER_SIZE > output.length) {
+            output = Arrays.copyOf(output, size + TRAILER_SIZE);
+        }
+
+        writeIntLittleEndian((int) crc.getValue());
+        writeIntLittleEndian(length);
+    }
+
+    byte[] array() {
+        return output;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void end() {
+        deflater.end();
+    }
+
+    private void writeIntLittleEndian(int value) {
+        output[size++] = (byte) value;
+        output[size++] = (byte) (value >>> 8);
+        output[size++] = (byte) (value >>> 16);
+        output[size++] = (byte) (value >>> 24);
+    }
+}
@@ -0,0 +1,111 @@
+package org.boplicity.p1.export;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Posts every batch to an HTTP endpoint, like the write API of a time series database. Compressed batches are sent
+ * with {@code Content-Encoding: gzip}.
+ * <p>
+ * Client errors other than 408 and 429 mean the batch will never be accepted and throw a
+ * {@link RejectedBatchException}; other failures are retried by the exporter.
+ */
+public class HttpExportSink implements ExportSink {
+
+    private final URL url;
+    private final Map<String, String> headers = new LinkedHashMap<String, String>();
+
+    private int connectTimeout = 5000;
+    private int readTimeout = 30000;
+
+    public HttpExportSink(URL url) {
+        this.url = url;
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    /**
+     * Adds a header to every request, like {@code Authorization}.
+     */
+    public void setHeader(String name, String value) {
+        headers.put(name, value);
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public void setConnectTimeout(int connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    public int getReadTimeout() {
+        return readTimeout;
+    }
+
+    public void setReadTimeout(int readTimeout) {
+        this.readTimeout = readTimeout;
+    }
+
+    @Override
+    public void send(byte[] bytes, int length, ExportFormat exportFormat, boolean compressed) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+
+        connection.setRequestMethod("POST");
+        connection.setDoOutput(true);
+        connection.setConnectTimeout(connectTimeout);
+        connection.setReadTimeout(readTimeout);
+        connection.setFixedLengthStreamingMode(length);
+        connection.setRequestProperty("Content-Type", exportFormat.getContentType());
+
+        if (compressed) {
+            connection.setRequestProperty("Content-Encoding", "gzip");
+        }
+
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            connection.setRequestProperty(header.getKey(), header.getValue());
+        }
+
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write(bytes, 0, length);
+        }
+
+        int status = connection.getResponseCode();
+
+        // Reading the response to the end lets the connection be reused
+        drain(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+
+        if (status >= 200 && status < 300) {
+            return;
+        }
+
+        if (status >= 400 && status < 500 && status != 408 && status != 429) {
+            throw new RejectedBatchException("HTTP " + status + " from " + url);
+        }
+
+        throw new IOException("HTTP " + status + " from " + url);
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        if (in == null) {
+            return;
+        }
+
+        try {
+            byte[] buffer = new byte[1024];
+
+            while (in.read(buffer) >= 0) {
+                // Discard
+            }
+        } finally {
+            in.close();
+        }
+    }
+}
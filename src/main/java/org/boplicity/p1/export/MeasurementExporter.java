@@ -0,0 +1,581 @@
+package org.boplicity.p1.export;
+
+import org.boplicity.p1.device.MeasurementSubscriber;
+import org.boplicity.p1.metrics.LatencyHistogram;
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Exports measurements to a time series database or collector as they are parsed. Measurements are encoded into a
+ * batch buffer right away, without building strings. A batch is sealed when it reaches the maximum size or age and
+ * sent, gzipped, by a thread of its own, so the parsing thread never waits for the network.
+ * <p>
+ * Memory is bounded by a fixed pool of batch buffers. While all of them are waiting to be sent, new measurements are
+ * dropped and counted. A batch that fails to send is spilled to the spill directory, if set, and sent again after a
+ * backoff that doubles with every failure, before anything newer so the order is kept. During an outage new batches go
+ * straight to disk, up to a maximum of spilled bytes beyond which the oldest files are dropped. Spilled batches that
+ * are left on shutdown are sent after the next start.
+ */
+public class MeasurementExporter implements MeasurementSubscriber {
+
+    public static final int DEFAULT_MAX_BATCH_BYTES = 256 * 1024;
+
+    private static final String SPILL_PREFIX = "spill-";
+    private static final MeasurementField[] FIELDS = MeasurementField.values();
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final ExportSink exportSink;
+    private final ExportFormat exportFormat;
+
+    private int maxBatchBytes = DEFAULT_MAX_BATCH_BYTES;
+    private long maxBatchAge = 5000;
+    private int bufferCount = 4;
+    private boolean compressed = true;
+    private File spillDirectory;
+    private long maxSpillBytes = 256L * 1024 * 1024;
+    private long initialBackoff = 1000;
+    private long maxBackoff = 60000;
+
+    private BlockingQueue<Batch> freeBatches;
+    private BlockingQueue<Batch> sealedBatches;
+    private final Batch stopBatch = new Batch(0);
+
+    // Guarded by this
+    private Batch currentBatch;
+    private boolean dropping;
+
+    // Only used by the sender thread
+    private final GzipEncoder gzipEncoder = new GzipEncoder();
+    private final Deque<File> spillFiles = new ArrayDeque<File>();
+    private long spillSequence;
+    private long retryAt;
+    private int failures;
+
+    private volatile boolean running;
+    private Thread thread;
+
+    private AtomicLong recordCount = new AtomicLong();
+    private AtomicLong sentRecordCount = new AtomicLong();
+    private AtomicLong droppedRecordCount = new AtomicLong();
+    private AtomicLong batchCount = new AtomicLong();
+    private AtomicLong encodedBytes = new AtomicLong();
+    private AtomicLong sentBytes = new AtomicLong();
+    private AtomicLong failureCount = new AtomicLong();
+    private AtomicLong spilledBatchCount = new AtomicLong();
+    private AtomicLong spillBytes = new AtomicLong();
+    private LatencyHistogram sendLatency = new LatencyHistogram();
+
+    public MeasurementExporter(ExportSink exportSink, ExportFormat exportFormat) {
+        this.exportSink = exportSink;
+        this.exportFormat = exportFormat;
+    }
+
+    public void init() {
+        if (bufferCount < 1) {
+            throw new IllegalArgumentException("Buffer count must be positive: " + bufferCount);
+        }
+
+        freeBatches = new ArrayBlockingQueue<Batch>(bufferCount);
+        sealedBatches = new ArrayBlockingQueue<Batch>(bufferCount + 1);
+
+        for (int i = 0; i < bufferCount; i++) {
+            // Room for the last record that crosses the maximum
+            freeBatches.add(new Batch(maxBatchBytes + 1024));
+        }
+
+        if (spillDirectory != null) {
+            loadSpillFiles();
+        }
+
+        running = true;
+
+        thread = new Thread("p1-exporter") {
+            @Override
+            public void run() {
+                sendBatches();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Seals the current batch and waits until every sealed batch is sent or spilled.
+     */
+    public void destroy() throws InterruptedException {
+        if (!running) {
+            return;
+        }
+
+        // Stop taking measurements first, so none end up in a batch after the last flush
+        running = false;
+        flush();
+        sealedBatches.put(stopBatch);
+        thread.join();
+        gzipEncoder.end();
+    }
+
+    @Override
+    public void onMeasurement(SmartMeterMeasurement measurement) {
+        try {
+            export(measurement.getEquipmentId(), CompactMeasurement.of(measurement));
+        } catch (RuntimeException e) {
+            logger.error(e.toString(), e);
+        }
+    }
+
+    /**
+     * Encodes a measurement into the current batch. Never blocks: without a free buffer the measurement is dropped.
+     * Measurements without a timestamp or without any field are dropped too: a line protocol point needs both, and
+     * an invalid point makes the endpoint reject the whole batch.
+     */
+    public synchronized void export(String equipmentId, CompactMeasurement measurement) {
+        recordCount.incrementAndGet();
+
+        if (!running || measurement.getTimestamp() == CompactMeasurement.NO_VALUE || !hasFields(measurement)) {
+            droppedRecordCount.incrementAndGet();
+            return;
+        }
+
+        if (currentBatch == null) {
+            currentBatch = freeBatches.poll();
+
+            if (currentBatch == null) {
+                if (!dropping) {
+                    dropping = true;
+                    logger.warn("All " + bufferCount + " export buffers are waiting to be sent, dropping measurements");
+                }
+
+                droppedRecordCount.incrementAndGet();
+                return;
+            }
+
+            dropping = false;
+            currentBatch.created = System.currentTimeMillis();
+            exportFormat.writeHeader(currentBatch.buffer);
+        }
+
+        int size = currentBatch.buffer.size();
+        exportFormat.write(currentBatch.buffer, equipmentId, measurement);
+        encodedBytes.addAndGet(currentBatch.buffer.size() - size);
+        currentBatch.recordCount++;
+
+        if (currentBatch.buffer.size() >= maxBatchBytes) {
+            seal();
+        }
+    }
+
+    private static boolean hasFields(CompactMeasurement measurement) {
+        for (MeasurementField field : FIELDS) {
+            if (measurement.get(field) != CompactMeasurement.NO_VALUE) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Seals the current batch so it is sent without waiting for it to fill up or age.
+     */
+    public synchronized void flush() {
+        if (currentBatch != null) {
+            seal();
+        }
+    }
+
+    public ExportSink getExportSink() {
+        return exportSink;
+    }
+
+    public ExportFormat getExportFormat() {
+        return exportFormat;
+    }
+
+    public int getMaxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    /**
+     * Sets the uncompressed size in bytes at which a batch is sealed.
+     */
+    public void setMaxBatchBytes(int maxBatchBytes) {
+        this.maxBatchBytes = maxBatchBytes;
+    }
+
+    public long getMaxBatchAge() {
+        return maxBatchAge;
+    }
+
+    /**
+     * Sets how long in millis after its first measurement a batch is sealed, however small.
+     */
+    public void setMaxBatchAge(long maxBatchAge) {
+        this.maxBatchAge = maxBatchAge;
+    }
+
+    public int getBufferCount() {
+        return bufferCount;
+    }
+
+    /**
+     * Sets the number of batch buffers, which bounds the memory used to about the count times the maximum batch size.
+     */
+    public void setBufferCount(int bufferCount) {
+        this.bufferCount = bufferCount;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public void setCompressed(boolean compressed) {
+        this.compressed = compressed;
+    }
+
+    public File getSpillDirectory() {
+        return spillDirectory;
+    }
+
+    /**
+     * Sets the directory batches are spilled to when they can't be sent; null to drop them.
+     */
+    public void setSpillDirectory(File spillDirectory) {
+        this.spillDirectory = spillDirectory;
+    }
+
+    public long getMaxSpillBytes() {
+        return maxSpillBytes;
+    }
+
+    public void setMaxSpillBytes(long maxSpillBytes) {
+        this.maxSpillBytes = maxSpillBytes;
+    }
+
+    public long getInitialBackoff() {
+        return initialBackoff;
+    }
+
+    public void setInitialBackoff(long initialBackoff) {
+        this.initialBackoff = initialBackoff;
+    }
+
+    public long getMaxBackoff() {
+        return maxBackoff;
+    }
+
+    public void setMaxBackoff(long maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    /**
+     * Returns the number of measurements offered, including the dropped ones.
+     */
+    public long getRecordCount() {
+        return recordCount.get();
+    }
+
+    public long getSentRecordCount() {
+        return sentRecordCount.get();
+    }
+
+    /**
+     * Returns the number of measurements lost: without a timestamp, without a free buffer, in batches the sink
+     * rejected, or in batches that could not be spilled or were pushed out of the spill directory.
+     */
+    public long getDroppedRecordCount() {
+        return droppedRecordCount.get();
+    }
+
+    /**
+     * Returns the number of batches sent.
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Returns the number of bytes encoded, before compression.
+     */
+    public long getEncodedBytes() {
+        return encodedBytes.get();
+    }
+
+    /**
+     * Returns the number of bytes sent, after compression.
+     */
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    public long getSpilledBatchCount() {
+        return spilledBatchCount.get();
+    }
+
+    /**
+     * Returns the number of bytes waiting in the spill directory.
+     */
+    public long getSpillBytes() {
+        return spillBytes.get();
+    }
+
+    /**
+     * Returns the durations of successful sends in nanoseconds.
+     */
+    public LatencyHistogram getSendLatency() {
+        return sendLatency;
+    }
+
+    private void seal() {
+        sealedBatches.add(currentBatch);
+        currentBatch = null;
+    }
+
+    private void sendBatches() {
+        while (true) {
+            Batch batch;
+
+            try {
+                batch = sealedBatches.poll(waitTime(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            if (batch == stopBatch) {
+                return;
+            }
+
+            if (batch != null) {
+                deliver(batch);
+            } else {
+                sealAged();
+            }
+
+            if (!spillFiles.isEmpty() && System.currentTimeMillis() >= retryAt) {
+                sendSpilled();
+            }
+        }
+    }
+
+    // Until the current batch is due, or the next retry of the spilled batches
+    private long waitTime() {
+        long now = System.currentTimeMillis();
+        long wait = maxBatchAge;
+
+        synchronized (this) {
+            if (currentBatch != null) {
+                wait = currentBatch.created + maxBatchAge - now;
+            }
+        }
+
+        if (!spillFiles.isEmpty()) {
+            wait = Math.min(wait, retryAt - now);
+        }
+
+        return Math.max(1, wait);
+    }
+
+    private synchronized void sealAged() {
+        if (currentBatch != null && System.currentTimeMillis() - currentBatch.created >= maxBatchAge) {
+            seal();
+        }
+    }
+
+    private void deliver(Batch batch) {
+        byte[] bytes = batch.buffer.array();
+        int length = batch.buffer.size();
+
+        if (compressed) {
+            gzipEncoder.compress(bytes, 0, length);
+            bytes = gzipEncoder.array();
+            length = gzipEncoder.size();
+        }
+
+        try {
+            // Spilled batches go first, so while there are any this one joins them
+            if (!spillFiles.isEmpty() || System.currentTimeMillis() < retryAt
+                    || !send(bytes, length, compressed, batch.recordCount)) {
+                spill(bytes, length, batch.recordCount);
+            }
+        } finally {
+            batch.buffer.reset();
+            batch.recordCount = 0;
+            freeBatches.add(batch);
+        }
+    }
+
+    /**
+     * @return whether the batch is done with, sent or rejected
+     */
+    private boolean send(byte[] bytes, int length, boolean compressed, int records) {
+        long started = System.nanoTime();
+
+        try {
+            exportSink.send(bytes, length, exportFormat, compressed);
+
+            sendLatency.record(System.nanoTime() - started);
+            batchCount.incrementAndGet();
+            sentRecordCount.addAndGet(records);
+            sentBytes.addAndGet(length);
+            failures = 0;
+
+            return true;
+        } catch (RejectedBatchException e) {
+            logger.error("Dropping a batch of " + records + " measurements: " + e.getMessage());
+            droppedRecordCount.addAndGet(records);
+
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logger.warn("Failed to export a batch of " + records + " measurements: " + e);
+            failureCount.incrementAndGet();
+
+            // Half of the exponential backoff plus a random part of the other half
+            long delay = Math.min(maxBackoff, initialBackoff << Math.min(failures++, 20));
+            retryAt = System.currentTimeMillis() + delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+
+            return false;
+        }
+    }
+
+    private void sendSpilled() {
+        while (!spillFiles.isEmpty()) {
+            File file = spillFiles.peekFirst();
+            int records = recordCount(file);
+            byte[] bytes;
+
+            try {
+                bytes = Files.readAllBytes(file.toPath());
+            } catch (IOException e) {
+                logger.error(e.toString(), e);
+                removeSpilled(file, records);
+                continue;
+            }
+
+            if (!send(bytes, bytes.length, file.getName().endsWith(".gz"), records)) {
+                return;
+            }
+
+            spillFiles.pollFirst();
+            spillBytes.addAndGet(-bytes.length);
+            delete(file);
+        }
+    }
+
+    private void spill(byte[] bytes, int length, int records) {
+        if (spillDirectory == null) {
+            droppedRecordCount.addAndGet(records);
+            return;
+        }
+
+        File file = new File(spillDirectory, String.format("%s%020d-%d.%s%s", SPILL_PREFIX, spillSequence++, records,
+                exportFormat.getExtension(), compressed ? ".gz" : ""));
+
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(bytes, 0, length);
+        } catch (IOException e) {
+            logger.error(e.toString(), e);
+            delete(file);
+            droppedRecordCount.addAndGet(records);
+            return;
+        }
+
+        spillFiles.addLast(file);
+        spilledBatchCount.incrementAndGet();
+
+        spillBytes.addAndGet(length);
+
+        // Keep the newest batch at least
+        while (spillBytes.get() > maxSpillBytes && spillFiles.size() > 1) {
+            File oldest = spillFiles.peekFirst();
+            logger.warn("Spill directory full, dropping " + oldest.getName());
+            removeSpilled(oldest, recordCount(oldest));
+        }
+    }
+
+    private void removeSpilled(File file, int records) {
+        spillFiles.remove(file);
+        spillBytes.addAndGet(-file.length());
+        droppedRecordCount.addAndGet(records);
+        delete(file);
+    }
+
+    // Picks up the batches a previous run left behind, oldest first
+    private void loadSpillFiles() {
+        File[] files = spillDirectory.listFiles((directory, name) -> name.startsWith(SPILL_PREFIX));
+
+        if (files == null) {
+            throw new IllegalArgumentException("Not a directory: " + spillDirectory);
+        }
+
+        Arrays.sort(files);
+
+        for (File file : files) {
+            spillFiles.addLast(file);
+            spillBytes.addAndGet(file.length());
+            spillSequence = Math.max(spillSequence, sequence(file) + 1);
+        }
+
+        if (files.length > 0) {
+            logger.info("Sending " + files.length + " spilled batches from " + spillDirectory);
+        }
+    }
+
+    // Spill files are named spill-<sequence>-<records>.<extension>
+    private static long sequence(File file) {
+        String name = file.getName();
+
+        try {
+            return Long.parseLong(name.substring(SPILL_PREFIX.length(), name.indexOf('-', SPILL_PREFIX.length())));
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static int recordCount(File file) {
+        String name = file.getName();
+
+        try {
+            return Integer.parseInt(name.substring(name.indexOf('-', SPILL_PREFIX.length()) + 1, name.indexOf('.')));
+        } catch (RuntimeException e) {
+            return 0;
+        }
+    }
+
+    private void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            logger.warn("Could not delete " + file);
+        }
+    }
+
+    private static class Batch {
+
+        final ExportBuffer buffer;
+        long created;
+        int recordCount;
+
+        Batch(int capacity) {
+            buffer = new ExportBuffer(capacity);
+        }
+    }
+}
@@ -0,0 +1,14 @@
+package org.boplicity.p1.export;
+
+import java.io.IOException;
+
+/**
+ * Thrown by an {@link ExportSink} for a batch that will never be accepted, like one the server answers with a client
+ * error. The batch is dropped rather than retried.
+ */
+public class RejectedBatchException extends IOException {
+
+    public RejectedBatchException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,150 @@
+package org.boplicity.p1.history;
+
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+
+/**
+ * The aggregates of one field over the readings in <code>[from, to)</code>, in {@link CompactMeasurement} units as
+ * scaled by {@link MeasurementField#getScale()}. Readings without the field are not counted. Without readings the
+ * minimum, maximum, first and last are {@link CompactMeasurement#NO_VALUE} and the average NaN.
+ */
+public class Aggregate {
+
+    private MeasurementField field;
+    private long from;
+    private long to;
+
+    private int count;
+    private long sum;
+    private long min;
+    private long max;
+    private long first;
+    private long last;
+
+    Aggregate(MeasurementField field, long from, long to, int count, long sum, long min, long max, long first,
+              long last) {
+        this.field = field;
+        this.from = from;
+        this.to = to;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+        this.first = first;
+        this.last = last;
+    }
+
+    public MeasurementField getField() {
+        return field;
+    }
+
+    public long getFrom() {
+        return from;
+    }
+
+    public long getTo() {
+        return to;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public long getMin() {
+        return min;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getAverage() {
+        return count == 0 ? Double.NaN : (double) sum / count;
+    }
+
+    public long getFirst() {
+        return first;
+    }
+
+    public long getLast() {
+        return last;
+    }
+
+    /**
+     * Returns the increase of a cumulative register, the last reading minus the first, or 0 with fewer than two
+     * readings.
+     */
+    public long getDelta() {
+        return count < 2 ? 0 : last - first;
+    }
+
+    @Override
+    public String toString() {
+        return "Aggregate{" +
+                "field=" + field +
+                ", from=" + from +
+                ", to=" + to +
+                ", count=" + count +
+                ", sum=" + sum +
+                ", min=" + min +
+                ", max=" + max +
+                ", first=" + first +
+                ", last=" + last +
+                '}';
+    }
+
+    /**
+     * Collects the readings of an aggregate, possibly starting from an earlier one.
+     */
+    static class Builder {
+
+        private int count;
+        private long sum;
+        private long min = Long.MAX_VALUE;
+        private long max = Long.MIN_VALUE;
+        private long first = CompactMeasurement.NO_VALUE;
+        private long last = CompactMeasurement.NO_VALUE;
+
+        Builder() {
+        }
+
+        Builder(Aggregate aggregate) {
+            count = aggregate.count;
+            sum = aggregate.sum;
+
+            if (count > 0) {
+                min = aggregate.min;
+                max = aggregate.max;
+                first = aggregate.first;
+                last = aggregate.last;
+            }
+        }
+
+        void add(long value) {
+            if (value == CompactMeasurement.NO_VALUE) {
+                return;
+            }
+
+            if (count == 0) {
+                first = value;
+            }
+
+            count++;
+            sum += value;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+            last = value;
+        }
+
+        Aggregate build(MeasurementField field, long from, long to) {
+            return new Aggregate(field, from, to, count, sum,
+                    count == 0 ? CompactMeasurement.NO_VALUE : min,
+                    count == 0 ? CompactMeasurement.NO_VALUE : max,
+                    first, last);
+        }
+    }
+}
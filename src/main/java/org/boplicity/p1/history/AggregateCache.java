@@ -0,0 +1,125 @@
+package org.boplicity.p1.history;
+
+import org.boplicity.p1.model.MeasurementField;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The aggregates computed by a {@link MeasurementHistory}, least recently used first. Entries are immutable and
+ * replaced as a whole; the lock is only held to look them up and store them.
+ */
+class AggregateCache {
+
+    private volatile int maxSize;
+
+    private final Map<Key, CachedAggregate> entries = new LinkedHashMap<Key, CachedAggregate>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, CachedAggregate> eldest) {
+            return size() > maxSize;
+        }
+    };
+
+    AggregateCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    synchronized void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+
+        while (entries.size() > maxSize) {
+            entries.remove(entries.keySet().iterator().next());
+        }
+    }
+
+    synchronized CachedAggregate get(Key key) {
+        return entries.get(key);
+    }
+
+    synchronized void put(Key key, CachedAggregate entry) {
+        if (maxSize > 0) {
+            entries.put(key, entry);
+        }
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    synchronized void clear() {
+        entries.clear();
+    }
+
+    static final class Key {
+
+        private final MeasurementField field;
+        private final long from;
+        private final long to;
+        private final long bucketLength;
+
+        Key(MeasurementField field, long from, long to, long bucketLength) {
+            this.field = field;
+            this.from = from;
+            this.to = to;
+            this.bucketLength = bucketLength;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+
+            Key key = (Key) o;
+
+            return field == key.field && from == key.from && to == key.to && bucketLength == key.bucketLength;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = field.hashCode();
+            result = 31 * result + Long.hashCode(from);
+            result = 31 * result + Long.hashCode(to);
+            result = 31 * result + Long.hashCode(bucketLength);
+            return result;
+        }
+    }
+
+    /**
+     * The buckets of a query as of a point in the history.
+     */
+    static final class CachedAggregate {
+
+        final Aggregate[] buckets;
+        final List<Aggregate> list;
+
+        // The first row in the range when computed; once it is overwritten the entry is stale
+        final long fromSequence;
+
+        // The rows up to here are included
+        final long throughSequence;
+
+        final long created;
+        final boolean incremental;
+
+        CachedAggregate(Aggregate[] buckets, long fromSequence, long throughSequence, long created,
+                        boolean incremental) {
+            this.buckets = buckets;
+            this.list = Collections.unmodifiableList(Arrays.asList(buckets));
+            this.fromSequence = fromSequence;
+            this.throughSequence = throughSequence;
+            this.created = created;
+            this.incremental = incremental;
+        }
+    }
+}
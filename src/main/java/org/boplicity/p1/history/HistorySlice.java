@@ -0,0 +1,38 @@
+package org.boplicity.p1.history;
+
+import org.boplicity.p1.model.MeasurementField;
+
+import java.nio.LongBuffer;
+
+/**
+ * A copy of the readings of a {@link MeasurementHistory} in a queried time range, oldest first.
+ */
+public class HistorySlice {
+
+    private long[] timestamps;
+    private long[][] values;
+
+    HistorySlice(long[] timestamps, long[][] values) {
+        this.timestamps = timestamps;
+        this.values = values;
+    }
+
+    public int size() {
+        return timestamps.length;
+    }
+
+    /**
+     * Returns the timestamps of the rows in epoch millis.
+     */
+    public LongBuffer timestamps() {
+        return LongBuffer.wrap(timestamps).asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns the values of the rows as scaled by {@link MeasurementField#getScale()}, with
+     * {@link org.boplicity.p1.model.CompactMeasurement#NO_VALUE} for missing values.
+     */
+    public LongBuffer values(MeasurementField field) {
+        return LongBuffer.wrap(values[field.ordinal()]).asReadOnlyBuffer();
+    }
+}
@@ -0,0 +1,391 @@
+package org.boplicity.p1.history;
+
+import org.boplicity.p1.device.MeasurementSubscriber;
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.LongFunction;
+
+/**
+ * The most recent measurements in memory, for serving charts without a round trip to the database. The readings are
+ * kept per column in rings of primitives of a fixed capacity; once full a new reading overwrites the oldest. Rows are
+ * numbered in the order they were added and, as their timestamps only go up, found by binary search.
+ * <p>
+ * Aggregates and downsampled series are cached, least recently used first and for at most the time to live. A cached
+ * result is kept up to date by folding in the readings that arrived since it was computed, so a chart of the last day
+ * only looks at the new readings. Once readings in its range are overwritten it is computed again. Queries with the
+ * same boundaries share an entry, so align them, e.g. to the bucket length.
+ * <p>
+ * Adding is meant for a single ingest thread. Queries only ever read optimistically and retry when a reading was added
+ * meanwhile; they never take a lock the ingest thread has to wait for.
+ */
+public class MeasurementHistory implements MeasurementSubscriber {
+
+    public static final int DEFAULT_CAPACITY = 24 * 3600;
+
+    static final int MAX_BUCKETS = 100000;
+
+    private static final MeasurementField[] FIELDS = MeasurementField.values();
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final StampedLock lock = new StampedLock();
+    private final int capacity;
+    private final long[] timestamps;
+    private final long[][] values;
+
+    // The number of rows ever added, guarded by the lock
+    private long written;
+
+    private final AggregateCache cache = new AggregateCache(256);
+    private long cacheTtl = 300000;
+
+    private AtomicLong lateSampleCount = new AtomicLong();
+    private AtomicLong retryCount = new AtomicLong();
+    private AtomicLong cacheHitCount = new AtomicLong();
+    private AtomicLong cacheUpdateCount = new AtomicLong();
+    private AtomicLong cacheMissCount = new AtomicLong();
+
+    public MeasurementHistory() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public MeasurementHistory(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+
+        this.capacity = capacity;
+        this.timestamps = new long[capacity];
+        this.values = new long[FIELDS.length][capacity];
+    }
+
+    @Override
+    public void onMeasurement(SmartMeterMeasurement measurement) {
+        try {
+            add(CompactMeasurement.of(measurement));
+        } catch (RuntimeException e) {
+            logger.error(e.toString(), e);
+        }
+    }
+
+    /**
+     * Adds a reading. Readings without a timestamp are ignored; readings older than the newest one are dropped and
+     * counted, see {@link #getLateSampleCount()}.
+     */
+    public void add(CompactMeasurement measurement) {
+        long timestamp = measurement.getTimestamp();
+
+        if (timestamp == CompactMeasurement.NO_VALUE) {
+            return;
+        }
+
+        long stamp = lock.writeLock();
+
+        try {
+            if (written > 0 && timestamp < timestamps[slot(written - 1)]) {
+                lateSampleCount.incrementAndGet();
+                return;
+            }
+
+            int slot = slot(written);
+            timestamps[slot] = timestamp;
+
+            for (int i = 0; i < FIELDS.length; i++) {
+                values[i][slot] = measurement.get(FIELDS[i]);
+            }
+
+            written++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return read(written -> (int) Math.min(written, capacity));
+    }
+
+    /**
+     * Returns the timestamp of the oldest reading kept, {@link CompactMeasurement#NO_VALUE} when empty.
+     */
+    public long getOldestTimestamp() {
+        return read(written -> written == 0 ? CompactMeasurement.NO_VALUE : timestamps[slot(oldest(written))]);
+    }
+
+    /**
+     * Returns the timestamp of the newest reading, {@link CompactMeasurement#NO_VALUE} when empty.
+     */
+    public long getNewestTimestamp() {
+        return read(written -> written == 0 ? CompactMeasurement.NO_VALUE : timestamps[slot(written - 1)]);
+    }
+
+    /**
+     * Returns a copy of the readings with a timestamp in <code>[from, to)</code>.
+     */
+    public HistorySlice range(long from, long to) {
+        return read(written -> {
+            long fromSequence = lowerBound(from, oldest(written), written);
+            int count = (int) (lowerBound(to, fromSequence, written) - fromSequence);
+
+            long[] sliceTimestamps = new long[count];
+            long[][] sliceValues = new long[FIELDS.length][];
+
+            copy(timestamps, fromSequence, sliceTimestamps);
+
+            for (int i = 0; i < FIELDS.length; i++) {
+                sliceValues[i] = new long[count];
+                copy(values[i], fromSequence, sliceValues[i]);
+            }
+
+            return new HistorySlice(sliceTimestamps, sliceValues);
+        });
+    }
+
+    /**
+     * Returns the aggregates of a field over the readings in <code>[from, to)</code>.
+     */
+    public Aggregate aggregate(MeasurementField field, long from, long to) {
+        return downsample(field, from, to, to - from).get(0);
+    }
+
+    /**
+     * Returns the aggregates of a field per bucket of the given length, the first starting at <code>from</code>. The
+     * last bucket ends at <code>to</code>, so it may be shorter.
+     */
+    public List<Aggregate> downsample(MeasurementField field, long from, long to, long bucketLength) {
+        if (to <= from || bucketLength <= 0) {
+            throw new IllegalArgumentException("Invalid range [" + from + ", " + to + ") or bucket length "
+                    + bucketLength);
+        }
+
+        if ((to - from - 1) / bucketLength + 1 > MAX_BUCKETS) {
+            throw new IllegalArgumentException("More than " + MAX_BUCKETS + " buckets of " + bucketLength + " ms");
+        }
+
+        AggregateCache.Key key = new AggregateCache.Key(field, from, to, bucketLength);
+        AggregateCache.CachedAggregate cached = cache.get(key);
+        long now = System.currentTimeMillis();
+
+        if (cached != null && now - cached.created > cacheTtl) {
+            cached = null;
+        }
+
+        AggregateCache.CachedAggregate previous = cached;
+        AggregateCache.CachedAggregate entry = read(written -> {
+            if (previous != null && previous.fromSequence >= oldest(written)) {
+                return previous.throughSequence == written ? previous : update(previous, field, from, to,
+                        bucketLength, written);
+            }
+
+            return compute(field, from, to, bucketLength, written, now);
+        });
+
+        if (entry == cached) {
+            cacheHitCount.incrementAndGet();
+        } else {
+            if (entry.incremental) {
+                cacheUpdateCount.incrementAndGet();
+            } else {
+                cacheMissCount.incrementAndGet();
+            }
+
+            cache.put(key, entry);
+        }
+
+        return entry.list;
+    }
+
+    public int getCacheSize() {
+        return cache.getMaxSize();
+    }
+
+    /**
+     * Sets the number of queries whose aggregates are cached; 0 to cache none.
+     */
+    public void setCacheSize(int cacheSize) {
+        cache.setMaxSize(cacheSize);
+    }
+
+    public long getCacheTtl() {
+        return cacheTtl;
+    }
+
+    /**
+     * Sets how long in millis cached aggregates are used before they are computed from scratch again.
+     */
+    public void setCacheTtl(long cacheTtl) {
+        this.cacheTtl = cacheTtl;
+    }
+
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Returns the number of readings dropped because they were older than the newest one.
+     */
+    public long getLateSampleCount() {
+        return lateSampleCount.get();
+    }
+
+    /**
+     * Returns the number of times a query was repeated because a reading was added while it ran.
+     */
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getCacheHitCount() {
+        return cacheHitCount.get();
+    }
+
+    /**
+     * Returns the number of cached results brought up to date with the readings added since.
+     */
+    public long getCacheUpdateCount() {
+        return cacheUpdateCount.get();
+    }
+
+    public long getCacheMissCount() {
+        return cacheMissCount.get();
+    }
+
+    // Runs the reader until no reading was added meanwhile; what it sees may be inconsistent until validated
+    private <T> T read(LongFunction<T> reader) {
+        while (true) {
+            long stamp = lock.tryOptimisticRead();
+
+            if (stamp != 0) {
+                try {
+                    T result = reader.apply(written);
+
+                    if (lock.validate(stamp)) {
+                        return result;
+                    }
+                } catch (RuntimeException e) {
+                    if (lock.validate(stamp)) {
+                        throw e;
+                    }
+                }
+            }
+
+            retryCount.incrementAndGet();
+            Thread.yield();
+        }
+    }
+
+    private AggregateCache.CachedAggregate compute(MeasurementField field, long from, long to, long bucketLength,
+                                                   long written, long now) {
+        int bucketCount = (int) ((to - from - 1) / bucketLength + 1);
+        Aggregate.Builder[] builders = new Aggregate.Builder[bucketCount];
+
+        for (int i = 0; i < bucketCount; i++) {
+            builders[i] = new Aggregate.Builder();
+        }
+
+        long[] column = values[field.ordinal()];
+        long fromSequence = lowerBound(from, oldest(written), written);
+        long toSequence = lowerBound(to, fromSequence, written);
+
+        for (long sequence = fromSequence; sequence < toSequence; sequence++) {
+            int slot = slot(sequence);
+            builders[(int) ((timestamps[slot] - from) / bucketLength)].add(column[slot]);
+        }
+
+        Aggregate[] buckets = new Aggregate[bucketCount];
+
+        for (int i = 0; i < bucketCount; i++) {
+            long start = from + i * bucketLength;
+            long end = start + bucketLength;
+
+            // The last bucket may be cut short, also where the end would overflow
+            buckets[i] = builders[i].build(field, start, end > to || end < start ? to : end);
+        }
+
+        return new AggregateCache.CachedAggregate(buckets, fromSequence, written, now, false);
+    }
+
+    // Folds the rows added since the entry was computed into copies of the buckets they fall in
+    private AggregateCache.CachedAggregate update(AggregateCache.CachedAggregate entry, MeasurementField field,
+                                                  long from, long to, long bucketLength, long written) {
+        long[] column = values[field.ordinal()];
+        Aggregate[] buckets = entry.buckets;
+        Aggregate.Builder builder = null;
+        int bucket = -1;
+
+        for (long sequence = entry.throughSequence; sequence < written; sequence++) {
+            int slot = slot(sequence);
+            long timestamp = timestamps[slot];
+
+            if (timestamp < from) {
+                continue;
+            }
+
+            if (timestamp >= to) {
+                break;
+            }
+
+            int index = (int) ((timestamp - from) / bucketLength);
+
+            if (index != bucket) {
+                if (builder != null) {
+                    buckets[bucket] = builder.build(field, buckets[bucket].getFrom(), buckets[bucket].getTo());
+                } else {
+                    buckets = buckets.clone();
+                }
+
+                bucket = index;
+                builder = new Aggregate.Builder(buckets[bucket]);
+            }
+
+            builder.add(column[slot]);
+        }
+
+        if (builder != null) {
+            buckets[bucket] = builder.build(field, buckets[bucket].getFrom(), buckets[bucket].getTo());
+        }
+
+        return new AggregateCache.CachedAggregate(buckets, entry.fromSequence, written, entry.created, true);
+    }
+
+    // The first row from the given one on with a timestamp at or after the given time
+    private long lowerBound(long timestamp, long low, long high) {
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+
+            if (timestamps[slot(middle)] < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private void copy(long[] column, long fromSequence, long[] target) {
+        int start = slot(fromSequence);
+        int first = Math.min(target.length, capacity - start);
+
+        System.arraycopy(column, start, target, 0, first);
+        System.arraycopy(column, 0, target, first, target.length - first);
+    }
+
+    private long oldest(long written) {
+        return Math.max(0, written - capacity);
+    }
+
+    private int slot(long sequence) {
+        return (int) (sequence % capacity);
+    }
+}
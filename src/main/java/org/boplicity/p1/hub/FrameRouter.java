@@ -0,0 +1,114 @@
+package org.boplicity.p1.hub;
+
+import org.boplicity.p1.device.FrameHandler;
+import org.boplicity.p1.device.SmartMeterListener;
+import org.boplicity.p1.parser.ObisValues;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Hands the frames of one source to the listener of the meter that sent them. The equipment id is found with a plain
+ * byte search and compared to the previous frame's, so the id is only decoded when a source switches meters.
+ */
+class FrameRouter implements FrameHandler {
+
+    private static final byte[] EQUIPMENT_ID = "0-0:96.1.1(".getBytes(StandardCharsets.US_ASCII);
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private IngestionHub ingestionHub;
+    private String sourceName;
+
+    private byte[] lastId = new byte[0];
+    private SmartMeterListener lastListener;
+
+    FrameRouter(IngestionHub ingestionHub, String sourceName) {
+        this.ingestionHub = ingestionHub;
+        this.sourceName = sourceName;
+    }
+
+    @Override
+    public void onFrame(ByteBuffer frame) {
+        SmartMeterListener listener = route(frame);
+
+        try {
+            listener.put(frame);
+        } catch (RuntimeException e) {
+            logger.error(e.toString(), e);
+        }
+
+        ingestionHub.frameRouted();
+    }
+
+    private SmartMeterListener route(ByteBuffer frame) {
+        int idStart = indexOf(frame, EQUIPMENT_ID);
+        int idEnd = idStart;
+
+        if (idStart >= 0) {
+            idStart += EQUIPMENT_ID.length;
+            idEnd = idStart;
+
+            while (idEnd < frame.limit() && frame.get(idEnd) != ')') {
+                idEnd++;
+            }
+        }
+
+        if (lastListener != null && sameId(frame, idStart, idEnd)) {
+            return lastListener;
+        }
+
+        lastId = new byte[Math.max(0, idEnd - idStart)];
+
+        for (int i = 0; i < lastId.length; i++) {
+            lastId[i] = frame.get(idStart + i);
+        }
+
+        String equipmentId = sourceName;
+
+        if (lastId.length > 0) {
+            byte[] group = new byte[lastId.length + 2];
+            group[0] = '(';
+            System.arraycopy(lastId, 0, group, 1, lastId.length);
+            group[group.length - 1] = ')';
+
+            equipmentId = ObisValues.hexText(group, 0, group.length);
+        }
+
+        lastListener = ingestionHub.getListener(equipmentId);
+
+        return lastListener;
+    }
+
+    private boolean sameId(ByteBuffer frame, int idStart, int idEnd) {
+        if (idEnd - idStart != lastId.length) {
+            return false;
+        }
+
+        for (int i = 0; i < lastId.length; i++) {
+            if (frame.get(idStart + i) != lastId[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static int indexOf(ByteBuffer frame, byte[] needle) {
+        for (int i = frame.position(); i <= frame.limit() - needle.length; i++) {
+            int j = 0;
+
+            while (j < needle.length && frame.get(i + j) == needle[j]) {
+                j++;
+            }
+
+            if (j == needle.length) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
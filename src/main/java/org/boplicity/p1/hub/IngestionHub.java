@@ -0,0 +1,236 @@
+package org.boplicity.p1.hub;
+
+import org.boplicity.p1.device.SmartMeterListener;
+import org.boplicity.p1.device.TelegramFramer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reads telegrams from many meters at once. TCP sources are multiplexed on a single selector thread and reconnected
+ * when they drop; blocking sources such as serial ports or files get a thread each. Every source has its own
+ * {@link TelegramFramer}, and every frame goes to the listener of the meter that sent it, keyed by the equipment id
+ * <code>0-0:96.1.1</code>.
+ * <p>
+ * Listeners are called on the reading threads, so a listener that parses slowly holds up the other TCP sources.
+ * Have the factory wrap such listeners in an {@link org.boplicity.p1.device.AsyncSmartMeterListener}.
+ */
+public class IngestionHub {
+
+    private static final long SELECT_TIMEOUT = 1000;
+    private static final int READ_BUFFER_SIZE = 16 * 1024;
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private MeterListenerFactory meterListenerFactory;
+    private Map<String, SmartMeterListener> listeners = new ConcurrentHashMap<String, SmartMeterListener>();
+
+    private long reconnectDelay = 5000;
+
+    private Selector selector;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    private Queue<TcpSource> newTcpSources = new ConcurrentLinkedQueue<TcpSource>();
+    private List<TcpSource> tcpSources = new ArrayList<TcpSource>();
+    private List<Thread> streamThreads = new CopyOnWriteArrayList<Thread>();
+    private List<InputStream> streams = new CopyOnWriteArrayList<InputStream>();
+
+    private AtomicLong frameCount = new AtomicLong();
+
+    public IngestionHub(MeterListenerFactory meterListenerFactory) {
+        this.meterListenerFactory = meterListenerFactory;
+    }
+
+    public void init() throws IOException {
+        selector = Selector.open();
+        running = true;
+
+        selectorThread = new Thread("p1-hub-selector") {
+            @Override
+            public void run() {
+                select();
+            }
+        };
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+    }
+
+    public void destroy() throws InterruptedException {
+        running = false;
+
+        if (selector != null) {
+            selector.wakeup();
+            selectorThread.join();
+        }
+
+        for (InputStream stream : streams) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+                logger.error(e.toString(), e);
+            }
+        }
+
+        for (Thread streamThread : streamThreads) {
+            streamThread.join();
+        }
+    }
+
+    public long getReconnectDelay() {
+        return reconnectDelay;
+    }
+
+    /**
+     * Sets how long to wait before reconnecting a TCP source that failed or closed, in millis.
+     */
+    public void setReconnectDelay(long reconnectDelay) {
+        this.reconnectDelay = reconnectDelay;
+    }
+
+    /**
+     * Adds a meter reached over TCP. Can be called before or after {@link #init()}.
+     */
+    public void addTcpSource(String name, InetSocketAddress address) {
+        newTcpSources.add(new TcpSource(name, address, new TelegramFramer(new FrameRouter(this, name))));
+
+        if (selector != null) {
+            selector.wakeup();
+        }
+    }
+
+    /**
+     * Adds a blocking source, like the input stream of a serial port or an archive file, read by a thread of its own
+     * until the end of the stream. The stream is closed by {@link #destroy()}.
+     */
+    public void addStreamSource(final String name, final InputStream inputStream) {
+        final TelegramFramer telegramFramer = new TelegramFramer(new FrameRouter(this, name));
+
+        Thread streamThread = new Thread("p1-hub-" + name) {
+            @Override
+            public void run() {
+                try {
+                    while (running && telegramFramer.readFrom(inputStream) >= 0) {
+                        // Frames are handled while reading
+                    }
+                } catch (IOException e) {
+                    if (running) {
+                        logger.error("Source " + name + " failed: " + e, e);
+                    }
+                }
+            }
+        };
+        streamThread.setDaemon(true);
+
+        streams.add(inputStream);
+        streamThreads.add(streamThread);
+        streamThread.start();
+    }
+
+    /**
+     * Returns the listener of the meter, creating it on first use.
+     */
+    public SmartMeterListener getListener(String equipmentId) {
+        SmartMeterListener listener = listeners.get(equipmentId);
+
+        if (listener == null) {
+            listener = listeners.computeIfAbsent(equipmentId, id -> meterListenerFactory.create(id));
+        }
+
+        return listener;
+    }
+
+    public Set<String> getEquipmentIds() {
+        return listeners.keySet();
+    }
+
+    public long getFrameCount() {
+        return frameCount.get();
+    }
+
+    void frameRouted() {
+        frameCount.incrementAndGet();
+    }
+
+    private void select() {
+        ByteBuffer readBuffer = ByteBuffer.allocateDirect(READ_BUFFER_SIZE);
+
+        while (running) {
+            try {
+                connectSources();
+                selector.select(SELECT_TIMEOUT);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+
+                    TcpSource source = (TcpSource) key.attachment();
+
+                    try {
+                        if (key.isConnectable()) {
+                            source.finishConnect(key);
+                        } else if (key.isReadable() && !source.read(readBuffer)) {
+                            logger.info("Source " + source.getName() + " closed the connection");
+                            source.disconnect(System.currentTimeMillis() + reconnectDelay);
+                        }
+                    } catch (IOException e) {
+                        logger.error("Source " + source.getName() + " failed: " + e);
+                        readBuffer.clear();
+                        source.disconnect(System.currentTimeMillis() + reconnectDelay);
+                    }
+                }
+            } catch (IOException e) {
+                logger.error(e.toString(), e);
+            }
+        }
+
+        for (TcpSource source : tcpSources) {
+            source.disconnect(0);
+        }
+
+        try {
+            selector.close();
+        } catch (IOException e) {
+            logger.error(e.toString(), e);
+        }
+    }
+
+    private void connectSources() {
+        TcpSource newSource;
+
+        while ((newSource = newTcpSources.poll()) != null) {
+            tcpSources.add(newSource);
+        }
+
+        long now = System.currentTimeMillis();
+
+        for (TcpSource source : tcpSources) {
+            if (!source.isConnected() && source.getReconnectAt() <= now) {
+                try {
+                    source.connect(selector);
+                } catch (IOException e) {
+                    logger.error("Could not connect source " + source.getName() + ": " + e);
+                    source.disconnect(now + reconnectDelay);
+                }
+            }
+        }
+    }
+}
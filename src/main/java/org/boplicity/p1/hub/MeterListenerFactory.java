@@ -0,0 +1,12 @@
+package org.boplicity.p1.hub;
+
+import org.boplicity.p1.device.SmartMeterListener;
+
+public interface MeterListenerFactory {
+
+    /**
+     * Creates the listener for a meter seen for the first time. Frames without an equipment id are keyed by the
+     * name of their source instead.
+     */
+    SmartMeterListener create(String equipmentId);
+}
@@ -0,0 +1,98 @@
+package org.boplicity.p1.hub;
+
+import org.boplicity.p1.device.TelegramFramer;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+
+/**
+ * A meter reached over TCP, like a ser2net port or a P1 Ethernet dongle. Only used by the selector thread.
+ */
+class TcpSource {
+
+    private final String name;
+    private final InetSocketAddress address;
+    private final TelegramFramer telegramFramer;
+
+    private SocketChannel channel;
+    private long reconnectAt;
+
+    TcpSource(String name, InetSocketAddress address, TelegramFramer telegramFramer) {
+        this.name = name;
+        this.address = address;
+        this.telegramFramer = telegramFramer;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    TelegramFramer getTelegramFramer() {
+        return telegramFramer;
+    }
+
+    boolean isConnected() {
+        return channel != null;
+    }
+
+    long getReconnectAt() {
+        return reconnectAt;
+    }
+
+    void connect(Selector selector) throws IOException {
+        channel = SocketChannel.open();
+
+        try {
+            channel.configureBlocking(false);
+
+            if (channel.connect(address)) {
+                channel.register(selector, SelectionKey.OP_READ, this);
+            } else {
+                channel.register(selector, SelectionKey.OP_CONNECT, this);
+            }
+        } catch (IOException e) {
+            disconnect(0);
+            throw e;
+        }
+    }
+
+    void finishConnect(SelectionKey key) throws IOException {
+        if (channel.finishConnect()) {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    /**
+     * Reads what the socket has and frames it.
+     *
+     * @return false at the end of the stream
+     */
+    boolean read(ByteBuffer readBuffer) throws IOException {
+        int count;
+
+        while ((count = channel.read(readBuffer)) > 0) {
+            readBuffer.flip();
+            telegramFramer.feed(readBuffer);
+            readBuffer.clear();
+        }
+
+        return count == 0;
+    }
+
+    void disconnect(long reconnectAt) {
+        this.reconnectAt = reconnectAt;
+
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // Nothing left to do
+            }
+            channel = null;
+        }
+    }
+}
@@ -0,0 +1,537 @@
+package org.boplicity.p1.journal;
+
+import org.boplicity.p1.device.FrameHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.CRC32;
+
+/**
+ * Write-ahead journal of raw frames, so telegrams can be replayed after a crash or a parser change. Frames are
+ * appended to segment files of records with a length, a CRC32 and the time of reception, and every frame is written
+ * to the file as it arrives, so it survives a crash of the process.
+ * <p>
+ * To survive a power failure the file must also be synced, which takes milliseconds on an SD card. Syncs are grouped:
+ * a thread of the journal syncs every sync interval, or sooner once the given number of bytes is waiting, and one
+ * sync covers all frames written before it. {@link #getDurableSequence()} tells how far that is, and
+ * {@link #awaitDurable(long, long)} waits for it.
+ * <p>
+ * A new segment is started when one reaches its size; sealed segments older than the retention are deleted. Segment
+ * files are named after the sequence number of their first frame. Read the journal with a {@link JournalReader}.
+ */
+public class FrameJournal implements FrameHandler, Closeable {
+
+    public static final long DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    static final int MAGIC = 0x50314a31; // "P1J1"
+    static final int SEGMENT_HEADER_SIZE = 4;
+    static final int RECORD_HEADER_SIZE = 16;
+    static final int MAX_FRAME_SIZE = 1024 * 1024;
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final File directory;
+    private final long segmentSize;
+
+    private volatile long syncIntervalMillis = 200;
+    private volatile long syncBytes = 1024 * 1024;
+    private volatile long retentionMillis;
+
+    // Guarded by this
+    private final List<File> segments = new ArrayList<File>();
+    private FileChannel channel;
+    private long segmentBytes;
+    private long nextSequence;
+    private long unsyncedBytes;
+    private ByteBuffer recordBuffer = ByteBuffer.allocate(4096);
+    private CRC32 crc = new CRC32();
+    private long errorCount;
+
+    private final Object syncLock = new Object();
+    private volatile long durableSequence = -1;
+    private volatile long syncCount;
+
+    private Thread syncThread;
+    private volatile boolean closed;
+
+    public FrameJournal(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_SIZE);
+    }
+
+    /**
+     * Opens the journal, cutting off a record that was only partly written before a crash.
+     */
+    public FrameJournal(File directory, long segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        segments.addAll(listSegments(directory));
+
+        if (segments.isEmpty()) {
+            createSegment(0);
+        } else {
+            recover(segments.get(segments.size() - 1));
+        }
+
+        durableSequence = nextSequence - 1;
+
+        syncThread = new Thread("p1-journal-sync") {
+            @Override
+            public void run() {
+                syncPeriodically();
+            }
+        };
+        syncThread.setDaemon(true);
+        syncThread.start();
+
+        logger.info("Opened frame journal " + directory + " at sequence " + nextSequence);
+    }
+
+    /**
+     * Appends the remaining bytes of the frame, received now, without changing the buffer's position. Errors are
+     * logged and counted, so a failing disk doesn't stop the frames from being parsed. Frames larger than
+     * {@link #MAX_FRAME_SIZE} are skipped the same way, as the framer puts no limit on their size.
+     */
+    @Override
+    public void onFrame(ByteBuffer frame) {
+        if (frame.remaining() > MAX_FRAME_SIZE) {
+            synchronized (this) {
+                errorCount++;
+            }
+            logger.warn("Not journaling a frame of " + frame.remaining() + " bytes, the maximum is " + MAX_FRAME_SIZE);
+            return;
+        }
+
+        try {
+            append(frame, System.currentTimeMillis());
+        } catch (IOException e) {
+            synchronized (this) {
+                errorCount++;
+            }
+            logger.error(e.toString(), e);
+        }
+    }
+
+    /**
+     * Appends the remaining bytes of the frame without changing the buffer's position. An interrupt of the calling
+     * thread does not close the journal: the write is completed and the thread stays interrupted.
+     *
+     * @return the sequence number of the frame
+     * @throws IllegalArgumentException if the frame is larger than {@link #MAX_FRAME_SIZE}
+     */
+    public long append(ByteBuffer frame, long timestamp) throws IOException {
+        int length = frame.remaining();
+
+        if (length > MAX_FRAME_SIZE) {
+            throw new IllegalArgumentException("Frame of " + length + " bytes is too large");
+        }
+
+        long sequence;
+        boolean wakeSyncThread;
+
+        synchronized (this) {
+            if (closed) {
+                throw new IOException("Journal " + directory + " is closed");
+            }
+
+            int recordSize = RECORD_HEADER_SIZE + length;
+
+            if (segmentBytes + recordSize > segmentSize && segmentBytes > SEGMENT_HEADER_SIZE) {
+                roll();
+            }
+
+            if (recordBuffer.capacity() < recordSize) {
+                recordBuffer = ByteBuffer.allocate(Math.max(recordSize, recordBuffer.capacity() * 2));
+            }
+
+            ByteBuffer record = recordBuffer;
+            record.clear();
+            record.putInt(length).putInt(0).putLong(timestamp).put(frame.duplicate());
+
+            crc.reset();
+            crc.update(record.array(), 8, 8 + length);
+            record.putInt(4, (int) crc.getValue());
+            record.flip();
+            write(record);
+
+            segmentBytes += recordSize;
+            unsyncedBytes += recordSize;
+            sequence = nextSequence++;
+
+            wakeSyncThread = unsyncedBytes >= syncBytes;
+        }
+
+        if (syncIntervalMillis == 0) {
+            sync();
+        } else if (wakeSyncThread) {
+            LockSupport.unpark(syncThread);
+        }
+
+        return sequence;
+    }
+
+    public long append(byte[] frame, int offset, int length, long timestamp) throws IOException {
+        return append(ByteBuffer.wrap(frame, offset, length), timestamp);
+    }
+
+    /**
+     * Syncs every frame appended so far to the disk.
+     */
+    public void sync() throws IOException {
+        synchronized (syncLock) {
+            FileChannel target;
+            long sequence;
+
+            synchronized (this) {
+                target = channel;
+                sequence = nextSequence - 1;
+                unsyncedBytes = 0;
+            }
+
+            if (sequence <= durableSequence) {
+                return;
+            }
+
+            try {
+                target.force(false);
+            } catch (ClosedChannelException e) {
+                FileChannel current;
+
+                synchronized (this) {
+                    current = channel;
+                }
+
+                // Rolled over or closed meanwhile, which synced the segment, or reopened after an interrupt
+                if (current != target && current.isOpen()) {
+                    current.force(false);
+                }
+            }
+
+            durableSequence = sequence;
+            syncCount++;
+            syncLock.notifyAll();
+        }
+    }
+
+    /**
+     * Waits until the frame with the given sequence number is synced.
+     *
+     * @return false if that took longer than the timeout
+     */
+    public boolean awaitDurable(long sequence, long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+        synchronized (syncLock) {
+            while (durableSequence < sequence) {
+                long remaining = deadline - System.nanoTime();
+
+                if (remaining <= 0) {
+                    return false;
+                }
+
+                LockSupport.unpark(syncThread);
+                TimeUnit.NANOSECONDS.timedWait(syncLock, remaining);
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Deletes the sealed segments that were last written to before the retention, if one is set. Also done whenever
+     * a new segment is started.
+     */
+    public synchronized void applyRetention() {
+        if (retentionMillis <= 0) {
+            return;
+        }
+
+        long cutoff = System.currentTimeMillis() - retentionMillis;
+
+        for (Iterator<File> iterator = segments.iterator(); iterator.hasNext(); ) {
+            File segment = iterator.next();
+
+            // The last segment is the one being written
+            if (!iterator.hasNext() || segment.lastModified() >= cutoff) {
+                break;
+            }
+
+            delete(segment);
+            iterator.remove();
+        }
+    }
+
+    /**
+     * Deletes the sealed segments that only hold frames before the given sequence number, e.g. once they are stored
+     * downstream.
+     */
+    public synchronized void deleteBefore(long sequence) {
+        while (segments.size() > 1 && baseSequence(segments.get(1)) <= sequence) {
+            delete(segments.remove(0));
+        }
+    }
+
+    /**
+     * Returns a reader from the first frame with at least the given sequence number that is still in the journal.
+     */
+    public JournalReader reader(long fromSequence) {
+        List<File> snapshot;
+
+        synchronized (this) {
+            snapshot = new ArrayList<File>(segments);
+        }
+
+        return new JournalReader(snapshot, fromSequence);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+
+            closed = true;
+        }
+
+        LockSupport.unpark(syncThread);
+
+        try {
+            syncThread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        synchronized (this) {
+            channel.force(false);
+            channel.close();
+        }
+
+        synchronized (syncLock) {
+            durableSequence = nextSequence - 1;
+            syncLock.notifyAll();
+        }
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    public long getSyncIntervalMillis() {
+        return syncIntervalMillis;
+    }
+
+    /**
+     * Sets the longest time a written frame waits for a sync. 0 syncs after every frame, which is safest and slowest.
+     */
+    public void setSyncIntervalMillis(long syncIntervalMillis) {
+        this.syncIntervalMillis = syncIntervalMillis;
+        LockSupport.unpark(syncThread);
+    }
+
+    public long getSyncBytes() {
+        return syncBytes;
+    }
+
+    /**
+     * Sets the number of written bytes after which a sync starts without waiting for the interval.
+     */
+    public void setSyncBytes(long syncBytes) {
+        this.syncBytes = syncBytes;
+    }
+
+    public long getRetentionMillis() {
+        return retentionMillis;
+    }
+
+    /**
+     * Sets how long sealed segments are kept after they were last written to; 0, the default, keeps them forever.
+     */
+    public void setRetentionMillis(long retentionMillis) {
+        this.retentionMillis = retentionMillis;
+    }
+
+    /**
+     * Returns the sequence number of the last frame appended, or -1.
+     */
+    public synchronized long getLastSequence() {
+        return nextSequence - 1;
+    }
+
+    /**
+     * Returns the sequence number up to which all frames are synced, or -1.
+     */
+    public long getDurableSequence() {
+        return durableSequence;
+    }
+
+    public long getSyncCount() {
+        return syncCount;
+    }
+
+    public synchronized long getErrorCount() {
+        return errorCount;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    static long baseSequence(File segment) {
+        String name = segment.getName();
+
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    static List<File> listSegments(File directory) {
+        File[] files = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                String name = file.getName();
+                return file.isFile() && name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }
+        });
+
+        if (files == null) {
+            return new ArrayList<File>();
+        }
+
+        // Zero-padded, so the names sort by sequence
+        Arrays.sort(files);
+
+        return new ArrayList<File>(Arrays.asList(files));
+    }
+
+    private void syncPeriodically() {
+        while (!closed) {
+            long interval = syncIntervalMillis;
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(interval > 0 ? interval : 1000));
+
+            try {
+                sync();
+            } catch (IOException e) {
+                logger.error(e.toString(), e);
+            }
+        }
+    }
+
+    // Called with the lock held. The channel is closed for good when a thread writing to it is interrupted, as the
+    // reading thread is when its connection is shut down; it is then reopened and the record written again.
+    private void write(ByteBuffer record) throws IOException {
+        try {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        } catch (ClosedByInterruptException e) {
+            boolean interrupted = Thread.interrupted();
+
+            try {
+                File segment = segments.get(segments.size() - 1);
+                logger.warn("Reopening " + segment + " after an interrupt");
+
+                channel = new RandomAccessFile(segment, "rw").getChannel();
+                channel.truncate(segmentBytes);
+                channel.position(segmentBytes);
+
+                record.rewind();
+
+                while (record.hasRemaining()) {
+                    channel.write(record);
+                }
+            } finally {
+                if (interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+
+    // Called with the lock held
+    private void roll() throws IOException {
+        channel.force(false);
+        channel.close();
+
+        createSegment(nextSequence);
+        applyRetention();
+    }
+
+    private void createSegment(long baseSequence) throws IOException {
+        File segment = new File(directory, String.format("%s%020d%s", SEGMENT_PREFIX, baseSequence, SEGMENT_SUFFIX));
+
+        channel = new RandomAccessFile(segment, "rw").getChannel();
+        channel.truncate(0);
+
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(0, MAGIC);
+        channel.write(header, 0);
+        channel.position(SEGMENT_HEADER_SIZE);
+
+        segmentBytes = SEGMENT_HEADER_SIZE;
+        nextSequence = baseSequence;
+
+        if (segments.isEmpty() || !segments.get(segments.size() - 1).equals(segment)) {
+            segments.add(segment);
+        }
+    }
+
+    private void recover(File segment) throws IOException {
+        long validEnd;
+        long count = 0;
+
+        JournalReader reader = new JournalReader(Arrays.asList(segment), 0);
+
+        try {
+            while (reader.next()) {
+                count++;
+            }
+
+            validEnd = reader.getPosition();
+        } finally {
+            reader.close();
+        }
+
+        if (validEnd < SEGMENT_HEADER_SIZE) {
+            createSegment(baseSequence(segment));
+            return;
+        }
+
+        channel = new RandomAccessFile(segment, "rw").getChannel();
+
+        if (channel.size() > validEnd) {
+            logger.warn("Cutting off " + (channel.size() - validEnd) + " bytes of an incomplete record in " + segment);
+            channel.truncate(validEnd);
+        }
+
+        channel.position(validEnd);
+        segmentBytes = validEnd;
+        nextSequence = baseSequence(segment) + count;
+    }
+
+    private void delete(File segment) {
+        if (!segment.delete()) {
+            logger.warn("Could not delete " + segment);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package org.boplicity.p1.journal;
+
+import org.boplicity.p1.device.FrameHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Reads the frames of a {@link FrameJournal} in order, through a large buffer so the files are read sequentially in
+ * big chunks. Can read while the journal is written to; it stops at the last complete frame. A record with a wrong
+ * length or checksum ends its segment, and reading continues with the next one.
+ */
+public class JournalReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final List<File> segments;
+    private final long fromSequence;
+
+    private int segmentIndex;
+    private FileChannel channel;
+    private long sequence;
+    private long position;
+
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private CRC32 crc = new CRC32();
+
+    private ByteBuffer frame;
+    private long frameSequence;
+    private long frameTimestamp;
+    private long corruptCount;
+
+    JournalReader(List<File> segments, long fromSequence) {
+        this.segments = segments;
+        this.fromSequence = fromSequence;
+
+        // Start with the last segment that begins at or before the sequence number
+        for (int i = 1; i < segments.size() && FrameJournal.baseSequence(segments.get(i)) <= fromSequence; i++) {
+            segmentIndex = i;
+        }
+
+        buffer.flip();
+    }
+
+    /**
+     * Opens a reader on the journal in the directory, from the first frame with at least the given sequence number.
+     */
+    public static JournalReader open(File directory, long fromSequence) {
+        return new JournalReader(FrameJournal.listSegments(directory), fromSequence);
+    }
+
+    /**
+     * Moves to the next frame.
+     *
+     * @return false at the end of the journal
+     */
+    public boolean next() throws IOException {
+        while (true) {
+            if (channel == null && !openSegment()) {
+                return false;
+            }
+
+            if (readRecord()) {
+                if (frameSequence >= fromSequence) {
+                    return true;
+                }
+            } else {
+                closeSegment();
+                segmentIndex++;
+            }
+        }
+    }
+
+    /**
+     * Returns the bytes of the current frame. The buffer is only valid until the next call to {@link #next()}.
+     */
+    public ByteBuffer getFrame() {
+        return frame;
+    }
+
+    public long getSequence() {
+        return frameSequence;
+    }
+
+    /**
+     * Returns the time the current frame was received, in epoch millis.
+     */
+    public long getTimestamp() {
+        return frameTimestamp;
+    }
+
+    /**
+     * Returns the number of damaged records found, each of which cut off the rest of its segment.
+     */
+    public long getCorruptCount() {
+        return corruptCount;
+    }
+
+    /**
+     * Passes every remaining frame to the handler, e.g. a {@link org.boplicity.p1.device.TelegramFramer}'s handler or
+     * a listener's <code>put</code>.
+     *
+     * @return the number of frames passed
+     */
+    public long replay(FrameHandler frameHandler) throws IOException {
+        long count = 0;
+
+        while (next()) {
+            frameHandler.onFrame(frame);
+            count++;
+        }
+
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeSegment();
+        segmentIndex = segments.size();
+    }
+
+    /**
+     * Returns the offset in the current or last segment after its last complete record.
+     */
+    long getPosition() {
+        return position;
+    }
+
+    private boolean openSegment() throws IOException {
+        while (segmentIndex < segments.size()) {
+            File segment = segments.get(segmentIndex);
+
+            try {
+                channel = new RandomAccessFile(segment, "r").getChannel();
+            } catch (FileNotFoundException e) {
+                // Deleted by the retention meanwhile
+                segmentIndex++;
+                continue;
+            }
+
+            buffer.clear().flip();
+            position = 0;
+            sequence = FrameJournal.baseSequence(segment);
+
+            if (fill(FrameJournal.SEGMENT_HEADER_SIZE) && buffer.getInt() == FrameJournal.MAGIC) {
+                position = FrameJournal.SEGMENT_HEADER_SIZE;
+                return true;
+            }
+
+            logger.warn("Skipping " + segment + ", which is not a journal segment");
+            closeSegment();
+            segmentIndex++;
+        }
+
+        return false;
+    }
+
+    private boolean readRecord() throws IOException {
+        if (!fill(FrameJournal.RECORD_HEADER_SIZE)) {
+            return false;
+        }
+
+        int length = buffer.getInt(buffer.position());
+
+        if (length < 0 || length > FrameJournal.MAX_FRAME_SIZE) {
+            corrupt();
+            return false;
+        }
+
+        int recordSize = FrameJournal.RECORD_HEADER_SIZE + length;
+
+        if (!fill(recordSize)) {
+            return false;
+        }
+
+        int start = buffer.position();
+
+        crc.reset();
+        crc.update(buffer.array(), start + 8, 8 + length);
+
+        if ((int) crc.getValue() != buffer.getInt(start + 4)) {
+            corrupt();
+            return false;
+        }
+
+        frameTimestamp = buffer.getLong(start + 8);
+        frameSequence = sequence++;
+
+        frame = buffer.duplicate();
+        frame.limit(start + recordSize).position(start + FrameJournal.RECORD_HEADER_SIZE);
+
+        buffer.position(start + recordSize);
+        position += recordSize;
+
+        return true;
+    }
+
+    // Makes sure the buffer holds at least the given number of bytes, unless the segment ends before
+    private boolean fill(int count) throws IOException {
+        if (buffer.remaining() >= count) {
+            return true;
+        }
+
+        if (buffer.capacity() < count) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(count, buffer.capacity() * 2));
+            grown.put(buffer);
+            buffer = grown;
+        } else {
+            buffer.compact();
+        }
+
+        while (buffer.position() < count && channel.read(buffer) > 0) {
+            // Read until enough
+        }
+
+        buffer.flip();
+
+        return buffer.remaining() >= count;
+    }
+
+    private void corrupt() {
+        corruptCount++;
+
+        if (segmentIndex < segments.size() - 1) {
+            logger.warn("Damaged record at " + position + " of " + segments.get(segmentIndex));
+        }
+    }
+
+    private void closeSegment() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+}
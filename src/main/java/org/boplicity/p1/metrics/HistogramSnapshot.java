@@ -0,0 +1,84 @@
+package org.boplicity.p1.metrics;
+
+/**
+ * Immutable copy of a {@link LatencyHistogram}. Percentiles are the highest value of the bucket they fall in, but
+ * never more than the maximum recorded.
+ */
+public final class HistogramSnapshot {
+
+    private final long[] counts;
+    private final long count;
+    private final long sum;
+    private final long max;
+
+    HistogramSnapshot(long[] counts, long sum, long max) {
+        this.counts = counts;
+        this.sum = sum;
+        this.max = max;
+
+        long total = 0;
+
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+
+        this.count = total;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public long getMax() {
+        return max;
+    }
+
+    public double getMean() {
+        return count == 0 ? 0 : (double) sum / count;
+    }
+
+    public long getP50() {
+        return getValueAtPercentile(50);
+    }
+
+    public long getP90() {
+        return getValueAtPercentile(90);
+    }
+
+    public long getP99() {
+        return getValueAtPercentile(99);
+    }
+
+    public long getP999() {
+        return getValueAtPercentile(99.9);
+    }
+
+    /**
+     * Returns the value that the given percentage of the recorded values is at or below, or 0 if there are none.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (count == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+        long seen = 0;
+
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+
+            if (seen >= rank) {
+                return Math.min(LatencyHistogram.highestValue(i), max);
+            }
+        }
+
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return "HistogramSnapshot{count=" + count + ", mean=" + String.format("%.1f", getMean())
+                + ", p50=" + getP50() + ", p90=" + getP90() + ", p99=" + getP99() + ", p999=" + getP999()
+                + ", max=" + max + "}";
+    }
+}
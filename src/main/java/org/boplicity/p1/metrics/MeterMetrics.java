@@ -0,0 +1,285 @@
+package org.boplicity.p1.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counters and latency histograms for the path from the serial port to a published measurement. The framer, parser
+ * and listeners report to it through the hook methods below, which cost a striped increment when enabled and a
+ * volatile read when disabled. Read it with {@link #snapshot()} or over JMX after {@link #registerMBean(String)}.
+ * <p>
+ * Every {@link org.boplicity.p1.device.SmartMeterDevice} has an instance of its own, which it shares with its listener
+ * and registers under the name of its port, so the values of one meter are never mixed with those of another.
+ * <p>
+ * The publish latency runs from the final "!" of a frame to the publication of its measurement. Behind an
+ * {@link org.boplicity.p1.device.AsyncSmartMeterListener} it includes the time spent in the queue; when frames pile
+ * up it is measured from the most recent one.
+ */
+public class MeterMetrics implements MeterMetricsMXBean {
+
+    public static final String DOMAIN = "org.boplicity.p1";
+
+    /**
+     * Returned by {@link #startTimer()} while disabled, instead of 0, which System.nanoTime() can return as its origin
+     * is arbitrary. A start time that happens to equal this value only skips one sample.
+     */
+    public static final long NOT_TIMED = Long.MIN_VALUE;
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private volatile boolean enabled = true;
+
+    private final LongAdder frameCount = new LongAdder();
+    private final LongAdder crcFailureCount = new LongAdder();
+    private final LongAdder resyncCount = new LongAdder();
+    private final LongAdder bufferGrowthCount = new LongAdder();
+    private final LongAdder droppedFrameCount = new LongAdder();
+    private final LongAdder readErrorCount = new LongAdder();
+    private final LongAdder parseErrorCount = new LongAdder();
+    private final LongAdder unknownLineCount = new LongAdder();
+    private final LongAdder measurementCount = new LongAdder();
+
+    private final LatencyHistogram parseLatency = new LatencyHistogram();
+    private final LatencyHistogram publishLatency = new LatencyHistogram();
+
+    // The flag is set after the time is stored, so a reader that sees it sees the time
+    private volatile long frameFinishedNanos;
+    private volatile boolean frameFinished;
+
+    private MetricsSnapshot lastRateSnapshot;
+    private double lastRate;
+
+    private ObjectName objectName;
+
+    /**
+     * Registers with the platform MBean server as <code>org.boplicity.p1:type=MeterMetrics,name=...</code>. Does
+     * nothing if already registered.
+     */
+    public synchronized void registerMBean(String name) {
+        if (objectName != null) {
+            return;
+        }
+
+        try {
+            ObjectName candidate = new ObjectName(DOMAIN + ":type=MeterMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, candidate);
+            objectName = candidate;
+        } catch (JMException e) {
+            logger.error(e.toString(), e);
+        }
+    }
+
+    public synchronized void unregisterMBean() {
+        if (objectName == null) {
+            return;
+        }
+
+        MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+        try {
+            mBeanServer.unregisterMBean(objectName);
+        } catch (JMException e) {
+            logger.error(e.toString(), e);
+        }
+
+        objectName = null;
+    }
+
+    public synchronized ObjectName getObjectName() {
+        return objectName;
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Switches recording on or off. The values recorded so far are kept.
+     */
+    @Override
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void frameReceived() {
+        if (enabled) {
+            frameCount.increment();
+        }
+    }
+
+    /**
+     * Marks the arrival of the final "!" of a frame, where the publish latency starts.
+     */
+    public void frameFinished() {
+        if (enabled) {
+            frameFinishedNanos = System.nanoTime();
+            frameFinished = true;
+        }
+    }
+
+    public void crcFailure() {
+        if (enabled) {
+            crcFailureCount.increment();
+        }
+    }
+
+    public void resync() {
+        if (enabled) {
+            resyncCount.increment();
+        }
+    }
+
+    public void bufferGrown() {
+        if (enabled) {
+            bufferGrowthCount.increment();
+        }
+    }
+
+    public void framesDropped(long count) {
+        if (enabled && count > 0) {
+            droppedFrameCount.add(count);
+        }
+    }
+
+    public void readError() {
+        if (enabled) {
+            readErrorCount.increment();
+        }
+    }
+
+    public void parseError() {
+        if (enabled) {
+            parseErrorCount.increment();
+        }
+    }
+
+    public void unknownLine() {
+        if (enabled) {
+            unknownLineCount.increment();
+        }
+    }
+
+    /**
+     * Starts timing a parse.
+     *
+     * @return the start time to pass to {@link #parsed(long)}, or {@link #NOT_TIMED} if disabled
+     */
+    public long startTimer() {
+        return enabled ? System.nanoTime() : NOT_TIMED;
+    }
+
+    public void parsed(long startNanos) {
+        if (startNanos != NOT_TIMED && enabled) {
+            parseLatency.record(System.nanoTime() - startNanos);
+        }
+    }
+
+    public void measurementPublished() {
+        if (enabled) {
+            measurementCount.increment();
+
+            if (frameFinished) {
+                publishLatency.record(System.nanoTime() - frameFinishedNanos);
+            }
+        }
+    }
+
+    public MetricsSnapshot snapshot() {
+        return new MetricsSnapshot(System.nanoTime(), frameCount.sum(), crcFailureCount.sum(), resyncCount.sum(),
+                bufferGrowthCount.sum(), droppedFrameCount.sum(), readErrorCount.sum(), parseErrorCount.sum(),
+                unknownLineCount.sum(), measurementCount.sum(), parseLatency.snapshot(), publishLatency.snapshot());
+    }
+
+    @Override
+    public long getFrameCount() {
+        return frameCount.sum();
+    }
+
+    @Override
+    public synchronized double getFramesPerSecond() {
+        MetricsSnapshot current = snapshot();
+
+        if (lastRateSnapshot == null) {
+            lastRateSnapshot = current;
+        } else if (current.getNanoTime() - lastRateSnapshot.getNanoTime() >= TimeUnit.SECONDS.toNanos(1)) {
+            lastRate = current.framesPerSecond(lastRateSnapshot);
+            lastRateSnapshot = current;
+        }
+
+        return lastRate;
+    }
+
+    @Override
+    public long getCrcFailureCount() {
+        return crcFailureCount.sum();
+    }
+
+    @Override
+    public long getResyncCount() {
+        return resyncCount.sum();
+    }
+
+    @Override
+    public long getBufferGrowthCount() {
+        return bufferGrowthCount.sum();
+    }
+
+    @Override
+    public long getDroppedFrameCount() {
+        return droppedFrameCount.sum();
+    }
+
+    @Override
+    public long getReadErrorCount() {
+        return readErrorCount.sum();
+    }
+
+    @Override
+    public long getParseErrorCount() {
+        return parseErrorCount.sum();
+    }
+
+    @Override
+    public long getUnknownLineCount() {
+        return unknownLineCount.sum();
+    }
+
+    @Override
+    public long getMeasurementCount() {
+        return measurementCount.sum();
+    }
+
+    @Override
+    public HistogramSnapshot getParseLatency() {
+        return parseLatency.snapshot();
+    }
+
+    @Override
+    public HistogramSnapshot getPublishLatency() {
+        return publishLatency.snapshot();
+    }
+
+    @Override
+    public void reset() {
+        frameCount.reset();
+        crcFailureCount.reset();
+        resyncCount.reset();
+        bufferGrowthCount.reset();
+        droppedFrameCount.reset();
+        readErrorCount.reset();
+        parseErrorCount.reset();
+        unknownLineCount.reset();
+        measurementCount.reset();
+        parseLatency.reset();
+        publishLatency.reset();
+        frameFinished = false;
+    }
+}
@@ -0,0 +1,40 @@
+package org.boplicity.p1.metrics;
+
+/**
+ * Management interface of {@link MeterMetrics}. Latencies are in nanoseconds.
+ */
+public interface MeterMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getFrameCount();
+
+    /**
+     * Returns the frame rate since the previous call, measured over at least a second.
+     */
+    double getFramesPerSecond();
+
+    long getCrcFailureCount();
+
+    long getResyncCount();
+
+    long getBufferGrowthCount();
+
+    long getDroppedFrameCount();
+
+    long getReadErrorCount();
+
+    long getParseErrorCount();
+
+    long getUnknownLineCount();
+
+    long getMeasurementCount();
+
+    HistogramSnapshot getParseLatency();
+
+    HistogramSnapshot getPublishLatency();
+
+    void reset();
+}
@@ -0,0 +1,118 @@
+package org.boplicity.p1.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point-in-time copy of {@link MeterMetrics}. Rates follow from comparing two snapshots.
+ */
+public final class MetricsSnapshot {
+
+    private final long nanoTime;
+    private final long frameCount;
+    private final long crcFailureCount;
+    private final long resyncCount;
+    private final long bufferGrowthCount;
+    private final long droppedFrameCount;
+    private final long readErrorCount;
+    private final long parseErrorCount;
+    private final long unknownLineCount;
+    private final long measurementCount;
+    private final HistogramSnapshot parseLatency;
+    private final HistogramSnapshot publishLatency;
+
+    MetricsSnapshot(long nanoTime, long frameCount, long crcFailureCount, long resyncCount, long bufferGrowthCount,
+                    long droppedFrameCount, long readErrorCount, long parseErrorCount, long unknownLineCount,
+                    long measurementCount, HistogramSnapshot parseLatency, HistogramSnapshot publishLatency) {
+        this.nanoTime = nanoTime;
+        this.frameCount = frameCount;
+        this.crcFailureCount = crcFailureCount;
+        this.resyncCount = resyncCount;
+        this.bufferGrowthCount = bufferGrowthCount;
+        this.droppedFrameCount = droppedFrameCount;
+        this.readErrorCount = readErrorCount;
+        this.parseErrorCount = parseErrorCount;
+        this.unknownLineCount = unknownLineCount;
+        this.measurementCount = measurementCount;
+        this.parseLatency = parseLatency;
+        this.publishLatency = publishLatency;
+    }
+
+    /**
+     * Returns the frames per second between an earlier snapshot and this one.
+     */
+    public double framesPerSecond(MetricsSnapshot earlier) {
+        long elapsed = nanoTime - earlier.nanoTime;
+
+        if (elapsed <= 0) {
+            return 0;
+        }
+
+        return (double) (frameCount - earlier.frameCount) * TimeUnit.SECONDS.toNanos(1) / elapsed;
+    }
+
+    /**
+     * Returns the {@link System#nanoTime()} at which the snapshot was taken.
+     */
+    public long getNanoTime() {
+        return nanoTime;
+    }
+
+    public long getFrameCount() {
+        return frameCount;
+    }
+
+    public long getCrcFailureCount() {
+        return crcFailureCount;
+    }
+
+    public long getResyncCount() {
+        return resyncCount;
+    }
+
+    public long getBufferGrowthCount() {
+        return bufferGrowthCount;
+    }
+
+    public long getDroppedFrameCount() {
+        return droppedFrameCount;
+    }
+
+    public long getReadErrorCount() {
+        return readErrorCount;
+    }
+
+    public long getParseErrorCount() {
+        return parseErrorCount;
+    }
+
+    public long getUnknownLineCount() {
+        return unknownLineCount;
+    }
+
+    public long getMeasurementCount() {
+        return measurementCount;
+    }
+
+    public HistogramSnapshot getParseLatency() {
+        return parseLatency;
+    }
+
+    public HistogramSnapshot getPublishLatency() {
+        return publishLatency;
+    }
+
+    @Override
+    public String toString() {
+        return "MetricsSnapshot{frameCount=" + frameCount
+                + ", crcFailureCount=" + crcFailureCount
+                + ", resyncCount=" + resyncCount
+                + ", bufferGrowthCount=" + bufferGrowthCount
+                + ", droppedFrameCount=" + droppedFrameCount
+                + ", readErrorCount=" + readErrorCount
+                + ", parseErrorCount=" + parseErrorCount
+                + ", unknownLineCount=" + unknownLineCount
+                + ", measurementCount=" + measurementCount
+                + ", parseLatency=" + parseLatency
+                + ", publishLatency=" + publishLatency + "}";
+    }
+}
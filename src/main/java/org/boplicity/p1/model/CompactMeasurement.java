@@ -0,0 +1,233 @@
+package org.boplicity.p1.model;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+/**
+ * Immutable projection of a measurement onto its {@link MeasurementField}s and timestamp, holding them as scaled longs:
+ * energy in Wh, power in W, gas in dm3 and the timestamp in epoch millis. Missing values are {@link #NO_VALUE}.
+ * <p>
+ * The projection is lossy. The other values of a {@link SmartMeterMeasurement}, like the equipment id, the voltages
+ * and the meter timestamp, are left out, and the timestamp keeps the instant but not its time zone. Only the fields
+ * survive a round trip through {@link #of} and {@link #toSmartMeterMeasurement(DateTimeZone)} exactly, for values with
+ * up to {@link MeasurementField#getScale()} decimals.
+ */
+public final class CompactMeasurement implements Serializable {
+
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    private final long timestamp;
+    private final long electricityConsumptionLowRateWh;
+    private final long electricityConsumptionNormalRateWh;
+    private final long electricityProductionLowRateWh;
+    private final long electricityProductionNormalRateWh;
+    private final long currentPowerConsumptionW;
+    private final long currentPowerProductionW;
+    private final long gasConsumptionDm3;
+
+    public CompactMeasurement(long timestamp, long electricityConsumptionLowRateWh,
+                              long electricityConsumptionNormalRateWh, long electricityProductionLowRateWh,
+                              long electricityProductionNormalRateWh, long currentPowerConsumptionW,
+                              long currentPowerProductionW, long gasConsumptionDm3) {
+        this.timestamp = timestamp;
+        this.electricityConsumptionLowRateWh = electricityConsumptionLowRateWh;
+        this.electricityConsumptionNormalRateWh = electricityConsumptionNormalRateWh;
+        this.electricityProductionLowRateWh = electricityProductionLowRateWh;
+        this.electricityProductionNormalRateWh = electricityProductionNormalRateWh;
+        this.currentPowerConsumptionW = currentPowerConsumptionW;
+        this.currentPowerProductionW = currentPowerProductionW;
+        this.gasConsumptionDm3 = gasConsumptionDm3;
+    }
+
+    /**
+     * @throws ArithmeticException if a value has more decimals than its field's scale
+     */
+    public static CompactMeasurement of(SmartMeterMeasurement measurement) {
+        Builder builder = new Builder();
+
+        if (measurement.getTimestamp() != null) {
+            builder.timestamp(measurement.getTimestamp().getMillis());
+        }
+
+        for (MeasurementField field : MeasurementField.values()) {
+            BigDecimal value = field.get(measurement);
+
+            if (value != null) {
+                builder.set(field, value.movePointRight(field.getScale()).longValueExact());
+            }
+        }
+
+        return builder.build();
+    }
+
+    /**
+     * Returns a measurement with the fields and the timestamp in the default time zone; all other values are null.
+     */
+    public SmartMeterMeasurement toSmartMeterMeasurement() {
+        return toSmartMeterMeasurement(DateTimeZone.getDefault());
+    }
+
+    /**
+     * Returns a measurement with the fields and the timestamp in the given time zone, like the zone of the measurement
+     * this was made of; all other values are null.
+     */
+    public SmartMeterMeasurement toSmartMeterMeasurement(DateTimeZone zone) {
+        SmartMeterMeasurement measurement = new SmartMeterMeasurement();
+
+        if (timestamp != NO_VALUE) {
+            measurement.setTimestamp(new DateTime(timestamp, zone));
+        }
+
+        for (MeasurementField field : MeasurementField.values()) {
+            long value = get(field);
+
+            if (value != NO_VALUE) {
+                field.set(measurement, BigDecimal.valueOf(value, field.getScale()));
+            }
+        }
+
+        return measurement;
+    }
+
+    /**
+     * Returns the value of the field in units of 10^-scale, or {@link #NO_VALUE}.
+     */
+    public long get(MeasurementField field) {
+        switch (field) {
+            case ELECTRICITY_CONSUMPTION_LOW_RATE_KWH:
+                return electricityConsumptionLowRateWh;
+            case ELECTRICITY_CONSUMPTION_NORMAL_RATE_KWH:
+                return electricityConsumptionNormalRateWh;
+            case ELECTRICITY_PRODUCTION_LOW_RATE_KWH:
+                return electricityProductionLowRateWh;
+            case ELECTRICITY_PRODUCTION_NORMAL_RATE_KWH:
+                return electricityProductionNormalRateWh;
+            case CURRENT_POWER_CONSUMPTION_W:
+                return currentPowerConsumptionW;
+            case CURRENT_POWER_PRODUCTION_W:
+                return currentPowerProductionW;
+            case GAS_CONSUMPTION_M3:
+                return gasConsumptionDm3;
+            default:
+                throw new IllegalArgumentException(field.toString());
+        }
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public long getElectricityConsumptionLowRateWh() {
+        return electricityConsumptionLowRateWh;
+    }
+
+    public long getElectricityConsumptionNormalRateWh() {
+        return electricityConsumptionNormalRateWh;
+    }
+
+    public long getElectricityProductionLowRateWh() {
+        return electricityProductionLowRateWh;
+    }
+
+    public long getElectricityProductionNormalRateWh() {
+        return electricityProductionNormalRateWh;
+    }
+
+    public long getCurrentPowerConsumptionW() {
+        return currentPowerConsumptionW;
+    }
+
+    public long getCurrentPowerProductionW() {
+        return currentPowerProductionW;
+    }
+
+    public long getGasConsumptionDm3() {
+        return gasConsumptionDm3;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        CompactMeasurement that = (CompactMeasurement) o;
+
+        return timestamp == that.timestamp
+                && electricityConsumptionLowRateWh == that.electricityConsumptionLowRateWh
+                && electricityConsumptionNormalRateWh == that.electricityConsumptionNormalRateWh
+                && electricityProductionLowRateWh == that.electricityProductionLowRateWh
+                && electricityProductionNormalRateWh == that.electricityProductionNormalRateWh
+                && currentPowerConsumptionW == that.currentPowerConsumptionW
+                && currentPowerProductionW == that.currentPowerProductionW
+                && gasConsumptionDm3 == that.gasConsumptionDm3;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (timestamp ^ (timestamp >>> 32));
+        result = 31 * result + (int) (electricityConsumptionLowRateWh ^ (electricityConsumptionLowRateWh >>> 32));
+        result = 31 * result + (int) (electricityConsumptionNormalRateWh ^ (electricityConsumptionNormalRateWh >>> 32));
+        result = 31 * result + (int) (electricityProductionLowRateWh ^ (electricityProductionLowRateWh >>> 32));
+        result = 31 * result + (int) (electricityProductionNormalRateWh ^ (electricityProductionNormalRateWh >>> 32));
+        result = 31 * result + (int) (currentPowerConsumptionW ^ (currentPowerConsumptionW >>> 32));
+        result = 31 * result + (int) (currentPowerProductionW ^ (currentPowerProductionW >>> 32));
+        result = 31 * result + (int) (gasConsumptionDm3 ^ (gasConsumptionDm3 >>> 32));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactMeasurement{timestamp=" + timestamp
+                + ", electricityConsumptionLowRateWh=" + electricityConsumptionLowRateWh
+                + ", electricityConsumptionNormalRateWh=" + electricityConsumptionNormalRateWh
+                + ", electricityProductionLowRateWh=" + electricityProductionLowRateWh
+                + ", electricityProductionNormalRateWh=" + electricityProductionNormalRateWh
+                + ", currentPowerConsumptionW=" + currentPowerConsumptionW
+                + ", currentPowerProductionW=" + currentPowerProductionW
+                + ", gasConsumptionDm3=" + gasConsumptionDm3 + "}";
+    }
+
+    /**
+     * Collects values for a {@link CompactMeasurement}. Can be reused after {@link #reset()}.
+     */
+    public static class Builder {
+
+        private long timestamp;
+        private long[] values = new long[MeasurementField.values().length];
+
+        public Builder() {
+            reset();
+        }
+
+        public Builder reset() {
+            timestamp = NO_VALUE;
+            Arrays.fill(values, NO_VALUE);
+            return this;
+        }
+
+        public Builder timestamp(long timestamp) {
+            this.timestamp = timestamp;
+            return this;
+        }
+
+        public Builder set(MeasurementField field, long value) {
+            values[field.ordinal()] = value;
+            return this;
+        }
+
+        public CompactMeasurement build() {
+            return new CompactMeasurement(timestamp,
+                    values[MeasurementField.ELECTRICITY_CONSUMPTION_LOW_RATE_KWH.ordinal()],
+                    values[MeasurementField.ELECTRICITY_CONSUMPTION_NORMAL_RATE_KWH.ordinal()],
+                    values[MeasurementField.ELECTRICITY_PRODUCTION_LOW_RATE_KWH.ordinal()],
+                    values[MeasurementField.ELECTRICITY_PRODUCTION_NORMAL_RATE_KWH.ordinal()],
+                    values[MeasurementField.CURRENT_POWER_CONSUMPTION_W.ordinal()],
+                    values[MeasurementField.CURRENT_POWER_PRODUCTION_W.ordinal()],
+                    values[MeasurementField.GAS_CONSUMPTION_M3.ordinal()]);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.boplicity.p1.model;
+
+import java.math.BigDecimal;
+
+/**
+ * The numeric fields of a {@link SmartMeterMeasurement}, with direct accessors so callers can read and write them
+ * without going through reflection. The scale is the number of decimals kept by {@link CompactMeasurement}, which
+ * stores kWh as Wh and m3 as dm3.
+ */
+public enum MeasurementField {
+
+    ELECTRICITY_CONSUMPTION_LOW_RATE_KWH(3) {
+        @Override
+        public BigDecimal get(SmartMeterMeasurement measurement) {
+            return measurement.getElectricityConsumptionLowRateKwh();
+        }
+
+        @Override
+        public void set(SmartMeterMeasurement measurement, BigDecimal value) {
+            measurement.setElectricityConsumptionLowRateKwh(value);
+        }
+    },
+    ELECTRICITY_CONSUMPTION_NORMAL_RATE_KWH(3) {
+        @Override
+        public BigDecimal get(SmartMeterMeasurement measurement) {
+            return measurement.getElectricityConsumptionNormalRateKwh();
+        }
+
+        @Override
+        public void set(SmartMeterMeasurement measurement, BigDecimal value) {
+            measurement.setElectricityConsumptionNormalRateKwh(value);
+        }
+    },
+    ELECTRICITY_PRODUCTION_LOW_RATE_KWH(3) {
+        @Override
+        public BigDecimal get(SmartMeterMeasurement measurement) {
+            return measurement.getElectricityProductionLowRateKwh();
+        }
+
+        @Override
+        public void set(SmartMeterMeasurement measurement, BigDecimal value) {
+            measurement.setElectricityProductionLowRateKwh(value);
+        }
+    },
+    ELECTRICITY_PRODUCTION_NORMAL_RATE_KWH(3) {
+        @Override
+        public BigDecimal get(SmartMeterMeasurement measurement) {
+            return measurement.getElectricityProductionNormalRateKwh();
+        }
+
+        @Override
+        public void set(SmartMeterMeasurement measurement, BigDecimal value) {
+            measurement.setElectricityProductionNormalRateKwh(value);
+        }
+    },
+    CURRENT_POWER_CONSUMPTION_W(0) {
+        @Override
+        public BigDecimal get(SmartMeterMeasurement measurement) {
+            return measurement.getCurrentPowerConsumptionW();
+        }
+
+        @Override
+        public void set(SmartMeterMeasurement measurement, BigDecimal value) {
+            measurement.setCurrentPowerConsumptionW(value);
+        }
+    },
+    CURRENT_POWER_PRODUCTION_W(0) {
+        @Override
+        public BigDecimal get(SmartMeterMeasurement measurement) {
+            return measurement.getCurrentPowerProductionW();
+        }
+
+        @Override
+        public void set(SmartMeterMeasurement measurement, BigDecimal value) {
+            measurement.setCurrentPowerProductionW(value);
+        }
+    },
+    GAS_CONSUMPTION_M3(3) {
+        @Override
+        public BigDecimal get(SmartMeterMeasurement measurement) {
+            return measurement.getGasConsumptionM3();
+        }
+
+        @Override
+        public void set(SmartMeterMeasurement measurement, BigDecimal value) {
+            measurement.setGasConsumptionM3(value);
+        }
+    };
+
+    private final int scale;
+
+    MeasurementField(int scale) {
+        this.scale = scale;
+    }
+
+    public int getScale() {
+        return scale;
+    }
+
+    public abstract BigDecimal get(SmartMeterMeasurement measurement);
+
+    public abstract void set(SmartMeterMeasurement measurement, BigDecimal value);
+}
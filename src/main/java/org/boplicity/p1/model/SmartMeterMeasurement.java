@@ -4,7 +4,12 @@ import org.joda.time.DateTime;
 
 import java.io.Serializable;
 import java.math.BigDecimal;
+import java.util.Objects;
 
+/**
+ * The values of a telegram. Values the meter does not report are null; the timestamp is the time of reception, the
+ * meter timestamp the time reported by DSMR 4 and later meters.
+ */
 public class SmartMeterMeasurement implements Serializable {
 
     private DateTime timestamp;
@@ -15,6 +20,67 @@ public class SmartMeterMeasurement implements Serializable {
     private BigDecimal currentPowerConsumptionW;
     private BigDecimal currentPowerProductionW;
     private BigDecimal gasConsumptionM3;
+    private String equipmentId;
+    private DateTime meterTimestamp;
+    private Integer tariffIndicator;
+    private BigDecimal voltageL1V;
+    private BigDecimal voltageL2V;
+    private BigDecimal voltageL3V;
+    private BigDecimal currentL1A;
+    private BigDecimal currentL2A;
+    private BigDecimal currentL3A;
+    private BigDecimal powerConsumptionL1W;
+    private BigDecimal powerConsumptionL2W;
+    private BigDecimal powerConsumptionL3W;
+    private BigDecimal powerProductionL1W;
+    private BigDecimal powerProductionL2W;
+    private BigDecimal powerProductionL3W;
+    private Integer powerFailureCount;
+    private Integer longPowerFailureCount;
+    private Integer powerFailureLogCount;
+    private BigDecimal mbusChannel1Value;
+    private BigDecimal mbusChannel2Value;
+    private BigDecimal mbusChannel3Value;
+    private BigDecimal mbusChannel4Value;
+
+    public SmartMeterMeasurement() {
+    }
+
+    /**
+     * Copies all values of the other measurement through its getters; they are immutable, so the copies share them.
+     */
+    public SmartMeterMeasurement(SmartMeterMeasurement other) {
+        timestamp = other.getTimestamp();
+        electricityConsumptionLowRateKwh = other.getElectricityConsumptionLowRateKwh();
+        electricityConsumptionNormalRateKwh = other.getElectricityConsumptionNormalRateKwh();
+        electricityProductionLowRateKwh = other.getElectricityProductionLowRateKwh();
+        electricityProductionNormalRateKwh = other.getElectricityProductionNormalRateKwh();
+        currentPowerConsumptionW = other.getCurrentPowerConsumptionW();
+        currentPowerProductionW = other.getCurrentPowerProductionW();
+        gasConsumptionM3 = other.getGasConsumptionM3();
+        equipmentId = other.getEquipmentId();
+        meterTimestamp = other.getMeterTimestamp();
+        tariffIndicator = other.getTariffIndicator();
+        voltageL1V = other.getVoltageL1V();
+        voltageL2V = other.getVoltageL2V();
+        voltageL3V = other.getVoltageL3V();
+        currentL1A = other.getCurrentL1A();
+        currentL2A = other.getCurrentL2A();
+        currentL3A = other.getCurrentL3A();
+        powerConsumptionL1W = other.getPowerConsumptionL1W();
+        powerConsumptionL2W = other.getPowerConsumptionL2W();
+        powerConsumptionL3W = other.getPowerConsumptionL3W();
+        powerProductionL1W = other.getPowerProductionL1W();
+        powerProductionL2W = other.getPowerProductionL2W();
+        powerProductionL3W = other.getPowerProductionL3W();
+        powerFailureCount = other.getPowerFailureCount();
+        longPowerFailureCount = other.getLongPowerFailureCount();
+        powerFailureLogCount = other.getPowerFailureLogCount();
+        mbusChannel1Value = other.getMbusChannel1Value();
+        mbusChannel2Value = other.getMbusChannel2Value();
+        mbusChannel3Value = other.getMbusChannel3Value();
+        mbusChannel4Value = other.getMbusChannel4Value();
+    }
 
     public DateTime getTimestamp() {
         return timestamp;
@@ -80,6 +146,182 @@ public class SmartMeterMeasurement implements Serializable {
         this.gasConsumptionM3 = gasConsumptionM3;
     }
 
+    public String getEquipmentId() {
+        return equipmentId;
+    }
+
+    public void setEquipmentId(String equipmentId) {
+        this.equipmentId = equipmentId;
+    }
+
+    public DateTime getMeterTimestamp() {
+        return meterTimestamp;
+    }
+
+    public void setMeterTimestamp(DateTime meterTimestamp) {
+        this.meterTimestamp = meterTimestamp;
+    }
+
+    public Integer getTariffIndicator() {
+        return tariffIndicator;
+    }
+
+    public void setTariffIndicator(Integer tariffIndicator) {
+        this.tariffIndicator = tariffIndicator;
+    }
+
+    public BigDecimal getVoltageL1V() {
+        return voltageL1V;
+    }
+
+    public void setVoltageL1V(BigDecimal voltageL1V) {
+        this.voltageL1V = voltageL1V;
+    }
+
+    public BigDecimal getVoltageL2V() {
+        return voltageL2V;
+    }
+
+    public void setVoltageL2V(BigDecimal voltageL2V) {
+        this.voltageL2V = voltageL2V;
+    }
+
+    public BigDecimal getVoltageL3V() {
+        return voltageL3V;
+    }
+
+    public void setVoltageL3V(BigDecimal voltageL3V) {
+        this.voltageL3V = voltageL3V;
+    }
+
+    public BigDecimal getCurrentL1A() {
+        return currentL1A;
+    }
+
+    public void setCurrentL1A(BigDecimal currentL1A) {
+        this.currentL1A = currentL1A;
+    }
+
+    public BigDecimal getCurrentL2A() {
+        return currentL2A;
+    }
+
+    public void setCurrentL2A(BigDecimal currentL2A) {
+        this.currentL2A = currentL2A;
+    }
+
+    public BigDecimal getCurrentL3A() {
+        return currentL3A;
+    }
+
+    public void setCurrentL3A(BigDecimal currentL3A) {
+        this.currentL3A = currentL3A;
+    }
+
+    public BigDecimal getPowerConsumptionL1W() {
+        return powerConsumptionL1W;
+    }
+
+    public void setPowerConsumptionL1W(BigDecimal powerConsumptionL1W) {
+        this.powerConsumptionL1W = powerConsumptionL1W;
+    }
+
+    public BigDecimal getPowerConsumptionL2W() {
+        return powerConsumptionL2W;
+    }
+
+    public void setPowerConsumptionL2W(BigDecimal powerConsumptionL2W) {
+        this.powerConsumptionL2W = powerConsumptionL2W;
+    }
+
+    public BigDecimal getPowerConsumptionL3W() {
+        return powerConsumptionL3W;
+    }
+
+    public void setPowerConsumptionL3W(BigDecimal powerConsumptionL3W) {
+        this.powerConsumptionL3W = powerConsumptionL3W;
+    }
+
+    public BigDecimal getPowerProductionL1W() {
+        return powerProductionL1W;
+    }
+
+    public void setPowerProductionL1W(BigDecimal powerProductionL1W) {
+        this.powerProductionL1W = powerProductionL1W;
+    }
+
+    public BigDecimal getPowerProductionL2W() {
+        return powerProductionL2W;
+    }
+
+    public void setPowerProductionL2W(BigDecimal powerProductionL2W) {
+        this.powerProductionL2W = powerProductionL2W;
+    }
+
+    public BigDecimal getPowerProductionL3W() {
+        return powerProductionL3W;
+    }
+
+    public void setPowerProductionL3W(BigDecimal powerProductionL3W) {
+        this.powerProductionL3W = powerProductionL3W;
+    }
+
+    public Integer getPowerFailureCount() {
+        return powerFailureCount;
+    }
+
+    public void setPowerFailureCount(Integer powerFailureCount) {
+        this.powerFailureCount = powerFailureCount;
+    }
+
+    public Integer getLongPowerFailureCount() {
+        return longPowerFailureCount;
+    }
+
+    public void setLongPowerFailureCount(Integer longPowerFailureCount) {
+        this.longPowerFailureCount = longPowerFailureCount;
+    }
+
+    public Integer getPowerFailureLogCount() {
+        return powerFailureLogCount;
+    }
+
+    public void setPowerFailureLogCount(Integer powerFailureLogCount) {
+        this.powerFailureLogCount = powerFailureLogCount;
+    }
+
+    public BigDecimal getMbusChannel1Value() {
+        return mbusChannel1Value;
+    }
+
+    public void setMbusChannel1Value(BigDecimal mbusChannel1Value) {
+        this.mbusChannel1Value = mbusChannel1Value;
+    }
+
+    public BigDecimal getMbusChannel2Value() {
+        return mbusChannel2Value;
+    }
+
+    public void setMbusChannel2Value(BigDecimal mbusChannel2Value) {
+        this.mbusChannel2Value = mbusChannel2Value;
+    }
+
+    public BigDecimal getMbusChannel3Value() {
+        return mbusChannel3Value;
+    }
+
+    public void setMbusChannel3Value(BigDecimal mbusChannel3Value) {
+        this.mbusChannel3Value = mbusChannel3Value;
+    }
+
+    public BigDecimal getMbusChannel4Value() {
+        return mbusChannel4Value;
+    }
+
+    public void setMbusChannel4Value(BigDecimal mbusChannel4Value) {
+        this.mbusChannel4Value = mbusChannel4Value;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -87,35 +329,70 @@ public class SmartMeterMeasurement implements Serializable {
 
         SmartMeterMeasurement that = (SmartMeterMeasurement) o;
 
-        if (currentPowerConsumptionW != null ? !currentPowerConsumptionW.equals(that.currentPowerConsumptionW) : that.currentPowerConsumptionW != null)
-            return false;
-        if (currentPowerProductionW != null ? !currentPowerProductionW.equals(that.currentPowerProductionW) : that.currentPowerProductionW != null)
-            return false;
-        if (electricityConsumptionLowRateKwh != null ? !electricityConsumptionLowRateKwh.equals(that.electricityConsumptionLowRateKwh) : that.electricityConsumptionLowRateKwh != null)
-            return false;
-        if (electricityConsumptionNormalRateKwh != null ? !electricityConsumptionNormalRateKwh.equals(that.electricityConsumptionNormalRateKwh) : that.electricityConsumptionNormalRateKwh != null)
-            return false;
-        if (electricityProductionLowRateKwh != null ? !electricityProductionLowRateKwh.equals(that.electricityProductionLowRateKwh) : that.electricityProductionLowRateKwh != null)
-            return false;
-        if (electricityProductionNormalRateKwh != null ? !electricityProductionNormalRateKwh.equals(that.electricityProductionNormalRateKwh) : that.electricityProductionNormalRateKwh != null)
-            return false;
-        if (gasConsumptionM3 != null ? !gasConsumptionM3.equals(that.gasConsumptionM3) : that.gasConsumptionM3 != null)
-            return false;
-        if (timestamp != null ? !timestamp.equals(that.timestamp) : that.timestamp != null) return false;
-
-        return true;
+        return Objects.equals(timestamp, that.timestamp)
+                && Objects.equals(electricityConsumptionLowRateKwh, that.electricityConsumptionLowRateKwh)
+                && Objects.equals(electricityConsumptionNormalRateKwh, that.electricityConsumptionNormalRateKwh)
+                && Objects.equals(electricityProductionLowRateKwh, that.electricityProductionLowRateKwh)
+                && Objects.equals(electricityProductionNormalRateKwh, that.electricityProductionNormalRateKwh)
+                && Objects.equals(currentPowerConsumptionW, that.currentPowerConsumptionW)
+                && Objects.equals(currentPowerProductionW, that.currentPowerProductionW)
+                && Objects.equals(gasConsumptionM3, that.gasConsumptionM3)
+                && Objects.equals(equipmentId, that.equipmentId)
+                && Objects.equals(meterTimestamp, that.meterTimestamp)
+                && Objects.equals(tariffIndicator, that.tariffIndicator)
+                && Objects.equals(voltageL1V, that.voltageL1V)
+                && Objects.equals(voltageL2V, that.voltageL2V)
+                && Objects.equals(voltageL3V, that.voltageL3V)
+                && Objects.equals(currentL1A, that.currentL1A)
+                && Objects.equals(currentL2A, that.currentL2A)
+                && Objects.equals(currentL3A, that.currentL3A)
+                && Objects.equals(powerConsumptionL1W, that.powerConsumptionL1W)
+                && Objects.equals(powerConsumptionL2W, that.powerConsumptionL2W)
+                && Objects.equals(powerConsumptionL3W, that.powerConsumptionL3W)
+                && Objects.equals(powerProductionL1W, that.powerProductionL1W)
+                && Objects.equals(powerProductionL2W, that.powerProductionL2W)
+                && Objects.equals(powerProductionL3W, that.powerProductionL3W)
+                && Objects.equals(powerFailureCount, that.powerFailureCount)
+                && Objects.equals(longPowerFailureCount, that.longPowerFailureCount)
+                && Objects.equals(powerFailureLogCount, that.powerFailureLogCount)
+                && Objects.equals(mbusChannel1Value, that.mbusChannel1Value)
+                && Objects.equals(mbusChannel2Value, that.mbusChannel2Value)
+                && Objects.equals(mbusChannel3Value, that.mbusChannel3Value)
+                && Objects.equals(mbusChannel4Value, that.mbusChannel4Value);
     }
 
     @Override
     public int hashCode() {
-        int result = timestamp != null ? timestamp.hashCode() : 0;
-        result = 31 * result + (electricityConsumptionLowRateKwh != null ? electricityConsumptionLowRateKwh.hashCode() : 0);
-        result = 31 * result + (electricityConsumptionNormalRateKwh != null ? electricityConsumptionNormalRateKwh.hashCode() : 0);
-        result = 31 * result + (electricityProductionLowRateKwh != null ? electricityProductionLowRateKwh.hashCode() : 0);
-        result = 31 * result + (electricityProductionNormalRateKwh != null ? electricityProductionNormalRateKwh.hashCode() : 0);
-        result = 31 * result + (currentPowerConsumptionW != null ? currentPowerConsumptionW.hashCode() : 0);
-        result = 31 * result + (currentPowerProductionW != null ? currentPowerProductionW.hashCode() : 0);
-        result = 31 * result + (gasConsumptionM3 != null ? gasConsumptionM3.hashCode() : 0);
+        int result = Objects.hashCode(timestamp);
+        result = 31 * result + Objects.hashCode(electricityConsumptionLowRateKwh);
+        result = 31 * result + Objects.hashCode(electricityConsumptionNormalRateKwh);
+        result = 31 * result + Objects.hashCode(electricityProductionLowRateKwh);
+        result = 31 * result + Objects.hashCode(electricityProductionNormalRateKwh);
+        result = 31 * result + Objects.hashCode(currentPowerConsumptionW);
+        result = 31 * result + Objects.hashCode(currentPowerProductionW);
+        result = 31 * result + Objects.hashCode(gasConsumptionM3);
+        result = 31 * result + Objects.hashCode(equipmentId);
+        result = 31 * result + Objects.hashCode(meterTimestamp);
+        result = 31 * result + Objects.hashCode(tariffIndicator);
+        result = 31 * result + Objects.hashCode(voltageL1V);
+        result = 31 * result + Objects.hashCode(voltageL2V);
+        result = 31 * result + Objects.hashCode(voltageL3V);
+        result = 31 * result + Objects.hashCode(currentL1A);
+        result = 31 * result + Objects.hashCode(currentL2A);
+        result = 31 * result + Objects.hashCode(currentL3A);
+        result = 31 * result + Objects.hashCode(powerConsumptionL1W);
+        result = 31 * result + Objects.hashCode(powerConsumptionL2W);
+        result = 31 * result + Objects.hashCode(powerConsumptionL3W);
+        result = 31 * result + Objects.hashCode(powerProductionL1W);
+        result = 31 * result + Objects.hashCode(powerProductionL2W);
+        result = 31 * result + Objects.hashCode(powerProductionL3W);
+        result = 31 * result + Objects.hashCode(powerFailureCount);
+        result = 31 * result + Objects.hashCode(longPowerFailureCount);
+        result = 31 * result + Objects.hashCode(powerFailureLogCount);
+        result = 31 * result + Objects.hashCode(mbusChannel1Value);
+        result = 31 * result + Objects.hashCode(mbusChannel2Value);
+        result = 31 * result + Objects.hashCode(mbusChannel3Value);
+        result = 31 * result + Objects.hashCode(mbusChannel4Value);
         return result;
     }
 }
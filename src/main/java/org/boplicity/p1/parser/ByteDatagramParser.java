@@ -0,0 +1,238 @@
+package org.boplicity.p1.parser;
+
+import org.boplicity.p1.metrics.MeterMetrics;
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses a telegram in a single pass over its raw bytes. Produces the same measurement as {@link DatagramParser}
+ * but without intermediate strings. Lines are dispatched to the handlers of an {@link ObisRegistry}. Instances are
+ * stateless and can be shared between threads.
+ */
+public class ByteDatagramParser {
+
+    private static final byte CARRIAGE_RETURN = '\r';
+    private static final byte LINE_FEED = '\n';
+
+    static final byte VALUE_START = '(';
+    static final byte[] GAS_LINE_CONTINUATION = ascii("(m3)");
+
+    private ObisRegistry obisRegistry;
+    private MeterMetrics metrics;
+
+    public ByteDatagramParser() {
+        this(ObisRegistry.dsmr());
+    }
+
+    public ByteDatagramParser(ObisRegistry obisRegistry) {
+        this.obisRegistry = obisRegistry;
+    }
+
+    public ObisRegistry getObisRegistry() {
+        return obisRegistry;
+    }
+
+    public MeterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reports parse latencies and lines with an unknown code to the metrics; null to report nothing.
+     */
+    public void setMetrics(MeterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public SmartMeterMeasurement parse(byte[] datagram) {
+        return parse(datagram, 0, datagram.length);
+    }
+
+    /**
+     * Parses the remaining bytes of the buffer without changing its position.
+     */
+    public SmartMeterMeasurement parse(ByteBuffer datagram) {
+        if (datagram.hasArray()) {
+            return parse(datagram.array(), datagram.arrayOffset() + datagram.position(), datagram.remaining());
+        }
+
+        byte[] bytes = new byte[datagram.remaining()];
+        datagram.duplicate().get(bytes);
+
+        return parse(bytes);
+    }
+
+    public SmartMeterMeasurement parse(byte[] datagram, int offset, int length) {
+
+        MeterMetrics metrics = this.metrics;
+        long start = metrics == null ? MeterMetrics.NOT_TIMED : metrics.startTimer();
+
+        final SmartMeterMeasurement result = new SmartMeterMeasurement();
+
+        scan(datagram, offset, length, new ValueSink() {
+            @Override
+            public void accept(ObisHandler handler, byte[] bytes, int from, int end) {
+                handler.handle(bytes, from, end, result);
+            }
+        });
+
+        if (metrics != null) {
+            metrics.parsed(start);
+        }
+
+        return result;
+    }
+
+    /**
+     * Only finds the lines of the telegram, leaving the values to be decoded when they are read; see
+     * {@link LazySmartMeterMeasurement}. The bytes are copied, so the buffer can be reused afterwards.
+     */
+    public LazySmartMeterMeasurement parseLazy(byte[] datagram, int offset, int length) {
+
+        MeterMetrics metrics = this.metrics;
+        long start = metrics == null ? MeterMetrics.NOT_TIMED : metrics.startTimer();
+
+        LazySmartMeterMeasurement result = new LazySmartMeterMeasurement(obisRegistry, datagram, offset, length, this);
+
+        if (metrics != null) {
+            metrics.parsed(start);
+        }
+
+        return result;
+    }
+
+    public LazySmartMeterMeasurement parseLazy(ByteBuffer datagram) {
+        if (datagram.hasArray()) {
+            return parseLazy(datagram.array(), datagram.arrayOffset() + datagram.position(), datagram.remaining());
+        }
+
+        byte[] bytes = new byte[datagram.remaining()];
+        datagram.duplicate().get(bytes);
+
+        return parseLazy(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Parses straight into the compact representation, without creating any objects for the values. Only the codes of
+     * the {@link MeasurementField}s are decoded; the timestamp is left unset. Unlike {@link CompactMeasurement#of},
+     * which rejects them, values with more decimals than their field's scale are rounded half up.
+     */
+    public CompactMeasurement parseCompact(byte[] datagram, int offset, int length) {
+
+        final CompactMeasurement.Builder builder = new CompactMeasurement.Builder();
+
+        scan(datagram, offset, length, new ValueSink() {
+            @Override
+            public void accept(ObisHandler handler, byte[] bytes, int from, int end) {
+                if (handler instanceof FieldHandler) {
+                    FieldHandler fieldHandler = (FieldHandler) handler;
+                    MeasurementField field = fieldHandler.getField();
+                    long value = fieldHandler.decode(bytes, from, end);
+
+                    builder.set(field, value == FixedPoint.NONE
+                            ? CompactMeasurement.NO_VALUE : FixedPoint.rescale(value, field.getScale()));
+                }
+            }
+        });
+
+        return builder.build();
+    }
+
+    public CompactMeasurement parseCompact(ByteBuffer datagram) {
+        if (datagram.hasArray()) {
+            return parseCompact(datagram.array(), datagram.arrayOffset() + datagram.position(), datagram.remaining());
+        }
+
+        byte[] bytes = new byte[datagram.remaining()];
+        datagram.duplicate().get(bytes);
+
+        return parseCompact(bytes, 0, bytes.length);
+    }
+
+    private void scan(byte[] datagram, int offset, int length, ValueSink sink) {
+
+        int end = offset + length;
+        int lineStart = offset;
+
+        while (lineStart < end) {
+            int lineEnd = lineEnd(datagram, lineStart, end);
+            int valueStart = indexOf(datagram, lineStart, lineEnd, VALUE_START);
+
+            ObisHandler handler = valueStart < 0 ? null : obisRegistry.get(datagram, lineStart, valueStart);
+
+            if (handler != null) {
+                int valueEnd = trimCarriageReturns(datagram, lineStart, lineEnd);
+
+                // The DSMR 2.2 gas reading continues on the next line
+                while (lineEnd < end && endsWith(datagram, lineStart, valueEnd, GAS_LINE_CONTINUATION)) {
+                    lineEnd = lineEnd(datagram, lineEnd + 1, end);
+                    valueEnd = trimCarriageReturns(datagram, lineStart, lineEnd);
+                }
+
+                sink.accept(handler, datagram, valueStart, valueEnd);
+            } else if (valueStart >= 0 && metrics != null) {
+                metrics.unknownLine();
+            }
+
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    static int lineEnd(byte[] bytes, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (bytes[i] == LINE_FEED) {
+                return i;
+            }
+        }
+
+        return end;
+    }
+
+    static int trimCarriageReturns(byte[] bytes, int from, int end) {
+        while (end > from && bytes[end - 1] == CARRIAGE_RETURN) {
+            end--;
+        }
+
+        return end;
+    }
+
+    private static boolean startsWith(byte[] bytes, int from, int end, byte[] prefix) {
+        if (end - from < prefix.length) {
+            return false;
+        }
+
+        for (int i = 0; i < prefix.length; i++) {
+            if (bytes[from + i] != prefix[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    static boolean endsWith(byte[] bytes, int from, int end, byte[] suffix) {
+        return end - from >= suffix.length && startsWith(bytes, end - suffix.length, end, suffix);
+    }
+
+    static int indexOf(byte[] bytes, int from, int end, byte value) {
+        for (int i = from; i < end; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private interface ValueSink {
+
+        void accept(ObisHandler handler, byte[] bytes, int from, int end);
+    }
+}
@@ -1,30 +1,23 @@
 package org.boplicity.p1.parser;
 
-import org.apache.commons.beanutils.PropertyUtils;
 import org.boplicity.p1.model.SmartMeterMeasurement;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
 
-import java.lang.reflect.InvocationTargetException;
-import java.math.BigDecimal;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.charset.StandardCharsets;
 
 public class DatagramParser {
 
-    private Logger logger = LoggerFactory.getLogger(getClass());
-
-    private Map<String, PropertyAndPattern> mapping;
+    private ObisRegistry obisRegistry;
 
     public DatagramParser() {
-        mapping = new HashMap<String, PropertyAndPattern>();
-        mapping.put("1-0:1.8.1", new PropertyAndPattern(new KwhValueParser(), "electricityConsumptionLowRateKwh"));
-        mapping.put("1-0:1.8.2", new PropertyAndPattern(new KwhValueParser(), "electricityConsumptionNormalRateKwh"));
-        mapping.put("1-0:2.8.1", new PropertyAndPattern(new KwhValueParser(), "electricityProductionLowRateKwh"));
-        mapping.put("1-0:2.8.2", new PropertyAndPattern(new KwhValueParser(), "electricityProductionNormalRateKwh"));
-        mapping.put("1-0:1.7.0", new PropertyAndPattern(new WattValueParser(), "currentPowerConsumptionW"));
-        mapping.put("1-0:2.7.0", new PropertyAndPattern(new WattValueParser(), "currentPowerProductionW"));
-        mapping.put("0-1:24.3.0", new PropertyAndPattern(new CubicMetreValueParser(), "gasConsumptionM3"));
+        this(ObisRegistry.dsmr());
+    }
+
+    public DatagramParser(ObisRegistry obisRegistry) {
+        this.obisRegistry = obisRegistry;
+    }
+
+    public ObisRegistry getObisRegistry() {
+        return obisRegistry;
     }
 
     public SmartMeterMeasurement parse(String datagram) {
@@ -35,38 +28,18 @@ public class DatagramParser {
 
         for (String line : datagramLines) {
 
-            for (Map.Entry<String, PropertyAndPattern> entry : mapping.entrySet()) {
-                if (line.startsWith(entry.getKey())) {
-                    entry.getValue().extract(line, result);
-                    break;
+            int valueStart = line.indexOf('(');
+
+            if (valueStart > 0) {
+                byte[] bytes = line.getBytes(StandardCharsets.US_ASCII);
+                ObisHandler handler = obisRegistry.get(bytes, 0, valueStart);
+
+                if (handler != null) {
+                    handler.handle(bytes, valueStart, bytes.length, result);
                 }
             }
         }
 
         return result;
     }
-
-    private class PropertyAndPattern {
-
-        private ValueParser valueParser;
-        private String fieldName;
-
-        public PropertyAndPattern(ValueParser valueParser, String fieldName) {
-            this.valueParser = valueParser;
-            this.fieldName = fieldName;
-        }
-
-        public void extract(String line, SmartMeterMeasurement measurement) {
-            BigDecimal value = valueParser.parse(line);
-            try {
-                PropertyUtils.setProperty(measurement, fieldName, value);
-            } catch (IllegalAccessException e) {
-                logger.error(e.toString(), e);
-            } catch (InvocationTargetException e) {
-                logger.error(e.toString(), e);
-            } catch (NoSuchMethodException e) {
-                logger.error(e.toString(), e);
-            }
-        }
-    }
 }
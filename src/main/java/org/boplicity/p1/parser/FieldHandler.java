@@ -0,0 +1,32 @@
+package org.boplicity.p1.parser;
+
+import org.boplicity.p1.model.MeasurementField;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+
+/**
+ * Handles a line holding one of the {@link MeasurementField}s, so the value can also be decoded without creating a
+ * {@link SmartMeterMeasurement}.
+ */
+class FieldHandler implements ObisHandler {
+
+    private final MeasurementField field;
+    private final ValueType valueType;
+
+    FieldHandler(MeasurementField field, ValueType valueType) {
+        this.field = field;
+        this.valueType = valueType;
+    }
+
+    MeasurementField getField() {
+        return field;
+    }
+
+    long decode(byte[] bytes, int from, int end) {
+        return valueType.decode(bytes, from, end);
+    }
+
+    @Override
+    public void handle(byte[] bytes, int from, int end, SmartMeterMeasurement measurement) {
+        field.set(measurement, FixedPoint.toBigDecimal(decode(bytes, from, end)));
+    }
+}
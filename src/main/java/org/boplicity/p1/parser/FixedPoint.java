@@ -0,0 +1,154 @@
+package org.boplicity.p1.parser;
+
+import java.math.BigDecimal;
+
+/**
+ * Decodes decimal values like <code>00038.113</code> straight from telegram bytes. The unscaled value and the scale
+ * are packed into a single long so decoding does not allocate.
+ */
+final class FixedPoint {
+
+    static final long NONE = -1;
+
+    private static final int MAX_DIGITS = 16;
+
+    // Up to MAX_DIGITS, the largest scale a parsed number can have
+    private static final long[] POWERS_OF_TEN = new long[MAX_DIGITS + 1];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    private FixedPoint() {
+    }
+
+    static long pack(long unscaled, int scale) {
+        return unscaled << 8 | scale;
+    }
+
+    static long unscaled(long packed) {
+        return packed >>> 8;
+    }
+
+    static int scale(long packed) {
+        return (int) (packed & 0xff);
+    }
+
+    static BigDecimal toBigDecimal(long packed) {
+        return packed == NONE ? null : BigDecimal.valueOf(unscaled(packed), scale(packed));
+    }
+
+    static long powerOfTen(int exponent) {
+        return POWERS_OF_TEN[exponent];
+    }
+
+    /**
+     * Converts a packed kW value into W, keeping any digits beyond the third decimal as fraction.
+     */
+    static long kiloToUnit(long packed) {
+        if (packed == NONE) {
+            return NONE;
+        }
+
+        int scale = scale(packed);
+
+        if (scale <= 3) {
+            return pack(unscaled(packed) * POWERS_OF_TEN[3 - scale], 0);
+        }
+
+        return pack(unscaled(packed), scale - 3);
+    }
+
+    /**
+     * Converts a packed value to a long with the given number of decimals, rounding half up if it has more.
+     *
+     * @throws ArithmeticException if the value does not fit a long with that many decimals
+     */
+    static long rescale(long packed, int targetScale) {
+        long unscaled = unscaled(packed);
+        int scale = scale(packed);
+
+        if (scale <= targetScale) {
+            return Math.multiplyExact(unscaled, POWERS_OF_TEN[targetScale - scale]);
+        }
+
+        long divisor = POWERS_OF_TEN[scale - targetScale];
+
+        return (unscaled + divisor / 2) / divisor;
+    }
+
+    /**
+     * Finds the start of a <code>[0-9]*\.[0-9]*</code> number that ends right before <code>end</code>.
+     *
+     * @return the index of the first byte of the number, or -1 if there is none
+     */
+    static int numberStart(byte[] bytes, int from, int end) {
+        int position = end - 1;
+
+        while (position >= from && isDigit(bytes[position])) {
+            position--;
+        }
+
+        if (position < from || bytes[position] != '.') {
+            return -1;
+        }
+
+        position--;
+
+        while (position >= from && isDigit(bytes[position])) {
+            position--;
+        }
+
+        return position + 1;
+    }
+
+    /**
+     * Parses the number in <code>[start, end)</code> which consists of digits and at most one decimal point.
+     */
+    static long parse(byte[] bytes, int start, int end) {
+        long unscaled = 0;
+        int digits = 0;
+        int scale = 0;
+        boolean fraction = false;
+
+        for (int i = start; i < end; i++) {
+            byte b = bytes[i];
+
+            if (b == '.') {
+                if (fraction) {
+                    return NONE;
+                }
+                fraction = true;
+            } else if (isDigit(b)) {
+                if (++digits > MAX_DIGITS) {
+                    return NONE;
+                }
+                unscaled = unscaled * 10 + (b - '0');
+                if (fraction) {
+                    scale++;
+                }
+            } else {
+                return NONE;
+            }
+        }
+
+        return digits == 0 ? NONE : pack(unscaled, scale);
+    }
+
+    /**
+     * Parses the number that ends right before <code>end</code>.
+     */
+    static long parseBackwards(byte[] bytes, int from, int end) {
+        int start = numberStart(bytes, from, end);
+
+        return start < 0 ? NONE : parse(bytes, start, end);
+    }
+
+    static boolean isDigit(byte b) {
+        return b >= '0' && b <= '9';
+    }
+}
@@ -0,0 +1,291 @@
+package org.boplicity.p1.parser;
+
+import org.boplicity.p1.metrics.MeterMetrics;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+
+import java.nio.ByteBuffer;
+
+import static org.boplicity.p1.parser.ByteDatagramParser.GAS_LINE_CONTINUATION;
+import static org.boplicity.p1.parser.ByteDatagramParser.VALUE_START;
+import static org.boplicity.p1.parser.ByteDatagramParser.endsWith;
+import static org.boplicity.p1.parser.ByteDatagramParser.indexOf;
+import static org.boplicity.p1.parser.ByteDatagramParser.lineEnd;
+import static org.boplicity.p1.parser.ByteDatagramParser.trimCarriageReturns;
+
+/**
+ * Parses the telegrams of a single meter, decoding only the lines that changed since the previous telegram. The
+ * values decoded so far are kept in a template measurement; a line that is byte for byte the same as the line at the
+ * same position in the previous telegram is skipped without even looking up its code, so its value carries over.
+ * When a line holds another code than before, or the number of lines changed, the telegram is parsed from scratch.
+ * <p>
+ * This relies on every {@link ObisHandler} setting the same properties each time, derived only from its own line, as
+ * the handlers of {@link ObisRegistry#dsmr()} do. Instances keep state between calls and are not thread-safe.
+ */
+public class IncrementalDatagramParser {
+
+    private static final byte LINE_FEED = '\n';
+
+    private ObisRegistry obisRegistry;
+    private MeterMetrics metrics;
+
+    private SmartMeterMeasurement template;
+
+    // The bytes of a telegram and, per line, its start, its end including the line feed and the start of its value or
+    // -1, with the handler of its code
+    private byte[] previous = new byte[0];
+    private int[] previousLines = new int[0];
+    private ObisHandler[] previousHandlers = new ObisHandler[0];
+    private int previousLineCount;
+
+    private byte[] current = new byte[0];
+    private int[] currentLines = new int[0];
+    private ObisHandler[] currentHandlers = new ObisHandler[0];
+    private int currentLineCount;
+
+    private int unknownLineCount;
+
+    private long reusedLineCount;
+    private long decodedLineCount;
+    private long fullParseCount;
+
+    public IncrementalDatagramParser() {
+        this(ObisRegistry.dsmr());
+    }
+
+    public IncrementalDatagramParser(ObisRegistry obisRegistry) {
+        this.obisRegistry = obisRegistry;
+    }
+
+    public ObisRegistry getObisRegistry() {
+        return obisRegistry;
+    }
+
+    public MeterMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Reports parse latencies and lines with an unknown code to the metrics; null to report nothing.
+     */
+    public void setMetrics(MeterMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public SmartMeterMeasurement parse(byte[] datagram) {
+        return parse(datagram, 0, datagram.length);
+    }
+
+    /**
+     * Parses the remaining bytes of the buffer without changing its position.
+     */
+    public SmartMeterMeasurement parse(ByteBuffer datagram) {
+        if (datagram.hasArray()) {
+            return parse(datagram.array(), datagram.arrayOffset() + datagram.position(), datagram.remaining());
+        }
+
+        byte[] bytes = new byte[datagram.remaining()];
+        datagram.duplicate().get(bytes);
+
+        return parse(bytes);
+    }
+
+    /**
+     * Returns a new measurement with the values of the telegram. The bytes are copied, the caller may reuse them.
+     */
+    public SmartMeterMeasurement parse(byte[] datagram, int offset, int length) {
+        MeterMetrics metrics = this.metrics;
+        long start = metrics == null ? MeterMetrics.NOT_TIMED : metrics.startTimer();
+
+        if (current.length < length) {
+            current = new byte[Math.max(length, current.length * 2)];
+        }
+
+        System.arraycopy(datagram, offset, current, 0, length);
+
+        try {
+            if (template == null || !scan(length, false)) {
+                template = new SmartMeterMeasurement();
+                fullParseCount++;
+                scan(length, true);
+            }
+        } catch (RuntimeException e) {
+            // The template may hold part of this telegram now
+            reset();
+            throw e;
+        }
+
+        byte[] bytes = previous;
+        previous = current;
+        current = bytes;
+
+        int[] lines = previousLines;
+        previousLines = currentLines;
+        currentLines = lines;
+
+        ObisHandler[] handlers = previousHandlers;
+        previousHandlers = currentHandlers;
+        currentHandlers = handlers;
+
+        previousLineCount = currentLineCount;
+
+        if (metrics != null) {
+            for (int i = 0; i < unknownLineCount; i++) {
+                metrics.unknownLine();
+            }
+
+            metrics.parsed(start);
+        }
+
+        return new SmartMeterMeasurement(template);
+    }
+
+    /**
+     * Forgets the previous telegram, so the next one is parsed from scratch.
+     */
+    public void reset() {
+        template = null;
+        previousLineCount = 0;
+    }
+
+    /**
+     * Returns the number of lines that were the same as in the previous telegram and were not decoded again.
+     */
+    public long getReusedLineCount() {
+        return reusedLineCount;
+    }
+
+    public long getDecodedLineCount() {
+        return decodedLineCount;
+    }
+
+    /**
+     * Returns the number of telegrams that were parsed from scratch, including the first one.
+     */
+    public long getFullParseCount() {
+        return fullParseCount;
+    }
+
+    // Returns false if the lines do not line up with those of the previous telegram
+    private boolean scan(int end, boolean full) {
+        byte[] bytes = current;
+        int lineStart = 0;
+        int line = 0;
+
+        unknownLineCount = 0;
+
+        while (lineStart < end) {
+            if (!full && line < previousLineCount && sameLine(bytes, lineStart, end, line)) {
+                int shift = lineStart - previousLines[line * 3];
+                int lineEnd = previousLines[line * 3 + 1] + shift;
+                int valueStart = previousLines[line * 3 + 2];
+                ObisHandler handler = previousHandlers[line];
+
+                if (handler != null) {
+                    reusedLineCount++;
+                } else if (valueStart >= 0) {
+                    unknownLineCount++;
+                }
+
+                addLine(line++, lineStart, lineEnd, valueStart < 0 ? -1 : valueStart + shift, handler);
+                lineStart = lineEnd;
+                continue;
+            }
+
+            int lineEnd = lineEnd(bytes, lineStart, end);
+            int valueStart = indexOf(bytes, lineStart, lineEnd, VALUE_START);
+
+            ObisHandler handler = valueStart < 0 ? null : obisRegistry.get(bytes, lineStart, valueStart);
+
+            if (!full && (handler != null || line < previousLineCount && previousHandlers[line] != null)
+                    && !sameCode(bytes, lineStart, valueStart, line)) {
+                return false;
+            }
+
+            if (handler != null) {
+                int valueEnd = trimCarriageReturns(bytes, lineStart, lineEnd);
+
+                // The DSMR 2.2 gas reading continues on the next line
+                while (lineEnd < end && endsWith(bytes, lineStart, valueEnd, GAS_LINE_CONTINUATION)) {
+                    lineEnd = lineEnd(bytes, lineEnd + 1, end);
+                    valueEnd = trimCarriageReturns(bytes, lineStart, lineEnd);
+                }
+
+                handler.handle(bytes, valueStart, valueEnd, template);
+                decodedLineCount++;
+            } else if (valueStart >= 0) {
+                unknownLineCount++;
+            }
+
+            lineEnd = lineEnd < end ? lineEnd + 1 : end;
+
+            addLine(line++, lineStart, lineEnd, valueStart, handler);
+            lineStart = lineEnd;
+        }
+
+        currentLineCount = line;
+
+        return full || line == previousLineCount;
+    }
+
+    private void addLine(int line, int lineStart, int lineEnd, int valueStart, ObisHandler handler) {
+        if (currentHandlers.length <= line) {
+            int capacity = Math.max(16, currentHandlers.length * 2);
+
+            int[] lines = new int[capacity * 3];
+            System.arraycopy(currentLines, 0, lines, 0, currentLines.length);
+            currentLines = lines;
+
+            ObisHandler[] handlers = new ObisHandler[capacity];
+            System.arraycopy(currentHandlers, 0, handlers, 0, currentHandlers.length);
+            currentHandlers = handlers;
+        }
+
+        currentLines[line * 3] = lineStart;
+        currentLines[line * 3 + 1] = lineEnd;
+        currentLines[line * 3 + 2] = valueStart;
+        currentHandlers[line] = handler;
+    }
+
+    /**
+     * Tells whether the bytes from <code>lineStart</code> on are the same as the previous line, up to and including
+     * its line feed. A previous line that ended the telegram only matches a line that ends it as well, so continued
+     * gas lines end up split the same way.
+     */
+    private boolean sameLine(byte[] bytes, int lineStart, int end, int line) {
+        int previousStart = previousLines[line * 3];
+        int previousEnd = previousLines[line * 3 + 1];
+        int length = previousEnd - previousStart;
+
+        if (lineStart + length > end) {
+            return false;
+        }
+
+        if (previous[previousEnd - 1] != LINE_FEED && lineStart + length != end) {
+            return false;
+        }
+
+        return sameBytes(bytes, lineStart, previous, previousStart, length);
+    }
+
+    private boolean sameCode(byte[] bytes, int lineStart, int valueStart, int line) {
+        if (line >= previousLineCount || valueStart < 0 || previousLines[line * 3 + 2] < 0) {
+            return false;
+        }
+
+        int previousStart = previousLines[line * 3];
+        int length = valueStart - lineStart;
+
+        return previousLines[line * 3 + 2] - previousStart == length
+                && sameBytes(bytes, lineStart, previous, previousStart, length);
+    }
+
+    private static boolean sameBytes(byte[] bytes, int from, byte[] other, int otherFrom, int length) {
+        for (int i = 0; i < length; i++) {
+            if (bytes[from + i] != other[otherFrom + i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
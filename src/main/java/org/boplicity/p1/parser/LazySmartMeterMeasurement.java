@@ -0,0 +1,661 @@
+package org.boplicity.p1.parser;
+
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.joda.time.DateTime;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A measurement that keeps a copy of its telegram and decodes a value the first time its getter is called. Creating
+ * it only finds the lines of the DSMR codes, so a consumer that reads a single value doesn't pay for the decimals,
+ * timestamps and equipment ids it never looks at. Created by {@link ByteDatagramParser#parseLazy}.
+ * <p>
+ * Values are decoded by the handlers the registry has for the DSMR codes, which are assumed to set the values the
+ * {@link ObisRegistry#dsmr()} handlers set; lines with other registered codes are decoded right away. Setting a value
+ * replaces it like on any measurement. Instances can be read from several threads, and are serialized and copied as a
+ * plain {@link SmartMeterMeasurement} with all values decoded.
+ */
+public class LazySmartMeterMeasurement extends SmartMeterMeasurement {
+
+    private static final Map<String, Integer> SLOTS = new HashMap<String, Integer>();
+    private static final int[][] PROPERTY_SLOTS = new int[Property.values().length][];
+    private static final ObisTrie<Integer> SLOT_TRIE;
+
+    private static final long ALL_DECODED = -1L >>> (Long.SIZE - Property.values().length);
+
+    static {
+        // One bit of the decoded mask per property
+        if (Property.values().length > Long.SIZE) {
+            throw new IllegalStateException("More than " + Long.SIZE + " properties");
+        }
+
+        ObisTrie<Integer> trie = new ObisTrie<Integer>();
+
+        for (Property property : Property.values()) {
+            int[] slots = new int[property.codes.length];
+
+            for (int i = 0; i < slots.length; i++) {
+                Integer slot = SLOTS.get(property.codes[i]);
+
+                if (slot == null) {
+                    slot = SLOTS.size();
+                    SLOTS.put(property.codes[i], slot);
+                    trie = trie.with(property.codes[i], slot);
+                }
+
+                slots[i] = slot;
+            }
+
+            PROPERTY_SLOTS[property.ordinal()] = slots;
+        }
+
+        SLOT_TRIE = trie;
+    }
+
+    private final ObisRegistry obisRegistry;
+    private final byte[] telegram;
+
+    // Line start, value start and value end for every slot; a line start of -1 means the telegram lacks the code
+    private final int[] index;
+
+    // Values are marked decoded only after they are stored, as getters read them without the lock once marked
+    private volatile long decoded;
+    private long pending;
+    private boolean decoding;
+
+    LazySmartMeterMeasurement(ObisRegistry obisRegistry, byte[] datagram, int offset, int length,
+                              ByteDatagramParser parser) {
+        this.obisRegistry = obisRegistry;
+        this.telegram = Arrays.copyOfRange(datagram, offset, offset + length);
+        this.index = new int[SLOTS.size() * 3];
+
+        Arrays.fill(index, -1);
+        buildIndex(parser);
+    }
+
+    /**
+     * Returns the number of values decoded so far, by calling their getter or setting them.
+     */
+    public int getDecodedCount() {
+        return Long.bitCount(decoded);
+    }
+
+    /**
+     * Decodes every value that was not decoded yet.
+     */
+    public void decodeAll() {
+        if (decoded != ALL_DECODED) {
+            for (Property property : Property.values()) {
+                decode(property);
+            }
+        }
+    }
+
+    private void buildIndex(ByteDatagramParser parser) {
+        byte[] bytes = telegram;
+        int end = bytes.length;
+        int lineStart = 0;
+
+        while (lineStart < end) {
+            int lineEnd = ByteDatagramParser.lineEnd(bytes, lineStart, end);
+            int valueStart = ByteDatagramParser.indexOf(bytes, lineStart, lineEnd, ByteDatagramParser.VALUE_START);
+
+            if (valueStart >= 0) {
+                int valueEnd = ByteDatagramParser.trimCarriageReturns(bytes, lineStart, lineEnd);
+
+                // The DSMR 2.2 gas reading continues on the next line
+                while (lineEnd < end && ByteDatagramParser.endsWith(bytes, lineStart, valueEnd,
+                        ByteDatagramParser.GAS_LINE_CONTINUATION)) {
+                    lineEnd = ByteDatagramParser.lineEnd(bytes, lineEnd + 1, end);
+                    valueEnd = ByteDatagramParser.trimCarriageReturns(bytes, lineStart, lineEnd);
+                }
+
+                Integer slot = SLOT_TRIE.get(bytes, lineStart, valueStart);
+
+                if (slot != null) {
+                    index[slot * 3] = lineStart;
+                    index[slot * 3 + 1] = valueStart;
+                    index[slot * 3 + 2] = valueEnd;
+                } else {
+                    ObisHandler handler = obisRegistry.get(bytes, lineStart, valueStart);
+
+                    if (handler != null) {
+                        handler.handle(bytes, valueStart, valueEnd, this);
+                    } else if (parser.getMetrics() != null) {
+                        parser.getMetrics().unknownLine();
+                    }
+                }
+            }
+
+            lineStart = lineEnd + 1;
+        }
+    }
+
+    private void decode(Property property) {
+        if ((decoded & 1L << property.ordinal()) == 0) {
+            decodeSlowly(property);
+        }
+    }
+
+    private synchronized void decodeSlowly(Property property) {
+        long bit = 1L << property.ordinal();
+
+        if ((decoded & bit) != 0) {
+            return;
+        }
+
+        decoding = true;
+
+        try {
+            for (int slot : PROPERTY_SLOTS[property.ordinal()]) {
+                int lineStart = index[slot * 3];
+
+                if (lineStart >= 0) {
+                    int valueStart = index[slot * 3 + 1];
+                    ObisHandler handler = obisRegistry.get(telegram, lineStart, valueStart);
+
+                    if (handler != null) {
+                        handler.handle(telegram, valueStart, index[slot * 3 + 2], this);
+                    }
+                }
+            }
+        } finally {
+            decoding = false;
+        }
+
+        decoded |= pending | bit;
+        pending = 0;
+    }
+
+    // Called by the setters, under the lock. A handler that sets more than one value must not overwrite a value that
+    // was set or decoded before.
+    private boolean accept(Property property) {
+        long bit = 1L << property.ordinal();
+
+        if (decoding && ((decoded | pending) & bit) != 0) {
+            return false;
+        }
+
+        pending |= bit;
+
+        return true;
+    }
+
+    // Called by the setters after storing the value; while decoding, decodeSlowly publishes all at once
+    private void published() {
+        if (!decoding) {
+            decoded |= pending;
+            pending = 0;
+        }
+    }
+
+    @Override
+    public BigDecimal getElectricityConsumptionLowRateKwh() {
+        decode(Property.ELECTRICITY_CONSUMPTION_LOW_RATE_KWH);
+        return super.getElectricityConsumptionLowRateKwh();
+    }
+
+    @Override
+    public synchronized void setElectricityConsumptionLowRateKwh(BigDecimal electricityConsumptionLowRateKwh) {
+        if (accept(Property.ELECTRICITY_CONSUMPTION_LOW_RATE_KWH)) {
+            super.setElectricityConsumptionLowRateKwh(electricityConsumptionLowRateKwh);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getElectricityConsumptionNormalRateKwh() {
+        decode(Property.ELECTRICITY_CONSUMPTION_NORMAL_RATE_KWH);
+        return super.getElectricityConsumptionNormalRateKwh();
+    }
+
+    @Override
+    public synchronized void setElectricityConsumptionNormalRateKwh(BigDecimal electricityConsumptionNormalRateKwh) {
+        if (accept(Property.ELECTRICITY_CONSUMPTION_NORMAL_RATE_KWH)) {
+            super.setElectricityConsumptionNormalRateKwh(electricityConsumptionNormalRateKwh);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getElectricityProductionLowRateKwh() {
+        decode(Property.ELECTRICITY_PRODUCTION_LOW_RATE_KWH);
+        return super.getElectricityProductionLowRateKwh();
+    }
+
+    @Override
+    public synchronized void setElectricityProductionLowRateKwh(BigDecimal electricityProductionLowRateKwh) {
+        if (accept(Property.ELECTRICITY_PRODUCTION_LOW_RATE_KWH)) {
+            super.setElectricityProductionLowRateKwh(electricityProductionLowRateKwh);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getElectricityProductionNormalRateKwh() {
+        decode(Property.ELECTRICITY_PRODUCTION_NORMAL_RATE_KWH);
+        return super.getElectricityProductionNormalRateKwh();
+    }
+
+    @Override
+    public synchronized void setElectricityProductionNormalRateKwh(BigDecimal electricityProductionNormalRateKwh) {
+        if (accept(Property.ELECTRICITY_PRODUCTION_NORMAL_RATE_KWH)) {
+            super.setElectricityProductionNormalRateKwh(electricityProductionNormalRateKwh);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getCurrentPowerConsumptionW() {
+        decode(Property.CURRENT_POWER_CONSUMPTION_W);
+        return super.getCurrentPowerConsumptionW();
+    }
+
+    @Override
+    public synchronized void setCurrentPowerConsumptionW(BigDecimal currentPowerConsumptionW) {
+        if (accept(Property.CURRENT_POWER_CONSUMPTION_W)) {
+            super.setCurrentPowerConsumptionW(currentPowerConsumptionW);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getCurrentPowerProductionW() {
+        decode(Property.CURRENT_POWER_PRODUCTION_W);
+        return super.getCurrentPowerProductionW();
+    }
+
+    @Override
+    public synchronized void setCurrentPowerProductionW(BigDecimal currentPowerProductionW) {
+        if (accept(Property.CURRENT_POWER_PRODUCTION_W)) {
+            super.setCurrentPowerProductionW(currentPowerProductionW);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getGasConsumptionM3() {
+        decode(Property.GAS_CONSUMPTION_M3);
+        return super.getGasConsumptionM3();
+    }
+
+    @Override
+    public synchronized void setGasConsumptionM3(BigDecimal gasConsumptionM3) {
+        if (accept(Property.GAS_CONSUMPTION_M3)) {
+            super.setGasConsumptionM3(gasConsumptionM3);
+            published();
+        }
+    }
+
+    @Override
+    public String getEquipmentId() {
+        decode(Property.EQUIPMENT_ID);
+        return super.getEquipmentId();
+    }
+
+    @Override
+    public synchronized void setEquipmentId(String equipmentId) {
+        if (accept(Property.EQUIPMENT_ID)) {
+            super.setEquipmentId(equipmentId);
+            published();
+        }
+    }
+
+    @Override
+    public DateTime getMeterTimestamp() {
+        decode(Property.METER_TIMESTAMP);
+        return super.getMeterTimestamp();
+    }
+
+    @Override
+    public synchronized void setMeterTimestamp(DateTime meterTimestamp) {
+        if (accept(Property.METER_TIMESTAMP)) {
+            super.setMeterTimestamp(meterTimestamp);
+            published();
+        }
+    }
+
+    @Override
+    public Integer getTariffIndicator() {
+        decode(Property.TARIFF_INDICATOR);
+        return super.getTariffIndicator();
+    }
+
+    @Override
+    public synchronized void setTariffIndicator(Integer tariffIndicator) {
+        if (accept(Property.TARIFF_INDICATOR)) {
+            super.setTariffIndicator(tariffIndicator);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getVoltageL1V() {
+        decode(Property.VOLTAGE_L1_V);
+        return super.getVoltageL1V();
+    }
+
+    @Override
+    public synchronized void setVoltageL1V(BigDecimal voltageL1V) {
+        if (accept(Property.VOLTAGE_L1_V)) {
+            super.setVoltageL1V(voltageL1V);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getVoltageL2V() {
+        decode(Property.VOLTAGE_L2_V);
+        return super.getVoltageL2V();
+    }
+
+    @Override
+    public synchronized void setVoltageL2V(BigDecimal voltageL2V) {
+        if (accept(Property.VOLTAGE_L2_V)) {
+            super.setVoltageL2V(voltageL2V);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getVoltageL3V() {
+        decode(Property.VOLTAGE_L3_V);
+        return super.getVoltageL3V();
+    }
+
+    @Override
+    public synchronized void setVoltageL3V(BigDecimal voltageL3V) {
+        if (accept(Property.VOLTAGE_L3_V)) {
+            super.setVoltageL3V(voltageL3V);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getCurrentL1A() {
+        decode(Property.CURRENT_L1_A);
+        return super.getCurrentL1A();
+    }
+
+    @Override
+    public synchronized void setCurrentL1A(BigDecimal currentL1A) {
+        if (accept(Property.CURRENT_L1_A)) {
+            super.setCurrentL1A(currentL1A);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getCurrentL2A() {
+        decode(Property.CURRENT_L2_A);
+        return super.getCurrentL2A();
+    }
+
+    @Override
+    public synchronized void setCurrentL2A(BigDecimal currentL2A) {
+        if (accept(Property.CURRENT_L2_A)) {
+            super.setCurrentL2A(currentL2A);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getCurrentL3A() {
+        decode(Property.CURRENT_L3_A);
+        return super.getCurrentL3A();
+    }
+
+    @Override
+    public synchronized void setCurrentL3A(BigDecimal currentL3A) {
+        if (accept(Property.CURRENT_L3_A)) {
+            super.setCurrentL3A(currentL3A);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getPowerConsumptionL1W() {
+        decode(Property.POWER_CONSUMPTION_L1_W);
+        return super.getPowerConsumptionL1W();
+    }
+
+    @Override
+    public synchronized void setPowerConsumptionL1W(BigDecimal powerConsumptionL1W) {
+        if (accept(Property.POWER_CONSUMPTION_L1_W)) {
+            super.setPowerConsumptionL1W(powerConsumptionL1W);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getPowerConsumptionL2W() {
+        decode(Property.POWER_CONSUMPTION_L2_W);
+        return super.getPowerConsumptionL2W();
+    }
+
+    @Override
+    public synchronized void setPowerConsumptionL2W(BigDecimal powerConsumptionL2W) {
+        if (accept(Property.POWER_CONSUMPTION_L2_W)) {
+            super.setPowerConsumptionL2W(powerConsumptionL2W);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getPowerConsumptionL3W() {
+        decode(Property.POWER_CONSUMPTION_L3_W);
+        return super.getPowerConsumptionL3W();
+    }
+
+    @Override
+    public synchronized void setPowerConsumptionL3W(BigDecimal powerConsumptionL3W) {
+        if (accept(Property.POWER_CONSUMPTION_L3_W)) {
+            super.setPowerConsumptionL3W(powerConsumptionL3W);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getPowerProductionL1W() {
+        decode(Property.POWER_PRODUCTION_L1_W);
+        return super.getPowerProductionL1W();
+    }
+
+    @Override
+    public synchronized void setPowerProductionL1W(BigDecimal powerProductionL1W) {
+        if (accept(Property.POWER_PRODUCTION_L1_W)) {
+            super.setPowerProductionL1W(powerProductionL1W);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getPowerProductionL2W() {
+        decode(Property.POWER_PRODUCTION_L2_W);
+        return super.getPowerProductionL2W();
+    }
+
+    @Override
+    public synchronized void setPowerProductionL2W(BigDecimal powerProductionL2W) {
+        if (accept(Property.POWER_PRODUCTION_L2_W)) {
+            super.setPowerProductionL2W(powerProductionL2W);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getPowerProductionL3W() {
+        decode(Property.POWER_PRODUCTION_L3_W);
+        return super.getPowerProductionL3W();
+    }
+
+    @Override
+    public synchronized void setPowerProductionL3W(BigDecimal powerProductionL3W) {
+        if (accept(Property.POWER_PRODUCTION_L3_W)) {
+            super.setPowerProductionL3W(powerProductionL3W);
+            published();
+        }
+    }
+
+    @Override
+    public Integer getPowerFailureCount() {
+        decode(Property.POWER_FAILURE_COUNT);
+        return super.getPowerFailureCount();
+    }
+
+    @Override
+    public synchronized void setPowerFailureCount(Integer powerFailureCount) {
+        if (accept(Property.POWER_FAILURE_COUNT)) {
+            super.setPowerFailureCount(powerFailureCount);
+            published();
+        }
+    }
+
+    @Override
+    public Integer getLongPowerFailureCount() {
+        decode(Property.LONG_POWER_FAILURE_COUNT);
+        return super.getLongPowerFailureCount();
+    }
+
+    @Override
+    public synchronized void setLongPowerFailureCount(Integer longPowerFailureCount) {
+        if (accept(Property.LONG_POWER_FAILURE_COUNT)) {
+            super.setLongPowerFailureCount(longPowerFailureCount);
+            published();
+        }
+    }
+
+    @Override
+    public Integer getPowerFailureLogCount() {
+        decode(Property.POWER_FAILURE_LOG_COUNT);
+        return super.getPowerFailureLogCount();
+    }
+
+    @Override
+    public synchronized void setPowerFailureLogCount(Integer powerFailureLogCount) {
+        if (accept(Property.POWER_FAILURE_LOG_COUNT)) {
+            super.setPowerFailureLogCount(powerFailureLogCount);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getMbusChannel1Value() {
+        decode(Property.MBUS_CHANNEL_1_VALUE);
+        return super.getMbusChannel1Value();
+    }
+
+    @Override
+    public synchronized void setMbusChannel1Value(BigDecimal mbusChannel1Value) {
+        if (accept(Property.MBUS_CHANNEL_1_VALUE)) {
+            super.setMbusChannel1Value(mbusChannel1Value);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getMbusChannel2Value() {
+        decode(Property.MBUS_CHANNEL_2_VALUE);
+        return super.getMbusChannel2Value();
+    }
+
+    @Override
+    public synchronized void setMbusChannel2Value(BigDecimal mbusChannel2Value) {
+        if (accept(Property.MBUS_CHANNEL_2_VALUE)) {
+            super.setMbusChannel2Value(mbusChannel2Value);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getMbusChannel3Value() {
+        decode(Property.MBUS_CHANNEL_3_VALUE);
+        return super.getMbusChannel3Value();
+    }
+
+    @Override
+    public synchronized void setMbusChannel3Value(BigDecimal mbusChannel3Value) {
+        if (accept(Property.MBUS_CHANNEL_3_VALUE)) {
+            super.setMbusChannel3Value(mbusChannel3Value);
+            published();
+        }
+    }
+
+    @Override
+    public BigDecimal getMbusChannel4Value() {
+        decode(Property.MBUS_CHANNEL_4_VALUE);
+        return super.getMbusChannel4Value();
+    }
+
+    @Override
+    public synchronized void setMbusChannel4Value(BigDecimal mbusChannel4Value) {
+        if (accept(Property.MBUS_CHANNEL_4_VALUE)) {
+            super.setMbusChannel4Value(mbusChannel4Value);
+            published();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        decodeAll();
+
+        if (o instanceof LazySmartMeterMeasurement) {
+            ((LazySmartMeterMeasurement) o).decodeAll();
+        }
+
+        return super.equals(o);
+    }
+
+    @Override
+    public int hashCode() {
+        decodeAll();
+
+        return super.hashCode();
+    }
+
+    private Object writeReplace() {
+        return new SmartMeterMeasurement(this);
+    }
+
+    private enum Property {
+
+        ELECTRICITY_CONSUMPTION_LOW_RATE_KWH("1-0:1.8.1"),
+        ELECTRICITY_CONSUMPTION_NORMAL_RATE_KWH("1-0:1.8.2"),
+        ELECTRICITY_PRODUCTION_LOW_RATE_KWH("1-0:2.8.1"),
+        ELECTRICITY_PRODUCTION_NORMAL_RATE_KWH("1-0:2.8.2"),
+        CURRENT_POWER_CONSUMPTION_W("1-0:1.7.0"),
+        CURRENT_POWER_PRODUCTION_W("1-0:2.7.0"),
+        GAS_CONSUMPTION_M3("0-1:24.3.0", "0-1:24.2.1"),
+        EQUIPMENT_ID("0-0:96.1.1"),
+        METER_TIMESTAMP("0-0:1.0.0"),
+        TARIFF_INDICATOR("0-0:96.14.0"),
+        VOLTAGE_L1_V("1-0:32.7.0"),
+        VOLTAGE_L2_V("1-0:52.7.0"),
+        VOLTAGE_L3_V("1-0:72.7.0"),
+        CURRENT_L1_A("1-0:31.7.0"),
+        CURRENT_L2_A("1-0:51.7.0"),
+        CURRENT_L3_A("1-0:71.7.0"),
+        POWER_CONSUMPTION_L1_W("1-0:21.7.0"),
+        POWER_CONSUMPTION_L2_W("1-0:41.7.0"),
+        POWER_CONSUMPTION_L3_W("1-0:61.7.0"),
+        POWER_PRODUCTION_L1_W("1-0:22.7.0"),
+        POWER_PRODUCTION_L2_W("1-0:42.7.0"),
+        POWER_PRODUCTION_L3_W("1-0:62.7.0"),
+        POWER_FAILURE_COUNT("0-0:96.7.21"),
+        LONG_POWER_FAILURE_COUNT("0-0:96.7.9"),
+        POWER_FAILURE_LOG_COUNT("1-0:99.97.0"),
+        MBUS_CHANNEL_1_VALUE("0-1:24.2.1"),
+        MBUS_CHANNEL_2_VALUE("0-2:24.2.1"),
+        MBUS_CHANNEL_3_VALUE("0-3:24.2.1"),
+        MBUS_CHANNEL_4_VALUE("0-4:24.2.1");
+
+        private final String[] codes;
+
+        Property(String... codes) {
+            this.codes = codes;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.boplicity.p1.parser;
+
+import org.boplicity.p1.model.SmartMeterMeasurement;
+
+/**
+ * Extracts the value of a telegram line with a registered OBIS code, see {@link ObisRegistry}. Handlers are shared by
+ * all parses and should be stateless; {@link ObisValues} decodes the common value formats.
+ */
+public interface ObisHandler {
+
+    /**
+     * Handles the bytes <code>[from, end)</code> of a line: everything after the OBIS code, starting at its first
+     * <code>(</code>, without the line end.
+     */
+    void handle(byte[] bytes, int from, int end, SmartMeterMeasurement measurement);
+}
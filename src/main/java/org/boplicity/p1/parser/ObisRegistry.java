@@ -0,0 +1,150 @@
+package org.boplicity.p1.parser;
+
+import org.boplicity.p1.model.MeasurementField;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+
+import java.math.BigDecimal;
+
+/**
+ * Maps OBIS codes to the {@link ObisHandler}s that extract their values. Lookups go through a trie, so their cost
+ * depends on the length of the code rather than on the number of registered codes. A line only matches if its code
+ * is followed by <code>(</code>, so <code>1-0:1.8.1</code> does not match <code>1-0:1.8.10</code>.
+ * <p>
+ * Codes can be registered or replaced at any time, also while parsers use the registry.
+ */
+public class ObisRegistry {
+
+    private static final int MBUS_CHANNELS = 4;
+
+    private volatile ObisTrie<ObisHandler> handlers = new ObisTrie<ObisHandler>();
+
+    /**
+     * Returns a new registry with the codes of DSMR 2.2 up to 5. Gas is read from M-Bus channel 1.
+     */
+    public static ObisRegistry dsmr() {
+        ObisRegistry registry = new ObisRegistry();
+
+        registry.register("0-0:1.0.0",
+                (bytes, from, end, m) -> m.setMeterTimestamp(ObisValues.timestamp(bytes, from, end)));
+        registry.register("0-0:96.1.1",
+                (bytes, from, end, m) -> m.setEquipmentId(ObisValues.hexText(bytes, from, end)));
+        registry.register("0-0:96.14.0",
+                (bytes, from, end, m) -> m.setTariffIndicator(ObisValues.integer(bytes, from, end)));
+
+        registry.register("1-0:1.8.1", MeasurementField.ELECTRICITY_CONSUMPTION_LOW_RATE_KWH, ValueType.KWH);
+        registry.register("1-0:1.8.2", MeasurementField.ELECTRICITY_CONSUMPTION_NORMAL_RATE_KWH, ValueType.KWH);
+        registry.register("1-0:2.8.1", MeasurementField.ELECTRICITY_PRODUCTION_LOW_RATE_KWH, ValueType.KWH);
+        registry.register("1-0:2.8.2", MeasurementField.ELECTRICITY_PRODUCTION_NORMAL_RATE_KWH, ValueType.KWH);
+        registry.register("1-0:1.7.0", MeasurementField.CURRENT_POWER_CONSUMPTION_W, ValueType.KW);
+        registry.register("1-0:2.7.0", MeasurementField.CURRENT_POWER_PRODUCTION_W, ValueType.KW);
+
+        registry.register("0-0:96.7.21",
+                (bytes, from, end, m) -> m.setPowerFailureCount(ObisValues.integer(bytes, from, end)));
+        registry.register("0-0:96.7.9",
+                (bytes, from, end, m) -> m.setLongPowerFailureCount(ObisValues.integer(bytes, from, end)));
+        registry.register("1-0:99.97.0",
+                (bytes, from, end, m) -> m.setPowerFailureLogCount(ObisValues.integer(bytes, from, end)));
+
+        registry.register("1-0:32.7.0", (bytes, from, end, m) -> m.setVoltageL1V(ObisValues.decimal(bytes, from, end)));
+        registry.register("1-0:52.7.0", (bytes, from, end, m) -> m.setVoltageL2V(ObisValues.decimal(bytes, from, end)));
+        registry.register("1-0:72.7.0", (bytes, from, end, m) -> m.setVoltageL3V(ObisValues.decimal(bytes, from, end)));
+        registry.register("1-0:31.7.0", (bytes, from, end, m) -> m.setCurrentL1A(ObisValues.decimal(bytes, from, end)));
+        registry.register("1-0:51.7.0", (bytes, from, end, m) -> m.setCurrentL2A(ObisValues.decimal(bytes, from, end)));
+        registry.register("1-0:71.7.0", (bytes, from, end, m) -> m.setCurrentL3A(ObisValues.decimal(bytes, from, end)));
+        registry.register("1-0:21.7.0",
+                (bytes, from, end, m) -> m.setPowerConsumptionL1W(ObisValues.kiloToUnit(bytes, from, end)));
+        registry.register("1-0:41.7.0",
+                (bytes, from, end, m) -> m.setPowerConsumptionL2W(ObisValues.kiloToUnit(bytes, from, end)));
+        registry.register("1-0:61.7.0",
+                (bytes, from, end, m) -> m.setPowerConsumptionL3W(ObisValues.kiloToUnit(bytes, from, end)));
+        registry.register("1-0:22.7.0",
+                (bytes, from, end, m) -> m.setPowerProductionL1W(ObisValues.kiloToUnit(bytes, from, end)));
+        registry.register("1-0:42.7.0",
+                (bytes, from, end, m) -> m.setPowerProductionL2W(ObisValues.kiloToUnit(bytes, from, end)));
+        registry.register("1-0:62.7.0",
+                (bytes, from, end, m) -> m.setPowerProductionL3W(ObisValues.kiloToUnit(bytes, from, end)));
+
+        // DSMR 2.2 and 3 report gas hourly on a line of its own
+        registry.register("0-1:24.3.0", MeasurementField.GAS_CONSUMPTION_M3, ValueType.M3);
+
+        // DSMR 4 and 5 report the last reading of every M-Bus device
+        registry.register("0-1:24.2.1", new FieldHandler(MeasurementField.GAS_CONSUMPTION_M3, ValueType.M3) {
+            @Override
+            public void handle(byte[] bytes, int from, int end, SmartMeterMeasurement measurement) {
+                super.handle(bytes, from, end, measurement);
+                measurement.setMbusChannel1Value(ObisValues.lastDecimal(bytes, from, end));
+            }
+        });
+
+        for (int channel = 2; channel <= MBUS_CHANNELS; channel++) {
+            final int mbusChannel = channel;
+
+            registry.register("0-" + channel + ":24.2.1",
+                    (bytes, from, end, m) -> setMbusValue(m, mbusChannel, ObisValues.lastDecimal(bytes, from, end)));
+        }
+
+        return registry;
+    }
+
+    /**
+     * Registers a handler for the code, replacing any previous one.
+     *
+     * @throws IllegalArgumentException if the code has characters other than digits, <code>-</code>, <code>:</code>
+     *                                  and <code>.</code>
+     */
+    public synchronized ObisRegistry register(String obisCode, ObisHandler handler) {
+        if (!ObisTrie.isValid(obisCode)) {
+            throw new IllegalArgumentException("Invalid OBIS code: " + obisCode);
+        }
+
+        handlers = handlers.with(obisCode, handler);
+
+        return this;
+    }
+
+    public synchronized ObisRegistry unregister(String obisCode) {
+        if (ObisTrie.isValid(obisCode)) {
+            handlers = handlers.with(obisCode, null);
+        }
+
+        return this;
+    }
+
+    public ObisHandler get(String obisCode) {
+        if (!ObisTrie.isValid(obisCode)) {
+            return null;
+        }
+
+        byte[] bytes = new byte[obisCode.length()];
+
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) obisCode.charAt(i);
+        }
+
+        return get(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Returns the handler for the code in <code>[from, end)</code>, or null.
+     */
+    public ObisHandler get(byte[] bytes, int from, int end) {
+        return handlers.get(bytes, from, end);
+    }
+
+    private void register(String obisCode, MeasurementField field, ValueType valueType) {
+        register(obisCode, new FieldHandler(field, valueType));
+    }
+
+    private static void setMbusValue(SmartMeterMeasurement measurement, int channel, BigDecimal value) {
+        switch (channel) {
+            case 2:
+                measurement.setMbusChannel2Value(value);
+                break;
+            case 3:
+                measurement.setMbusChannel3Value(value);
+                break;
+            default:
+                measurement.setMbusChannel4Value(value);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package org.boplicity.p1.parser;
+
+import java.util.Arrays;
+
+/**
+ * Maps OBIS codes to values with a trie over the 13 characters codes consist of. A lookup follows one transition per
+ * byte of the code, however many codes there are. Instances are immutable; {@link #with} returns a copy.
+ */
+final class ObisTrie<T> {
+
+    private static final int ALPHABET = 13;
+    private static final int[] SYMBOLS = new int[256];
+
+    static {
+        Arrays.fill(SYMBOLS, -1);
+
+        for (int digit = 0; digit <= 9; digit++) {
+            SYMBOLS['0' + digit] = digit;
+        }
+
+        SYMBOLS['-'] = 10;
+        SYMBOLS[':'] = 11;
+        SYMBOLS['.'] = 12;
+    }
+
+    // Node n has its transitions at [n * ALPHABET, (n + 1) * ALPHABET); 0 is the root and means no transition
+    private final int[] transitions;
+    private final Object[] values;
+    private final int nodeCount;
+
+    ObisTrie() {
+        this(new int[ALPHABET], new Object[1], 1);
+    }
+
+    private ObisTrie(int[] transitions, Object[] values, int nodeCount) {
+        this.transitions = transitions;
+        this.values = values;
+        this.nodeCount = nodeCount;
+    }
+
+    static boolean isValid(String code) {
+        if (code.isEmpty()) {
+            return false;
+        }
+
+        for (int i = 0; i < code.length(); i++) {
+            char c = code.charAt(i);
+
+            if (c > 255 || SYMBOLS[c] < 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Returns a trie with the code mapped to the value, or removed if the value is null.
+     */
+    ObisTrie<T> with(String code, T value) {
+        int[] newTransitions = Arrays.copyOf(transitions, (nodeCount + code.length()) * ALPHABET);
+        Object[] newValues = Arrays.copyOf(values, nodeCount + code.length());
+        int newNodeCount = nodeCount;
+
+        int node = 0;
+
+        for (int i = 0; i < code.length(); i++) {
+            int slot = node * ALPHABET + SYMBOLS[code.charAt(i)];
+
+            if (newTransitions[slot] == 0) {
+                newTransitions[slot] = newNodeCount++;
+            }
+
+            node = newTransitions[slot];
+        }
+
+        newValues[node] = value;
+
+        return new ObisTrie<T>(newTransitions, newValues, newNodeCount);
+    }
+
+    /**
+     * Returns the value of the code in <code>[from, end)</code>, or null.
+     */
+    @SuppressWarnings("unchecked")
+    T get(byte[] bytes, int from, int end) {
+        int node = 0;
+
+        for (int i = from; i < end; i++) {
+            int symbol = SYMBOLS[bytes[i] & 0xff];
+
+            if (symbol < 0) {
+                return null;
+            }
+
+            node = transitions[node * ALPHABET + symbol];
+
+            if (node == 0) {
+                return null;
+            }
+        }
+
+        return (T) values[node];
+    }
+}
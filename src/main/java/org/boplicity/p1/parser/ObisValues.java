@@ -0,0 +1,190 @@
+package org.boplicity.p1.parser;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Decodes the value formats of DSMR telegram lines for {@link ObisHandler}s. Every method takes the part of the line
+ * after the OBIS code, like <code>(229.0*V)</code> or <code>(190508094000S)(02962.133*m3)</code>, and returns null
+ * if the value is missing or malformed.
+ */
+public final class ObisValues {
+
+    private static final DateTimeZone WINTER_TIME = DateTimeZone.forOffsetHours(1);
+    private static final DateTimeZone SUMMER_TIME = DateTimeZone.forOffsetHours(2);
+    private static final DateTimeZone METER_TIME = DateTimeZone.forID("Europe/Amsterdam");
+
+    private static final int TIMESTAMP_LENGTH = 12;
+
+    private ObisValues() {
+    }
+
+    /**
+     * Returns the number in the first group, ignoring its unit.
+     */
+    public static BigDecimal decimal(byte[] bytes, int from, int end) {
+        return FixedPoint.toBigDecimal(decimalValue(bytes, from, end));
+    }
+
+    /**
+     * Returns the number in the first group, in kW, converted to W.
+     */
+    public static BigDecimal kiloToUnit(byte[] bytes, int from, int end) {
+        return FixedPoint.toBigDecimal(FixedPoint.kiloToUnit(decimalValue(bytes, from, end)));
+    }
+
+    /**
+     * Returns the number in the last group, ignoring its unit, like the reading of an M-Bus device.
+     */
+    public static BigDecimal lastDecimal(byte[] bytes, int from, int end) {
+        return FixedPoint.toBigDecimal(lastDecimalValue(bytes, from, end));
+    }
+
+    public static Integer integer(byte[] bytes, int from, int end) {
+        long value = decimalValue(bytes, from, end);
+
+        if (value == FixedPoint.NONE || FixedPoint.scale(value) != 0 || FixedPoint.unscaled(value) > Integer.MAX_VALUE) {
+            return null;
+        }
+
+        return (int) FixedPoint.unscaled(value);
+    }
+
+    /**
+     * Returns the contents of the first group.
+     */
+    public static String text(byte[] bytes, int from, int end) {
+        int groupEnd = groupEnd(bytes, from, end);
+
+        return groupEnd < 0 ? null : new String(bytes, from + 1, groupEnd - from - 1, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the first group decoded as a hexadecimal octet string, as used for equipment identifiers and messages,
+     * without the spaces meters pad it with at the end. Values that are not hexadecimal are returned as they are.
+     */
+    public static String hexText(byte[] bytes, int from, int end) {
+        int groupEnd = groupEnd(bytes, from, end);
+
+        if (groupEnd < 0) {
+            return null;
+        }
+
+        int length = groupEnd - from - 1;
+
+        if (length % 2 != 0) {
+            return text(bytes, from, end);
+        }
+
+        byte[] decoded = new byte[length / 2];
+
+        for (int i = 0; i < decoded.length; i++) {
+            int high = Character.digit(bytes[from + 1 + 2 * i], 16);
+            int low = Character.digit(bytes[from + 2 + 2 * i], 16);
+
+            if (high < 0 || low < 0) {
+                return text(bytes, from, end);
+            }
+
+            decoded[i] = (byte) (high << 4 | low);
+        }
+
+        int decodedLength = decoded.length;
+
+        while (decodedLength > 0 && decoded[decodedLength - 1] == ' ') {
+            decodedLength--;
+        }
+
+        return new String(decoded, 0, decodedLength, StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns the first group as a timestamp like <code>190508094303S</code>, in local time with an <code>S</code>
+     * for summer or <code>W</code> for winter time.
+     */
+    public static DateTime timestamp(byte[] bytes, int from, int end) {
+        int groupEnd = groupEnd(bytes, from, end);
+
+        if (groupEnd < 0 || groupEnd - from - 1 < TIMESTAMP_LENGTH) {
+            return null;
+        }
+
+        int[] fields = new int[TIMESTAMP_LENGTH / 2];
+
+        for (int i = 0; i < fields.length; i++) {
+            byte tens = bytes[from + 1 + 2 * i];
+            byte units = bytes[from + 2 + 2 * i];
+
+            if (!FixedPoint.isDigit(tens) || !FixedPoint.isDigit(units)) {
+                return null;
+            }
+
+            fields[i] = (tens - '0') * 10 + units - '0';
+        }
+
+        byte season = bytes[from + 1 + TIMESTAMP_LENGTH];
+        DateTimeZone zone = season == 'S' ? SUMMER_TIME : season == 'W' ? WINTER_TIME : METER_TIME;
+
+        try {
+            return new DateTime(2000 + fields[0], fields[1], fields[2], fields[3], fields[4], fields[5], zone);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // Packed by FixedPoint
+    static long decimalValue(byte[] bytes, int from, int end) {
+        int groupEnd = groupEnd(bytes, from, end);
+
+        if (groupEnd < 0) {
+            return FixedPoint.NONE;
+        }
+
+        return FixedPoint.parse(bytes, from + 1, numberEnd(bytes, from + 1, groupEnd));
+    }
+
+    static long lastDecimalValue(byte[] bytes, int from, int end) {
+        if (end <= from || bytes[end - 1] != ')') {
+            return FixedPoint.NONE;
+        }
+
+        int groupStart = end - 1;
+
+        while (groupStart >= from && bytes[groupStart] != '(') {
+            groupStart--;
+        }
+
+        if (groupStart < from) {
+            return FixedPoint.NONE;
+        }
+
+        return FixedPoint.parse(bytes, groupStart + 1, numberEnd(bytes, groupStart + 1, end - 1));
+    }
+
+    private static int groupEnd(byte[] bytes, int from, int end) {
+        if (from >= end || bytes[from] != '(') {
+            return -1;
+        }
+
+        for (int i = from + 1; i < end; i++) {
+            if (bytes[i] == ')') {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int numberEnd(byte[] bytes, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (bytes[i] == '*') {
+                return i;
+            }
+        }
+
+        return end;
+    }
+}
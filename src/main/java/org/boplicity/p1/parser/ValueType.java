@@ -0,0 +1,59 @@
+package org.boplicity.p1.parser;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The value formats of the fields that {@link ByteDatagramParser#parseCompact} knows. Values are decoded into a long
+ * packed by {@link FixedPoint}.
+ */
+enum ValueType {
+
+    // (00038.113*kWh)
+    KWH {
+        @Override
+        long decode(byte[] bytes, int from, int end) {
+            int unit = indexOf(bytes, from, end, KWH_UNIT);
+
+            return unit < 0 ? FixedPoint.NONE : FixedPoint.parseBackwards(bytes, from, unit);
+        }
+    },
+
+    // (0000.55*kW), reported in W
+    KW {
+        @Override
+        long decode(byte[] bytes, int from, int end) {
+            int unit = indexOf(bytes, from, end, KW_UNIT);
+
+            return unit < 0 ? FixedPoint.NONE : FixedPoint.kiloToUnit(FixedPoint.parseBackwards(bytes, from, unit));
+        }
+    },
+
+    // (130206140000)(00)(60)(1)(0-1:24.2.0)(m3)(00047.057) or (190508094000S)(02962.133*m3)
+    M3 {
+        @Override
+        long decode(byte[] bytes, int from, int end) {
+            return ObisValues.lastDecimalValue(bytes, from, end);
+        }
+    };
+
+    private static final byte[] KWH_UNIT = "*kWh".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] KW_UNIT = "*kW".getBytes(StandardCharsets.US_ASCII);
+
+    abstract long decode(byte[] bytes, int from, int end);
+
+    private static int indexOf(byte[] bytes, int from, int end, byte[] needle) {
+        for (int i = from; i <= end - needle.length; i++) {
+            int j = 0;
+
+            while (j < needle.length && bytes[i + j] == needle[j]) {
+                j++;
+            }
+
+            if (j == needle.length) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+}
@@ -19,7 +19,7 @@ public class WattValueParser implements ValueParser {
         Matcher matcher = pattern.matcher(value);
 
         if (matcher.find()) {
-            result = new BigDecimal(matcher.group(1)).multiply(new BigDecimal(1000)).setScale(0);
+            result = new BigDecimal(matcher.group(1)).movePointRight(3).setScale(0);
         }
 
         return result;
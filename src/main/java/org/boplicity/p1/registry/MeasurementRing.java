@@ -0,0 +1,83 @@
+package org.boplicity.p1.registry;
+
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+
+/**
+ * The last measurements of a meter, as rows of longs in a single array: the timestamp followed by the
+ * {@link MeasurementField}s in {@link CompactMeasurement} units. Once full, a new measurement overwrites the oldest.
+ * Not thread-safe; guarded by the registry's stripe lock.
+ */
+class MeasurementRing {
+
+    static final int FIELD_COUNT = MeasurementField.values().length;
+    static final int STRIDE = FIELD_COUNT + 1;
+
+    private static final MeasurementField[] FIELDS = MeasurementField.values();
+
+    private final long[] values;
+    private final int capacity;
+
+    private int head;
+    private int size;
+
+    MeasurementRing(int capacity) {
+        this.capacity = capacity;
+        this.values = new long[capacity * STRIDE];
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void add(CompactMeasurement measurement) {
+        int offset = head * STRIDE;
+        values[offset] = measurement.getTimestamp();
+
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            values[offset + 1 + i] = measurement.get(FIELDS[i]);
+        }
+
+        head = head + 1 == capacity ? 0 : head + 1;
+
+        if (size < capacity) {
+            size++;
+        }
+    }
+
+    /**
+     * Copies the rows, oldest first, to the start of the target, which must hold {@link #capacity()} rows.
+     *
+     * @return the number of rows copied
+     */
+    int copyTo(long[] target) {
+        int count = size;
+        int first = head - count;
+
+        if (first < 0) {
+            // The oldest rows are at the end of the array
+            int tail = -first;
+            System.arraycopy(values, (capacity - tail) * STRIDE, target, 0, tail * STRIDE);
+            System.arraycopy(values, 0, target, tail * STRIDE, (count - tail) * STRIDE);
+        } else {
+            System.arraycopy(values, first * STRIDE, target, 0, count * STRIDE);
+        }
+
+        return count;
+    }
+
+    static CompactMeasurement row(long[] rows, int index) {
+        int offset = index * STRIDE;
+        CompactMeasurement.Builder builder = new CompactMeasurement.Builder().timestamp(rows[offset]);
+
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            builder.set(FIELDS[i], rows[offset + 1 + i]);
+        }
+
+        return builder.build();
+    }
+}
@@ -0,0 +1,223 @@
+package org.boplicity.p1.registry;
+
+import org.boplicity.p1.device.MeasurementSubscriber;
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * The current state, recent history and health of many meters, keyed by equipment id. Meant to be updated by the
+ * ingest threads, e.g. as a subscriber of every listener of an {@link org.boplicity.p1.hub.IngestionHub}, and read by
+ * any number of query threads.
+ * <p>
+ * Meters are spread over a fixed number of lock stripes, so updates of different meters rarely contend and there is
+ * no lock object per meter. Snapshots first copy a meter's state without locking and only take the read lock when a
+ * write to the stripe happened meanwhile, so readers don't hold up the ingest threads.
+ * <p>
+ * Every meter holds the given number of measurements as primitive longs and nothing else grows, see
+ * {@link #getEstimatedBytesPerMeter()}.
+ */
+public class MeterRegistry implements MeasurementSubscriber {
+
+    public static final int DEFAULT_HISTORY_SIZE = 60;
+
+    // Rough object sizes on a 64-bit JVM with compressed pointers, for the memory estimate
+    private static final int ARRAY_HEADER_BYTES = 16;
+    private static final int FIXED_BYTES_PER_METER = 64 + 32 + 80 + 32 + 56;
+
+    private final ConcurrentHashMap<String, MeterState> meters = new ConcurrentHashMap<String, MeterState>();
+    private final StampedLock[] stripes;
+    private final int historySize;
+
+    private LongAdder unidentifiedCount = new LongAdder();
+
+    public MeterRegistry() {
+        this(DEFAULT_HISTORY_SIZE, Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    /**
+     * @param historySize the number of measurements kept per meter
+     * @param stripeCount the number of locks, rounded up to a power of two
+     */
+    public MeterRegistry(int historySize, int stripeCount) {
+        if (historySize <= 0) {
+            throw new IllegalArgumentException("History size must be positive: " + historySize);
+        }
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("Stripe count must be positive: " + stripeCount);
+        }
+
+        int powerOfTwo = 1;
+
+        while (powerOfTwo < stripeCount) {
+            powerOfTwo <<= 1;
+        }
+
+        this.historySize = historySize;
+        this.stripes = new StampedLock[powerOfTwo];
+
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new StampedLock();
+        }
+    }
+
+    /**
+     * Adds a measurement to its meter, taking the equipment id from the measurement. Measurements without one are
+     * only counted, see {@link #getUnidentifiedCount()}.
+     */
+    @Override
+    public void onMeasurement(SmartMeterMeasurement measurement) {
+        if (measurement.getEquipmentId() == null) {
+            unidentifiedCount.increment();
+            return;
+        }
+
+        update(measurement.getEquipmentId(), CompactMeasurement.of(measurement));
+    }
+
+    /**
+     * Makes the measurement the current one of the meter and adds it to the history, unless it is older than the
+     * current one.
+     */
+    public void update(String equipmentId, CompactMeasurement measurement) {
+        MeterState state = state(equipmentId);
+        long now = System.currentTimeMillis();
+
+        StampedLock lock = stripes[state.stripe];
+        long stamp = lock.writeLock();
+
+        try {
+            state.update(measurement, now);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Counts a telegram of the meter that could not be used, like one with a wrong checksum.
+     */
+    public void error(String equipmentId) {
+        MeterState state = state(equipmentId);
+
+        StampedLock lock = stripes[state.stripe];
+        long stamp = lock.writeLock();
+
+        try {
+            state.errorCount++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Returns a consistent copy of the meter's state, or null for an unknown meter.
+     */
+    public MeterSnapshot snapshot(String equipmentId) {
+        MeterState state = meters.get(equipmentId);
+
+        return state == null ? null : snapshot(state);
+    }
+
+    /**
+     * Passes a snapshot of every meter to the consumer. Each snapshot is consistent in itself, but they are taken one
+     * after the other.
+     */
+    public void forEach(Consumer<MeterSnapshot> consumer) {
+        for (MeterState state : meters.values()) {
+            consumer.accept(snapshot(state));
+        }
+    }
+
+    /**
+     * Forgets a meter. An update that arrives afterwards registers it anew.
+     */
+    public boolean remove(String equipmentId) {
+        return meters.remove(equipmentId) != null;
+    }
+
+    public Set<String> getEquipmentIds() {
+        return meters.keySet();
+    }
+
+    public int size() {
+        return meters.size();
+    }
+
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    public int getStripeCount() {
+        return stripes.length;
+    }
+
+    /**
+     * Returns the number of measurements that were dropped for lack of an equipment id.
+     */
+    public long getUnidentifiedCount() {
+        return unidentifiedCount.sum();
+    }
+
+    /**
+     * Returns the approximate heap used per meter, which only depends on the history size.
+     */
+    public long getEstimatedBytesPerMeter() {
+        return FIXED_BYTES_PER_METER + ARRAY_HEADER_BYTES + (long) historySize * MeasurementRing.STRIDE * 8;
+    }
+
+    public long getEstimatedBytes() {
+        return getEstimatedBytesPerMeter() * meters.size();
+    }
+
+    private MeterState state(String equipmentId) {
+        MeterState state = meters.get(equipmentId);
+
+        if (state == null) {
+            state = meters.computeIfAbsent(equipmentId, id -> new MeterState(id, stripe(id), historySize));
+        }
+
+        return state;
+    }
+
+    private int stripe(String equipmentId) {
+        int hash = equipmentId.hashCode();
+
+        return (hash ^ hash >>> 16) & (stripes.length - 1);
+    }
+
+    private MeterSnapshot snapshot(MeterState state) {
+        StampedLock lock = stripes[state.stripe];
+        long[] history = new long[historySize * MeasurementRing.STRIDE];
+
+        long stamp = lock.tryOptimisticRead();
+
+        if (stamp != 0) {
+            MeterSnapshot snapshot = copy(state, history);
+
+            if (lock.validate(stamp)) {
+                return snapshot;
+            }
+        }
+
+        stamp = lock.readLock();
+
+        try {
+            return copy(state, history);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private static MeterSnapshot copy(MeterState state, long[] history) {
+        CompactMeasurement current = state.current;
+        int size = state.history.copyTo(history);
+
+        return new MeterSnapshot(state.equipmentId, current, history, size, state.measurementCount,
+                state.errorCount, state.outOfOrderCount, state.lastUpdate);
+    }
+}
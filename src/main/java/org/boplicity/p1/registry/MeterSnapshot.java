@@ -0,0 +1,130 @@
+package org.boplicity.p1.registry;
+
+import org.boplicity.p1.model.CompactMeasurement;
+
+import java.util.AbstractList;
+import java.util.List;
+
+/**
+ * A consistent copy of the state of one meter: its current measurement, its recent history and its health counters,
+ * all as they were at a single point in time.
+ */
+public final class MeterSnapshot {
+
+    private final String equipmentId;
+    private final CompactMeasurement current;
+    private final long[] history;
+    private final int historySize;
+    private final long measurementCount;
+    private final long errorCount;
+    private final long outOfOrderCount;
+    private final long lastUpdate;
+
+    MeterSnapshot(String equipmentId, CompactMeasurement current, long[] history, int historySize,
+                  long measurementCount, long errorCount, long outOfOrderCount, long lastUpdate) {
+        this.equipmentId = equipmentId;
+        this.current = current;
+        this.history = history;
+        this.historySize = historySize;
+        this.measurementCount = measurementCount;
+        this.errorCount = errorCount;
+        this.outOfOrderCount = outOfOrderCount;
+        this.lastUpdate = lastUpdate;
+    }
+
+    public String getEquipmentId() {
+        return equipmentId;
+    }
+
+    /**
+     * Returns the latest measurement, or null if only errors were reported for the meter.
+     */
+    public CompactMeasurement getCurrent() {
+        return current;
+    }
+
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * Returns a measurement of the history, 0 being the oldest.
+     */
+    public CompactMeasurement getHistory(int index) {
+        if (index < 0 || index >= historySize) {
+            throw new IndexOutOfBoundsException(index + " of " + historySize);
+        }
+
+        return MeasurementRing.row(history, index);
+    }
+
+    /**
+     * Returns the history, oldest first, as a list that creates its elements when they are read.
+     */
+    public List<CompactMeasurement> getHistory() {
+        return new AbstractList<CompactMeasurement>() {
+            @Override
+            public CompactMeasurement get(int index) {
+                return getHistory(index);
+            }
+
+            @Override
+            public int size() {
+                return historySize;
+            }
+        };
+    }
+
+    /**
+     * Returns the timestamp of a measurement of the history without creating it, 0 being the oldest.
+     */
+    public long getHistoryTimestamp(int index) {
+        if (index < 0 || index >= historySize) {
+            throw new IndexOutOfBoundsException(index + " of " + historySize);
+        }
+
+        return history[index * MeasurementRing.STRIDE];
+    }
+
+    public long getMeasurementCount() {
+        return measurementCount;
+    }
+
+    public long getErrorCount() {
+        return errorCount;
+    }
+
+    /**
+     * Returns the number of measurements ignored because they were older than the current one.
+     */
+    public long getOutOfOrderCount() {
+        return outOfOrderCount;
+    }
+
+    /**
+     * Returns the time of the last accepted measurement in epoch millis, by the clock of the registry, or 0.
+     */
+    public long getLastUpdate() {
+        return lastUpdate;
+    }
+
+    /**
+     * Returns true if no measurement was accepted within the given time before now.
+     */
+    public boolean isStale(long now, long maxAgeMillis) {
+        return now - lastUpdate > maxAgeMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "MeterSnapshot{" +
+                "equipmentId='" + equipmentId + '\'' +
+                ", current=" + current +
+                ", historySize=" + historySize +
+                ", measurementCount=" + measurementCount +
+                ", errorCount=" + errorCount +
+                ", outOfOrderCount=" + outOfOrderCount +
+                ", lastUpdate=" + lastUpdate +
+                '}';
+    }
+}
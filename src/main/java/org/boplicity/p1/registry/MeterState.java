@@ -0,0 +1,38 @@
+package org.boplicity.p1.registry;
+
+import org.boplicity.p1.model.CompactMeasurement;
+
+/**
+ * The mutable state of a meter in the registry. Only changed under the write lock of the meter's stripe, and only read
+ * by {@link MeterRegistry} to take a snapshot.
+ */
+class MeterState {
+
+    final String equipmentId;
+    final int stripe;
+    final MeasurementRing history;
+
+    CompactMeasurement current;
+    long measurementCount;
+    long errorCount;
+    long outOfOrderCount;
+    long lastUpdate;
+
+    MeterState(String equipmentId, int stripe, int historySize) {
+        this.equipmentId = equipmentId;
+        this.stripe = stripe;
+        this.history = new MeasurementRing(historySize);
+    }
+
+    void update(CompactMeasurement measurement, long now) {
+        if (current != null && measurement.getTimestamp() < current.getTimestamp()) {
+            outOfOrderCount++;
+            return;
+        }
+
+        current = measurement;
+        history.add(measurement);
+        measurementCount++;
+        lastUpdate = now;
+    }
+}
@@ -0,0 +1,186 @@
+package org.boplicity.p1.replay;
+
+import org.boplicity.p1.device.MeasurementSubscriber;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.parser.ByteDatagramParser;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Replays an archive of concatenated raw telegrams, as captured from the P1 port, through the parser. The file is
+ * split into chunks that start at a telegram's <code>/</code>, which are memory-mapped and parsed in parallel on a
+ * fork-join pool; the framer of each chunk copies its bytes to the heap once, see {@link ChunkParser}. Measurements are handed to the sink on the calling thread in the order of the file; only a few chunks
+ * per worker are held in memory at a time.
+ * <p>
+ * Telegrams carry no reception time, so the measurements have no timestamp.
+ */
+public class BulkImporter {
+
+    public static final int DEFAULT_CHUNK_SIZE = 4 * 1024 * 1024;
+
+    private static final byte START_CHARACTER = '/';
+    private static final int SEARCH_BUFFER_SIZE = 8192;
+    private static final int CHUNKS_PER_WORKER = 2;
+
+    private ForkJoinPool pool;
+    private int chunkSize;
+    private ByteDatagramParser parser = new ByteDatagramParser();
+
+    private long corruptFrameCount;
+
+    public BulkImporter() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize the number of bytes parsed per task; a chunk is extended to the start of the next telegram
+     */
+    public BulkImporter(ForkJoinPool pool, int chunkSize) {
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Parses every telegram in the file and passes the measurements to the sink in file order.
+     *
+     * @return the number of measurements passed to the sink
+     */
+    public long importFile(File file, MeasurementSubscriber sink) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+        try {
+            FileChannel channel = randomAccessFile.getChannel();
+            List<Long> boundaries = split(channel);
+
+            Deque<ChunkParser> pending = new ArrayDeque<ChunkParser>();
+            int window = pool.getParallelism() * CHUNKS_PER_WORKER;
+            int next = 0;
+            long count = 0;
+
+            try {
+                while (next < boundaries.size() - 1 || !pending.isEmpty()) {
+                    while (pending.size() < window && next < boundaries.size() - 1) {
+                        ChunkParser chunkParser = new ChunkParser(channel, boundaries.get(next),
+                                boundaries.get(next + 1), parser);
+                        pool.execute(chunkParser);
+                        pending.add(chunkParser);
+                        next++;
+                    }
+
+                    ChunkParser chunkParser = pending.poll();
+
+                    for (SmartMeterMeasurement measurement : chunkParser.join()) {
+                        sink.onMeasurement(measurement);
+                        count++;
+                    }
+
+                    corruptFrameCount += chunkParser.getCorruptFrameCount();
+                }
+            } finally {
+                for (ChunkParser chunkParser : pending) {
+                    chunkParser.cancel(false);
+                }
+            }
+
+            return count;
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+
+    /**
+     * Returns the number of telegrams dropped because of a wrong checksum, over all imports.
+     */
+    public long getCorruptFrameCount() {
+        return corruptFrameCount;
+    }
+
+    /**
+     * Returns the chunk boundaries, from 0 to the file size. Every boundary other than those is the offset of a
+     * <code>/</code>, unless none was found within a chunk's length after the previous boundary.
+     */
+    List<Long> split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        List<Long> boundaries = new ArrayList<Long>();
+        ByteBuffer searchBuffer = ByteBuffer.allocate(SEARCH_BUFFER_SIZE);
+
+        long boundary = 0;
+        boundaries.add(boundary);
+
+        while (size - boundary > chunkSize) {
+            long nominal = boundary + chunkSize;
+            long searchEnd = Math.min(size, nominal + chunkSize);
+            long found = find(channel, searchBuffer, nominal, searchEnd);
+
+            // Without a telegram start the searched bytes can only belong to the chunk's last telegram
+            boundary = found < 0 ? searchEnd : found;
+            boundaries.add(boundary);
+        }
+
+        if (boundary < size) {
+            boundaries.add(size);
+        }
+
+        return boundaries;
+    }
+
+    private static long find(FileChannel channel, ByteBuffer searchBuffer, long from, long to) throws IOException {
+        long position = from;
+
+        while (position < to) {
+            searchBuffer.clear();
+            searchBuffer.limit((int) Math.min(searchBuffer.capacity(), to - position));
+
+            int count = channel.read(searchBuffer, position);
+
+            if (count <= 0) {
+                return -1;
+            }
+
+            for (int i = 0; i < count; i++) {
+                if (searchBuffer.get(i) == START_CHARACTER) {
+                    return position + i;
+                }
+            }
+
+            position += count;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Replays an archive and reports the throughput, e.g. to check a parser change against captured data.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("Usage: BulkImporter <archive>");
+            System.exit(1);
+        }
+
+        File file = new File(args[0]);
+        BulkImporter bulkImporter = new BulkImporter();
+
+        long started = System.nanoTime();
+
+        long count = bulkImporter.importFile(file, new MeasurementSubscriber() {
+            @Override
+            public void onMeasurement(SmartMeterMeasurement measurement) {
+            }
+        });
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        System.out.printf("%d telegrams (%d corrupt) in %.2f s, %.1f MB/s%n", count,
+                bulkImporter.getCorruptFrameCount(), seconds, file.length() / seconds / (1024 * 1024));
+    }
+}
@@ -0,0 +1,71 @@
+package org.boplicity.p1.replay;
+
+import org.boplicity.p1.device.FrameHandler;
+import org.boplicity.p1.device.TelegramFramer;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.parser.ByteDatagramParser;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Parses the telegrams in one frame-aligned region of an archive. The region is mapped and run through its own
+ * {@link TelegramFramer}, so corrupt telegrams are dropped exactly as they are when read from the device.
+ * <p>
+ * This is not zero-copy: the framer copies the mapped bytes in bulk into its reusable heap buffer, where it checks the
+ * CRC and the parser reads the frames from. The copy is intended, as it keeps a single framer and byte array parser for
+ * all sources; mapping only saves reading the file through a stream.
+ */
+class ChunkParser extends RecursiveTask<List<SmartMeterMeasurement>> {
+
+    private final FileChannel channel;
+    private final long start;
+    private final long end;
+    private final ByteDatagramParser parser;
+
+    private long corruptFrameCount;
+
+    ChunkParser(FileChannel channel, long start, long end, ByteDatagramParser parser) {
+        this.channel = channel;
+        this.start = start;
+        this.end = end;
+        this.parser = parser;
+    }
+
+    long getCorruptFrameCount() {
+        return corruptFrameCount;
+    }
+
+    @Override
+    protected List<SmartMeterMeasurement> compute() {
+        final List<SmartMeterMeasurement> result = new ArrayList<SmartMeterMeasurement>();
+
+        MappedByteBuffer chunk;
+
+        try {
+            chunk = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map bytes " + start + " - " + end, e);
+        }
+
+        TelegramFramer telegramFramer = new TelegramFramer(new FrameHandler() {
+            @Override
+            public void onFrame(ByteBuffer frame) {
+                result.add(parser.parse(frame));
+            }
+        }, 4096);
+
+        telegramFramer.feed(chunk);
+        telegramFramer.finish();
+
+        corruptFrameCount = telegramFramer.getCorruptFrameCount();
+
+        return result;
+    }
+}
@@ -0,0 +1,111 @@
+package org.boplicity.p1.rollup;
+
+import org.boplicity.p1.model.CompactMeasurement;
+
+/**
+ * The running aggregates of one interval. Reused for the next interval once emitted.
+ */
+class Accumulator {
+
+    private final RollupInterval interval;
+    private boolean tracksGas;
+
+    long start;
+    long end;
+    boolean open;
+
+    private int sampleCount;
+    private long[] energy = new long[RollupEngine.REGISTERS.length];
+    private long gas;
+    private int counterResets;
+
+    private long minConsumption;
+    private long maxConsumption;
+    private long sumConsumption;
+    private int countConsumption;
+
+    private long minProduction;
+    private long maxProduction;
+    private long sumProduction;
+    private int countProduction;
+
+    Accumulator(RollupInterval interval, boolean tracksGas) {
+        this.interval = interval;
+        this.tracksGas = tracksGas;
+    }
+
+    void reset(long start, long end) {
+        this.start = start;
+        this.end = end;
+        this.open = true;
+
+        sampleCount = 0;
+        for (int i = 0; i < energy.length; i++) {
+            energy[i] = 0;
+        }
+        gas = 0;
+        counterResets = 0;
+
+        minConsumption = Long.MAX_VALUE;
+        maxConsumption = Long.MIN_VALUE;
+        sumConsumption = 0;
+        countConsumption = 0;
+
+        minProduction = Long.MAX_VALUE;
+        maxProduction = Long.MIN_VALUE;
+        sumProduction = 0;
+        countProduction = 0;
+    }
+
+    // Gas is summed either way, so an open interval keeps its gas when this changes
+    void setTracksGas(boolean tracksGas) {
+        this.tracksGas = tracksGas;
+    }
+
+    boolean contains(long timestamp) {
+        return open && timestamp >= start && timestamp < end;
+    }
+
+    void addPower(long consumption, long production) {
+        sampleCount++;
+
+        if (consumption != CompactMeasurement.NO_VALUE) {
+            minConsumption = Math.min(minConsumption, consumption);
+            maxConsumption = Math.max(maxConsumption, consumption);
+            sumConsumption += consumption;
+            countConsumption++;
+        }
+
+        if (production != CompactMeasurement.NO_VALUE) {
+            minProduction = Math.min(minProduction, production);
+            maxProduction = Math.max(maxProduction, production);
+            sumProduction += production;
+            countProduction++;
+        }
+    }
+
+    void addEnergy(long[] deltas, int resets) {
+        for (int i = 0; i < energy.length; i++) {
+            energy[i] += deltas[i];
+        }
+        counterResets += resets;
+    }
+
+    void addGas(long delta) {
+        gas += delta;
+    }
+
+    Rollup close() {
+        open = false;
+
+        return new Rollup(interval, start, end, sampleCount, energy[0], energy[1], energy[2], energy[3],
+                tracksGas ? gas : CompactMeasurement.NO_VALUE,
+                countConsumption == 0 ? CompactMeasurement.NO_VALUE : minConsumption,
+                countConsumption == 0 ? CompactMeasurement.NO_VALUE : maxConsumption,
+                countConsumption == 0 ? Double.NaN : (double) sumConsumption / countConsumption,
+                countProduction == 0 ? CompactMeasurement.NO_VALUE : minProduction,
+                countProduction == 0 ? CompactMeasurement.NO_VALUE : maxProduction,
+                countProduction == 0 ? Double.NaN : (double) sumProduction / countProduction,
+                counterResets);
+    }
+}
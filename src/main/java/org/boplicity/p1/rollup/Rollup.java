@@ -0,0 +1,141 @@
+package org.boplicity.p1.rollup;
+
+import org.boplicity.p1.model.CompactMeasurement;
+
+/**
+ * The aggregates of one closed interval. Energy is in Wh and gas in dm3, the increase of the cumulative registers over
+ * the interval. Power is in W; minimum and maximum are {@link CompactMeasurement#NO_VALUE} and the average NaN if
+ * the interval had no power readings.
+ */
+public class Rollup {
+
+    private RollupInterval interval;
+    private long start;
+    private long end;
+    private int sampleCount;
+
+    private long electricityConsumptionLowRateWh;
+    private long electricityConsumptionNormalRateWh;
+    private long electricityProductionLowRateWh;
+    private long electricityProductionNormalRateWh;
+    private long gasConsumptionDm3;
+
+    private long minPowerConsumptionW;
+    private long maxPowerConsumptionW;
+    private double averagePowerConsumptionW;
+    private long minPowerProductionW;
+    private long maxPowerProductionW;
+    private double averagePowerProductionW;
+
+    private int counterResets;
+
+    Rollup(RollupInterval interval, long start, long end, int sampleCount,
+           long electricityConsumptionLowRateWh, long electricityConsumptionNormalRateWh,
+           long electricityProductionLowRateWh, long electricityProductionNormalRateWh, long gasConsumptionDm3,
+           long minPowerConsumptionW, long maxPowerConsumptionW, double averagePowerConsumptionW,
+           long minPowerProductionW, long maxPowerProductionW, double averagePowerProductionW, int counterResets) {
+        this.interval = interval;
+        this.start = start;
+        this.end = end;
+        this.sampleCount = sampleCount;
+        this.electricityConsumptionLowRateWh = electricityConsumptionLowRateWh;
+        this.electricityConsumptionNormalRateWh = electricityConsumptionNormalRateWh;
+        this.electricityProductionLowRateWh = electricityProductionLowRateWh;
+        this.electricityProductionNormalRateWh = electricityProductionNormalRateWh;
+        this.gasConsumptionDm3 = gasConsumptionDm3;
+        this.minPowerConsumptionW = minPowerConsumptionW;
+        this.maxPowerConsumptionW = maxPowerConsumptionW;
+        this.averagePowerConsumptionW = averagePowerConsumptionW;
+        this.minPowerProductionW = minPowerProductionW;
+        this.maxPowerProductionW = maxPowerProductionW;
+        this.averagePowerProductionW = averagePowerProductionW;
+        this.counterResets = counterResets;
+    }
+
+    public RollupInterval getInterval() {
+        return interval;
+    }
+
+    public long getStart() {
+        return start;
+    }
+
+    public long getEnd() {
+        return end;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public long getElectricityConsumptionLowRateWh() {
+        return electricityConsumptionLowRateWh;
+    }
+
+    public long getElectricityConsumptionNormalRateWh() {
+        return electricityConsumptionNormalRateWh;
+    }
+
+    public long getElectricityProductionLowRateWh() {
+        return electricityProductionLowRateWh;
+    }
+
+    public long getElectricityProductionNormalRateWh() {
+        return electricityProductionNormalRateWh;
+    }
+
+    public long getElectricityConsumptionWh() {
+        return electricityConsumptionLowRateWh + electricityConsumptionNormalRateWh;
+    }
+
+    public long getElectricityProductionWh() {
+        return electricityProductionLowRateWh + electricityProductionNormalRateWh;
+    }
+
+    /**
+     * Returns the gas used, or {@link CompactMeasurement#NO_VALUE} for intervals shorter than the gas meter's reading
+     * period.
+     */
+    public long getGasConsumptionDm3() {
+        return gasConsumptionDm3;
+    }
+
+    public long getMinPowerConsumptionW() {
+        return minPowerConsumptionW;
+    }
+
+    public long getMaxPowerConsumptionW() {
+        return maxPowerConsumptionW;
+    }
+
+    public double getAveragePowerConsumptionW() {
+        return averagePowerConsumptionW;
+    }
+
+    public long getMinPowerProductionW() {
+        return minPowerProductionW;
+    }
+
+    public long getMaxPowerProductionW() {
+        return maxPowerProductionW;
+    }
+
+    public double getAveragePowerProductionW() {
+        return averagePowerProductionW;
+    }
+
+    /**
+     * Returns how often a register went down in this interval, for instance because the meter was replaced. The
+     * reading after a reset starts a new baseline and does not count as consumption.
+     */
+    public int getCounterResets() {
+        return counterResets;
+    }
+
+    @Override
+    public String toString() {
+        return "Rollup{" + interval + " " + start + "-" + end + ", samples=" + sampleCount
+                + ", consumptionWh=" + getElectricityConsumptionWh() + ", productionWh=" + getElectricityProductionWh()
+                + ", gasDm3=" + gasConsumptionDm3 + ", averagePowerConsumptionW=" + averagePowerConsumptionW + "}";
+    }
+}
@@ -0,0 +1,257 @@
+package org.boplicity.p1.rollup;
+
+import org.boplicity.p1.device.MeasurementSubscriber;
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Aggregates measurements into intervals as they arrive and emits each interval once it is closed. Every sample is
+ * handled in constant time without allocating; only closing an interval creates a {@link Rollup}.
+ * <p>
+ * Energy per interval is the increase of the cumulative registers since the previous sample. A register going down
+ * is taken as a counter reset and starts a new baseline. Samples may arrive late: an interval stays open for
+ * {@link #setAllowedLateness(long) allowed lateness} after its end, samples for intervals already emitted are dropped
+ * and counted. Late samples only contribute to the power statistics, as the registers have moved on.
+ * <p>
+ * The gas meter reports its reading once per {@link #setGasReadingPeriod(long) reading period}, stamped at the start
+ * of that period. A gas increase is therefore booked on the period before the reading while that interval is still
+ * open, and only for intervals at least as long as the reading period.
+ */
+public class RollupEngine implements MeasurementSubscriber {
+
+    static final MeasurementField[] REGISTERS = {
+            MeasurementField.ELECTRICITY_CONSUMPTION_LOW_RATE_KWH,
+            MeasurementField.ELECTRICITY_CONSUMPTION_NORMAL_RATE_KWH,
+            MeasurementField.ELECTRICITY_PRODUCTION_LOW_RATE_KWH,
+            MeasurementField.ELECTRICITY_PRODUCTION_NORMAL_RATE_KWH
+    };
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private RollupListener rollupListener;
+    private DateTimeZone zone;
+
+    private RollupInterval[] intervals;
+    private Accumulator[] current;
+    private Accumulator[] previous;
+
+    private long allowedLateness;
+    private long gasReadingPeriod = DateTimeConstants.MILLIS_PER_HOUR;
+
+    private long watermark = Long.MIN_VALUE;
+    private long lastRegisterTimestamp = Long.MIN_VALUE;
+    private long[] lastRegisters = new long[REGISTERS.length];
+    private long lastGas = CompactMeasurement.NO_VALUE;
+
+    private long[] deltas = new long[REGISTERS.length];
+
+    private long lateSampleCount;
+    private long counterResetCount;
+
+    public RollupEngine(RollupListener rollupListener, DateTimeZone zone, RollupInterval... intervals) {
+        this.rollupListener = rollupListener;
+        this.zone = zone;
+        this.intervals = intervals;
+
+        current = new Accumulator[intervals.length];
+        previous = new Accumulator[intervals.length];
+
+        for (int i = 0; i < REGISTERS.length; i++) {
+            lastRegisters[i] = CompactMeasurement.NO_VALUE;
+        }
+
+        createAccumulators();
+    }
+
+    public long getAllowedLateness() {
+        return allowedLateness;
+    }
+
+    /**
+     * Sets how long after its end an interval still accepts samples before it is emitted, in millis.
+     */
+    public void setAllowedLateness(long allowedLateness) {
+        this.allowedLateness = allowedLateness;
+    }
+
+    public long getGasReadingPeriod() {
+        return gasReadingPeriod;
+    }
+
+    /**
+     * Sets how often the gas meter reports, in millis: an hour for DSMR 2.2 and 4, five minutes for DSMR 5. Open
+     * intervals keep what they have aggregated so far, including their gas.
+     */
+    public synchronized void setGasReadingPeriod(long gasReadingPeriod) {
+        this.gasReadingPeriod = gasReadingPeriod;
+
+        for (int i = 0; i < intervals.length; i++) {
+            boolean tracksGas = tracksGas(intervals[i]);
+
+            current[i].setTracksGas(tracksGas);
+            previous[i].setTracksGas(tracksGas);
+        }
+    }
+
+    /**
+     * Converts the measurement; use {@link #add(CompactMeasurement)} to stay allocation free.
+     */
+    @Override
+    public void onMeasurement(SmartMeterMeasurement measurement) {
+        try {
+            add(CompactMeasurement.of(measurement));
+        } catch (RuntimeException e) {
+            logger.error(e.toString(), e);
+        }
+    }
+
+    public synchronized void add(CompactMeasurement measurement) {
+        long timestamp = measurement.getTimestamp();
+
+        if (timestamp == CompactMeasurement.NO_VALUE) {
+            return;
+        }
+
+        watermark = Math.max(watermark, timestamp);
+
+        boolean inOrder = timestamp >= lastRegisterTimestamp;
+        int resets = 0;
+        long gasDelta = 0;
+
+        if (inOrder) {
+            lastRegisterTimestamp = timestamp;
+
+            for (int i = 0; i < REGISTERS.length; i++) {
+                long value = measurement.get(REGISTERS[i]);
+                deltas[i] = 0;
+
+                if (value != CompactMeasurement.NO_VALUE) {
+                    if (lastRegisters[i] != CompactMeasurement.NO_VALUE) {
+                        if (value >= lastRegisters[i]) {
+                            deltas[i] = value - lastRegisters[i];
+                        } else {
+                            resets++;
+                        }
+                    }
+                    lastRegisters[i] = value;
+                }
+            }
+
+            long gas = measurement.getGasConsumptionDm3();
+
+            if (gas != CompactMeasurement.NO_VALUE) {
+                if (lastGas != CompactMeasurement.NO_VALUE) {
+                    if (gas >= lastGas) {
+                        gasDelta = gas - lastGas;
+                    } else {
+                        resets++;
+                    }
+                }
+                lastGas = gas;
+            }
+
+            counterResetCount += resets;
+        }
+
+        boolean accepted = false;
+
+        for (int i = 0; i < intervals.length; i++) {
+            advance(i, timestamp);
+
+            Accumulator target = current[i].contains(timestamp) ? current[i]
+                    : previous[i].contains(timestamp) ? previous[i] : null;
+
+            if (target != null) {
+                accepted = true;
+                target.addPower(measurement.getCurrentPowerConsumptionW(), measurement.getCurrentPowerProductionW());
+            }
+
+            if (inOrder) {
+                // Energy that arrives in a closed interval is booked on the current one rather than lost
+                Accumulator energyTarget = target != null ? target : current[i];
+                energyTarget.addEnergy(deltas, resets);
+
+                if (gasDelta != 0) {
+                    long readingTime = RollupInterval.floor(timestamp, gasReadingPeriod) - 1;
+                    Accumulator gasTarget = current[i].contains(readingTime) ? current[i]
+                            : previous[i].contains(readingTime) ? previous[i] : energyTarget;
+                    gasTarget.addGas(gasDelta);
+                }
+            }
+        }
+
+        if (!accepted && intervals.length > 0) {
+            lateSampleCount++;
+        }
+    }
+
+    /**
+     * Emits all open intervals, for instance on shutdown.
+     */
+    public synchronized void flush() {
+        for (int i = 0; i < intervals.length; i++) {
+            emit(previous[i]);
+            emit(current[i]);
+        }
+    }
+
+    /**
+     * Returns the number of samples that arrived after their interval had been emitted.
+     */
+    public synchronized long getLateSampleCount() {
+        return lateSampleCount;
+    }
+
+    public synchronized long getCounterResetCount() {
+        return counterResetCount;
+    }
+
+    private void advance(int index, long timestamp) {
+        Accumulator currentAccumulator = current[index];
+        RollupInterval interval = intervals[index];
+
+        if (!currentAccumulator.open || timestamp >= currentAccumulator.end) {
+            if (currentAccumulator.open && timestamp >= currentAccumulator.end) {
+                emit(previous[index]);
+
+                Accumulator recycled = previous[index];
+                previous[index] = currentAccumulator;
+                current[index] = recycled;
+                currentAccumulator = recycled;
+            }
+
+            if (!currentAccumulator.open) {
+                long start = interval.start(timestamp, zone);
+                currentAccumulator.reset(start, interval.end(start, zone));
+            }
+        }
+
+        if (previous[index].open && watermark >= previous[index].end + allowedLateness) {
+            emit(previous[index]);
+        }
+    }
+
+    private boolean tracksGas(RollupInterval interval) {
+        return interval.getLength() >= gasReadingPeriod;
+    }
+
+    private void emit(Accumulator accumulator) {
+        if (accumulator.open) {
+            rollupListener.onRollup(accumulator.close());
+        }
+    }
+
+    private void createAccumulators() {
+        for (int i = 0; i < intervals.length; i++) {
+            boolean tracksGas = tracksGas(intervals[i]);
+
+            current[i] = new Accumulator(intervals[i], tracksGas);
+            previous[i] = new Accumulator(intervals[i], tracksGas);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package org.boplicity.p1.rollup;
+
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+
+/**
+ * The lengths of the intervals the {@link RollupEngine} aggregates over. Boundaries are aligned to the local time of a
+ * time zone, so a day is 23 or 25 hours long on a DST switch.
+ */
+public enum RollupInterval {
+
+    MINUTE(DateTimeConstants.MILLIS_PER_MINUTE),
+    QUARTER_HOUR(15 * DateTimeConstants.MILLIS_PER_MINUTE),
+    HOUR(DateTimeConstants.MILLIS_PER_HOUR),
+    DAY(DateTimeConstants.MILLIS_PER_DAY);
+
+    private final long length;
+
+    RollupInterval(long length) {
+        this.length = length;
+    }
+
+    /**
+     * Returns the nominal length in millis.
+     */
+    public long getLength() {
+        return length;
+    }
+
+    public long start(long timestamp, DateTimeZone zone) {
+        int offset = zone.getOffset(timestamp);
+        long localStart = floor(timestamp + offset, length);
+
+        if (this != DAY) {
+            return localStart - offset;
+        }
+
+        return zone.convertLocalToUTC(localStart, false, timestamp);
+    }
+
+    public long end(long start, DateTimeZone zone) {
+        if (this != DAY) {
+            return start + length;
+        }
+
+        return zone.convertLocalToUTC(zone.convertUTCToLocal(start) + length, false);
+    }
+
+    static long floor(long timestamp, long length) {
+        return timestamp - Math.floorMod(timestamp, length);
+    }
+}
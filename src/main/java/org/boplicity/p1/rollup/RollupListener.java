@@ -0,0 +1,6 @@
+package org.boplicity.p1.rollup;
+
+public interface RollupListener {
+
+    void onRollup(Rollup rollup);
+}
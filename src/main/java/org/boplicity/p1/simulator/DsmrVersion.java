@@ -0,0 +1,40 @@
+package org.boplicity.p1.simulator;
+
+/**
+ * The telegram formats a {@link VirtualMeter} can produce, with the interval at which real meters send them and the
+ * interval at which they receive a new gas reading.
+ */
+public enum DsmrVersion {
+
+    DSMR22(10000, 3600000, false),
+    DSMR4(10000, 3600000, true),
+    DSMR5(1000, 300000, true);
+
+    private final long telegramInterval;
+    private final long gasInterval;
+    private final boolean checksum;
+
+    DsmrVersion(long telegramInterval, long gasInterval, boolean checksum) {
+        this.telegramInterval = telegramInterval;
+        this.gasInterval = gasInterval;
+        this.checksum = checksum;
+    }
+
+    /**
+     * Returns the time between two telegrams in milliseconds.
+     */
+    public long getTelegramInterval() {
+        return telegramInterval;
+    }
+
+    /**
+     * Returns the time between two readings of the gas meter in milliseconds.
+     */
+    public long getGasInterval() {
+        return gasInterval;
+    }
+
+    public boolean hasChecksum() {
+        return checksum;
+    }
+}
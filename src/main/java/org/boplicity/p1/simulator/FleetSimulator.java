@@ -0,0 +1,373 @@
+package org.boplicity.p1.simulator;
+
+import org.boplicity.p1.device.TelegramFramer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Sends the telegrams of many {@link VirtualMeter}s, each at the interval of its {@link DsmrVersion}. The meters are
+ * spread over the interval so the load is even, and the simulated clock runs at a configurable speed-up of the wall
+ * clock, or as fast as the sink takes telegrams.
+ * <p>
+ * Telegrams go to a {@link TelegramSink}, like the framer of the code under test, or are served over TCP by
+ * {@link #serve(int, int)} so an {@link org.boplicity.p1.hub.IngestionHub} can connect to it like to a row of P1
+ * dongles.
+ */
+public class FleetSimulator {
+
+    /**
+     * Runs the simulated clock as fast as the telegrams can be generated and written.
+     */
+    public static final double UNPACED = Double.POSITIVE_INFINITY;
+
+    private static final int SOCKET_BUFFER_SIZE = 64 * 1024;
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final List<ScheduledMeter> meters = new ArrayList<ScheduledMeter>();
+
+    private volatile double speedUp = 1;
+    private volatile boolean stopped;
+
+    private Thread thread;
+    private ServerSocket serverSocket;
+    private Queue<List<ScheduledMeter>> freeSlices = new ConcurrentLinkedQueue<List<ScheduledMeter>>();
+    private List<Thread> connectionThreads = new CopyOnWriteArrayList<Thread>();
+    private List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+
+    private AtomicLong telegramCount = new AtomicLong();
+    private AtomicLong byteCount = new AtomicLong();
+    private LongAccumulator maxLagNanos = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Creates a fleet of meters of one version, starting now.
+     */
+    public FleetSimulator(int meterCount, DsmrVersion version, long seed) {
+        this(createMeters(meterCount, version, seed, System.currentTimeMillis()));
+    }
+
+    public FleetSimulator(List<VirtualMeter> meters) {
+        for (int i = 0; i < meters.size(); i++) {
+            VirtualMeter meter = meters.get(i);
+            long interval = meter.getVersion().getTelegramInterval();
+
+            this.meters.add(new ScheduledMeter(meter, meter.getTime() + interval * i / meters.size()));
+        }
+    }
+
+    public static List<VirtualMeter> createMeters(int meterCount, DsmrVersion version, long seed, long startMillis) {
+        List<VirtualMeter> meters = new ArrayList<VirtualMeter>(meterCount);
+
+        for (int i = 0; i < meterCount; i++) {
+            meters.add(new VirtualMeter(version, i, seed, startMillis));
+        }
+
+        return meters;
+    }
+
+    public List<VirtualMeter> getMeters() {
+        List<VirtualMeter> result = new ArrayList<VirtualMeter>(meters.size());
+
+        for (ScheduledMeter scheduledMeter : meters) {
+            result.add(scheduledMeter.meter);
+        }
+
+        return Collections.unmodifiableList(result);
+    }
+
+    public double getSpeedUp() {
+        return speedUp;
+    }
+
+    /**
+     * Sets how many times faster than the wall clock the simulated clock runs, {@link #UNPACED} for as fast as
+     * possible. Defaults to 1, real time.
+     */
+    public void setSpeedUp(double speedUp) {
+        if (!(speedUp > 0)) {
+            throw new IllegalArgumentException("Speed-up must be positive: " + speedUp);
+        }
+
+        this.speedUp = speedUp;
+    }
+
+    /**
+     * Sends the given number of telegrams of every meter on the calling thread.
+     */
+    public void generate(int telegramsPerMeter, TelegramSink sink) throws IOException {
+        stopped = false;
+        run(meters, telegramsPerMeter, sink);
+    }
+
+    /**
+     * Sends telegrams on a thread of its own until {@link #stop()}. The sink is only called by that thread.
+     */
+    public void start(final TelegramSink sink) {
+        stopped = false;
+
+        thread = new Thread("p1-simulator") {
+            @Override
+            public void run() {
+                try {
+                    FleetSimulator.this.run(meters, Integer.MAX_VALUE, sink);
+                } catch (IOException e) {
+                    logger.error(e.toString(), e);
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Serves the telegrams over TCP. The fleet is split into slices; every connection gets a slice of its own and
+     * receives the telegrams of those meters, and a connection that arrives when all slices are taken is closed. The
+     * simulated clock of a slice stands still while nobody is connected to it.
+     *
+     * @param port the port to listen on, 0 for any free port
+     * @return the port listened on
+     */
+    public int serve(int port, int metersPerConnection) throws IOException {
+        if (metersPerConnection <= 0) {
+            throw new IllegalArgumentException("Meters per connection must be positive: " + metersPerConnection);
+        }
+
+        for (int from = 0; from < meters.size(); from += metersPerConnection) {
+            freeSlices.add(meters.subList(from, Math.min(meters.size(), from + metersPerConnection)));
+        }
+
+        stopped = false;
+        serverSocket = new ServerSocket();
+        serverSocket.bind(new InetSocketAddress(port));
+
+        thread = new Thread("p1-simulator-accept") {
+            @Override
+            public void run() {
+                accept();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+
+        return serverSocket.getLocalPort();
+    }
+
+    public void stop() throws InterruptedException {
+        stopped = true;
+
+        if (serverSocket != null) {
+            close(serverSocket);
+        }
+
+        if (thread != null) {
+            thread.join();
+        }
+
+        for (Socket socket : sockets) {
+            close(socket);
+        }
+
+        for (Thread connectionThread : connectionThreads) {
+            connectionThread.join();
+        }
+    }
+
+    public long getTelegramCount() {
+        return telegramCount.get();
+    }
+
+    public long getByteCount() {
+        return byteCount.get();
+    }
+
+    /**
+     * Returns the longest time a telegram was sent after it was due, in nanos. A growing lag means the sink, or the
+     * generator itself, can't keep up with the configured rate.
+     */
+    public long getMaxLagNanos() {
+        return maxLagNanos.get();
+    }
+
+    private void accept() {
+        while (!stopped) {
+            final Socket socket;
+
+            try {
+                socket = serverSocket.accept();
+            } catch (IOException e) {
+                if (!stopped) {
+                    logger.error(e.toString(), e);
+                }
+                return;
+            }
+
+            final List<ScheduledMeter> slice = freeSlices.poll();
+
+            if (slice == null) {
+                logger.warn("No meters left for " + socket.getRemoteSocketAddress());
+                close(socket);
+                continue;
+            }
+
+            Thread connectionThread = new Thread("p1-simulator-" + socket.getRemoteSocketAddress()) {
+                @Override
+                public void run() {
+                    sendTo(socket, slice);
+                }
+            };
+            connectionThread.setDaemon(true);
+
+            sockets.add(socket);
+            connectionThreads.add(connectionThread);
+            connectionThread.start();
+        }
+    }
+
+    private void sendTo(Socket socket, List<ScheduledMeter> slice) {
+        try {
+            final OutputStream outputStream = new BufferedOutputStream(socket.getOutputStream(), SOCKET_BUFFER_SIZE);
+
+            run(slice, Integer.MAX_VALUE, (bytes, offset, length) -> {
+                outputStream.write(bytes, offset, length);
+                outputStream.flush();
+            });
+        } catch (IOException e) {
+            if (!stopped) {
+                logger.info("Connection " + socket.getRemoteSocketAddress() + " closed: " + e);
+            }
+        } finally {
+            close(socket);
+            sockets.remove(socket);
+            freeSlices.add(slice);
+        }
+    }
+
+    private void run(List<ScheduledMeter> slice, int telegramsPerMeter, TelegramSink sink) throws IOException {
+        PriorityQueue<ScheduledMeter> queue = new PriorityQueue<ScheduledMeter>(Math.max(1, slice.size()));
+
+        for (ScheduledMeter scheduledMeter : slice) {
+            scheduledMeter.sent = 0;
+            queue.add(scheduledMeter);
+        }
+
+        if (queue.isEmpty()) {
+            return;
+        }
+
+        long originMillis = queue.peek().due;
+        long originNanos = System.nanoTime();
+
+        ScheduledMeter next;
+
+        while (!stopped && (next = queue.poll()) != null) {
+            double currentSpeedUp = speedUp;
+
+            if (currentSpeedUp != UNPACED) {
+                long target = originNanos + (long) ((next.due - originMillis) * 1e6 / currentSpeedUp);
+                long wait;
+
+                while ((wait = target - System.nanoTime()) > 0 && !stopped) {
+                    LockSupport.parkNanos(wait);
+                }
+
+                maxLagNanos.accumulate(-wait);
+            }
+
+            VirtualMeter meter = next.meter;
+            meter.advanceTo(next.due);
+
+            int length = meter.writeTelegramBytes();
+            sink.write(meter.getTelegramBuffer(), 0, length);
+
+            telegramCount.incrementAndGet();
+            byteCount.addAndGet(length);
+
+            next.due += meter.getVersion().getTelegramInterval();
+
+            if (++next.sent < telegramsPerMeter) {
+                queue.add(next);
+            }
+        }
+    }
+
+    private void close(Closeable closeable) {
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            logger.error(e.toString(), e);
+        }
+    }
+
+    private static class ScheduledMeter implements Comparable<ScheduledMeter> {
+
+        final VirtualMeter meter;
+        long due;
+        int sent;
+
+        ScheduledMeter(VirtualMeter meter, long due) {
+            this.meter = meter;
+            this.due = due;
+        }
+
+        @Override
+        public int compareTo(ScheduledMeter other) {
+            return Long.compare(due, other.due);
+        }
+    }
+
+    /**
+     * Runs a fleet for a while and reports the throughput, or serves it over TCP until killed.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length != 3 && args.length != 5) {
+            System.err.println("Usage: FleetSimulator <meters> <DSMR22|DSMR4|DSMR5> <speed-up|max> "
+                    + "[<port> <meters-per-connection>]");
+            System.exit(1);
+        }
+
+        DsmrVersion version = DsmrVersion.valueOf(args[1]);
+        FleetSimulator fleetSimulator = new FleetSimulator(Integer.parseInt(args[0]), version, 1);
+        fleetSimulator.setSpeedUp("max".equals(args[2]) ? UNPACED : Double.parseDouble(args[2]));
+
+        if (args.length == 5) {
+            int port = fleetSimulator.serve(Integer.parseInt(args[3]), Integer.parseInt(args[4]));
+            System.out.printf("Serving on port %d%n", port);
+            Thread.currentThread().join();
+        }
+
+        TelegramFramer telegramFramer = new TelegramFramer(frame -> {
+        });
+        telegramFramer.setChecksumRequired(version.hasChecksum());
+
+        long started = System.nanoTime();
+        fleetSimulator.start(telegramFramer::feed);
+        TimeUnit.SECONDS.sleep(10);
+        fleetSimulator.stop();
+
+        double seconds = (System.nanoTime() - started) / 1e9;
+
+        System.out.printf("%d telegrams (%d framed, %d corrupt) in %.2f s, %.0f telegrams/s, %.1f MB/s, "
+                        + "max lag %.1f ms%n", fleetSimulator.getTelegramCount(), telegramFramer.getFrameCount(),
+                telegramFramer.getCorruptFrameCount(), seconds, fleetSimulator.getTelegramCount() / seconds,
+                fleetSimulator.getByteCount() / seconds / (1024 * 1024), fleetSimulator.getMaxLagNanos() / 1e6);
+    }
+}
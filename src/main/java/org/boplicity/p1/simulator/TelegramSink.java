@@ -0,0 +1,14 @@
+package org.boplicity.p1.simulator;
+
+import java.io.IOException;
+
+/**
+ * Receives generated telegrams, e.g. <code>telegramFramer::feed</code> or a socket's output stream.
+ */
+public interface TelegramSink {
+
+    /**
+     * Receives the bytes of a single telegram. The array is reused for the next telegram once the call returns.
+     */
+    void write(byte[] bytes, int offset, int length) throws IOException;
+}
@@ -0,0 +1,130 @@
+package org.boplicity.p1.simulator;
+
+import org.joda.time.DateTime;
+
+/**
+ * Writes ASCII telegram text into a growing byte array without creating strings for the values.
+ */
+class TelegramWriter {
+
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes();
+
+    private byte[] bytes = new byte[1024];
+    private int length;
+
+    void reset() {
+        length = 0;
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    int length() {
+        return length;
+    }
+
+    TelegramWriter text(String text) {
+        ensure(text.length());
+
+        for (int i = 0; i < text.length(); i++) {
+            bytes[length++] = (byte) text.charAt(i);
+        }
+
+        return this;
+    }
+
+    TelegramWriter line(String text) {
+        return text(text).newLine();
+    }
+
+    TelegramWriter newLine() {
+        ensure(2);
+        bytes[length++] = '\r';
+        bytes[length++] = '\n';
+
+        return this;
+    }
+
+    /**
+     * Writes a non-negative value of <code>10^-decimals</code> units zero-padded to the given number of integer digits,
+     * like <code>004347.922</code>.
+     */
+    TelegramWriter fixed(long unscaled, int integerDigits, int decimals) {
+        ensure(integerDigits + decimals + 1);
+
+        int end = length + integerDigits + (decimals > 0 ? decimals + 1 : 0);
+        int position = end;
+
+        for (int i = 0; i < decimals; i++) {
+            bytes[--position] = (byte) ('0' + unscaled % 10);
+            unscaled /= 10;
+        }
+
+        if (decimals > 0) {
+            bytes[--position] = '.';
+        }
+
+        for (int i = 0; i < integerDigits; i++) {
+            bytes[--position] = (byte) ('0' + unscaled % 10);
+            unscaled /= 10;
+        }
+
+        length = end;
+
+        return this;
+    }
+
+    /**
+     * Writes the timestamp as <code>YYMMDDhhmmss</code> in its own zone, followed by the daylight saving flag S or W
+     * if asked for.
+     */
+    TelegramWriter timestamp(DateTime timestamp, boolean withFlag) {
+        fixed(timestamp.getYearOfCentury(), 2, 0);
+        fixed(timestamp.getMonthOfYear(), 2, 0);
+        fixed(timestamp.getDayOfMonth(), 2, 0);
+        fixed(timestamp.getHourOfDay(), 2, 0);
+        fixed(timestamp.getMinuteOfHour(), 2, 0);
+        fixed(timestamp.getSecondOfMinute(), 2, 0);
+
+        if (withFlag) {
+            boolean summer = !timestamp.getZone().isStandardOffset(timestamp.getMillis());
+            text(summer ? "S" : "W");
+        }
+
+        return this;
+    }
+
+    /**
+     * Writes every character of the text as two hexadecimal digits, as meters encode their equipment id.
+     */
+    TelegramWriter hex(String text) {
+        ensure(text.length() * 2);
+
+        for (int i = 0; i < text.length(); i++) {
+            int c = text.charAt(i) & 0xff;
+            bytes[length++] = HEX_DIGITS[c >>> 4];
+            bytes[length++] = HEX_DIGITS[c & 0xf];
+        }
+
+        return this;
+    }
+
+    TelegramWriter hex16(int value) {
+        ensure(4);
+
+        for (int shift = 12; shift >= 0; shift -= 4) {
+            bytes[length++] = HEX_DIGITS[(value >>> shift) & 0xf];
+        }
+
+        return this;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > bytes.length) {
+            byte[] grown = new byte[Math.max(length + extra, bytes.length * 2)];
+            System.arraycopy(bytes, 0, grown, 0, length);
+            bytes = grown;
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package org.boplicity.p1.simulator;
+
+import org.boplicity.p1.device.Crc16;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+import org.joda.time.DateTimeZone;
+
+import java.util.Random;
+
+/**
+ * A simulated household with a smart meter. Consumption follows a daily curve with a base load, noise and the odd
+ * appliance that runs for a while; some households have solar panels that produce around noon. The registers only go
+ * up and are split over the low and normal tariff like a Dutch meter does, and the gas reading is updated at the
+ * interval of the {@link DsmrVersion}.
+ * <p>
+ * The meter is driven by {@link #advanceTo(long)}; {@link #writeTelegram()} renders its state as a telegram with a
+ * valid checksum. Instances are not thread-safe.
+ */
+public class VirtualMeter {
+
+    public static final DateTimeZone METER_TIME = DateTimeZone.forID("Europe/Amsterdam");
+
+    private final DsmrVersion version;
+    private final String equipmentId;
+    private final String gasEquipmentId;
+    private final Random random;
+
+    private final double baseLoad;
+    private final double solarPeak;
+    private final double heatingRate;
+
+    private final TelegramWriter writer = new TelegramWriter();
+
+    private long time;
+    private double powerW;
+    private double noise;
+    private double cloudiness;
+    private double applianceW;
+    private double applianceSeconds;
+
+    private double consumptionLowWh;
+    private double consumptionNormalWh;
+    private double productionLowWh;
+    private double productionNormalWh;
+    private boolean lowTariff;
+
+    private double gasDm3;
+    private long gasTime;
+
+    /**
+     * Creates the meter with registers that have been running for a while, at the given time.
+     *
+     * @param index makes the equipment ids unique within a fleet
+     */
+    public VirtualMeter(DsmrVersion version, int index, long seed, long startMillis) {
+        this.version = version;
+        this.random = new Random(seed * 31 + index);
+        this.equipmentId = String.format("E%015d", index);
+        this.gasEquipmentId = String.format("G%015d", index);
+
+        baseLoad = 80 + random.nextDouble() * 220;
+        solarPeak = random.nextDouble() < 0.4 ? 1500 + random.nextDouble() * 3000 : 0;
+        heatingRate = 100 + random.nextDouble() * 400;
+
+        consumptionLowWh = 1000000 + random.nextDouble() * 5000000;
+        consumptionNormalWh = 1000000 + random.nextDouble() * 5000000;
+        productionLowWh = solarPeak > 0 ? random.nextDouble() * 1000000 : 0;
+        productionNormalWh = solarPeak > 0 ? random.nextDouble() * 2000000 : 0;
+        gasDm3 = 500000 + random.nextDouble() * 3000000;
+
+        time = startMillis;
+        gasTime = startMillis - startMillis % version.getGasInterval();
+        cloudiness = random.nextDouble();
+        updatePower(0);
+    }
+
+    public DsmrVersion getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the equipment id as it is found in the telegram, after decoding it.
+     */
+    public String getEquipmentId() {
+        return equipmentId;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Returns the net power in W, negative when producing.
+     */
+    public double getPowerW() {
+        return powerW;
+    }
+
+    /**
+     * Moves the clock forward, accumulating the power drawn since the previous call in the registers.
+     */
+    public void advanceTo(long millis) {
+        if (millis <= time) {
+            return;
+        }
+
+        double seconds = (millis - time) / 1000.0;
+        time = millis;
+
+        updatePower(seconds);
+
+        double energyWh = Math.abs(powerW) * seconds / 3600;
+
+        if (powerW >= 0) {
+            if (lowTariff) {
+                consumptionLowWh += energyWh;
+            } else {
+                consumptionNormalWh += energyWh;
+            }
+        } else if (lowTariff) {
+            productionLowWh += energyWh;
+        } else {
+            productionNormalWh += energyWh;
+        }
+
+        long gasInterval = version.getGasInterval();
+
+        while (gasTime + gasInterval <= millis) {
+            gasTime += gasInterval;
+            gasDm3 += gasRate(new DateTime(gasTime, METER_TIME)) * gasInterval / 3600000.0;
+        }
+    }
+
+    /**
+     * Renders the current state as a telegram, including the checksum and the final line feed.
+     *
+     * @return a copy of the telegram bytes
+     */
+    public byte[] writeTelegram() {
+        writeTelegramBytes();
+
+        byte[] result = new byte[writer.length()];
+        System.arraycopy(writer.bytes(), 0, result, 0, result.length);
+
+        return result;
+    }
+
+    /**
+     * Renders the current state into a buffer owned by the meter, which is overwritten by the next call.
+     *
+     * @return the length of the telegram at the start of {@link #getTelegramBuffer()}
+     */
+    public int writeTelegramBytes() {
+        writer.reset();
+
+        if (version == DsmrVersion.DSMR22) {
+            writeDsmr22();
+        } else {
+            writeDsmr4();
+        }
+
+        return writer.length();
+    }
+
+    public byte[] getTelegramBuffer() {
+        return writer.bytes();
+    }
+
+    private void writeDsmr22() {
+        long consumptionW = Math.round(Math.max(0, powerW));
+        long productionW = Math.round(Math.max(0, -powerW));
+
+        writer.line("/XMX5XMXABCE000062529").newLine()
+                .text("0-0:96.1.1(").hex(equipmentId).line(")")
+                .text("1-0:1.8.1(").fixed((long) consumptionLowWh, 5, 3).line("*kWh)")
+                .text("1-0:1.8.2(").fixed((long) consumptionNormalWh, 5, 3).line("*kWh)")
+                .text("1-0:2.8.1(").fixed((long) productionLowWh, 5, 3).line("*kWh)")
+                .text("1-0:2.8.2(").fixed((long) productionNormalWh, 5, 3).line("*kWh)")
+                .text("0-0:96.14.0(").text(lowTariff ? "0001" : "0002").line(")")
+                .text("1-0:1.7.0(").fixed(consumptionW / 10, 4, 2).line("*kW)")
+                .text("1-0:2.7.0(").fixed(productionW / 10, 4, 2).line("*kW)")
+                .line("0-0:17.0.0(999*A)")
+                .line("0-0:96.3.10(1)")
+                .line("0-0:96.13.1()")
+                .line("0-0:96.13.0()")
+                .text("0-1:96.1.0(").hex(gasEquipmentId).line(")")
+                .line("0-1:24.1.0(03)")
+                .text("0-1:24.3.0(").timestamp(new DateTime(gasTime, METER_TIME), false)
+                .line(")(00)(60)(1)(0-1:24.2.0)(m3)")
+                .text("(").fixed((long) gasDm3, 5, 3).line(")")
+                .line("0-1:24.4.0(1)")
+                .text("!").newLine();
+    }
+
+    private void writeDsmr4() {
+        boolean dsmr5 = version == DsmrVersion.DSMR5;
+        long consumptionW = Math.round(Math.max(0, powerW));
+        long productionW = Math.round(Math.max(0, -powerW));
+
+        writer.line(dsmr5 ? "/ISK5\\2M550T-1012" : "/KFM5KAIFA-METER").newLine()
+                .line(dsmr5 ? "1-3:0.2.8(50)" : "1-3:0.2.8(42)")
+                .text("0-0:1.0.0(").timestamp(new DateTime(time, METER_TIME), true).line(")")
+                .text("0-0:96.1.1(").hex(equipmentId).line(")")
+                .text("1-0:1.8.1(").fixed((long) consumptionLowWh, 6, 3).line("*kWh)")
+                .text("1-0:1.8.2(").fixed((long) consumptionNormalWh, 6, 3).line("*kWh)")
+                .text("1-0:2.8.1(").fixed((long) productionLowWh, 6, 3).line("*kWh)")
+                .text("1-0:2.8.2(").fixed((long) productionNormalWh, 6, 3).line("*kWh)")
+                .text("0-0:96.14.0(").text(lowTariff ? "0001" : "0002").line(")")
+                .text("1-0:1.7.0(").fixed(consumptionW, 2, 3).line("*kW)")
+                .text("1-0:2.7.0(").fixed(productionW, 2, 3).line("*kW)")
+                .line("0-0:96.7.21(00004)")
+                .line("0-0:96.7.9(00002)")
+                .line("1-0:99.97.0(0)(0-0:96.7.19)")
+                .line("1-0:32.32.0(00000)")
+                .line("1-0:32.36.0(00000)")
+                .line("0-0:96.13.0()");
+
+        if (dsmr5) {
+            writer.text("1-0:32.7.0(").fixed(Math.round(2300 + noise), 3, 1).line("*V)");
+        }
+
+        writer.text("1-0:31.7.0(").fixed(Math.round(Math.abs(powerW) / 230), 3, 0).line("*A)")
+                .text("1-0:21.7.0(").fixed(consumptionW, 2, 3).line("*kW)")
+                .text("1-0:22.7.0(").fixed(productionW, 2, 3).line("*kW)")
+                .line("0-1:24.1.0(003)")
+                .text("0-1:96.1.0(").hex(gasEquipmentId).line(")")
+                .text("0-1:24.2.1(").timestamp(new DateTime(gasTime, METER_TIME), true)
+                .text(")(").fixed((long) gasDm3, 5, 3).line("*m3)")
+                .text("!");
+
+        int crc = Crc16.update(0, writer.bytes(), 0, writer.length());
+        writer.hex16(crc).newLine();
+    }
+
+    private void updatePower(double seconds) {
+        DateTime now = new DateTime(time, METER_TIME);
+        double hour = now.getMillisOfDay() / 3600000.0;
+        boolean weekend = now.getDayOfWeek() >= DateTimeConstants.SATURDAY;
+
+        lowTariff = weekend || hour < 7 || hour >= 23;
+
+        double profile = 1 + 0.8 * Math.exp(-(hour - 7.5) * (hour - 7.5) / 2)
+                + 1.5 * Math.exp(-(hour - 19) * (hour - 19) / 4);
+
+        noise = noise * 0.95 + random.nextGaussian() * 15;
+
+        if (applianceSeconds > 0) {
+            applianceSeconds -= seconds;
+        } else if (random.nextDouble() < seconds / 1800) {
+            applianceW = 1000 + random.nextDouble() * 1500;
+            applianceSeconds = 60 + random.nextDouble() * 840;
+        }
+
+        double consumption = Math.max(20, baseLoad * profile + noise + (applianceSeconds > 0 ? applianceW : 0));
+
+        double production = 0;
+
+        if (solarPeak > 0 && hour > 6 && hour < 20) {
+            cloudiness = Math.max(0, Math.min(1, cloudiness + random.nextGaussian() * 0.01 * Math.sqrt(seconds)));
+            production = solarPeak * Math.sin(Math.PI * (hour - 6) / 14) * (1 - 0.6 * cloudiness);
+        }
+
+        powerW = consumption - production;
+    }
+
+    // In dm3 per hour; heating in the morning and evening, some hot water during the day
+    private double gasRate(DateTime at) {
+        double hour = at.getMillisOfDay() / 3600000.0;
+        double heating = hour >= 6 && hour < 9 || hour >= 17 && hour < 23 ? 1 : 0.2;
+
+        return heatingRate * heating + random.nextDouble() * 50;
+    }
+}
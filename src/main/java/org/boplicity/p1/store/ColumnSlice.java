@@ -0,0 +1,41 @@
+package org.boplicity.p1.store;
+
+import org.boplicity.p1.model.MeasurementField;
+
+import java.nio.LongBuffer;
+
+/**
+ * The rows of one segment that fall in a queried time range. The buffers are views on the mapped column files, so
+ * only the pages that are actually read are loaded.
+ */
+public class ColumnSlice {
+
+    private Segment segment;
+    private int fromRow;
+    private int toRow;
+
+    ColumnSlice(Segment segment, int fromRow, int toRow) {
+        this.segment = segment;
+        this.fromRow = fromRow;
+        this.toRow = toRow;
+    }
+
+    public int size() {
+        return toRow - fromRow;
+    }
+
+    /**
+     * Returns the timestamps of the rows in epoch millis.
+     */
+    public LongBuffer timestamps() {
+        return segment.column(null, fromRow, toRow);
+    }
+
+    /**
+     * Returns the values of the rows as scaled by {@link MeasurementField#getScale()}, with
+     * {@link org.boplicity.p1.model.CompactMeasurement#NO_VALUE} for missing values.
+     */
+    public LongBuffer values(MeasurementField field) {
+        return segment.column(field, fromRow, toRow);
+    }
+}
@@ -0,0 +1,296 @@
+package org.boplicity.p1.store;
+
+import org.boplicity.p1.device.MeasurementSubscriber;
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Append-only history of measurements, stored per column in memory-mapped segment files. A segment is sealed once it
+ * reaches its capacity and a new one is started. Sealed segments other than the few read most recently drop their
+ * mappings, which are then released when the garbage collector gets to them; this does not put a hard bound on the
+ * mapped address space.
+ * <p>
+ * Appending is single-threaded; queries can run concurrently with it. Subscribe the store to a listener to record
+ * every parsed measurement.
+ */
+public class MeasurementStore implements MeasurementSubscriber, Closeable {
+
+    public static final int DEFAULT_SEGMENT_CAPACITY = 7 * 24 * 3600;
+
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final int MAPPED_SEALED_SEGMENTS = 8;
+
+    private Logger logger = LoggerFactory.getLogger(getClass());
+
+    private File directory;
+    private int segmentCapacity;
+
+    private List<Segment> segments = new CopyOnWriteArrayList<Segment>();
+    private Segment tail;
+    private long nextSegmentNumber;
+    private long lastTimestamp;
+
+    private long forceInterval = 10000;
+    private long lastForce = System.currentTimeMillis();
+
+    private final Map<Segment, Boolean> mappedSealedSegments =
+            new LinkedHashMap<Segment, Boolean>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Segment, Boolean> eldest) {
+                    if (size() > MAPPED_SEALED_SEGMENTS) {
+                        eldest.getKey().unmap();
+                        return true;
+                    }
+                    return false;
+                }
+            };
+
+    public MeasurementStore(File directory) throws IOException {
+        this(directory, DEFAULT_SEGMENT_CAPACITY);
+    }
+
+    /**
+     * Opens the store, recovering the rows written to the last segment before an unclean shutdown.
+     */
+    public MeasurementStore(File directory, int segmentCapacity) throws IOException {
+        this.directory = directory;
+        this.segmentCapacity = segmentCapacity;
+
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Could not create " + directory);
+        }
+
+        File[] segmentDirectories = directory.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(File file) {
+                return file.isDirectory() && file.getName().startsWith(SEGMENT_PREFIX);
+            }
+        });
+        Arrays.sort(segmentDirectories);
+
+        for (File segmentDirectory : segmentDirectories) {
+            Segment segment = Segment.open(segmentDirectory);
+
+            if (segment.getRowCount() > 0) {
+                segments.add(segment);
+            }
+
+            nextSegmentNumber = Long.parseLong(segmentDirectory.getName().substring(SEGMENT_PREFIX.length())) + 1;
+            tail = segment;
+        }
+
+        if (tail != null && tail.isSealed()) {
+            tail = null;
+        }
+
+        // Only the last segment is read, reading the others would map them all
+        if (!segments.isEmpty()) {
+            Segment last = segments.get(segments.size() - 1);
+            lastTimestamp = last.getLastTimestamp();
+            touch(last);
+        }
+
+        logger.info("Opened measurement store " + directory + " with " + size() + " measurements");
+    }
+
+    /**
+     * @throws IllegalArgumentException if the measurement has no timestamp or is older than the last one
+     */
+    public synchronized void append(CompactMeasurement measurement) throws IOException {
+        long timestamp = measurement.getTimestamp();
+
+        if (timestamp == CompactMeasurement.NO_VALUE || timestamp <= 0) {
+            throw new IllegalArgumentException("Measurement has no timestamp");
+        }
+
+        if (timestamp < lastTimestamp) {
+            throw new IllegalArgumentException("Measurement at " + timestamp + " is older than " + lastTimestamp);
+        }
+
+        if (tail == null || tail.isFull()) {
+            roll();
+        }
+
+        tail.append(measurement);
+        lastTimestamp = timestamp;
+
+        if (tail.getRowCount() == 1) {
+            segments.add(tail);
+        }
+
+        if (forceInterval > 0) {
+            long now = System.currentTimeMillis();
+
+            if (now - lastForce >= forceInterval) {
+                tail.force();
+                lastForce = now;
+            }
+        }
+    }
+
+    @Override
+    public void onMeasurement(SmartMeterMeasurement measurement) {
+        try {
+            append(CompactMeasurement.of(measurement));
+        } catch (IOException e) {
+            logger.error(e.toString(), e);
+        } catch (RuntimeException e) {
+            logger.error(e.toString(), e);
+        }
+    }
+
+    public long size() {
+        long size = 0;
+
+        for (Segment segment : segments) {
+            size += segment.getRowCount();
+        }
+
+        return size;
+    }
+
+    /**
+     * Returns the rows with a timestamp in <code>[from, to)</code>, one slice per segment.
+     */
+    public List<ColumnSlice> query(long from, long to) {
+        List<ColumnSlice> slices = new ArrayList<ColumnSlice>();
+
+        for (Segment segment : segments) {
+            int rows = segment.getRowCount();
+
+            if (rows == 0 || segment.getFirstTimestamp() >= to) {
+                continue;
+            }
+
+            touch(segment);
+
+            if (segment.getLastTimestamp() < from) {
+                continue;
+            }
+
+            int fromRow = segment.lowerBound(from);
+            int toRow = segment.lowerBound(to);
+
+            if (toRow > fromRow) {
+                slices.add(new ColumnSlice(segment, fromRow, toRow));
+            }
+        }
+
+        return slices;
+    }
+
+    /**
+     * Returns how much a cumulative register increased between the first and the last reading in
+     * <code>[from, to)</code>, scaled by {@link MeasurementField#getScale()}, or 0 if there are fewer than two
+     * readings.
+     */
+    public long delta(MeasurementField field, long from, long to) {
+        List<ColumnSlice> slices = query(from, to);
+
+        long first = CompactMeasurement.NO_VALUE;
+        long last = CompactMeasurement.NO_VALUE;
+
+        for (int i = 0; i < slices.size() && first == CompactMeasurement.NO_VALUE; i++) {
+            first = firstValue(slices.get(i).values(field));
+        }
+
+        for (int i = slices.size() - 1; i >= 0 && last == CompactMeasurement.NO_VALUE; i--) {
+            last = lastValue(slices.get(i).values(field));
+        }
+
+        if (first == CompactMeasurement.NO_VALUE || last == CompactMeasurement.NO_VALUE) {
+            return 0;
+        }
+
+        return last - first;
+    }
+
+    int getMappedSegmentCount() {
+        int count = 0;
+
+        for (Segment segment : segments) {
+            count += segment.isMapped() ? 1 : 0;
+        }
+
+        return count;
+    }
+
+    public long getForceInterval() {
+        return forceInterval;
+    }
+
+    /**
+     * Sets how often in millis appending writes the open segment to disk, which bounds the rows lost on a power
+     * failure; 0 to only write it when it is sealed or the store is closed.
+     */
+    public void setForceInterval(long forceInterval) {
+        this.forceInterval = forceInterval;
+    }
+
+    /**
+     * Writes the mapped pages of the open segment to disk.
+     */
+    public synchronized void force() {
+        if (tail != null) {
+            tail.force();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        force();
+    }
+
+    private synchronized void roll() throws IOException {
+        if (tail != null) {
+            tail.seal();
+            touch(tail);
+        }
+
+        String name = String.format("%s%016d", SEGMENT_PREFIX, nextSegmentNumber++);
+        tail = Segment.create(new File(directory, name), segmentCapacity);
+    }
+
+    private void touch(Segment segment) {
+        if (segment.isSealed()) {
+            synchronized (mappedSealedSegments) {
+                mappedSealedSegments.put(segment, Boolean.TRUE);
+            }
+        }
+    }
+
+    private static long firstValue(LongBuffer values) {
+        for (int i = 0; i < values.limit(); i++) {
+            if (values.get(i) != CompactMeasurement.NO_VALUE) {
+                return values.get(i);
+            }
+        }
+
+        return CompactMeasurement.NO_VALUE;
+    }
+
+    private static long lastValue(LongBuffer values) {
+        for (int i = values.limit() - 1; i >= 0; i--) {
+            if (values.get(i) != CompactMeasurement.NO_VALUE) {
+                return values.get(i);
+            }
+        }
+
+        return CompactMeasurement.NO_VALUE;
+    }
+}
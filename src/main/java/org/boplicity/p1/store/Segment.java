@@ -0,0 +1,343 @@
+package org.boplicity.p1.store;
+
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * A directory with one preallocated, memory-mapped file per column. Every row also gets a check over its timestamp and
+ * values in a column of its own. The columns are separate files whose pages reach the disk in any order, so after an
+ * unclean shutdown the committed rows are those with a non-zero timestamp and a matching check, up to the first row
+ * without. Sealed segments are read-only and have their row count and sparse index in a separate file.
+ */
+class Segment {
+
+    static final int INDEX_INTERVAL = 1024;
+
+    private static final String TIMESTAMP_COLUMN = "timestamp";
+    private static final String CHECK_COLUMN = "check";
+    private static final String COLUMN_SUFFIX = ".col";
+    private static final String SEALED_FILE = "sealed";
+
+    private static final int FIELD_COUNT = MeasurementField.values().length;
+    private static final int CHECK = FIELD_COUNT + 1;
+
+    private final File directory;
+    private final int capacity;
+
+    private volatile int rowCount;
+    private volatile boolean sealed;
+
+    private long[] sparseIndex;
+
+    // Column 0 holds the timestamps, column i + 1 the field with ordinal i and the last the checks; null while not mapped
+    private volatile LongBuffer[] columns;
+    private MappedByteBuffer[] mappedColumns;
+
+    private Segment(File directory, int capacity) {
+        this.directory = directory;
+        this.capacity = capacity;
+        this.sparseIndex = new long[(capacity + INDEX_INTERVAL - 1) / INDEX_INTERVAL];
+    }
+
+    static Segment create(File directory, int capacity) throws IOException {
+        if (!directory.mkdirs()) {
+            throw new IOException("Could not create segment " + directory);
+        }
+
+        Segment segment = new Segment(directory, capacity);
+        segment.map(false);
+
+        return segment;
+    }
+
+    static Segment open(File directory) throws IOException {
+        File sealedFile = new File(directory, SEALED_FILE);
+
+        if (sealedFile.exists()) {
+            DataInputStream input = new DataInputStream(new FileInputStream(sealedFile));
+
+            try {
+                Segment segment = new Segment(directory, input.readInt());
+                segment.rowCount = input.readInt();
+
+                for (int i = 0; i < (segment.rowCount + INDEX_INTERVAL - 1) / INDEX_INTERVAL; i++) {
+                    segment.sparseIndex[i] = input.readLong();
+                }
+
+                segment.sealed = true;
+
+                return segment;
+            } finally {
+                input.close();
+            }
+        }
+
+        int capacity = (int) (new File(directory, TIMESTAMP_COLUMN + COLUMN_SUFFIX).length() / 8);
+
+        Segment segment = new Segment(directory, capacity);
+        segment.map(false);
+        segment.recover();
+
+        return segment;
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    int getRowCount() {
+        return rowCount;
+    }
+
+    boolean isFull() {
+        return rowCount == capacity;
+    }
+
+    boolean isSealed() {
+        return sealed;
+    }
+
+    boolean isMapped() {
+        return columns != null;
+    }
+
+    long getFirstTimestamp() {
+        return sparseIndex[0];
+    }
+
+    long getLastTimestamp() {
+        return timestamp(rowCount - 1);
+    }
+
+    void append(CompactMeasurement measurement) {
+        int row = rowCount;
+        LongBuffer[] columns = this.columns;
+
+        long check = measurement.getTimestamp();
+
+        for (MeasurementField field : MeasurementField.values()) {
+            long value = measurement.get(field);
+            columns[field.ordinal() + 1].put(row, value);
+            check = mix(check, value);
+        }
+
+        columns[0].put(row, measurement.getTimestamp());
+        columns[CHECK].put(row, check);
+
+        if (row % INDEX_INTERVAL == 0) {
+            sparseIndex[row / INDEX_INTERVAL] = measurement.getTimestamp();
+        }
+
+        rowCount = row + 1;
+    }
+
+    long timestamp(int row) {
+        return mappedColumns()[0].get(row);
+    }
+
+    long value(MeasurementField field, int row) {
+        return mappedColumns()[field.ordinal() + 1].get(row);
+    }
+
+    /**
+     * Returns a view on rows <code>[fromRow, toRow)</code> of the timestamps (null field) or a field.
+     */
+    LongBuffer column(MeasurementField field, int fromRow, int toRow) {
+        LongBuffer column = mappedColumns()[field == null ? 0 : field.ordinal() + 1].duplicate();
+        column.limit(toRow);
+        column.position(fromRow);
+
+        return column.slice();
+    }
+
+    /**
+     * Returns the first row with a timestamp at or after the given one, or the row count if there is none. Uses the
+     * sparse index to narrow the search down to a single block of the timestamp column.
+     */
+    int lowerBound(long timestamp) {
+        int rows = rowCount;
+        int blocks = (rows + INDEX_INTERVAL - 1) / INDEX_INTERVAL;
+
+        // Find the first block that starts at or after the timestamp; the row is in the block before it or starts it
+        int block = 0;
+        int lastBlock = blocks;
+
+        while (block < lastBlock) {
+            int middle = (block + lastBlock) >>> 1;
+
+            if (sparseIndex[middle] < timestamp) {
+                block = middle + 1;
+            } else {
+                lastBlock = middle;
+            }
+        }
+
+        if (block == 0) {
+            return 0;
+        }
+
+        LongBuffer timestamps = mappedColumns()[0];
+        int low = (block - 1) * INDEX_INTERVAL;
+        int high = Math.min(rows, block * INDEX_INTERVAL);
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+
+            if (timestamps.get(middle) < timestamp) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    void force() {
+        for (MappedByteBuffer column : mappedColumns) {
+            column.force();
+        }
+    }
+
+    void seal() throws IOException {
+        force();
+
+        File temporary = new File(directory, SEALED_FILE + ".tmp");
+        FileOutputStream fileOutput = new FileOutputStream(temporary);
+        DataOutputStream output = new DataOutputStream(fileOutput);
+
+        try {
+            output.writeInt(capacity);
+            output.writeInt(rowCount);
+
+            for (int i = 0; i < (rowCount + INDEX_INTERVAL - 1) / INDEX_INTERVAL; i++) {
+                output.writeLong(sparseIndex[i]);
+            }
+
+            output.flush();
+            fileOutput.getFD().sync();
+        } finally {
+            output.close();
+        }
+
+        if (!temporary.renameTo(new File(directory, SEALED_FILE))) {
+            throw new IOException("Could not seal segment " + directory);
+        }
+
+        sealed = true;
+    }
+
+    /**
+     * Drops the references to the mappings of a sealed segment; they are recreated on the next read. The mappings
+     * themselves are only released once the buffers are garbage collected, as queries may still be reading them.
+     */
+    synchronized void unmap() {
+        if (sealed) {
+            columns = null;
+            mappedColumns = null;
+        }
+    }
+
+    private LongBuffer[] mappedColumns() {
+        LongBuffer[] result = columns;
+
+        if (result == null) {
+            synchronized (this) {
+                if (columns == null) {
+                    try {
+                        map(true);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException("Could not map segment " + directory, e);
+                    }
+                }
+                result = columns;
+            }
+        }
+
+        return result;
+    }
+
+    private void map(boolean readOnly) throws IOException {
+        MappedByteBuffer[] mapped = new MappedByteBuffer[FIELD_COUNT + 2];
+        LongBuffer[] views = new LongBuffer[FIELD_COUNT + 2];
+
+        for (int i = 0; i < mapped.length; i++) {
+            String name = i == 0 ? TIMESTAMP_COLUMN
+                    : i == CHECK ? CHECK_COLUMN : MeasurementField.values()[i - 1].name().toLowerCase();
+            RandomAccessFile file = new RandomAccessFile(new File(directory, name + COLUMN_SUFFIX),
+                    readOnly ? "r" : "rw");
+
+            try {
+                mapped[i] = file.getChannel().map(readOnly ? FileChannel.MapMode.READ_ONLY
+                        : FileChannel.MapMode.READ_WRITE, 0, (long) capacity * 8);
+                mapped[i].order(ByteOrder.LITTLE_ENDIAN);
+                views[i] = mapped[i].asLongBuffer();
+            } finally {
+                file.close();
+            }
+        }
+
+        mappedColumns = mapped;
+        columns = views;
+    }
+
+    // The pages of the columns may reach the disk in any order, so rows are only recovered up to the first one that is
+    // missing or incomplete. Rows after it are cleared, or filling the gap would bring them back on the next recovery.
+    private void recover() {
+        LongBuffer timestamps = columns[0];
+
+        int rows = 0;
+
+        while (rows < capacity && timestamps.get(rows) != 0 && columns[CHECK].get(rows) == check(rows)) {
+            if (rows % INDEX_INTERVAL == 0) {
+                sparseIndex[rows / INDEX_INTERVAL] = timestamps.get(rows);
+            }
+            rows++;
+        }
+
+        boolean cleared = false;
+
+        for (int row = rows; row < capacity; row++) {
+            if (timestamps.get(row) != 0) {
+                timestamps.put(row, 0);
+                cleared = true;
+            }
+        }
+
+        if (cleared) {
+            force();
+        }
+
+        rowCount = rows;
+    }
+
+    private long check(int row) {
+        long check = columns[0].get(row);
+
+        for (int i = 1; i <= FIELD_COUNT; i++) {
+            check = mix(check, columns[i].get(row));
+        }
+
+        return check;
+    }
+
+    // A row with a value page that did not reach the disk reads zero there, which changes the check
+    private static long mix(long check, long value) {
+        long mixed = (check ^ value) * 0x9e3779b97f4a7c15L;
+
+        return mixed ^ mixed >>> 29;
+    }
+}
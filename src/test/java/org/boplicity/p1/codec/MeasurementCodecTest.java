@@ -0,0 +1,167 @@
+package org.boplicity.p1.codec;
+
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.parser.ByteDatagramParser;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class MeasurementCodecTest {
+
+    private MeasurementCodec codec = new MeasurementCodec();
+
+    @Test
+    public void testRoundTripDsmr5() throws Exception {
+        SmartMeterMeasurement measurement = dsmr5Measurement();
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        codec.encode(measurement, buffer);
+        buffer.flip();
+
+        Assert.assertEquals(codec.decode(buffer), measurement);
+        Assert.assertFalse(buffer.hasRemaining());
+        Assert.assertTrue(buffer.limit() * 10 < javaSerializedSize(measurement),
+                buffer.limit() + " against " + javaSerializedSize(measurement));
+    }
+
+    @Test
+    public void testRoundTripNulls() throws Exception {
+        SmartMeterMeasurement measurement = new SmartMeterMeasurement();
+
+        ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+        codec.encode(measurement, buffer);
+        buffer.flip();
+
+        Assert.assertEquals(buffer.remaining(), 5);
+        Assert.assertEquals(codec.decode(buffer), measurement);
+    }
+
+    @Test
+    public void testRoundTripEdgeValues() throws Exception {
+        SmartMeterMeasurement measurement = new SmartMeterMeasurement();
+        measurement.setTimestamp(new DateTime(-1L, DateTimeZone.UTC));
+        measurement.setMeterTimestamp(new DateTime(2019, 3, 31, 2, 30, DateTimeZone.forID("America/New_York")));
+        measurement.setElectricityConsumptionLowRateKwh(new BigDecimal("123456789012345678901234567890.123"));
+        measurement.setCurrentPowerConsumptionW(new BigDecimal("-1E+3"));
+        measurement.setGasConsumptionM3(BigDecimal.valueOf(Long.MIN_VALUE, 3));
+        measurement.setTariffIndicator(Integer.MIN_VALUE);
+        measurement.setPowerFailureCount(Integer.MAX_VALUE);
+        measurement.setEquipmentId("\u00dcn\u00efc\u00f6d\u00e9");
+
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        codec.encode(measurement, buffer);
+        buffer.flip();
+
+        Assert.assertEquals(codec.decode(buffer), measurement);
+    }
+
+    @Test
+    public void testRoundTripBatch() throws Exception {
+        List<SmartMeterMeasurement> measurements = new ArrayList<SmartMeterMeasurement>();
+        SmartMeterMeasurement template = dsmr5Measurement();
+
+        for (int i = 0; i < 100; i++) {
+            SmartMeterMeasurement measurement = dsmr5Measurement();
+            measurement.setTimestamp(template.getTimestamp().plusSeconds(i));
+            measurement.setElectricityConsumptionLowRateKwh(
+                    template.getElectricityConsumptionLowRateKwh().add(new BigDecimal(i).movePointLeft(3)));
+
+            // Fields come and go, and change scale
+            if (i % 7 == 0) {
+                measurement.setGasConsumptionM3(null);
+                measurement.setEquipmentId(null);
+            }
+            if (i % 11 == 0) {
+                measurement.setVoltageL1V(new BigDecimal("230"));
+            }
+
+            measurements.add(measurement);
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        codec.encode(measurements, buffer);
+        buffer.flip();
+
+        int size = buffer.remaining();
+
+        Assert.assertEquals(codec.decodeBatch(buffer), measurements);
+        Assert.assertTrue(size < 100 * 40, "Batch of 100 took " + size + " bytes");
+    }
+
+    @Test
+    public void testZoneDoesNotDependOnDefault() throws Exception {
+        DateTimeZone defaultZone = DateTimeZone.getDefault();
+        DateTimeZone amsterdam = DateTimeZone.forID("Europe/Amsterdam");
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+
+        try {
+            DateTimeZone.setDefault(amsterdam);
+            SmartMeterMeasurement measurement = dsmr5Measurement();
+            codec.encode(Collections.nCopies(3, measurement), buffer);
+            buffer.flip();
+
+            DateTimeZone.setDefault(DateTimeZone.forID("Asia/Tokyo"));
+
+            for (SmartMeterMeasurement decoded : codec.decodeBatch(buffer)) {
+                Assert.assertEquals(decoded.getTimestamp().getZone(), amsterdam);
+                Assert.assertEquals(decoded, measurement);
+            }
+        } finally {
+            DateTimeZone.setDefault(defaultZone);
+        }
+    }
+
+    @Test
+    public void testEmptyBatch() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        codec.encode(Collections.<SmartMeterMeasurement>emptyList(), buffer);
+        buffer.flip();
+
+        Assert.assertTrue(codec.decodeBatch(buffer).isEmpty());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testNewerVersionRejected() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        codec.encode(dsmr5Measurement(), buffer);
+        buffer.put(2, (byte) (MeasurementCodec.VERSION + 1));
+        buffer.flip();
+
+        codec.decode(buffer);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testBatchIsNotAMeasurement() throws Exception {
+        ByteBuffer buffer = ByteBuffer.allocate(1024);
+        codec.encode(Collections.singletonList(dsmr5Measurement()), buffer);
+        buffer.flip();
+
+        codec.decode(buffer);
+    }
+
+    private static SmartMeterMeasurement dsmr5Measurement() {
+        SmartMeterMeasurement measurement = new ByteDatagramParser().parse(TestObjectFactory.getDsmr5DatagramBytes());
+        measurement.setTimestamp(new DateTime(1557301383000L));
+
+        return measurement;
+    }
+
+    private static int javaSerializedSize(SmartMeterMeasurement measurement) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(measurement);
+        output.close();
+
+        return bytes.size();
+    }
+}
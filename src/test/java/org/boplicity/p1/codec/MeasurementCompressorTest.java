@@ -0,0 +1,104 @@
+package org.boplicity.p1.codec;
+
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+public class MeasurementCompressorTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        List<CompactMeasurement> measurements = TestObjectFactory.getSyntheticMeasurements(10000, 1);
+        MeasurementCompressor compressor = compress(measurements, 1000);
+
+        compressor.flush();
+
+        List<CompactMeasurement> decoded = new ArrayList<CompactMeasurement>();
+        for (CompressedBlock block : compressor.getBlocks()) {
+            decoded.addAll(block.decode());
+        }
+
+        Assert.assertEquals(compressor.getBlocks().size(), 10);
+        Assert.assertEquals(decoded, measurements);
+        Assert.assertTrue(compressor.getCompressionRatio() > 10, "Ratio " + compressor.getCompressionRatio());
+    }
+
+    @Test
+    public void testExtremeValues() throws Exception {
+        List<CompactMeasurement> measurements = new ArrayList<CompactMeasurement>();
+        measurements.add(new CompactMeasurement(0, 1, 2, 3, 4, 5, 6, 7));
+        measurements.add(new CompactMeasurement(10, CompactMeasurement.NO_VALUE, Long.MAX_VALUE, -3, 4, 5, 6,
+                CompactMeasurement.NO_VALUE));
+        measurements.add(new CompactMeasurement(10, 1, Long.MIN_VALUE + 1, 3, 4, 0, 6, 7));
+        measurements.add(new CompactMeasurement(Long.MAX_VALUE, 1, 2, 3, 4, 5, 6, 7));
+        measurements.add(new CompactMeasurement(Long.MAX_VALUE, 1, 2, 3, 4, 5, 6, 7));
+
+        MeasurementCompressor compressor = compress(measurements, 1024);
+        compressor.flush();
+
+        Assert.assertEquals(compressor.getBlocks().get(0).decode(), measurements);
+    }
+
+    @Test
+    public void testQueryDecodesOnlyOverlappingBlocks() throws Exception {
+        List<CompactMeasurement> measurements = TestObjectFactory.getSyntheticMeasurements(5500, 2);
+        MeasurementCompressor compressor = compress(measurements, 1000);
+
+        // The last 500 are still in the open block
+        long from = measurements.get(2500).getTimestamp();
+        long to = measurements.get(5200).getTimestamp();
+
+        final List<CompactMeasurement> result = new ArrayList<CompactMeasurement>();
+        compressor.query(from, to, new Consumer<CompactMeasurement>() {
+            @Override
+            public void accept(CompactMeasurement measurement) {
+                result.add(measurement);
+            }
+        });
+
+        Assert.assertEquals(compressor.getBlocks().size(), 5);
+        Assert.assertEquals(result, measurements.subList(2500, 5200));
+    }
+
+    @Test
+    public void testBlockSerialization() throws Exception {
+        List<CompactMeasurement> measurements = TestObjectFactory.getSyntheticMeasurements(100, 3);
+        MeasurementCompressor compressor = compress(measurements, 1024);
+        compressor.flush();
+
+        CompressedBlock block = compressor.getBlocks().get(0);
+        ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+        block.writeTo(buffer);
+        buffer.flip();
+
+        CompressedBlock read = CompressedBlock.readFrom(buffer);
+
+        Assert.assertEquals(read.getCount(), 100);
+        Assert.assertEquals(read.getFirstTimestamp(), measurements.get(0).getTimestamp());
+        Assert.assertEquals(read.getLastTimestamp(), measurements.get(99).getTimestamp());
+        Assert.assertEquals(read.decode(), measurements);
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testOutOfOrder() throws Exception {
+        MeasurementCompressor compressor = new MeasurementCompressor();
+        compressor.append(new CompactMeasurement(1000, 1, 2, 3, 4, 5, 6, 7));
+        compressor.append(new CompactMeasurement(999, 1, 2, 3, 4, 5, 6, 7));
+    }
+
+    private static MeasurementCompressor compress(List<CompactMeasurement> measurements, int blockSize) {
+        MeasurementCompressor compressor = new MeasurementCompressor(blockSize);
+
+        for (CompactMeasurement measurement : measurements) {
+            compressor.append(measurement);
+        }
+
+        return compressor;
+    }
+}
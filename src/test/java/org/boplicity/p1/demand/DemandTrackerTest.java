@@ -0,0 +1,184 @@
+package org.boplicity.p1.demand;
+
+import org.boplicity.p1.model.CompactMeasurement;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class DemandTrackerTest {
+
+    private static final long START = new DateTime(2019, 5, 8, 10, 0, DateTimeZone.UTC).getMillis();
+
+    private List<QuarterHourDemand> demands = new ArrayList<QuarterHourDemand>();
+
+    private DemandListener listener = new DemandListener() {
+        @Override
+        public void onQuarterHour(QuarterHourDemand demand) {
+            demands.add(demand);
+        }
+    };
+
+    @BeforeMethod
+    public void clearDemands() {
+        demands.clear();
+    }
+
+    @Test
+    public void testRollingWindows() {
+        DemandTracker tracker = new DemandTracker(listener, DateTimeZone.UTC, 60000, 300000);
+
+        Assert.assertTrue(Double.isNaN(tracker.getAverageW(0)));
+        Assert.assertEquals(tracker.getMaxW(0), CompactMeasurement.NO_VALUE);
+
+        // 1000 W for five minutes, then 200 W with a single spike
+        for (int i = 0; i <= 320; i++) {
+            tracker.add(power(START + i * 1000L, i < 300 ? 1000 : i == 310 ? 5000 : 200));
+        }
+
+        Assert.assertEquals(tracker.getSampleCount(0), 60);
+        Assert.assertEquals(tracker.getAverageW(0), (39 * 1000 + 20 * 200 + 5000) / 60.0, 1e-9);
+        Assert.assertEquals(tracker.getMaxW(0), 5000);
+        Assert.assertEquals(tracker.getSampleCount(1), 300);
+        Assert.assertEquals(tracker.getMaxW(1), 5000);
+
+        for (int i = 321; i <= 400; i++) {
+            tracker.add(power(START + i * 1000L, 200));
+        }
+
+        Assert.assertEquals(tracker.getAverageW(0), 200.0);
+        Assert.assertEquals(tracker.getMaxW(0), 200);
+        Assert.assertEquals(tracker.getMaxW(1), 5000);
+        Assert.assertEquals(tracker.getAverageW(1), (199 * 1000 + 100 * 200 + 5000) / 300.0, 1e-9);
+
+        // A gap empties the short window
+        tracker.add(power(START + 500000L, CompactMeasurement.NO_VALUE));
+
+        Assert.assertEquals(tracker.getSampleCount(0), 0);
+        Assert.assertTrue(Double.isNaN(tracker.getAverageW(0)));
+        Assert.assertEquals(tracker.getOverrunCount(), 0);
+    }
+
+    @Test
+    public void testOverrun() {
+        DemandTracker tracker = new DemandTracker(listener, DateTimeZone.UTC, 10000);
+
+        for (int i = 0; i < 40; i++) {
+            tracker.add(power(START + i * 250L, i));
+        }
+
+        Assert.assertEquals(tracker.getSampleCount(0), 11);
+        Assert.assertEquals(tracker.getMaxW(0), 39);
+        Assert.assertEquals(tracker.getOverrunCount(), 29);
+    }
+
+    @Test
+    public void testQuarterHourDemand() {
+        DemandTracker tracker = new DemandTracker(listener, DateTimeZone.UTC);
+
+        // 1 Wh per 10 seconds for a quarter, then 2 Wh per 10 seconds
+        long energy = 1000;
+
+        for (int i = 0; i <= 180; i++) {
+            tracker.add(registers(START + i * 10000L, energy));
+            energy += i < 90 ? 1 : 2;
+        }
+
+        Assert.assertEquals(demands.size(), 2);
+
+        QuarterHourDemand first = demands.get(0);
+        Assert.assertEquals(first.getStart(), START);
+        Assert.assertEquals(first.getEnd(), START + 900000);
+        Assert.assertEquals(first.getEnergyWh(), 90.0);
+        Assert.assertEquals(first.getAverageDemandW(), 360.0);
+        Assert.assertTrue(first.isComplete());
+        Assert.assertTrue(first.isMonthlyPeak());
+
+        Assert.assertEquals(demands.get(1).getAverageDemandW(), 720.0);
+        Assert.assertTrue(demands.get(1).isMonthlyPeak());
+        Assert.assertEquals(tracker.getMonthlyPeakW(), 720.0);
+        Assert.assertEquals(tracker.getMonthlyPeakStart(), START + 900000);
+        Assert.assertEquals(tracker.getQuarterStart(), START + 1800000);
+        Assert.assertEquals(tracker.getQuarterEnergyWh(), 0.0);
+    }
+
+    @Test
+    public void testInterpolatedBoundaries() {
+        DemandTracker tracker = new DemandTracker(listener, DateTimeZone.UTC);
+
+        // 5 Wh per minute, read every two minutes off the quarter boundaries
+        for (int i = 0; i < 16; i++) {
+            tracker.add(registers(START + 60000 + i * 120000L, 1000 + i * 10));
+        }
+
+        Assert.assertEquals(demands.size(), 2);
+
+        QuarterHourDemand first = demands.get(0);
+        Assert.assertFalse(first.isComplete());
+        Assert.assertFalse(first.isMonthlyPeak());
+        Assert.assertEquals(first.getEnergyWh(), 70.0, 1e-9);
+
+        QuarterHourDemand second = demands.get(1);
+        Assert.assertTrue(second.isComplete());
+        Assert.assertTrue(second.isMonthlyPeak());
+        Assert.assertEquals(second.getEnergyWh(), 75.0, 1e-9);
+        Assert.assertEquals(second.getAverageDemandW(), 300.0, 1e-9);
+        Assert.assertEquals(tracker.getMonthlyPeakW(), 300.0, 1e-9);
+    }
+
+    @Test
+    public void testMonthlyPeak() {
+        DateTimeZone zone = DateTimeZone.forID("Europe/Amsterdam");
+        long june = new DateTime(2019, 6, 1, 0, 0, zone).getMillis();
+        DemandTracker tracker = new DemandTracker(listener, zone);
+
+        // 3 kW in May, under 1 kW in June, with a counter reset and a late sample in between
+        long energy = 1000;
+
+        for (long timestamp = june - 3600000; timestamp <= june + 1800000; timestamp += 60000) {
+            if (timestamp == june + 1200000) {
+                energy = 0;
+            }
+
+            tracker.add(registers(timestamp, energy));
+            energy += timestamp < june ? 50 : 16;
+        }
+
+        tracker.add(registers(june, 1));
+
+        Assert.assertEquals(demands.size(), 6);
+        Assert.assertTrue(demands.get(0).isMonthlyPeak());
+        Assert.assertFalse(demands.get(3).isMonthlyPeak());
+        Assert.assertEquals(demands.get(3).getAverageDemandW(), 3000.0, 1e-9);
+
+        QuarterHourDemand firstOfJune = demands.get(4);
+        Assert.assertEquals(firstOfJune.getStart(), june);
+        Assert.assertTrue(firstOfJune.isMonthlyPeak());
+        Assert.assertEquals(firstOfJune.getAverageDemandW(), 960.0, 1e-9);
+
+        // The minute of the reset is lost
+        Assert.assertFalse(demands.get(5).isMonthlyPeak());
+        Assert.assertEquals(demands.get(5).getAverageDemandW(), 896.0, 1e-9);
+
+        Assert.assertEquals(tracker.getMonthlyPeakStart(), june);
+        Assert.assertEquals(tracker.getMonthlyPeakW(), 960.0, 1e-9);
+        Assert.assertEquals(tracker.getCounterResetCount(), 1);
+        Assert.assertEquals(tracker.getLateSampleCount(), 1);
+    }
+
+    private static CompactMeasurement power(long timestamp, long powerW) {
+        return new CompactMeasurement(timestamp, CompactMeasurement.NO_VALUE, CompactMeasurement.NO_VALUE,
+                CompactMeasurement.NO_VALUE, CompactMeasurement.NO_VALUE, powerW, CompactMeasurement.NO_VALUE,
+                CompactMeasurement.NO_VALUE);
+    }
+
+    private static CompactMeasurement registers(long timestamp, long consumptionWh) {
+        return new CompactMeasurement(timestamp, consumptionWh / 3, consumptionWh - consumptionWh / 3,
+                CompactMeasurement.NO_VALUE, CompactMeasurement.NO_VALUE, CompactMeasurement.NO_VALUE,
+                CompactMeasurement.NO_VALUE, CompactMeasurement.NO_VALUE);
+    }
+}
@@ -0,0 +1,222 @@
+package org.boplicity.p1.device;
+
+import org.boplicity.p1.metrics.MeterMetrics;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+public class ConnectionManagerTest {
+
+    @Test
+    public void testDetectsLineSettings() throws Exception {
+        TelegramFramer telegramFramer = new TelegramFramer(frame -> {
+        });
+        MeterSource meter = new MeterSource(LineSettings.BAUD_9600_7E1, TestObjectFactory.getTestDatagramBytes());
+
+        ConnectionManager connectionManager = new ConnectionManager(meter, telegramFramer);
+        connectionManager.setDetectionTimeout(200);
+        connectionManager.setReadTimeout(20);
+        connectionManager.init();
+
+        try {
+            await(() -> telegramFramer.getFrameCount() > 0);
+
+            Assert.assertEquals(connectionManager.getLineSettings(), LineSettings.BAUD_9600_7E1);
+            Assert.assertEquals(meter.openedAt, LineSettings.BAUD_9600_7E1);
+            Assert.assertTrue(connectionManager.isConnected());
+            Assert.assertEquals(connectionManager.getConnectCount(), 2);
+            Assert.assertEquals(connectionManager.getFailureCount(), 0);
+            Assert.assertFalse(telegramFramer.isChecksumRequired());
+        } finally {
+            connectionManager.destroy();
+        }
+
+        Assert.assertFalse(connectionManager.isConnected());
+        Assert.assertNull(meter.openedAt);
+    }
+
+    @Test
+    public void testReconnectsAfterStall() throws Exception {
+        TelegramFramer telegramFramer = new TelegramFramer(frame -> {
+        });
+
+        // Every connection gets one telegram and then nothing
+        ByteSource source = new InputStreamByteSource("stream",
+                () -> new ByteArrayInputStream(TestObjectFactory.getDsmr5DatagramBytes()));
+
+        ConnectionManager connectionManager = new ConnectionManager(source, telegramFramer);
+        connectionManager.setStallTimeout(100);
+        connectionManager.setReadTimeout(20);
+        connectionManager.setInitialBackoff(10);
+        connectionManager.init();
+
+        try {
+            await(() -> telegramFramer.getFrameCount() >= 3);
+
+            Assert.assertEquals(connectionManager.getLineSettings(), LineSettings.BAUD_115200_8N1);
+            Assert.assertTrue(connectionManager.getStallCount() >= 2);
+            Assert.assertTrue(connectionManager.getConnectCount() >= 3);
+            Assert.assertEquals(telegramFramer.getCorruptFrameCount(), 0);
+        } finally {
+            connectionManager.destroy();
+        }
+    }
+
+    @Test
+    public void testBackoffAfterFailures() throws Exception {
+        TelegramFramer telegramFramer = new TelegramFramer(frame -> {
+        });
+        MeterMetrics metrics = new MeterMetrics();
+        final AtomicInteger attempts = new AtomicInteger();
+
+        // Three failed opens and a read error before the meter comes through
+        ByteSource source = new InputStreamByteSource("flaky", () -> {
+            int attempt = attempts.incrementAndGet();
+
+            if (attempt <= 3) {
+                throw new IOException("Port in use");
+            }
+
+            if (attempt == 4) {
+                return new InputStream() {
+                    @Override
+                    public int available() {
+                        return 1;
+                    }
+
+                    @Override
+                    public int read() throws IOException {
+                        throw new IOException("Read error");
+                    }
+                };
+            }
+
+            return new ByteArrayInputStream(TestObjectFactory.getDsmr5DatagramBytes());
+        });
+
+        ConnectionManager connectionManager = new ConnectionManager(source, telegramFramer);
+        connectionManager.setLineSettings(LineSettings.BAUD_115200_8N1);
+        connectionManager.setReadTimeout(20);
+        connectionManager.setInitialBackoff(40);
+        connectionManager.setMetrics(metrics);
+
+        long started = System.nanoTime();
+        connectionManager.init();
+
+        try {
+            await(() -> telegramFramer.getFrameCount() > 0);
+
+            // Half of 40, 80, 160 and 320 ms at least
+            Assert.assertTrue(System.nanoTime() - started >= 300 * 1000000L);
+            Assert.assertEquals(connectionManager.getFailureCount(), 4);
+            Assert.assertEquals(connectionManager.getConnectCount(), 2);
+            Assert.assertEquals(metrics.getReadErrorCount(), 1);
+        } finally {
+            connectionManager.destroy();
+        }
+    }
+
+    @Test
+    public void testReconnectsAfterListenerFailure() throws Exception {
+        final AtomicInteger frames = new AtomicInteger();
+        TelegramFramer telegramFramer = new TelegramFramer(frame -> {
+            if (frames.incrementAndGet() == 1) {
+                throw new IllegalStateException("Listener failed");
+            }
+        });
+
+        ByteSource source = new InputStreamByteSource("stream",
+                () -> new ByteArrayInputStream(TestObjectFactory.getDsmr5DatagramBytes()));
+
+        ConnectionManager connectionManager = new ConnectionManager(source, telegramFramer);
+        connectionManager.setLineSettings(LineSettings.BAUD_115200_8N1);
+        connectionManager.setReadTimeout(20);
+        connectionManager.setInitialBackoff(10);
+        connectionManager.init();
+
+        try {
+            await(() -> frames.get() >= 2);
+
+            Assert.assertEquals(connectionManager.getFailureCount(), 1);
+            Assert.assertEquals(connectionManager.getConnectCount(), 2);
+            Assert.assertEquals(telegramFramer.getCorruptFrameCount(), 0);
+        } finally {
+            connectionManager.destroy();
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertTrue(condition.getAsBoolean());
+    }
+
+    /**
+     * A meter on a serial port, which sends its telegram with every read and garbage when opened at the wrong settings.
+     */
+    private static class MeterSource implements ByteSource {
+
+        final LineSettings lineSettings;
+        final byte[] telegram;
+        final Random random = new Random(1);
+
+        volatile LineSettings openedAt;
+        int readTimeout;
+
+        MeterSource(LineSettings lineSettings, byte[] telegram) {
+            this.lineSettings = lineSettings;
+            this.telegram = telegram;
+        }
+
+        @Override
+        public String getName() {
+            return "meter";
+        }
+
+        @Override
+        public void open(LineSettings lineSettings, int readTimeout) {
+            this.openedAt = lineSettings;
+            this.readTimeout = readTimeout;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            try {
+                Thread.sleep(Math.min(50, readTimeout));
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+
+            if (openedAt != lineSettings) {
+                int count = Math.min(length, 64);
+
+                for (int i = 0; i < count; i++) {
+                    bytes[offset + i] = (byte) random.nextInt();
+                }
+
+                return count;
+            }
+
+            int count = Math.min(length, telegram.length);
+            System.arraycopy(telegram, 0, bytes, offset, count);
+
+            return count;
+        }
+
+        @Override
+        public void close() {
+            openedAt = null;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package org.boplicity.p1.device;
+
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+public class Crc16Test {
+
+    @Test
+    public void testUpdate() throws Exception {
+        byte[] check = "123456789".getBytes(StandardCharsets.US_ASCII);
+
+        Assert.assertEquals(Crc16.update(0, check, 0, check.length), 0xBB3D);
+    }
+
+    @Test
+    public void testUpdateTelegram() throws Exception {
+        String datagram = TestObjectFactory.getDsmr5Datagram();
+        int finish = datagram.indexOf('!');
+        byte[] bytes = datagram.getBytes(StandardCharsets.US_ASCII);
+
+        Assert.assertEquals(Crc16.update(0, bytes, 0, finish + 1),
+                Integer.parseInt(datagram.substring(finish + 1, finish + 5), 16));
+    }
+
+    @Test
+    public void testUpdateIncremental() throws Exception {
+        byte[] bytes = new byte[1000];
+        new Random(42).nextBytes(bytes);
+
+        int expected = 0;
+        for (byte b : bytes) {
+            expected ^= b & 0xff;
+            for (int bit = 0; bit < 8; bit++) {
+                expected = (expected & 1) != 0 ? (expected >>> 1) ^ 0xA001 : expected >>> 1;
+            }
+        }
+
+        int crc = 0;
+        for (int from = 0; from < bytes.length; from += 7) {
+            crc = Crc16.update(crc, bytes, from, Math.min(from + 7, bytes.length));
+        }
+
+        Assert.assertEquals(crc, expected);
+        Assert.assertEquals(Crc16.update(0, bytes, 0, bytes.length), expected);
+    }
+}
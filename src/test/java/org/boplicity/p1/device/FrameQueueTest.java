@@ -0,0 +1,157 @@
+package org.boplicity.p1.device;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+public class FrameQueueTest {
+
+    @Test
+    public void testDropNewest() throws Exception {
+        FrameQueue queue = new FrameQueue(2, BackpressurePolicy.DROP_NEWEST);
+
+        Assert.assertTrue(queue.offer(frame("a")));
+        Assert.assertTrue(queue.offer(frame("b")));
+        Assert.assertFalse(queue.offer(frame("c")));
+
+        Assert.assertEquals(queue.size(), 2);
+        Assert.assertEquals(queue.getDroppedCount(), 1);
+        Assert.assertEquals(drain(queue), list("a", "b"));
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        FrameQueue queue = new FrameQueue(2, BackpressurePolicy.DROP_OLDEST);
+
+        queue.offer(frame("a"));
+        queue.offer(frame("b"));
+        queue.offer(frame("c"));
+        queue.offer(frame("d"));
+
+        Assert.assertEquals(queue.getDroppedCount(), 2);
+        Assert.assertEquals(drain(queue), list("c", "d"));
+    }
+
+    @Test
+    public void testDropOldestWhileConsumerIsBusy() throws Exception {
+        final FrameQueue queue = new FrameQueue(4, BackpressurePolicy.DROP_OLDEST);
+        final CountDownLatch handling = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> received = Collections.synchronizedList(new ArrayList<String>());
+
+        Thread consumer = new Thread() {
+            @Override
+            public void run() {
+                while (received.size() < 5) {
+                    queue.poll(new FrameHandler() {
+                        @Override
+                        public void onFrame(ByteBuffer frame) {
+                            received.add(StandardCharsets.US_ASCII.decode(frame).toString());
+                            handling.countDown();
+
+                            try {
+                                release.await();
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                            }
+                        }
+                    });
+                }
+            }
+        };
+        consumer.start();
+
+        Assert.assertTrue(queue.offer(frame("0")));
+        Assert.assertTrue(handling.await(10, TimeUnit.SECONDS));
+
+        // The consumer is stuck on frame 0, so the newest four frames are kept
+        for (int i = 1; i < 8; i++) {
+            Assert.assertTrue(queue.offer(frame(Integer.toString(i))));
+        }
+
+        Assert.assertEquals(queue.getDroppedCount(), 3);
+
+        release.countDown();
+        consumer.join(10000);
+
+        Assert.assertEquals(received, list("0", "4", "5", "6", "7"));
+    }
+
+    @Test
+    public void testSlotBufferGrows() throws Exception {
+        FrameQueue queue = new FrameQueue(2, BackpressurePolicy.DROP_NEWEST);
+
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 5000; i++) {
+            large.append((char) ('a' + i % 26));
+        }
+
+        queue.offer(frame("small"));
+        queue.offer(frame(large.toString()));
+
+        Assert.assertEquals(drain(queue), list("small", large.toString()));
+    }
+
+    @Test
+    public void testConcurrentHandOff() throws Exception {
+        final FrameQueue queue = new FrameQueue(8, BackpressurePolicy.BLOCK);
+        final int count = 100000;
+
+        Thread producer = new Thread() {
+            @Override
+            public void run() {
+                for (int i = 0; i < count; i++) {
+                    queue.offer(frame(Integer.toString(i)));
+                }
+            }
+        };
+        producer.start();
+
+        final int[] expected = {0};
+        while (expected[0] < count) {
+            queue.poll(new FrameHandler() {
+                @Override
+                public void onFrame(ByteBuffer frame) {
+                    Assert.assertEquals(StandardCharsets.US_ASCII.decode(frame).toString(),
+                            Integer.toString(expected[0]++));
+                }
+            });
+        }
+
+        producer.join();
+        Assert.assertEquals(queue.getDroppedCount(), 0);
+    }
+
+    private static ByteBuffer frame(String content) {
+        return ByteBuffer.wrap(content.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static List<String> list(String... values) {
+        List<String> result = new ArrayList<String>();
+        for (String value : values) {
+            result.add(value);
+        }
+        return result;
+    }
+
+    private static List<String> drain(FrameQueue queue) {
+        final List<String> result = new ArrayList<String>();
+
+        while (queue.poll(new FrameHandler() {
+            @Override
+            public void onFrame(ByteBuffer frame) {
+                result.add(StandardCharsets.US_ASCII.decode(frame).toString());
+            }
+        })) {
+        }
+
+        return result;
+    }
+}
@@ -0,0 +1,80 @@
+package org.boplicity.p1.device;
+
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+public class MeasurementPublisherTest {
+
+    @Test
+    public void testSubscribe() throws Exception {
+        MeasurementPublisher publisher = new MeasurementPublisher();
+        List<SmartMeterMeasurement> received = new ArrayList<SmartMeterMeasurement>();
+
+        Subscription subscription = publisher.subscribe(collect(received));
+        publisher.publish(measurement(1));
+        publisher.publish(measurement(2));
+
+        Assert.assertEquals(received.size(), 2);
+        Assert.assertEquals(subscription.getDeliveredCount(), 2);
+        Assert.assertEquals(publisher.getPublishedCount(), 2);
+    }
+
+    @Test
+    public void testSlowSubscriberIsConflated() throws Exception {
+        MeasurementPublisher publisher = new MeasurementPublisher();
+        List<SmartMeterMeasurement> received = new ArrayList<SmartMeterMeasurement>();
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        Subscription subscription = publisher.subscribe(collect(received), new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                tasks.add(command);
+            }
+        }, 1);
+
+        publisher.publish(measurement(1));
+        publisher.publish(measurement(2));
+        publisher.publish(measurement(3));
+
+        Assert.assertEquals(tasks.size(), 1);
+        tasks.get(0).run();
+
+        Assert.assertEquals(received.size(), 1);
+        Assert.assertEquals(received.get(0), measurement(3));
+        Assert.assertEquals(subscription.getDroppedCount(), 2);
+    }
+
+    @Test
+    public void testCancel() throws Exception {
+        MeasurementPublisher publisher = new MeasurementPublisher();
+        List<SmartMeterMeasurement> received = new ArrayList<SmartMeterMeasurement>();
+
+        Subscription subscription = publisher.subscribe(collect(received));
+        subscription.cancel();
+        publisher.publish(measurement(1));
+
+        Assert.assertTrue(received.isEmpty());
+        Assert.assertEquals(publisher.getSubscriberCount(), 0);
+    }
+
+    private static MeasurementSubscriber collect(final List<SmartMeterMeasurement> received) {
+        return new MeasurementSubscriber() {
+            @Override
+            public void onMeasurement(SmartMeterMeasurement measurement) {
+                received.add(measurement);
+            }
+        };
+    }
+
+    private static SmartMeterMeasurement measurement(int watt) {
+        SmartMeterMeasurement measurement = new SmartMeterMeasurement();
+        measurement.setCurrentPowerConsumptionW(new BigDecimal(watt));
+        return measurement;
+    }
+}
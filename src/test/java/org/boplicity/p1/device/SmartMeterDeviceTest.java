@@ -1,16 +1,84 @@
 package org.boplicity.p1.device;
 
+import org.boplicity.p1.journal.FrameJournal;
+import org.boplicity.p1.journal.JournalReader;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.parser.DatagramParser;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
 import org.testng.annotations.Test;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.file.Files;
+
 public class SmartMeterDeviceTest {
 
     @Test
     public void testInit() throws Exception {
+        SmartMeterListener listener = new SmartMeterListenerImpl();
+
+        SmartMeterDevice device = new SmartMeterDevice();
+        device.setSmartMeterListener(listener);
+        device.setByteSource(new InputStreamByteSource("test",
+                () -> new ByteArrayInputStream(TestObjectFactory.getDsmr5DatagramBytes())));
+        device.init();
+
+        try {
+            long deadline = System.currentTimeMillis() + 10000;
+
+            while (listener.getCurrentMeasurement() == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
 
+            Assert.assertEquals(listener.getCurrentMeasurement().getEquipmentId(), "E0044007382246019");
+            Assert.assertEquals(device.getLineSettings(), LineSettings.BAUD_115200_8N1);
+        } finally {
+            device.destroy();
+        }
     }
 
     @Test
     public void testSerialEvent() throws Exception {
+        SmartMeterListener listener = new SmartMeterListenerImpl();
+
+        SmartMeterDevice device = new SmartMeterDevice();
+        device.setSmartMeterListener(listener);
+
+        byte[] datagram = TestObjectFactory.getTestDatagramBytes();
+        device.read(new ByteArrayInputStream(TestObjectFactory.getDsmr5DatagramBytes()));
+        device.read(new ByteArrayInputStream(datagram));
+        device.read(new ByteArrayInputStream("\r\n".getBytes()));
+
+        SmartMeterMeasurement result = listener.getCurrentMeasurement();
+        result.setTimestamp(null);
+
+        Assert.assertEquals(result, new DatagramParser().parse(TestObjectFactory.getTestDatagram()));
+    }
+
+    @Test
+    public void testFrameJournal() throws Exception {
+        File directory = Files.createTempDirectory("frame-journal").toFile();
+        FrameJournal journal = new FrameJournal(directory);
+
+        SmartMeterDevice device = new SmartMeterDevice();
+        device.setSmartMeterListener(new SmartMeterListenerImpl());
+        device.setFrameJournal(journal);
+        device.read(new ByteArrayInputStream(TestObjectFactory.getDsmr5DatagramBytes()));
+        journal.close();
+
+        JournalReader reader = JournalReader.open(directory, 0);
+        Assert.assertTrue(reader.next());
+
+        byte[] frame = new byte[reader.getFrame().remaining()];
+        reader.getFrame().get(frame);
+        Assert.assertEquals(new String(frame, "US-ASCII"), TestObjectFactory.getDsmr5Datagram().trim());
+        Assert.assertFalse(reader.next());
+        reader.close();
 
+        for (File file : directory.listFiles()) {
+            file.delete();
+        }
+        directory.delete();
     }
 }
@@ -0,0 +1,209 @@
+package org.boplicity.p1.device;
+
+import org.boplicity.p1.journal.FrameJournal;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.parser.ByteDatagramParser;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+public class StreamingTelegramParserTest {
+
+    private ByteDatagramParser byteDatagramParser = new ByteDatagramParser();
+
+    @Test
+    public void testSameAsByteDatagramParser() throws Exception {
+        for (String datagram : new String[]{TestObjectFactory.getDsmr5Datagram(), TestObjectFactory.getTestDatagram()}) {
+            List<SmartMeterMeasurement> measurements = new ArrayList<SmartMeterMeasurement>();
+            StreamingTelegramParser parser = new StreamingTelegramParser(measurements::add);
+
+            byte[] bytes = ascii(datagram);
+            parser.feed(bytes, 0, bytes.length);
+            parser.finish();
+
+            Assert.assertEquals(measurements.size(), 1);
+            Assert.assertEquals(measurements.get(0), byteDatagramParser.parse(bytes));
+        }
+    }
+
+    @Test
+    public void testEverySplitPoint() throws Exception {
+        for (String datagram : new String[]{TestObjectFactory.getDsmr5Datagram(), TestObjectFactory.getTestDatagram()}) {
+            byte[] bytes = ascii(datagram + "\r\n");
+            SmartMeterMeasurement expected = byteDatagramParser.parse(ascii(datagram));
+
+            for (int split = 0; split <= bytes.length; split++) {
+                List<SmartMeterMeasurement> measurements = new ArrayList<SmartMeterMeasurement>();
+                StreamingTelegramParser parser = new StreamingTelegramParser(measurements::add);
+
+                parser.feed(bytes, 0, split);
+                parser.feed(bytes, split, bytes.length - split);
+
+                Assert.assertEquals(measurements.size(), 1, "Split at " + split);
+                Assert.assertEquals(measurements.get(0), expected, "Split at " + split);
+            }
+        }
+    }
+
+    @Test
+    public void testRandomChunks() throws Exception {
+        String dsmr5 = TestObjectFactory.getDsmr5Datagram();
+        String dsmr22 = TestObjectFactory.getTestDatagram();
+        byte[] stream = ascii("noise" + dsmr5 + dsmr22 + "\r\n" + dsmr5 + dsmr22.substring(0, 100) + dsmr22 + "\r\n");
+
+        List<SmartMeterMeasurement> measurements = new ArrayList<SmartMeterMeasurement>();
+        StreamingTelegramParser parser = new StreamingTelegramParser(measurements::add);
+        Random random = new Random(5);
+
+        for (int offset = 0; offset < stream.length; ) {
+            int length = Math.min(stream.length - offset, 1 + random.nextInt(40));
+            parser.feed(stream, offset, length);
+            offset += length;
+        }
+
+        Assert.assertEquals(measurements.size(), 4);
+        Assert.assertEquals(measurements.get(1).getGasConsumptionM3(), new BigDecimal("47.057"));
+        Assert.assertEquals(measurements.get(3), byteDatagramParser.parse(ascii(dsmr22)));
+        Assert.assertEquals(parser.getResyncCount(), 1);
+    }
+
+    @Test
+    public void testWrongChecksum() throws Exception {
+        String dsmr5 = TestObjectFactory.getDsmr5Datagram();
+        byte[] bytes = ascii(dsmr5.replace("1-0:1.7.0(00.425*kW)", "1-0:1.7.0(00.426*kW)") + dsmr5);
+
+        List<SmartMeterMeasurement> measurements = new ArrayList<SmartMeterMeasurement>();
+        StreamingTelegramParser parser = new StreamingTelegramParser(measurements::add);
+        parser.feed(bytes, 0, bytes.length);
+
+        Assert.assertEquals(measurements.size(), 1);
+        Assert.assertEquals(measurements.get(0).getCurrentPowerConsumptionW(), new BigDecimal(425));
+        Assert.assertEquals(parser.getCorruptFrameCount(), 1);
+        Assert.assertEquals(parser.getFrameCount(), 1);
+    }
+
+    @Test
+    public void testDevice() throws Exception {
+        SmartMeterListener listener = new SmartMeterListenerImpl();
+
+        SmartMeterDevice device = new SmartMeterDevice();
+        device.setSmartMeterListener(listener);
+        device.setStreamingParsing(true);
+
+        device.read(new ByteArrayInputStream(TestObjectFactory.getDsmr5DatagramBytes()));
+
+        SmartMeterMeasurement result = listener.getCurrentMeasurement();
+        Assert.assertNotNull(result.getTimestamp());
+        result.setTimestamp(null);
+
+        Assert.assertEquals(result, byteDatagramParser.parse(TestObjectFactory.getDsmr5DatagramBytes()));
+        Assert.assertEquals(device.getTelegramFramer().getFrameCount(), 0);
+    }
+
+    @Test
+    public void testDeviceRejectsRawListener() throws Exception {
+        SmartMeterListener rawListener = new SmartMeterListener() {
+            @Override
+            public void put(String datagram) {
+            }
+
+            @Override
+            public SmartMeterMeasurement getCurrentMeasurement() {
+                return null;
+            }
+        };
+
+        SmartMeterDevice device = new SmartMeterDevice();
+        device.setSmartMeterListener(rawListener);
+
+        try {
+            device.setStreamingParsing(true);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            Assert.assertFalse(device.isStreamingParsing());
+        }
+
+        device.setSmartMeterListener(new SmartMeterListenerImpl());
+        device.setStreamingParsing(true);
+
+        try {
+            device.setSmartMeterListener(new AsyncSmartMeterListener(rawListener));
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testDeviceRejectsFrameJournal() throws Exception {
+        File directory = Files.createTempDirectory("frame-journal").toFile();
+        FrameJournal journal = new FrameJournal(directory);
+
+        try {
+            SmartMeterDevice device = new SmartMeterDevice();
+            device.setSmartMeterListener(new SmartMeterListenerImpl());
+            device.setFrameJournal(journal);
+
+            try {
+                device.setStreamingParsing(true);
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                Assert.assertFalse(device.isStreamingParsing());
+            }
+
+            device.setFrameJournal(null);
+            device.setStreamingParsing(true);
+
+            try {
+                device.setFrameJournal(journal);
+                Assert.fail();
+            } catch (IllegalStateException e) {
+                Assert.assertNull(device.getFrameJournal());
+            }
+        } finally {
+            journal.close();
+
+            for (File file : directory.listFiles()) {
+                Assert.assertTrue(file.delete());
+            }
+            Assert.assertTrue(directory.delete());
+        }
+    }
+
+    @Test
+    public void testAsyncListenerQueuesMeasurements() throws Exception {
+        final List<String> threads = new ArrayList<String>();
+        SmartMeterListenerImpl listener = new SmartMeterListenerImpl();
+        listener.subscribe(measurement -> threads.add(Thread.currentThread().getName()));
+
+        AsyncSmartMeterListener asyncListener = new AsyncSmartMeterListener(listener);
+        asyncListener.init();
+
+        SmartMeterDevice device = new SmartMeterDevice();
+        device.setSmartMeterListener(asyncListener);
+        device.setStreamingParsing(true);
+
+        try {
+            device.read(new ByteArrayInputStream(TestObjectFactory.getDsmr5DatagramBytes()));
+        } finally {
+            asyncListener.destroy();
+        }
+
+        Assert.assertEquals(threads, Collections.singletonList("p1-parser"));
+        Assert.assertEquals(asyncListener.getDroppedCount(), 0);
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
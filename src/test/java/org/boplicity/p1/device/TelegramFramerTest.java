@@ -0,0 +1,157 @@
+package org.boplicity.p1.device;
+
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class TelegramFramerTest {
+
+    @Test
+    public void testFramesSplitAcrossReads() throws Exception {
+        String dsmr5 = TestObjectFactory.getDsmr5Datagram();
+        String dsmr22 = TestObjectFactory.getTestDatagram();
+
+        List<String> frames = readAll("garbage" + dsmr5 + dsmr22 + "\r\n" + dsmr5, 7, 16);
+
+        Assert.assertEquals(frames.size(), 3);
+        Assert.assertEquals(frames.get(0), dsmr5.trim());
+        Assert.assertEquals(frames.get(1), dsmr22);
+        Assert.assertEquals(frames.get(2), dsmr5.trim());
+    }
+
+    @Test
+    public void testResyncAfterPartialFrame() throws Exception {
+        String dsmr5 = TestObjectFactory.getDsmr5Datagram();
+        String partial = dsmr5.substring(0, 200);
+
+        List<String> frames = readAll(partial + dsmr5, 64, 1024);
+
+        Assert.assertEquals(frames.size(), 1);
+        Assert.assertEquals(frames.get(0), dsmr5.trim());
+    }
+
+    @Test
+    public void testResetDropsPartialFrame() throws Exception {
+        byte[] dsmr5 = TestObjectFactory.getDsmr5DatagramBytes();
+        List<String> frames = new ArrayList<String>();
+        TelegramFramer framer = new TelegramFramer(
+                frame -> frames.add(StandardCharsets.US_ASCII.decode(frame).toString()));
+
+        framer.feed(dsmr5, 0, 200);
+        framer.reset();
+        framer.feed(dsmr5, 200, dsmr5.length - 200);
+
+        Assert.assertTrue(frames.isEmpty());
+
+        framer.feed(dsmr5, 0, dsmr5.length);
+
+        Assert.assertEquals(frames.size(), 1);
+        Assert.assertEquals(framer.getCorruptFrameCount(), 0);
+    }
+
+    @Test
+    public void testFrameLargerThanInitialBuffer() throws Exception {
+        StringBuilder datagram = new StringBuilder("/XMX5XMXABCE000062529\r\n");
+        for (int i = 0; i < 200; i++) {
+            datagram.append("0-0:96.13.0(303132333435363738393A3B3C3D3E3F)\r\n");
+        }
+        datagram.append("!");
+
+        List<String> frames = readAll(datagram + "\r\n", 100, 16);
+
+        Assert.assertEquals(frames.size(), 1);
+        Assert.assertEquals(frames.get(0), datagram.toString());
+    }
+
+    @Test
+    public void testFinishAtEndOfStream() throws Exception {
+        String dsmr22 = TestObjectFactory.getTestDatagram();
+
+        List<String> frames = readAll(dsmr22, 1024, 1024);
+
+        Assert.assertEquals(frames.size(), 1);
+        Assert.assertEquals(frames.get(0), dsmr22);
+    }
+
+    @Test
+    public void testDsmr22FrameEmittedOnLineEnd() throws Exception {
+        String dsmr22 = TestObjectFactory.getTestDatagram();
+        byte[] bytes = (dsmr22 + "\r\n").getBytes(StandardCharsets.US_ASCII);
+
+        List<String> frames = new ArrayList<String>();
+        TelegramFramer framer = createFramer(frames, 1024);
+
+        // The "!" ends the first chunk, the line end arrives on its own and no byte of a next telegram follows
+        framer.feed(bytes, 0, dsmr22.length());
+        Assert.assertTrue(frames.isEmpty());
+
+        framer.feed(bytes, dsmr22.length(), 2);
+        Assert.assertEquals(frames.size(), 1);
+        Assert.assertEquals(frames.get(0), dsmr22);
+        Assert.assertEquals(framer.getCorruptFrameCount(), 0);
+    }
+
+    @Test
+    public void testCorruptFrameDropped() throws Exception {
+        String dsmr5 = TestObjectFactory.getDsmr5Datagram();
+        String corrupt = dsmr5.replace("00.425*kW", "00.435*kW");
+
+        List<String> frames = new ArrayList<String>();
+        TelegramFramer framer = createFramer(frames, 1024);
+        readAll(framer, corrupt + dsmr5, 100);
+
+        Assert.assertEquals(frames.size(), 1);
+        Assert.assertEquals(frames.get(0), dsmr5.trim());
+        Assert.assertEquals(framer.getCorruptFrameCount(), 1);
+    }
+
+    @Test
+    public void testChecksumRequired() throws Exception {
+        List<String> frames = new ArrayList<String>();
+        TelegramFramer framer = createFramer(frames, 1024);
+        framer.setChecksumRequired(true);
+
+        readAll(framer, TestObjectFactory.getTestDatagram() + "\r\n" + TestObjectFactory.getDsmr5Datagram(), 100);
+
+        Assert.assertEquals(frames.size(), 1);
+        Assert.assertEquals(framer.getCorruptFrameCount(), 1);
+    }
+
+    private List<String> readAll(String stream, int chunkSize, int initialCapacity) throws IOException {
+        List<String> frames = new ArrayList<String>();
+
+        readAll(createFramer(frames, initialCapacity), stream, chunkSize);
+
+        return frames;
+    }
+
+    private TelegramFramer createFramer(final List<String> frames, int initialCapacity) {
+        return new TelegramFramer(new FrameHandler() {
+            @Override
+            public void onFrame(ByteBuffer frame) {
+                frames.add(StandardCharsets.US_ASCII.decode(frame).toString());
+            }
+        }, initialCapacity);
+    }
+
+    private void readAll(TelegramFramer framer, String stream, final int chunkSize) throws IOException {
+
+        InputStream inputStream = new ByteArrayInputStream(stream.getBytes(StandardCharsets.US_ASCII)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, chunkSize));
+            }
+        };
+
+        while (framer.readFrom(inputStream) >= 0) {
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package org.boplicity.p1.export;
+
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.io.IOUtils;
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.zip.GZIPInputStream;
+
+public class MeasurementExporterTest {
+
+    private static final long START = 1500000000000L;
+
+    private HttpServer server;
+    private URL url;
+    private File directory;
+
+    private List<String> bodies;
+    private List<String> contentEncodings;
+    private AtomicInteger status;
+    private AtomicInteger failuresLeft;
+
+    @BeforeMethod
+    public void startServer() throws Exception {
+        bodies = Collections.synchronizedList(new ArrayList<String>());
+        contentEncodings = Collections.synchronizedList(new ArrayList<String>());
+        status = new AtomicInteger(204);
+        failuresLeft = new AtomicInteger();
+        directory = Files.createTempDirectory("exporter").toFile();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/write", exchange -> {
+            byte[] body = IOUtils.toByteArray(exchange.getRequestBody());
+            String contentEncoding = exchange.getRequestHeaders().getFirst("Content-Encoding");
+
+            int code = failuresLeft.getAndDecrement() > 0 ? 503 : status.get();
+
+            if (code < 300) {
+                if ("gzip".equals(contentEncoding)) {
+                    body = IOUtils.toByteArray(new GZIPInputStream(new ByteArrayInputStream(body)));
+                }
+
+                bodies.add(new String(body, StandardCharsets.US_ASCII));
+                contentEncodings.add(contentEncoding);
+            }
+
+            exchange.sendResponseHeaders(code, -1);
+            exchange.close();
+        });
+        server.start();
+
+        url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/write");
+    }
+
+    @AfterMethod
+    public void stopServer() {
+        server.stop(0);
+        delete(directory);
+    }
+
+    @Test
+    public void testSendsGzippedLineProtocol() throws Exception {
+        MeasurementExporter exporter = new MeasurementExporter(new HttpExportSink(url), ExportFormat.LINE_PROTOCOL);
+        exporter.init();
+
+        exporter.export("E0001", new CompactMeasurement(START, 4347922, 3513714, 348098, 835640, 425, 0, 2962133));
+        exporter.export("meter 2", new CompactMeasurement(START + 1000, 7, 3513714, 348098, 835640, 1234,
+                CompactMeasurement.NO_VALUE, CompactMeasurement.NO_VALUE));
+        exporter.export("E0001", new CompactMeasurement(CompactMeasurement.NO_VALUE, 1, 1, 1, 1, 1, 1, 1));
+        exporter.export("E0001", new CompactMeasurement(START + 2000, CompactMeasurement.NO_VALUE,
+                CompactMeasurement.NO_VALUE, CompactMeasurement.NO_VALUE, CompactMeasurement.NO_VALUE,
+                CompactMeasurement.NO_VALUE, CompactMeasurement.NO_VALUE, CompactMeasurement.NO_VALUE));
+        exporter.destroy();
+
+        Assert.assertEquals(bodies.size(), 1);
+        Assert.assertEquals(contentEncodings.get(0), "gzip");
+        Assert.assertEquals(bodies.get(0), "p1,equipment_id=E0001 electricity_consumption_low_rate_kwh=4347.922,"
+                + "electricity_consumption_normal_rate_kwh=3513.714,electricity_production_low_rate_kwh=348.098,"
+                + "electricity_production_normal_rate_kwh=835.640,current_power_consumption_w=425,"
+                + "current_power_production_w=0,gas_consumption_m3=2962.133 1500000000000000000\n"
+                + "p1,equipment_id=meter\\ 2 electricity_consumption_low_rate_kwh=0.007,"
+                + "electricity_consumption_normal_rate_kwh=3513.714,electricity_production_low_rate_kwh=348.098,"
+                + "electricity_production_normal_rate_kwh=835.640,current_power_consumption_w=1234"
+                + " 1500000001000000000\n");
+
+        Assert.assertEquals(exporter.getRecordCount(), 4);
+        Assert.assertEquals(exporter.getSentRecordCount(), 2);
+        Assert.assertEquals(exporter.getDroppedRecordCount(), 2);
+        Assert.assertEquals(exporter.getBatchCount(), 1);
+        Assert.assertEquals(exporter.getSendLatency().snapshot().getCount(), 1);
+        Assert.assertTrue(exporter.getSentBytes() < exporter.getEncodedBytes());
+    }
+
+    @Test
+    public void testEscapesEquipmentId() throws Exception {
+        MeasurementExporter exporter = new MeasurementExporter(new HttpExportSink(url), ExportFormat.LINE_PROTOCOL);
+        exporter.setCompressed(false);
+        exporter.init();
+
+        exporter.export("a\\b,c=d e\r\nf", new CompactMeasurement(START, 1, CompactMeasurement.NO_VALUE,
+                CompactMeasurement.NO_VALUE, CompactMeasurement.NO_VALUE, CompactMeasurement.NO_VALUE,
+                CompactMeasurement.NO_VALUE, CompactMeasurement.NO_VALUE));
+        exporter.destroy();
+
+        Assert.assertEquals(bodies.size(), 1);
+        Assert.assertEquals(bodies.get(0), "p1,equipment_id=a\\\\b\\,c\\=d\\ e??f"
+                + " electricity_consumption_low_rate_kwh=0.001 1500000000000000000\n");
+    }
+
+    @Test
+    public void testBatchesBySizeAndAge() throws Exception {
+        MeasurementExporter exporter = new MeasurementExporter(new HttpExportSink(url), ExportFormat.LINE_PROTOCOL);
+        exporter.setMaxBatchBytes(4096);
+        exporter.setMaxBatchAge(200);
+        exporter.setBufferCount(128);
+        exporter.init();
+
+        try {
+            for (CompactMeasurement measurement : TestObjectFactory.getSyntheticMeasurements(1000, 1)) {
+                exporter.export("E0001", measurement);
+            }
+
+            // The last batch is not full and goes out when it is old enough
+            await(() -> exporter.getSentRecordCount() == 1000);
+        } finally {
+            exporter.destroy();
+        }
+
+        int lines = 0;
+
+        for (String body : bodies) {
+            Assert.assertTrue(body.length() < 4096 + 1024, body.length() + " bytes");
+            lines += body.split("\n").length;
+        }
+
+        Assert.assertTrue(bodies.size() > 10, bodies.size() + " batches");
+        Assert.assertEquals(lines, 1000);
+        Assert.assertEquals(exporter.getBatchCount(), bodies.size());
+        Assert.assertEquals(exporter.getDroppedRecordCount(), 0);
+    }
+
+    @Test
+    public void testSpillsUntilServerRecovers() throws Exception {
+        List<CompactMeasurement> measurements = TestObjectFactory.getSyntheticMeasurements(60, 2);
+
+        // Nothing gets through before the shutdown
+        failuresLeft.set(Integer.MAX_VALUE);
+
+        MeasurementExporter exporter = exporter(new HttpExportSink(url));
+        exporter.init();
+        export(exporter, measurements.subList(0, 20), 10);
+        exporter.destroy();
+
+        Assert.assertEquals(exporter.getSentRecordCount(), 0);
+        Assert.assertEquals(exporter.getSpilledBatchCount(), 2);
+        Assert.assertEquals(directory.listFiles().length, 2);
+
+        // After a restart the spilled batches go first, also when the server fails a couple more times
+        failuresLeft.set(2);
+
+        exporter = exporter(new HttpExportSink(url));
+        exporter.init();
+
+        try {
+            export(exporter, measurements.subList(20, 60), 10);
+
+            MeasurementExporter started = exporter;
+            await(() -> started.getSentRecordCount() == 60);
+        } finally {
+            exporter.destroy();
+        }
+
+        List<String> lines = new ArrayList<String>();
+
+        for (String body : bodies) {
+            Collections.addAll(lines, body.split("\n"));
+        }
+
+        Assert.assertEquals(lines.size(), 60);
+
+        for (int i = 0; i < 60; i++) {
+            Assert.assertTrue(lines.get(i).endsWith(" " + measurements.get(i).getTimestamp() + "000000"), lines.get(i));
+        }
+
+        Assert.assertEquals(exporter.getFailureCount(), 2);
+        Assert.assertEquals(exporter.getSpillBytes(), 0);
+        Assert.assertEquals(exporter.getDroppedRecordCount(), 0);
+        Assert.assertEquals(directory.listFiles().length, 0);
+    }
+
+    @Test
+    public void testDropsRejectedBatches() throws Exception {
+        status.set(400);
+
+        MeasurementExporter exporter = exporter(new HttpExportSink(url));
+        exporter.init();
+        export(exporter, TestObjectFactory.getSyntheticMeasurements(20, 3), 10);
+        exporter.destroy();
+
+        Assert.assertEquals(exporter.getDroppedRecordCount(), 20);
+        Assert.assertEquals(exporter.getFailureCount(), 0);
+        Assert.assertEquals(exporter.getSpilledBatchCount(), 0);
+        Assert.assertEquals(directory.listFiles().length, 0);
+    }
+
+    @Test
+    public void testDropsWhenBuffersAreFull() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger sent = new AtomicInteger();
+
+        MeasurementExporter exporter = new MeasurementExporter((bytes, length, exportFormat, compressed) -> {
+            entered.countDown();
+
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IOException(e);
+            }
+            sent.incrementAndGet();
+        }, ExportFormat.LINE_PROTOCOL);
+        exporter.setBufferCount(2);
+        exporter.init();
+
+        // One batch is stuck in the sink and one waits, so the rest has nowhere to go
+        List<CompactMeasurement> measurements = TestObjectFactory.getSyntheticMeasurements(5, 4);
+        export(exporter, measurements.subList(0, 1), 1);
+        Assert.assertTrue(entered.await(10, TimeUnit.SECONDS));
+        export(exporter, measurements.subList(1, 5), 1);
+
+        release.countDown();
+        exporter.destroy();
+
+        Assert.assertEquals(sent.get(), 2);
+        Assert.assertEquals(exporter.getSentRecordCount(), 2);
+        Assert.assertEquals(exporter.getDroppedRecordCount(), 3);
+    }
+
+    @Test
+    public void testWritesCsvFiles() throws Exception {
+        File exportDirectory = new File(directory, "export");
+        Assert.assertTrue(exportDirectory.mkdir());
+
+        MeasurementExporter exporter = new MeasurementExporter(new FileExportSink(exportDirectory), ExportFormat.CSV);
+        exporter.setCompressed(false);
+        exporter.init();
+
+        exporter.export("E0001", new CompactMeasurement(START, 4347922, 3513714, 348098, 835640, 425, 0, 2962133));
+        exporter.export("a,\"b\"", new CompactMeasurement(START + 1000, 1, 2, 3, 4, 5, 6,
+                CompactMeasurement.NO_VALUE));
+        exporter.flush();
+        exporter.export("E0001", new CompactMeasurement(START + 2000, 1, 2, 3, 4, 5, 6, 7));
+        exporter.destroy();
+
+        File[] files = exportDirectory.listFiles();
+        Assert.assertEquals(files.length, 2);
+
+        String header = "timestamp,equipment_id,electricity_consumption_low_rate_kwh,"
+                + "electricity_consumption_normal_rate_kwh,electricity_production_low_rate_kwh,"
+                + "electricity_production_normal_rate_kwh,current_power_consumption_w,current_power_production_w,"
+                + "gas_consumption_m3\n";
+
+        List<String> contents = new ArrayList<String>();
+
+        for (File file : files) {
+            Assert.assertTrue(file.getName().endsWith(".csv"), file.getName());
+            contents.add(new String(Files.readAllBytes(file.toPath()), StandardCharsets.US_ASCII));
+        }
+
+        Collections.sort(contents);
+
+        Assert.assertEquals(contents.get(0), header
+                + "1500000000000,E0001,4347.922,3513.714,348.098,835.640,425,0,2962.133\n"
+                + "1500000001000,\"a,\"\"b\"\"\",0.001,0.002,0.003,0.004,5,6,\n");
+        Assert.assertEquals(contents.get(1), header
+                + "1500000002000,E0001,0.001,0.002,0.003,0.004,5,6,0.007\n");
+    }
+
+    private MeasurementExporter exporter(ExportSink exportSink) {
+        MeasurementExporter exporter = new MeasurementExporter(exportSink, ExportFormat.LINE_PROTOCOL);
+        exporter.setSpillDirectory(directory);
+        exporter.setInitialBackoff(20);
+        exporter.setMaxBackoff(100);
+
+        return exporter;
+    }
+
+    private static void export(MeasurementExporter exporter, List<CompactMeasurement> measurements, int batchSize) {
+        for (int i = 0; i < measurements.size(); i++) {
+            exporter.export("E0001", measurements.get(i));
+
+            if ((i + 1) % batchSize == 0) {
+                exporter.flush();
+            }
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertTrue(condition.getAsBoolean());
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
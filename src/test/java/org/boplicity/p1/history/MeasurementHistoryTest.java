@@ -0,0 +1,230 @@
+package org.boplicity.p1.history;
+
+import org.boplicity.p1.device.SmartMeterListenerImpl;
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.LongBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class MeasurementHistoryTest {
+
+    private static final long START = 1500000000000L;
+
+    @Test
+    public void testRangeQueries() {
+        MeasurementHistory history = new MeasurementHistory(100);
+
+        Assert.assertEquals(history.size(), 0);
+        Assert.assertEquals(history.getNewestTimestamp(), CompactMeasurement.NO_VALUE);
+
+        for (int i = 0; i < 250; i++) {
+            history.add(row(START + i * 1000L, i));
+        }
+
+        history.add(row(START, 0));
+
+        Assert.assertEquals(history.size(), 100);
+        Assert.assertEquals(history.getOldestTimestamp(), START + 150000);
+        Assert.assertEquals(history.getNewestTimestamp(), START + 249000);
+        Assert.assertEquals(history.getLateSampleCount(), 1);
+
+        HistorySlice slice = history.range(START + 160000, START + 170500);
+        Assert.assertEquals(slice.size(), 11);
+
+        for (int i = 0; i < 11; i++) {
+            Assert.assertEquals(slice.timestamps().get(i), START + (160 + i) * 1000L);
+            Assert.assertEquals(slice.values(MeasurementField.CURRENT_POWER_CONSUMPTION_W).get(i), 160 + i);
+        }
+
+        // Across the end of the ring and past the oldest reading
+        slice = history.range(START + 190000, START + 210000);
+        Assert.assertEquals(slice.size(), 20);
+        Assert.assertEquals(slice.values(MeasurementField.GAS_CONSUMPTION_M3).get(19), 209);
+
+        Assert.assertEquals(history.range(START, START + 155000).size(), 5);
+        Assert.assertEquals(history.range(START, START + 150000).size(), 0);
+        Assert.assertEquals(history.range(START + 250000, START + 260000).size(), 0);
+    }
+
+    @Test
+    public void testAggregatesMatchReadings() {
+        List<CompactMeasurement> measurements = TestObjectFactory.getSyntheticMeasurements(5000, 1);
+        MeasurementHistory history = new MeasurementHistory(10000);
+
+        for (CompactMeasurement measurement : measurements) {
+            history.add(measurement);
+        }
+
+        long from = measurements.get(0).getTimestamp() / 60000 * 60000;
+        long to = from + 3600000;
+
+        List<Aggregate> buckets = history.downsample(MeasurementField.CURRENT_POWER_CONSUMPTION_W, from, to, 60000);
+        Assert.assertEquals(buckets.size(), 60);
+
+        for (Aggregate bucket : buckets) {
+            assertEquals(bucket, expected(measurements, MeasurementField.CURRENT_POWER_CONSUMPTION_W,
+                    bucket.getFrom(), bucket.getTo()));
+        }
+
+        Aggregate energy = history.aggregate(MeasurementField.ELECTRICITY_CONSUMPTION_LOW_RATE_KWH, from, to);
+        assertEquals(energy, expected(measurements, MeasurementField.ELECTRICITY_CONSUMPTION_LOW_RATE_KWH, from, to));
+        Assert.assertTrue(energy.getDelta() > 0);
+
+        Aggregate empty = history.aggregate(MeasurementField.GAS_CONSUMPTION_M3, START, START + 1000);
+        Assert.assertEquals(empty.getCount(), 0);
+        Assert.assertEquals(empty.getMax(), CompactMeasurement.NO_VALUE);
+        Assert.assertTrue(Double.isNaN(empty.getAverage()));
+    }
+
+    @Test
+    public void testCacheFollowsNewReadings() throws Exception {
+        MeasurementHistory history = new MeasurementHistory(1000);
+        MeasurementField field = MeasurementField.CURRENT_POWER_CONSUMPTION_W;
+        long to = START + 600000;
+
+        add(history, 0, 300);
+
+        List<Aggregate> buckets = history.downsample(field, START, to, 60000);
+        Assert.assertSame(history.downsample(field, START, to, 60000), buckets);
+        Assert.assertEquals(history.getCacheMissCount(), 1);
+        Assert.assertEquals(history.getCacheHitCount(), 1);
+
+        // The new readings are folded into the cached buckets
+        add(history, 300, 400);
+
+        buckets = history.downsample(field, START, to, 60000);
+        Assert.assertEquals(history.getCacheUpdateCount(), 1);
+        Assert.assertEquals(buckets.get(5).getCount(), 60);
+        Assert.assertEquals(buckets.get(6).getCount(), 40);
+        assertEquals(buckets, uncached(history, field, to));
+
+        // Overwriting readings in the range has it computed again
+        add(history, 400, 1100);
+
+        buckets = history.downsample(field, START, to, 60000);
+        Assert.assertEquals(history.getCacheMissCount(), 2);
+        Assert.assertEquals(buckets.get(0).getCount(), 0);
+        Assert.assertEquals(buckets.get(1).getCount(), 20);
+        assertEquals(buckets, uncached(history, field, to));
+
+        history.setCacheTtl(0);
+        Thread.sleep(2);
+        history.downsample(field, START, to, 60000);
+        Assert.assertEquals(history.getCacheMissCount(), 3);
+    }
+
+    @Test
+    public void testReadersSeeConsistentRows() throws Exception {
+        MeasurementHistory history = new MeasurementHistory(1000);
+        AtomicReference<String> failure = new AtomicReference<String>();
+
+        Thread writer = new Thread(() -> add(history, 0, 200000));
+
+        List<Thread> readers = new ArrayList<Thread>();
+
+        for (int r = 0; r < 4; r++) {
+            readers.add(new Thread(() -> {
+                while (writer.isAlive() && failure.get() == null) {
+                    long newest = history.getNewestTimestamp();
+                    HistorySlice slice = history.range(newest - 500000, newest + 1);
+                    LongBuffer timestamps = slice.timestamps();
+
+                    for (int i = 0; i < slice.size(); i++) {
+                        long expected = (timestamps.get(i) - START) / 1000;
+
+                        for (MeasurementField field : MeasurementField.values()) {
+                            if (slice.values(field).get(i) != expected) {
+                                failure.set(field + " of row " + expected + " is " + slice.values(field).get(i));
+                            }
+                        }
+
+                        if (i > 0 && timestamps.get(i) != timestamps.get(i - 1) + 1000) {
+                            failure.set("Gap after " + timestamps.get(i - 1));
+                        }
+                    }
+                }
+            }));
+        }
+
+        writer.start();
+
+        for (Thread reader : readers) {
+            reader.start();
+        }
+
+        writer.join();
+
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(history.getNewestTimestamp(), START + 199999000L);
+    }
+
+    @Test
+    public void testFedByListener() {
+        SmartMeterListenerImpl listener = new SmartMeterListenerImpl();
+        MeasurementHistory history = new MeasurementHistory(10);
+        listener.setHistory(history);
+
+        listener.put(TestObjectFactory.getTestDatagram());
+
+        Assert.assertEquals(history.size(), 1);
+        Assert.assertEquals(history.getNewestTimestamp(), listener.getCurrentMeasurement().getTimestamp().getMillis());
+    }
+
+    // Row i at i seconds with all fields set to i
+    private static void add(MeasurementHistory history, int from, int to) {
+        for (int i = from; i < to; i++) {
+            history.add(row(START + i * 1000L, i));
+        }
+    }
+
+    private static CompactMeasurement row(long timestamp, long value) {
+        return new CompactMeasurement(timestamp, value, value, value, value, value, value, value);
+    }
+
+    private static List<Aggregate> uncached(MeasurementHistory history, MeasurementField field, long to) {
+        MeasurementHistory uncached = new MeasurementHistory(history.getCapacity());
+        HistorySlice slice = history.range(Long.MIN_VALUE, Long.MAX_VALUE);
+
+        for (int i = 0; i < slice.size(); i++) {
+            long value = slice.values(field).get(i);
+            uncached.add(row(slice.timestamps().get(i), value));
+        }
+
+        return uncached.downsample(field, START, to, 60000);
+    }
+
+    private static Aggregate expected(List<CompactMeasurement> measurements, MeasurementField field, long from,
+                                      long to) {
+        Aggregate.Builder builder = new Aggregate.Builder();
+
+        for (CompactMeasurement measurement : measurements) {
+            if (measurement.getTimestamp() >= from && measurement.getTimestamp() < to) {
+                builder.add(measurement.get(field));
+            }
+        }
+
+        return builder.build(field, from, to);
+    }
+
+    private static void assertEquals(List<Aggregate> actual, List<Aggregate> expected) {
+        Assert.assertEquals(actual.size(), expected.size());
+
+        for (int i = 0; i < actual.size(); i++) {
+            assertEquals(actual.get(i), expected.get(i));
+        }
+    }
+
+    private static void assertEquals(Aggregate actual, Aggregate expected) {
+        Assert.assertEquals(actual.toString(), expected.toString());
+    }
+}
@@ -0,0 +1,141 @@
+package org.boplicity.p1.hub;
+
+import org.boplicity.p1.device.SmartMeterListener;
+import org.boplicity.p1.device.SmartMeterListenerImpl;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+public class IngestionHubTest {
+
+    private IngestionHub ingestionHub;
+
+    @BeforeMethod
+    public void init() throws Exception {
+        ingestionHub = new IngestionHub(new MeterListenerFactory() {
+            @Override
+            public SmartMeterListener create(String equipmentId) {
+                return new SmartMeterListenerImpl();
+            }
+        });
+        ingestionHub.setReconnectDelay(100);
+        ingestionHub.init();
+    }
+
+    @AfterMethod
+    public void destroy() throws Exception {
+        ingestionHub.destroy();
+    }
+
+    @Test
+    public void testRoutesTcpSourcesByEquipmentId() throws Exception {
+        ServerSocket first = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        ServerSocket second = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+
+        try {
+            ingestionHub.addTcpSource("first", (InetSocketAddress) first.getLocalSocketAddress());
+            ingestionHub.addTcpSource("second", (InetSocketAddress) second.getLocalSocketAddress());
+
+            Socket firstMeter = first.accept();
+            Socket secondMeter = second.accept();
+
+            // Split writes, so telegrams arrive in pieces
+            for (int i = 1; i <= 3; i++) {
+                send(firstMeter, telegram("METER-1", i), 7);
+                send(secondMeter, telegram("METER-2", 100 + i), 11);
+            }
+
+            awaitFrames(6);
+
+            Assert.assertEquals(ingestionHub.getEquipmentIds().size(), 2);
+            Assert.assertEquals(ingestionHub.getListener("METER-1").getCurrentMeasurement()
+                    .getElectricityConsumptionLowRateKwh(), new BigDecimal("3.113"));
+            Assert.assertEquals(ingestionHub.getListener("METER-2").getCurrentMeasurement()
+                    .getElectricityConsumptionLowRateKwh(), new BigDecimal("103.113"));
+            Assert.assertEquals(((SmartMeterListenerImpl) ingestionHub.getListener("METER-1")).getMeasurementCount(), 3);
+
+            firstMeter.close();
+            secondMeter.close();
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+    @Test
+    public void testReconnects() throws Exception {
+        ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+
+        try {
+            ingestionHub.addTcpSource("meter", (InetSocketAddress) server.getLocalSocketAddress());
+
+            Socket meter = server.accept();
+            send(meter, telegram("METER-1", 1), 1000);
+            awaitFrames(1);
+            meter.close();
+
+            meter = server.accept();
+            send(meter, telegram("METER-1", 2), 1000);
+            awaitFrames(2);
+            meter.close();
+
+            Assert.assertEquals(ingestionHub.getListener("METER-1").getCurrentMeasurement()
+                    .getElectricityConsumptionLowRateKwh(), new BigDecimal("2.113"));
+        } finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testStreamSource() throws Exception {
+        ingestionHub.addStreamSource("archive", new ByteArrayInputStream(TestObjectFactory.getDsmr5DatagramBytes()));
+
+        awaitFrames(1);
+
+        Assert.assertEquals(ingestionHub.getEquipmentIds().iterator().next(), "E0044007382246019");
+    }
+
+    private void awaitFrames(long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+
+        while (ingestionHub.getFrameCount() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        Assert.assertEquals(ingestionHub.getFrameCount(), count);
+    }
+
+    private static void send(Socket socket, String telegram, int pieceLength) throws Exception {
+        OutputStream output = socket.getOutputStream();
+        byte[] bytes = telegram.getBytes(StandardCharsets.US_ASCII);
+
+        for (int i = 0; i < bytes.length; i += pieceLength) {
+            output.write(bytes, i, Math.min(pieceLength, bytes.length - i));
+            output.flush();
+        }
+    }
+
+    private static String telegram(String equipmentId, int reading) {
+        StringBuilder hex = new StringBuilder();
+
+        for (byte b : equipmentId.getBytes(StandardCharsets.US_ASCII)) {
+            hex.append(String.format("%02X", b));
+        }
+
+        // Without a checksum the line end completes the telegram
+        return TestObjectFactory.getTestDatagram()
+                .replace("31333631363433322020202020202020", hex.toString())
+                .replace("(00038.113*kWh)", String.format("(%05d.113*kWh)", reading)) + "\r\n";
+    }
+}
@@ -0,0 +1,223 @@
+package org.boplicity.p1.journal;
+
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+
+public class FrameJournalTest {
+
+    private static final long START = 1500000000000L;
+
+    private File directory;
+
+    @BeforeMethod
+    public void createDirectory() throws Exception {
+        directory = Files.createTempDirectory("frame-journal").toFile();
+    }
+
+    @AfterMethod
+    public void deleteDirectory() throws Exception {
+        delete(directory);
+    }
+
+    @Test
+    public void testReadsBackAcrossSegments() throws Exception {
+        FrameJournal journal = new FrameJournal(directory, 8 * 1024);
+
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(journal.append(frame(i), START + i), i);
+        }
+
+        Assert.assertTrue(journal.getSegmentCount() > 6, journal.getSegmentCount() + " segments");
+        journal.close();
+
+        JournalReader reader = JournalReader.open(directory, 0);
+
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(reader.getSequence(), i);
+            Assert.assertEquals(reader.getTimestamp(), START + i);
+            Assert.assertEquals(text(reader.getFrame()), text(frame(i)));
+        }
+
+        Assert.assertFalse(reader.next());
+        reader.close();
+
+        reader = JournalReader.open(directory, 777);
+        Assert.assertTrue(reader.next());
+        Assert.assertEquals(reader.getSequence(), 777);
+        Assert.assertEquals(reader.replay(frame -> { }), 222);
+        reader.close();
+    }
+
+    @Test
+    public void testSkipsOversizedFrame() throws Exception {
+        FrameJournal journal = new FrameJournal(directory);
+
+        journal.onFrame(ByteBuffer.allocate(FrameJournal.MAX_FRAME_SIZE + 1));
+        journal.onFrame(frame(0));
+
+        Assert.assertEquals(journal.getErrorCount(), 1);
+        Assert.assertEquals(journal.getLastSequence(), 0);
+        journal.close();
+    }
+
+    @Test
+    public void testSurvivesInterrupt() throws Exception {
+        FrameJournal journal = new FrameJournal(directory);
+        journal.onFrame(frame(0));
+
+        // As when the reading thread is interrupted to shut its connection down
+        Thread.currentThread().interrupt();
+        journal.onFrame(frame(1));
+        Assert.assertTrue(Thread.interrupted());
+
+        journal.onFrame(frame(2));
+        Assert.assertEquals(journal.getErrorCount(), 0);
+        journal.sync();
+        journal.close();
+
+        JournalReader reader = JournalReader.open(directory, 0);
+
+        for (int i = 0; i < 3; i++) {
+            Assert.assertTrue(reader.next());
+            Assert.assertEquals(text(reader.getFrame()), text(frame(i)));
+        }
+
+        Assert.assertFalse(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void testRecoversFromTornWrite() throws Exception {
+        FrameJournal journal = new FrameJournal(directory);
+
+        for (int i = 0; i < 10; i++) {
+            journal.append(frame(i), START + i);
+        }
+
+        journal.close();
+
+        // Half a record, as left by a crash
+        File segment = FrameJournal.listSegments(directory).get(0);
+        RandomAccessFile file = new RandomAccessFile(segment, "rw");
+        file.seek(file.length());
+        file.writeInt(500);
+        file.writeInt(1234);
+        file.write(new byte[100]);
+        file.close();
+
+        journal = new FrameJournal(directory);
+        Assert.assertEquals(journal.getLastSequence(), 9);
+        Assert.assertEquals(journal.append(frame(10), START + 10), 10);
+        journal.close();
+
+        JournalReader reader = JournalReader.open(directory, 0);
+        Assert.assertEquals(reader.replay(frame -> { }), 11);
+        Assert.assertEquals(reader.getCorruptCount(), 0);
+        reader.close();
+    }
+
+    @Test
+    public void testSkipsDamagedRecord() throws Exception {
+        FrameJournal journal = new FrameJournal(directory, 4096);
+
+        for (int i = 0; i < 100; i++) {
+            journal.append(frame(i), START + i);
+        }
+
+        journal.close();
+
+        List<File> segments = FrameJournal.listSegments(directory);
+        RandomAccessFile file = new RandomAccessFile(segments.get(0), "rw");
+        file.seek(FrameJournal.SEGMENT_HEADER_SIZE + FrameJournal.RECORD_HEADER_SIZE + 3);
+        file.write('X');
+        file.close();
+
+        JournalReader reader = JournalReader.open(directory, 0);
+        Assert.assertTrue(reader.next());
+        Assert.assertEquals(reader.getSequence(), FrameJournal.baseSequence(segments.get(1)));
+        Assert.assertEquals(reader.replay(frame -> { }), 99 - FrameJournal.baseSequence(segments.get(1)));
+        Assert.assertEquals(reader.getCorruptCount(), 1);
+        reader.close();
+    }
+
+    @Test
+    public void testGroupsSyncs() throws Exception {
+        FrameJournal journal = new FrameJournal(directory);
+        journal.setSyncIntervalMillis(50);
+
+        long last = -1;
+
+        for (int i = 0; i < 500; i++) {
+            last = journal.append(frame(i), START + i);
+        }
+
+        Assert.assertTrue(journal.awaitDurable(last, 5000));
+        Assert.assertEquals(journal.getDurableSequence(), 499);
+        Assert.assertTrue(journal.getSyncCount() < 10, journal.getSyncCount() + " syncs");
+
+        journal.setSyncIntervalMillis(0);
+        journal.append(frame(500), START);
+        Assert.assertEquals(journal.getDurableSequence(), 500);
+
+        journal.close();
+    }
+
+    @Test
+    public void testRetention() throws Exception {
+        FrameJournal journal = new FrameJournal(directory, 1024);
+
+        for (int i = 0; i < 100; i++) {
+            journal.append(frame(i), START + i);
+        }
+
+        int segmentCount = journal.getSegmentCount();
+        List<File> segments = FrameJournal.listSegments(directory);
+
+        journal.deleteBefore(FrameJournal.baseSequence(segments.get(2)));
+        Assert.assertEquals(journal.getSegmentCount(), segmentCount - 2);
+
+        for (File segment : FrameJournal.listSegments(directory)) {
+            segment.setLastModified(System.currentTimeMillis() - 7200000);
+        }
+
+        journal.setRetentionMillis(3600000);
+        journal.applyRetention();
+        Assert.assertEquals(journal.getSegmentCount(), 1);
+
+        JournalReader reader = journal.reader(0);
+        Assert.assertTrue(reader.next());
+        Assert.assertEquals(reader.getSequence(), FrameJournal.baseSequence(segments.get(segmentCount - 1)));
+        reader.close();
+
+        journal.close();
+    }
+
+    private static ByteBuffer frame(int i) {
+        return ByteBuffer.wrap(("/ISK5\\2M550T-1012\r\n\r\n1-0:1.8.1(" + i + "*kWh)\r\n!ABCD\r\n")
+                .getBytes(StandardCharsets.US_ASCII));
+    }
+
+    private static String text(ByteBuffer frame) {
+        return StandardCharsets.US_ASCII.decode(frame.duplicate()).toString();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
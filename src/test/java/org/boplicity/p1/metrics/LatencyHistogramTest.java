@@ -0,0 +1,74 @@
+package org.boplicity.p1.metrics;
+
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.Random;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketBounds() throws Exception {
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKET_COUNT - 1; bucket++) {
+            Assert.assertEquals(LatencyHistogram.bucket(LatencyHistogram.lowestValue(bucket)), bucket);
+            Assert.assertEquals(LatencyHistogram.bucket(LatencyHistogram.highestValue(bucket)), bucket);
+        }
+
+        Assert.assertEquals(LatencyHistogram.bucket(Long.MAX_VALUE), LatencyHistogram.BUCKET_COUNT - 1);
+    }
+
+    @Test
+    public void testSmallValuesAreExact() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+
+        for (int i = 1; i <= 10; i++) {
+            histogram.record(i);
+        }
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        Assert.assertEquals(snapshot.getCount(), 10);
+        Assert.assertEquals(snapshot.getMax(), 10);
+        Assert.assertEquals(snapshot.getMean(), 5.5, 0.0001);
+        Assert.assertEquals(snapshot.getP50(), 5);
+        Assert.assertEquals(snapshot.getP90(), 9);
+        Assert.assertEquals(snapshot.getValueAtPercentile(100), 10);
+    }
+
+    @Test
+    public void testPercentilesWithinRelativeError() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Random random = new Random(7);
+        long[] values = new long[100000];
+
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 20);
+            histogram.record(values[i]);
+        }
+
+        java.util.Arrays.sort(values);
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        for (double percentile : new double[]{50, 90, 99, 99.9}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = snapshot.getValueAtPercentile(percentile);
+
+            Assert.assertTrue(actual >= expected && actual <= expected + expected / 16 + 1,
+                    percentile + ": " + actual + " vs " + expected);
+        }
+    }
+
+    @Test
+    public void testReset() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        histogram.record(1000000);
+        histogram.reset();
+
+        HistogramSnapshot snapshot = histogram.snapshot();
+
+        Assert.assertEquals(snapshot.getCount(), 0);
+        Assert.assertEquals(snapshot.getMax(), 0);
+        Assert.assertEquals(snapshot.getP99(), 0);
+    }
+}
@@ -0,0 +1,146 @@
+package org.boplicity.p1.metrics;
+
+import org.boplicity.p1.device.SmartMeterDevice;
+import org.boplicity.p1.device.SmartMeterListenerImpl;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+public class MeterMetricsTest {
+
+    @Test
+    public void testDeviceAndListenerReport() throws Exception {
+        MeterMetrics metrics = new MeterMetrics();
+
+        SmartMeterListenerImpl listener = new SmartMeterListenerImpl();
+        listener.setMetrics(metrics);
+
+        SmartMeterDevice device = new SmartMeterDevice();
+        device.setMetrics(metrics);
+        device.setSmartMeterListener(listener);
+
+        String corrupt = TestObjectFactory.getDsmr5Datagram().replace("1-0:1.8.1(", "1-0:1.8.1(1");
+
+        feed(device, TestObjectFactory.getDsmr5Datagram() + "\r\n");
+        feed(device, corrupt + "\r\n");
+        feed(device, "/partial\r\n0-0:99.99.99(1)\r\n");
+        feed(device, TestObjectFactory.getDsmr5Datagram() + "\r\n");
+
+        MetricsSnapshot snapshot = metrics.snapshot();
+
+        Assert.assertEquals(snapshot.getFrameCount(), 2);
+        Assert.assertEquals(snapshot.getCrcFailureCount(), 1);
+        Assert.assertEquals(snapshot.getResyncCount(), 1);
+        Assert.assertEquals(snapshot.getMeasurementCount(), 2);
+        Assert.assertEquals(snapshot.getParseLatency().getCount(), 2);
+        Assert.assertEquals(snapshot.getPublishLatency().getCount(), 2);
+        Assert.assertTrue(snapshot.getParseLatency().getMax() > 0);
+    }
+
+    @Test
+    public void testMetricsPerDevice() throws Exception {
+        SmartMeterListenerImpl firstListener = new SmartMeterListenerImpl();
+        SmartMeterDevice first = new SmartMeterDevice();
+        first.setSmartMeterListener(firstListener);
+
+        SmartMeterListenerImpl secondListener = new SmartMeterListenerImpl();
+        SmartMeterDevice second = new SmartMeterDevice();
+        second.setSmartMeterListener(secondListener);
+
+        Assert.assertNotSame(first.getMetrics(), second.getMetrics());
+        Assert.assertSame(firstListener.getMetrics(), first.getMetrics());
+
+        // A frame finished on the first meter does not time a measurement of the second
+        feed(first, TestObjectFactory.getDsmr5Datagram() + "\r\n");
+        secondListener.put(TestObjectFactory.getDsmr5Datagram());
+
+        Assert.assertEquals(first.getMetrics().getPublishLatency().getCount(), 1);
+        Assert.assertEquals(second.getMetrics().getMeasurementCount(), 1);
+        Assert.assertEquals(second.getMetrics().getPublishLatency().getCount(), 0);
+
+        first.getMetrics().registerMBean("first");
+        second.getMetrics().registerMBean("second");
+
+        try {
+            Assert.assertNotNull(first.getMetrics().getObjectName());
+            Assert.assertNotNull(second.getMetrics().getObjectName());
+            Assert.assertNotEquals(first.getMetrics().getObjectName(), second.getMetrics().getObjectName());
+        } finally {
+            first.getMetrics().unregisterMBean();
+            second.getMetrics().unregisterMBean();
+        }
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        MeterMetrics metrics = new MeterMetrics();
+        metrics.setEnabled(false);
+
+        SmartMeterListenerImpl listener = new SmartMeterListenerImpl();
+        listener.setMetrics(metrics);
+        listener.put(TestObjectFactory.getDsmr5Datagram());
+
+        metrics.frameReceived();
+        metrics.setEnabled(true);
+        metrics.frameReceived();
+
+        Assert.assertEquals(metrics.getMeasurementCount(), 0);
+        Assert.assertEquals(metrics.getParseLatency().getCount(), 0);
+        Assert.assertEquals(metrics.getFrameCount(), 1);
+    }
+
+    @Test
+    public void testParseError() throws Exception {
+        MeterMetrics metrics = new MeterMetrics();
+
+        SmartMeterListenerImpl listener = new SmartMeterListenerImpl();
+        listener.setMetrics(metrics);
+
+        try {
+            listener.put((String) null);
+            Assert.fail();
+        } catch (RuntimeException e) {
+            // Expected
+        }
+
+        Assert.assertEquals(metrics.getParseErrorCount(), 1);
+        Assert.assertEquals(metrics.getMeasurementCount(), 0);
+    }
+
+    @Test
+    public void testMBean() throws Exception {
+        MeterMetrics metrics = new MeterMetrics();
+        metrics.registerMBean("test");
+
+        try {
+            metrics.frameReceived();
+            metrics.parsed(System.nanoTime() - 1000);
+
+            MBeanServer mBeanServer = ManagementFactory.getPlatformMBeanServer();
+
+            Assert.assertEquals(mBeanServer.getAttribute(metrics.getObjectName(), "FrameCount"), 1L);
+
+            CompositeData parseLatency = (CompositeData) mBeanServer.getAttribute(metrics.getObjectName(),
+                    "ParseLatency");
+            Assert.assertEquals(parseLatency.get("count"), 1L);
+
+            mBeanServer.setAttribute(metrics.getObjectName(), new Attribute("Enabled", false));
+            Assert.assertFalse(metrics.isEnabled());
+        } finally {
+            metrics.unregisterMBean();
+        }
+
+        Assert.assertNull(metrics.getObjectName());
+    }
+
+    private static void feed(SmartMeterDevice device, String bytes) {
+        byte[] ascii = bytes.getBytes(StandardCharsets.US_ASCII);
+        device.getTelegramFramer().feed(ascii, 0, ascii.length);
+    }
+}
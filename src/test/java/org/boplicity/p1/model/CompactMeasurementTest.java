@@ -0,0 +1,94 @@
+package org.boplicity.p1.model;
+
+import org.boplicity.p1.parser.ByteDatagramParser;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+public class CompactMeasurementTest {
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        SmartMeterMeasurement measurement = new ByteDatagramParser().parse(TestObjectFactory.getDsmr5DatagramBytes());
+        measurement.setTimestamp(new DateTime());
+
+        CompactMeasurement compact = CompactMeasurement.of(measurement);
+
+        Assert.assertEquals(compact.getElectricityConsumptionLowRateWh(), 4347922);
+        Assert.assertEquals(compact.getCurrentPowerConsumptionW(), 425);
+        assertFieldsEqual(compact.toSmartMeterMeasurement(), measurement);
+        Assert.assertEquals(compact.toSmartMeterMeasurement().getTimestamp(), measurement.getTimestamp());
+    }
+
+    @Test
+    public void testRoundTripKeepsZoneAndFieldsOnly() throws Exception {
+        DateTimeZone zone = DateTimeZone.forID("Asia/Tokyo");
+        SmartMeterMeasurement measurement = new ByteDatagramParser().parse(TestObjectFactory.getDsmr5DatagramBytes());
+        measurement.setTimestamp(new DateTime(1557301383000L, zone));
+
+        SmartMeterMeasurement result = CompactMeasurement.of(measurement).toSmartMeterMeasurement(zone);
+
+        Assert.assertEquals(result.getTimestamp(), measurement.getTimestamp());
+        Assert.assertEquals(result.getTimestamp().getZone(), zone);
+        assertFieldsEqual(result, measurement);
+
+        // A projection: values beyond the fields are not carried
+        Assert.assertNotNull(measurement.getEquipmentId());
+        Assert.assertNotNull(measurement.getVoltageL1V());
+        Assert.assertNull(result.getEquipmentId());
+        Assert.assertNull(result.getVoltageL1V());
+        Assert.assertNull(result.getMeterTimestamp());
+    }
+
+    @Test
+    public void testRoundTripDsmr22() throws Exception {
+        SmartMeterMeasurement measurement = new ByteDatagramParser().parse(TestObjectFactory.getTestDatagramBytes());
+
+        CompactMeasurement compact = CompactMeasurement.of(measurement);
+
+        Assert.assertEquals(compact.getTimestamp(), CompactMeasurement.NO_VALUE);
+        Assert.assertEquals(compact.getGasConsumptionDm3(), 47057);
+        assertFieldsEqual(compact.toSmartMeterMeasurement(), measurement);
+    }
+
+    @Test
+    public void testParseCompact() throws Exception {
+        ByteDatagramParser parser = new ByteDatagramParser();
+        byte[] datagram = TestObjectFactory.getTestDatagramBytes();
+
+        Assert.assertEquals(parser.parseCompact(datagram, 0, datagram.length),
+                CompactMeasurement.of(parser.parse(datagram)));
+    }
+
+    @Test
+    public void testParseCompactRoundsManyDecimals() throws Exception {
+        byte[] datagram = ("1-0:1.8.1(0.0000000000001*kWh)\n1-0:1.8.2(1.2345678901234*kWh)\n"
+                + "1-0:2.8.1(0000.0005*kWh)\n1-0:1.7.0(0.0004999999999*kW)\n").getBytes(StandardCharsets.US_ASCII);
+
+        CompactMeasurement compact = new ByteDatagramParser().parseCompact(datagram, 0, datagram.length);
+
+        Assert.assertEquals(compact.getElectricityConsumptionLowRateWh(), 0);
+        Assert.assertEquals(compact.getElectricityConsumptionNormalRateWh(), 1235);
+        Assert.assertEquals(compact.getElectricityProductionLowRateWh(), 1);
+        Assert.assertEquals(compact.getCurrentPowerConsumptionW(), 0);
+    }
+
+    @Test(expectedExceptions = ArithmeticException.class)
+    public void testTooManyDecimals() throws Exception {
+        SmartMeterMeasurement measurement = new SmartMeterMeasurement();
+        measurement.setCurrentPowerConsumptionW(new BigDecimal("0.5"));
+
+        CompactMeasurement.of(measurement);
+    }
+
+    private static void assertFieldsEqual(SmartMeterMeasurement actual, SmartMeterMeasurement expected) {
+        for (MeasurementField field : MeasurementField.values()) {
+            Assert.assertEquals(field.get(actual), field.get(expected), field.toString());
+        }
+    }
+}
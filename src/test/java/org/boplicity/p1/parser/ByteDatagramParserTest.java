@@ -0,0 +1,77 @@
+package org.boplicity.p1.parser;
+
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+public class ByteDatagramParserTest {
+
+    private ByteDatagramParser parser;
+
+    @BeforeClass
+    public void init() {
+        parser = new ByteDatagramParser();
+    }
+
+    @Test
+    public void testParse() throws Exception {
+
+        SmartMeterMeasurement reference = new SmartMeterMeasurement();
+        reference.setCurrentPowerProductionW(new BigDecimal(550));
+        reference.setCurrentPowerConsumptionW(BigDecimal.ZERO);
+        reference.setElectricityConsumptionNormalRateKwh(new BigDecimal("26.006"));
+        reference.setElectricityConsumptionLowRateKwh(new BigDecimal("38.113"));
+        reference.setElectricityProductionNormalRateKwh(new BigDecimal("6.696"));
+        reference.setElectricityProductionLowRateKwh(new BigDecimal("1.104"));
+        reference.setGasConsumptionM3(new BigDecimal("47.057"));
+        reference.setEquipmentId("13616432");
+        reference.setTariffIndicator(2);
+
+        SmartMeterMeasurement result = parser.parse(TestObjectFactory.getTestDatagramBytes());
+
+        Assert.assertEquals(result, reference);
+    }
+
+    @Test
+    public void testParseSameAsDatagramParser() throws Exception {
+        String datagram = TestObjectFactory.getTestDatagram();
+
+        Assert.assertEquals(parser.parse(datagram.getBytes(StandardCharsets.US_ASCII)),
+                new DatagramParser().parse(datagram));
+    }
+
+    @Test
+    public void testParseWindowsLineEnds() throws Exception {
+        String datagram = TestObjectFactory.getTestDatagram().replace("\n", "\r\n");
+
+        Assert.assertEquals(parser.parse(datagram.getBytes(StandardCharsets.US_ASCII)),
+                new DatagramParser().parse(datagram));
+    }
+
+    @Test
+    public void testParseByteBufferSlice() throws Exception {
+        byte[] datagram = TestObjectFactory.getTestDatagramBytes();
+        byte[] padded = new byte[datagram.length + 20];
+        System.arraycopy(datagram, 0, padded, 10, datagram.length);
+
+        ByteBuffer buffer = ByteBuffer.wrap(padded, 10, datagram.length);
+
+        Assert.assertEquals(parser.parse(buffer), parser.parse(datagram));
+        Assert.assertEquals(buffer.position(), 10);
+    }
+
+    @Test
+    public void testParseInvalidValues() throws Exception {
+        SmartMeterMeasurement result = parser.parse("1-0:1.8.1(garbage*kWh)\n1-0:1.7.0(0001.5*kW)\n"
+                .getBytes(StandardCharsets.US_ASCII));
+
+        Assert.assertNull(result.getElectricityConsumptionLowRateKwh());
+        Assert.assertEquals(result.getCurrentPowerConsumptionW(), new BigDecimal("1500"));
+    }
+}
@@ -29,6 +29,8 @@ public class DatagramParserTest {
         reference.setElectricityProductionNormalRateKwh(new BigDecimal("6.696"));
         reference.setElectricityProductionLowRateKwh(new BigDecimal("1.104"));
         reference.setGasConsumptionM3(new BigDecimal("47.057"));
+        reference.setEquipmentId("13616432");
+        reference.setTariffIndicator(2);
 
         SmartMeterMeasurement result = parser.parse(TestObjectFactory.getTestDatagram());
 
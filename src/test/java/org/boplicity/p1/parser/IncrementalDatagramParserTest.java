@@ -0,0 +1,79 @@
+package org.boplicity.p1.parser;
+
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+public class IncrementalDatagramParserTest {
+
+    private ByteDatagramParser byteDatagramParser = new ByteDatagramParser();
+
+    @Test
+    public void testSameAsByteDatagramParser() throws Exception {
+        IncrementalDatagramParser parser = new IncrementalDatagramParser();
+        List<String> datagrams = TestObjectFactory.getDsmr5Datagrams(100, 3);
+
+        for (String datagram : datagrams) {
+            byte[] bytes = datagram.getBytes(StandardCharsets.US_ASCII);
+
+            Assert.assertEquals(parser.parse(bytes), byteDatagramParser.parse(bytes));
+        }
+
+        Assert.assertEquals(parser.getFullParseCount(), 1);
+        Assert.assertTrue(parser.getReusedLineCount() > parser.getDecodedLineCount() * 4,
+                parser.getReusedLineCount() + " reused, " + parser.getDecodedLineCount() + " decoded");
+    }
+
+    @Test
+    public void testUnchangedTelegram() throws Exception {
+        IncrementalDatagramParser parser = new IncrementalDatagramParser();
+        byte[] datagram = TestObjectFactory.getDsmr5DatagramBytes();
+
+        SmartMeterMeasurement first = parser.parse(datagram);
+        long decoded = parser.getDecodedLineCount();
+
+        SmartMeterMeasurement second = parser.parse(datagram);
+
+        Assert.assertEquals(second, first);
+        Assert.assertNotSame(second, first);
+        Assert.assertEquals(parser.getDecodedLineCount(), decoded);
+        Assert.assertEquals(parser.getReusedLineCount(), decoded);
+    }
+
+    @Test
+    public void testChangedLayout() throws Exception {
+        IncrementalDatagramParser parser = new IncrementalDatagramParser();
+
+        String dsmr5 = TestObjectFactory.getDsmr5Datagram();
+        String withoutGas = dsmr5.replace("0-1:24.2.1(190508094000S)(02962.133*m3)\r\n", "");
+        String swapped = dsmr5.replace("1-0:1.8.1(004347.922*kWh)\r\n1-0:1.8.2(003513.714*kWh)",
+                "1-0:1.8.2(003513.714*kWh)\r\n1-0:1.8.1(004347.922*kWh)");
+
+        for (String datagram : new String[]{dsmr5, TestObjectFactory.getTestDatagram(), dsmr5, withoutGas, swapped}) {
+            byte[] bytes = datagram.getBytes(StandardCharsets.US_ASCII);
+
+            Assert.assertEquals(parser.parse(bytes), byteDatagramParser.parse(bytes));
+        }
+
+        Assert.assertEquals(parser.getFullParseCount(), 5);
+    }
+
+    @Test
+    public void testChangedValueBecomesMissing() throws Exception {
+        IncrementalDatagramParser parser = new IncrementalDatagramParser();
+
+        String dsmr5 = TestObjectFactory.getDsmr5Datagram();
+        parser.parse(dsmr5.getBytes(StandardCharsets.US_ASCII));
+
+        SmartMeterMeasurement result = parser.parse(dsmr5.replace("1-0:1.7.0(00.425*kW)", "1-0:1.7.0(?*kW)")
+                .getBytes(StandardCharsets.US_ASCII));
+
+        Assert.assertNull(result.getCurrentPowerConsumptionW());
+        Assert.assertNotNull(result.getElectricityConsumptionLowRateKwh());
+        Assert.assertEquals(parser.getFullParseCount(), 1);
+    }
+}
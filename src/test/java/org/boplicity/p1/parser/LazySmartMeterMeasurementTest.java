@@ -0,0 +1,129 @@
+package org.boplicity.p1.parser;
+
+import org.boplicity.p1.device.ParseMode;
+import org.boplicity.p1.device.SmartMeterListenerImpl;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class LazySmartMeterMeasurementTest {
+
+    private ByteDatagramParser byteDatagramParser = new ByteDatagramParser();
+
+    @Test
+    public void testSameAsEager() throws Exception {
+        for (byte[] datagram : new byte[][]{TestObjectFactory.getDsmr5DatagramBytes(),
+                TestObjectFactory.getTestDatagramBytes()}) {
+            LazySmartMeterMeasurement lazy = byteDatagramParser.parseLazy(datagram, 0, datagram.length);
+
+            Assert.assertEquals(new SmartMeterMeasurement(lazy), byteDatagramParser.parse(datagram));
+        }
+    }
+
+    @Test
+    public void testDecodesOnFirstAccess() throws Exception {
+        byte[] datagram = TestObjectFactory.getDsmr5DatagramBytes();
+        LazySmartMeterMeasurement lazy = byteDatagramParser.parseLazy(datagram, 0, datagram.length);
+
+        Assert.assertEquals(lazy.getDecodedCount(), 0);
+
+        // The copy must not depend on the caller's buffer
+        datagram[datagram.length / 2] = 'X';
+
+        Assert.assertEquals(lazy.getCurrentPowerConsumptionW(), new BigDecimal(425));
+        Assert.assertEquals(lazy.getCurrentPowerConsumptionW(), new BigDecimal(425));
+        Assert.assertEquals(lazy.getDecodedCount(), 1);
+
+        Assert.assertNull(lazy.getMbusChannel4Value());
+        Assert.assertEquals(lazy.getDecodedCount(), 2);
+    }
+
+    @Test
+    public void testSetValuesAreKept() throws Exception {
+        byte[] datagram = TestObjectFactory.getDsmr5DatagramBytes();
+        LazySmartMeterMeasurement lazy = byteDatagramParser.parseLazy(datagram, 0, datagram.length);
+
+        lazy.setGasConsumptionM3(BigDecimal.ONE);
+        lazy.setCurrentPowerConsumptionW(null);
+
+        // The M-Bus line also holds the gas reading
+        Assert.assertNotNull(lazy.getMbusChannel1Value());
+        Assert.assertEquals(lazy.getGasConsumptionM3(), BigDecimal.ONE);
+        Assert.assertNull(lazy.getCurrentPowerConsumptionW());
+    }
+
+    @Test
+    public void testConcurrentReaders() throws Exception {
+        final byte[] datagram = TestObjectFactory.getDsmr5DatagramBytes();
+        final SmartMeterMeasurement expected = byteDatagramParser.parse(datagram);
+        final AtomicReference<String> failure = new AtomicReference<String>();
+
+        for (int round = 0; round < 200; round++) {
+            final LazySmartMeterMeasurement lazy = byteDatagramParser.parseLazy(datagram, 0, datagram.length);
+            List<Thread> threads = new ArrayList<Thread>();
+
+            for (int t = 0; t < 4; t++) {
+                threads.add(new Thread() {
+                    @Override
+                    public void run() {
+                        if (!new SmartMeterMeasurement(lazy).equals(expected)) {
+                            failure.set("Different values");
+                        }
+                    }
+                });
+            }
+
+            for (Thread thread : threads) {
+                thread.start();
+            }
+
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        Assert.assertNull(failure.get());
+    }
+
+    @Test
+    public void testSerializesDecoded() throws Exception {
+        byte[] datagram = TestObjectFactory.getDsmr5DatagramBytes();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        output.writeObject(byteDatagramParser.parseLazy(datagram, 0, datagram.length));
+        output.close();
+
+        Object read = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray())).readObject();
+
+        Assert.assertEquals(read.getClass(), SmartMeterMeasurement.class);
+        Assert.assertEquals(read, byteDatagramParser.parse(datagram));
+    }
+
+    @Test
+    public void testListenerParseMode() throws Exception {
+        SmartMeterListenerImpl listener = new SmartMeterListenerImpl();
+        listener.setParseMode(ParseMode.LAZY);
+        listener.put(ByteBuffer.wrap(TestObjectFactory.getDsmr5DatagramBytes()));
+
+        SmartMeterMeasurement measurement = listener.getCurrentMeasurement();
+
+        Assert.assertTrue(measurement instanceof LazySmartMeterMeasurement);
+        Assert.assertNotNull(measurement.getTimestamp());
+        Assert.assertEquals(measurement.getEquipmentId(), "E0044007382246019");
+
+        listener.setIncrementalParsing(true);
+        Assert.assertEquals(listener.getParseMode(), ParseMode.INCREMENTAL);
+    }
+}
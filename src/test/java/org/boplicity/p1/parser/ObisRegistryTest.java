@@ -0,0 +1,92 @@
+package org.boplicity.p1.parser;
+
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+
+public class ObisRegistryTest {
+
+    @Test
+    public void testParseDsmr5() throws Exception {
+        SmartMeterMeasurement result = new ByteDatagramParser().parse(TestObjectFactory.getDsmr5DatagramBytes());
+
+        Assert.assertEquals(result.getEquipmentId(), "E0044007382246019");
+        Assert.assertEquals(result.getMeterTimestamp(),
+                new DateTime(2019, 5, 8, 9, 43, 3, DateTimeZone.forOffsetHours(2)));
+        Assert.assertEquals(result.getTariffIndicator(), Integer.valueOf(2));
+        Assert.assertEquals(result.getVoltageL1V(), new BigDecimal("229.0"));
+        Assert.assertEquals(result.getVoltageL3V(), new BigDecimal("230.0"));
+        Assert.assertEquals(result.getCurrentL2A(), new BigDecimal("1"));
+        Assert.assertEquals(result.getPowerConsumptionL2W(), new BigDecimal("255"));
+        Assert.assertEquals(result.getPowerProductionL1W(), BigDecimal.ZERO);
+        Assert.assertEquals(result.getPowerFailureCount(), Integer.valueOf(6));
+        Assert.assertEquals(result.getLongPowerFailureCount(), Integer.valueOf(3));
+        Assert.assertEquals(result.getPowerFailureLogCount(), Integer.valueOf(2));
+        Assert.assertEquals(result.getMbusChannel1Value(), new BigDecimal("2962.133"));
+        Assert.assertEquals(result.getGasConsumptionM3(), new BigDecimal("2962.133"));
+    }
+
+    @Test
+    public void testEquipmentIdPaddingDropped() throws Exception {
+        SmartMeterMeasurement result = new ByteDatagramParser().parse(TestObjectFactory.getTestDatagramBytes());
+
+        // Encoded as 31333631363433322020202020202020
+        Assert.assertEquals(result.getEquipmentId(), "13616432");
+    }
+
+    @Test
+    public void testParsersAgree() throws Exception {
+        String datagram = TestObjectFactory.getDsmr5Datagram();
+
+        Assert.assertEquals(new ByteDatagramParser().parse(datagram.getBytes(StandardCharsets.US_ASCII)),
+                new DatagramParser().parse(datagram));
+    }
+
+    @Test
+    public void testCustomCode() throws Exception {
+        ObisRegistry registry = ObisRegistry.dsmr();
+        registry.register("1-0:32.32.0", new ObisHandler() {
+            @Override
+            public void handle(byte[] bytes, int from, int end, SmartMeterMeasurement measurement) {
+                measurement.setEquipmentId(ObisValues.text(bytes, from, end));
+            }
+        });
+
+        SmartMeterMeasurement result = new ByteDatagramParser(registry).parse(TestObjectFactory.getDsmr5DatagramBytes());
+
+        Assert.assertEquals(result.getEquipmentId(), "00005");
+    }
+
+    @Test
+    public void testCodeMustBeComplete() throws Exception {
+        SmartMeterMeasurement result = new ByteDatagramParser().parse(
+                "1-0:1.8.10(000001.000*kWh)\n1-0:1.8(000002.000*kWh)\n".getBytes(StandardCharsets.US_ASCII));
+
+        Assert.assertNull(result.getElectricityConsumptionLowRateKwh());
+    }
+
+    @Test
+    public void testUnregister() throws Exception {
+        ObisRegistry registry = ObisRegistry.dsmr().unregister("1-0:1.8.1");
+
+        Assert.assertNull(registry.get("1-0:1.8.1"));
+        Assert.assertNotNull(registry.get("1-0:1.8.2"));
+        Assert.assertNull(new ByteDatagramParser(registry).parse(TestObjectFactory.getDsmr5DatagramBytes())
+                .getElectricityConsumptionLowRateKwh());
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testInvalidCode() throws Exception {
+        new ObisRegistry().register("1-0:1.8.x", new ObisHandler() {
+            @Override
+            public void handle(byte[] bytes, int from, int end, SmartMeterMeasurement measurement) {
+            }
+        });
+    }
+}
@@ -0,0 +1,177 @@
+package org.boplicity.p1.registry;
+
+import org.boplicity.p1.device.SmartMeterListenerImpl;
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+public class MeterRegistryTest {
+
+    @Test
+    public void testHistoryKeepsTheLatest() throws Exception {
+        MeterRegistry registry = new MeterRegistry(5, 4);
+
+        for (int i = 1; i <= 12; i++) {
+            registry.update("METER-1", measurement(i));
+        }
+
+        MeterSnapshot snapshot = registry.snapshot("METER-1");
+
+        Assert.assertEquals(snapshot.getHistorySize(), 5);
+        Assert.assertEquals(snapshot.getHistoryTimestamp(0), 8);
+        Assert.assertEquals(snapshot.getHistory(4), measurement(12));
+        Assert.assertEquals(snapshot.getHistory().get(1), measurement(9));
+        Assert.assertEquals(snapshot.getCurrent(), measurement(12));
+        Assert.assertEquals(snapshot.getMeasurementCount(), 12);
+        Assert.assertNull(registry.snapshot("METER-2"));
+    }
+
+    @Test
+    public void testHealth() throws Exception {
+        MeterRegistry registry = new MeterRegistry(5, 4);
+
+        registry.error("METER-1");
+        Assert.assertNull(registry.snapshot("METER-1").getCurrent());
+
+        registry.update("METER-1", measurement(10));
+        registry.update("METER-1", measurement(9));
+
+        MeterSnapshot snapshot = registry.snapshot("METER-1");
+        Assert.assertEquals(snapshot.getCurrent(), measurement(10));
+        Assert.assertEquals(snapshot.getHistorySize(), 1);
+        Assert.assertEquals(snapshot.getErrorCount(), 1);
+        Assert.assertEquals(snapshot.getOutOfOrderCount(), 1);
+        Assert.assertFalse(snapshot.isStale(System.currentTimeMillis(), 60000));
+        Assert.assertTrue(snapshot.isStale(System.currentTimeMillis() + 120000, 60000));
+    }
+
+    @Test
+    public void testSubscribesToListener() throws Exception {
+        MeterRegistry registry = new MeterRegistry();
+
+        SmartMeterListenerImpl listener = new SmartMeterListenerImpl();
+        listener.subscribe(registry);
+        listener.put(TestObjectFactory.getDsmr5Datagram());
+
+        MeterSnapshot snapshot = registry.snapshot("E0044007382246019");
+        Assert.assertEquals(snapshot.getCurrent().getCurrentPowerConsumptionW(), 425);
+        Assert.assertEquals(registry.getEquipmentIds().size(), 1);
+    }
+
+    @Test
+    public void testMemoryIsBounded() throws Exception {
+        MeterRegistry registry = new MeterRegistry(60, 16);
+
+        for (int meter = 0; meter < 1000; meter++) {
+            for (int i = 0; i < 100; i++) {
+                registry.update("METER-" + meter, measurement(i));
+            }
+        }
+
+        Assert.assertEquals(registry.size(), 1000);
+        Assert.assertEquals(registry.getStripeCount(), 16);
+        Assert.assertEquals(registry.getEstimatedBytesPerMeter(), 264 + 16 + 60 * 8 * 8);
+        Assert.assertEquals(registry.getEstimatedBytes(), 1000 * registry.getEstimatedBytesPerMeter());
+    }
+
+    @Test
+    public void testSnapshotsAreConsistent() throws Exception {
+        final MeterRegistry registry = new MeterRegistry(16, 2);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<String> failure = new AtomicReference<String>();
+        final AtomicLong snapshotCount = new AtomicLong();
+
+        List<Thread> threads = new ArrayList<Thread>();
+
+        for (int w = 0; w < 4; w++) {
+            final String equipmentId = "METER-" + w;
+
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 1; i <= 200000; i++) {
+                        registry.update(equipmentId, measurement(i));
+                    }
+                }
+            });
+        }
+
+        for (int r = 0; r < 2; r++) {
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    while (running.get()) {
+                        for (int w = 0; w < 4; w++) {
+                            MeterSnapshot snapshot = registry.snapshot("METER-" + w);
+
+                            // A meter is registered just before its first measurement is stored
+                            if (snapshot != null && snapshot.getCurrent() != null) {
+                                check(snapshot, failure);
+                                snapshotCount.incrementAndGet();
+                            }
+                        }
+                    }
+                }
+            });
+        }
+
+        for (Thread thread : threads) {
+            thread.start();
+        }
+
+        for (int w = 0; w < 4; w++) {
+            threads.get(w).join();
+        }
+
+        running.set(false);
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Assert.assertNull(failure.get());
+        Assert.assertTrue(snapshotCount.get() > 0);
+        Assert.assertEquals(registry.snapshot("METER-3").getCurrent(), measurement(200000));
+    }
+
+    // Every value of a measurement equals its timestamp, and the history holds consecutive timestamps
+    private static void check(MeterSnapshot snapshot, AtomicReference<String> failure) {
+        long current = snapshot.getCurrent().getTimestamp();
+
+        for (MeasurementField field : MeasurementField.values()) {
+            if (snapshot.getCurrent().get(field) != current) {
+                failure.set("Torn current " + snapshot);
+            }
+        }
+
+        if (snapshot.getMeasurementCount() != current) {
+            failure.set("Count " + snapshot.getMeasurementCount() + " for " + current);
+        }
+
+        int size = snapshot.getHistorySize();
+
+        for (int i = 0; i < size; i++) {
+            if (snapshot.getHistoryTimestamp(i) != current - size + 1 + i) {
+                failure.set("History out of step at " + i + " of " + snapshot);
+            }
+        }
+    }
+
+    private static CompactMeasurement measurement(long value) {
+        CompactMeasurement.Builder builder = new CompactMeasurement.Builder().timestamp(value);
+
+        for (MeasurementField field : MeasurementField.values()) {
+            builder.set(field, value);
+        }
+
+        return builder.build();
+    }
+}
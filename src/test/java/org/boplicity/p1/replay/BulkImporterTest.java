@@ -0,0 +1,99 @@
+package org.boplicity.p1.replay;
+
+import org.boplicity.p1.device.MeasurementSubscriber;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.parser.ByteDatagramParser;
+import org.boplicity.p1.testutil.TestObjectFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+public class BulkImporterTest {
+
+    private static final int TELEGRAMS = 2000;
+
+    private File file;
+
+    @BeforeMethod
+    public void createArchive() throws Exception {
+        file = File.createTempFile("archive", ".txt");
+
+        String telegram = TestObjectFactory.getTestDatagram();
+        OutputStream output = new FileOutputStream(file);
+
+        try {
+            // Line noise before the first telegram, and every telegram with its own reading
+            output.write("3*kWh)\r\n".getBytes(StandardCharsets.US_ASCII));
+
+            for (int i = 0; i < TELEGRAMS; i++) {
+                String reading = String.format("(%05d.113*kWh)", i);
+                output.write(telegram.replace("(00038.113*kWh)", reading).getBytes(StandardCharsets.US_ASCII));
+            }
+        } finally {
+            output.close();
+        }
+    }
+
+    @AfterMethod
+    public void deleteArchive() {
+        file.delete();
+    }
+
+    @Test
+    public void testImportPreservesOrder() throws Exception {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        BulkImporter bulkImporter = new BulkImporter(pool, 4096);
+
+        final List<SmartMeterMeasurement> measurements = new ArrayList<SmartMeterMeasurement>();
+
+        long count = bulkImporter.importFile(file, new MeasurementSubscriber() {
+            @Override
+            public void onMeasurement(SmartMeterMeasurement measurement) {
+                measurements.add(measurement);
+            }
+        });
+
+        pool.shutdown();
+
+        SmartMeterMeasurement expected = new ByteDatagramParser().parse(TestObjectFactory.getTestDatagramBytes());
+
+        Assert.assertEquals(count, TELEGRAMS);
+        Assert.assertEquals(measurements.size(), TELEGRAMS);
+
+        for (int i = 0; i < TELEGRAMS; i++) {
+            expected.setElectricityConsumptionLowRateKwh(new BigDecimal(String.format("%05d.113", i)));
+            Assert.assertEquals(measurements.get(i), expected);
+        }
+    }
+
+    @Test
+    public void testChunksStartAtTelegrams() throws Exception {
+        BulkImporter bulkImporter = new BulkImporter(ForkJoinPool.commonPool(), 4096);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+
+        try {
+            List<Long> boundaries = bulkImporter.split(randomAccessFile.getChannel());
+
+            Assert.assertEquals((long) boundaries.get(0), 0L);
+            Assert.assertEquals((long) boundaries.get(boundaries.size() - 1), file.length());
+
+            for (int i = 1; i < boundaries.size() - 1; i++) {
+                randomAccessFile.seek(boundaries.get(i));
+                Assert.assertEquals(randomAccessFile.read(), '/');
+            }
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.boplicity.p1.rollup;
+
+import org.boplicity.p1.model.CompactMeasurement;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.testng.Assert;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class RollupEngineTest {
+
+    private static final long START = new DateTime(2019, 5, 8, 10, 0, DateTimeZone.UTC).getMillis();
+
+    private List<Rollup> rollups = new ArrayList<Rollup>();
+
+    private RollupListener listener = new RollupListener() {
+        @Override
+        public void onRollup(Rollup rollup) {
+            rollups.add(rollup);
+        }
+    };
+
+    @BeforeMethod
+    public void clearRollups() {
+        rollups.clear();
+    }
+
+    @Test
+    public void testMinuteRollups() {
+        RollupEngine engine = new RollupEngine(listener, DateTimeZone.UTC, RollupInterval.MINUTE);
+
+        // 1 Wh per 10 seconds, power alternating between 300 and 500 W
+        for (int i = 0; i <= 18; i++) {
+            engine.add(measurement(START + i * 10000L, 1000 + i, i % 2 == 0 ? 300 : 500, CompactMeasurement.NO_VALUE));
+        }
+
+        Assert.assertEquals(rollups.size(), 3);
+
+        Rollup first = rollups.get(0);
+        Assert.assertEquals(first.getInterval(), RollupInterval.MINUTE);
+        Assert.assertEquals(first.getStart(), START);
+        Assert.assertEquals(first.getEnd(), START + 60000);
+        Assert.assertEquals(first.getSampleCount(), 6);
+        Assert.assertEquals(first.getElectricityConsumptionLowRateWh(), 5);
+        Assert.assertEquals(first.getMinPowerConsumptionW(), 300);
+        Assert.assertEquals(first.getMaxPowerConsumptionW(), 500);
+        Assert.assertEquals(first.getAveragePowerConsumptionW(), 400.0);
+        Assert.assertEquals(first.getGasConsumptionDm3(), CompactMeasurement.NO_VALUE);
+
+        Assert.assertEquals(rollups.get(1).getElectricityConsumptionLowRateWh(), 6);
+
+        engine.flush();
+
+        Assert.assertEquals(rollups.size(), 4);
+        Assert.assertEquals(rollups.get(3).getSampleCount(), 1);
+        Assert.assertEquals(rollups.get(3).getElectricityConsumptionLowRateWh(), 1);
+    }
+
+    @Test
+    public void testLateSamples() {
+        RollupEngine engine = new RollupEngine(listener, DateTimeZone.UTC, RollupInterval.MINUTE);
+        engine.setAllowedLateness(30000);
+
+        engine.add(measurement(START, 1000, 100, CompactMeasurement.NO_VALUE));
+        engine.add(measurement(START + 65000, 1010, 100, CompactMeasurement.NO_VALUE));
+        engine.add(measurement(START + 50000, 1005, 700, CompactMeasurement.NO_VALUE));
+
+        Assert.assertTrue(rollups.isEmpty());
+
+        engine.add(measurement(START + 95000, 1020, 100, CompactMeasurement.NO_VALUE));
+        engine.add(measurement(START + 40000, 1004, 900, CompactMeasurement.NO_VALUE));
+
+        Assert.assertEquals(rollups.size(), 1);
+        Assert.assertEquals(rollups.get(0).getSampleCount(), 2);
+        Assert.assertEquals(rollups.get(0).getMaxPowerConsumptionW(), 700);
+        Assert.assertEquals(engine.getLateSampleCount(), 1);
+    }
+
+    @Test
+    public void testCounterReset() {
+        RollupEngine engine = new RollupEngine(listener, DateTimeZone.UTC, RollupInterval.HOUR);
+
+        engine.add(measurement(START, 1000, 100, CompactMeasurement.NO_VALUE));
+        engine.add(measurement(START + 10000, 1050, 100, CompactMeasurement.NO_VALUE));
+        engine.add(measurement(START + 20000, 10, 100, CompactMeasurement.NO_VALUE));
+        engine.add(measurement(START + 30000, 30, 100, CompactMeasurement.NO_VALUE));
+        engine.flush();
+
+        Assert.assertEquals(rollups.get(0).getElectricityConsumptionLowRateWh(), 70);
+        Assert.assertEquals(rollups.get(0).getCounterResets(), 1);
+        Assert.assertEquals(engine.getCounterResetCount(), 1);
+    }
+
+    @Test
+    public void testGasBookedOnPreviousPeriod() {
+        RollupEngine engine = new RollupEngine(listener, DateTimeZone.UTC, RollupInterval.HOUR);
+        engine.setAllowedLateness(60000);
+
+        engine.add(measurement(START + 30 * 60000L, 1000, 100, 2000));
+        engine.add(measurement(START + 50 * 60000L, 1000, 100, 2000));
+        // The reading for 10:00 - 11:00 arrives at 11:00:10
+        engine.add(measurement(START + 60 * 60000L + 10000, 1000, 100, 2250));
+        engine.flush();
+
+        Assert.assertEquals(rollups.size(), 2);
+        Assert.assertEquals(rollups.get(0).getGasConsumptionDm3(), 250);
+        Assert.assertEquals(rollups.get(1).getGasConsumptionDm3(), 0);
+    }
+
+    @Test
+    public void testGasReadingPeriodChangeKeepsOpenInterval() {
+        RollupEngine engine = new RollupEngine(listener, DateTimeZone.UTC, RollupInterval.HOUR);
+        engine.setAllowedLateness(60000);
+
+        engine.add(measurement(START + 10 * 60000L, 1000, 100, 2000));
+        engine.add(measurement(START + 20 * 60000L, 1004, 100, 2100));
+
+        // A DSMR 5 meter turns out to report gas every five minutes
+        engine.setGasReadingPeriod(5 * 60000L);
+        engine.add(measurement(START + 30 * 60000L, 1010, 100, 2150));
+        engine.flush();
+
+        Assert.assertEquals(rollups.size(), 1);
+        Assert.assertEquals(rollups.get(0).getSampleCount(), 3);
+        Assert.assertEquals(rollups.get(0).getElectricityConsumptionLowRateWh(), 10);
+        Assert.assertEquals(rollups.get(0).getGasConsumptionDm3(), 150);
+    }
+
+    @Test
+    public void testDaysFollowTimeZone() {
+        DateTimeZone amsterdam = DateTimeZone.forID("Europe/Amsterdam");
+        RollupEngine engine = new RollupEngine(listener, amsterdam, RollupInterval.DAY);
+
+        // The day of the switch to summer time is 23 hours long
+        long day = new DateTime(2019, 3, 31, 0, 0, amsterdam).getMillis();
+        engine.add(measurement(day + 1000, 1000, 100, CompactMeasurement.NO_VALUE));
+        engine.add(measurement(day + 23 * 3600000L + 1000, 1230, 100, CompactMeasurement.NO_VALUE));
+
+        Assert.assertEquals(rollups.size(), 1);
+        Assert.assertEquals(rollups.get(0).getStart(), day);
+        Assert.assertEquals(rollups.get(0).getEnd() - rollups.get(0).getStart(), 23 * 3600000L);
+    }
+
+    private static CompactMeasurement measurement(long timestamp, long lowRateWh, long powerW, long gasDm3) {
+        return new CompactMeasurement(timestamp, lowRateWh, CompactMeasurement.NO_VALUE, CompactMeasurement.NO_VALUE,
+                CompactMeasurement.NO_VALUE, powerW, CompactMeasurement.NO_VALUE, gasDm3);
+    }
+}
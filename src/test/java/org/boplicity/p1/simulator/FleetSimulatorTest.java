@@ -0,0 +1,153 @@
+package org.boplicity.p1.simulator;
+
+import org.boplicity.p1.device.SmartMeterListener;
+import org.boplicity.p1.device.SmartMeterListenerImpl;
+import org.boplicity.p1.device.TelegramFramer;
+import org.boplicity.p1.hub.IngestionHub;
+import org.boplicity.p1.hub.MeterListenerFactory;
+import org.boplicity.p1.model.SmartMeterMeasurement;
+import org.boplicity.p1.parser.ByteDatagramParser;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+import java.math.BigDecimal;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+public class FleetSimulatorTest {
+
+    private static final long START = 1380000000000L;
+
+    private ByteDatagramParser byteDatagramParser = new ByteDatagramParser();
+
+    @Test
+    public void testChecksumsAreValid() throws Exception {
+        for (DsmrVersion version : new DsmrVersion[]{DsmrVersion.DSMR4, DsmrVersion.DSMR5}) {
+            final List<String> equipmentIds = new ArrayList<String>();
+
+            TelegramFramer telegramFramer = new TelegramFramer(frame -> equipmentIds.add(parse(frame).getEquipmentId()));
+            telegramFramer.setChecksumRequired(true);
+
+            FleetSimulator fleetSimulator = new FleetSimulator(FleetSimulator.createMeters(20, version, 1, START));
+            fleetSimulator.setSpeedUp(FleetSimulator.UNPACED);
+            fleetSimulator.generate(50, telegramFramer::feed);
+
+            Assert.assertEquals(fleetSimulator.getTelegramCount(), 1000);
+            Assert.assertEquals(telegramFramer.getFrameCount(), 1000);
+            Assert.assertEquals(telegramFramer.getCorruptFrameCount(), 0);
+            Assert.assertEquals(new HashSet<String>(equipmentIds).size(), 20);
+            Assert.assertEquals(equipmentIds.get(0), "E000000000000000");
+        }
+    }
+
+    @Test
+    public void testRegistersOnlyGoUp() throws Exception {
+        for (DsmrVersion version : DsmrVersion.values()) {
+            VirtualMeter meter = new VirtualMeter(version, 3, 7, START);
+            SmartMeterMeasurement previous = byteDatagramParser.parse(meter.writeTelegram());
+            boolean gasChanged = false;
+
+            // Two days, so both tariffs and a night without sun
+            for (long time = START; time < START + 2 * 24 * 3600000L; time += 60000) {
+                meter.advanceTo(time);
+                SmartMeterMeasurement measurement = byteDatagramParser.parse(meter.writeTelegram());
+
+                assertNotLess(measurement.getElectricityConsumptionLowRateKwh(),
+                        previous.getElectricityConsumptionLowRateKwh());
+                assertNotLess(measurement.getElectricityConsumptionNormalRateKwh(),
+                        previous.getElectricityConsumptionNormalRateKwh());
+                assertNotLess(measurement.getElectricityProductionLowRateKwh(),
+                        previous.getElectricityProductionLowRateKwh());
+                assertNotLess(measurement.getElectricityProductionNormalRateKwh(),
+                        previous.getElectricityProductionNormalRateKwh());
+                assertNotLess(measurement.getGasConsumptionM3(), previous.getGasConsumptionM3());
+
+                gasChanged |= measurement.getGasConsumptionM3().compareTo(previous.getGasConsumptionM3()) > 0;
+                previous = measurement;
+            }
+
+            Assert.assertTrue(gasChanged, version.toString());
+            Assert.assertTrue(previous.getCurrentPowerConsumptionW().signum() > 0
+                    || previous.getCurrentPowerProductionW().signum() > 0);
+        }
+    }
+
+    @Test
+    public void testDsmr22() throws Exception {
+        VirtualMeter meter = new VirtualMeter(DsmrVersion.DSMR22, 12, 1, START);
+        SmartMeterMeasurement measurement = byteDatagramParser.parse(meter.writeTelegram());
+
+        Assert.assertEquals(measurement.getEquipmentId(), "E000000000000012");
+        Assert.assertTrue(measurement.getGasConsumptionM3().compareTo(new BigDecimal(500)) >= 0);
+        Assert.assertEquals(measurement.getGasConsumptionM3().scale(), 3);
+    }
+
+    @Test
+    public void testPacing() throws Exception {
+        FleetSimulator fleetSimulator = new FleetSimulator(FleetSimulator.createMeters(10, DsmrVersion.DSMR5, 1, START));
+        fleetSimulator.setSpeedUp(10);
+
+        long started = System.nanoTime();
+        fleetSimulator.generate(3, (bytes, offset, length) -> {
+        });
+        long millis = (System.nanoTime() - started) / 1000000;
+
+        // The last telegram is due 2.9 simulated seconds after the first
+        Assert.assertTrue(millis >= 280, "Took " + millis + " ms");
+        Assert.assertEquals(fleetSimulator.getTelegramCount(), 30);
+    }
+
+    @Test
+    public void testServesIngestionHub() throws Exception {
+        FleetSimulator fleetSimulator = new FleetSimulator(FleetSimulator.createMeters(30, DsmrVersion.DSMR5, 1, START));
+        fleetSimulator.setSpeedUp(100);
+        int port = fleetSimulator.serve(0, 10);
+
+        IngestionHub ingestionHub = new IngestionHub(new MeterListenerFactory() {
+            @Override
+            public SmartMeterListener create(String equipmentId) {
+                return new SmartMeterListenerImpl();
+            }
+        });
+        ingestionHub.init();
+
+        try {
+            for (int i = 0; i < 3; i++) {
+                ingestionHub.addTcpSource("simulator-" + i, new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+            }
+
+            long deadline = System.currentTimeMillis() + 10000;
+
+            while (ingestionHub.getEquipmentIds().size() < 30 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+
+            Set<String> expected = new HashSet<String>();
+
+            for (VirtualMeter meter : fleetSimulator.getMeters()) {
+                expected.add(meter.getEquipmentId());
+            }
+
+            Assert.assertEquals(ingestionHub.getEquipmentIds(), expected);
+        } finally {
+            ingestionHub.destroy();
+            fleetSimulator.stop();
+        }
+    }
+
+    private SmartMeterMeasurement parse(ByteBuffer frame) {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+
+        return byteDatagramParser.parse(bytes);
+    }
+
+    private static void assertNotLess(BigDecimal actual, BigDecimal previous) {
+        Assert.assertTrue(actual.compareTo(previous) >= 0, actual + " < " + previous);
+    }
+}
@@ -0,0 +1,194 @@
+package org.boplicity.p1.store;
+
+import org.boplicity.p1.model.CompactMeasurement;
+import org.boplicity.p1.model.MeasurementField;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.LongBuffer;
+import java.nio.file.Files;
+import java.util.List;
+
+public class MeasurementStoreTest {
+
+    private static final long START = 1500000000000L;
+
+    private File directory;
+
+    @BeforeMethod
+    public void createDirectory() throws Exception {
+        directory = Files.createTempDirectory("measurement-store").toFile();
+    }
+
+    @AfterMethod
+    public void deleteDirectory() throws Exception {
+        delete(directory);
+    }
+
+    @Test
+    public void testQueryAcrossSegments() throws Exception {
+        MeasurementStore store = new MeasurementStore(directory, 3000);
+
+        for (int i = 0; i < 10000; i++) {
+            store.append(measurement(i));
+        }
+
+        Assert.assertEquals(store.size(), 10000);
+
+        List<ColumnSlice> slices = store.query(START + 2500 * 1000L, START + 6500 * 1000L);
+
+        int rows = 0;
+        long expected = START + 2500 * 1000L;
+        for (ColumnSlice slice : slices) {
+            LongBuffer timestamps = slice.timestamps();
+            for (int i = 0; i < slice.size(); i++) {
+                Assert.assertEquals(timestamps.get(i), expected);
+                expected += 1000;
+            }
+            rows += slice.size();
+        }
+
+        Assert.assertEquals(slices.size(), 3);
+        Assert.assertEquals(rows, 4000);
+        Assert.assertEquals(store.delta(MeasurementField.ELECTRICITY_CONSUMPTION_LOW_RATE_KWH,
+                START + 2500 * 1000L, START + 6500 * 1000L), 3999);
+
+        store.close();
+    }
+
+    @Test
+    public void testReopenRecoversTail() throws Exception {
+        MeasurementStore store = new MeasurementStore(directory, 3000);
+        for (int i = 0; i < 4000; i++) {
+            store.append(measurement(i));
+        }
+        store.close();
+
+        // Not sealed, the rows of the second segment are found by their timestamps
+        MeasurementStore reopened = new MeasurementStore(directory, 3000);
+        Assert.assertEquals(reopened.size(), 4000);
+
+        reopened.append(measurement(4000));
+        Assert.assertEquals(reopened.size(), 4001);
+        Assert.assertEquals(reopened.query(START + 3999 * 1000L, Long.MAX_VALUE).get(0).size(), 2);
+
+        reopened.close();
+    }
+
+    @Test
+    public void testReopenMapsOnlyLastSegment() throws Exception {
+        MeasurementStore store = new MeasurementStore(directory, 100);
+        for (int i = 0; i < 2000; i++) {
+            store.append(measurement(i));
+        }
+        store.close();
+
+        // Only the open segment, which holds the last timestamp
+        MeasurementStore reopened = new MeasurementStore(directory, 100);
+        Assert.assertEquals(reopened.getMappedSegmentCount(), 1);
+
+        Assert.assertEquals(reopened.query(0, Long.MAX_VALUE).size(), 20);
+        Assert.assertEquals(reopened.getMappedSegmentCount(), 9);
+
+        reopened.append(measurement(2000));
+        reopened.close();
+    }
+
+    @Test
+    public void testRecoveryStopsAtGap() throws Exception {
+        MeasurementStore store = new MeasurementStore(directory, 3000);
+        store.setForceInterval(0);
+        for (int i = 0; i < 500; i++) {
+            store.append(measurement(i));
+        }
+        store.close();
+
+        // A page of the timestamp column before the last one did not make it to disk
+        File segmentDirectory = directory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(new File(segmentDirectory, "timestamp.col"), "rw");
+        try {
+            file.seek(300 * 8);
+            file.write(new byte[8]);
+        } finally {
+            file.close();
+        }
+
+        MeasurementStore reopened = new MeasurementStore(directory, 3000);
+        Assert.assertEquals(reopened.size(), 300);
+
+        // Filling the gap does not bring back the rows after it
+        reopened.append(measurement(1000));
+        reopened.close();
+
+        reopened = new MeasurementStore(directory, 3000);
+        Assert.assertEquals(reopened.size(), 301);
+        reopened.close();
+    }
+
+    @Test
+    public void testRecoveryStopsAtIncompleteRow() throws Exception {
+        MeasurementStore store = new MeasurementStore(directory, 3000);
+        store.setForceInterval(0);
+        for (int i = 0; i < 500; i++) {
+            store.append(measurement(i));
+        }
+        store.close();
+
+        // The timestamp of a row made it to disk, a page of one of its values did not
+        File segmentDirectory = directory.listFiles()[0];
+        RandomAccessFile file = new RandomAccessFile(new File(segmentDirectory,
+                "current_power_consumption_w.col"), "rw");
+        try {
+            file.seek(200 * 8);
+            file.write(new byte[8]);
+        } finally {
+            file.close();
+        }
+
+        MeasurementStore reopened = new MeasurementStore(directory, 3000);
+        Assert.assertEquals(reopened.size(), 200);
+        reopened.close();
+    }
+
+    @Test(expectedExceptions = IllegalArgumentException.class)
+    public void testRejectOutOfOrder() throws Exception {
+        MeasurementStore store = new MeasurementStore(directory, 3000);
+        store.append(measurement(10));
+        store.append(measurement(9));
+    }
+
+    @Test
+    public void testMissingValues() throws Exception {
+        MeasurementStore store = new MeasurementStore(directory, 3000);
+
+        CompactMeasurement.Builder builder = new CompactMeasurement.Builder();
+        store.append(builder.timestamp(START).build());
+
+        LongBuffer gas = store.query(START, START + 1).get(0).values(MeasurementField.GAS_CONSUMPTION_M3);
+        Assert.assertEquals(gas.get(0), CompactMeasurement.NO_VALUE);
+        Assert.assertEquals(store.delta(MeasurementField.GAS_CONSUMPTION_M3, START, START + 1), 0);
+    }
+
+    private static CompactMeasurement measurement(int second) {
+        return new CompactMeasurement.Builder()
+                .timestamp(START + second * 1000L)
+                .set(MeasurementField.ELECTRICITY_CONSUMPTION_LOW_RATE_KWH, 1000000 + second)
+                .set(MeasurementField.CURRENT_POWER_CONSUMPTION_W, second % 500)
+                .set(MeasurementField.GAS_CONSUMPTION_M3, 47057 + second / 3600)
+                .build();
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -1,18 +1,97 @@
 package org.boplicity.p1.testutil;
 
 import org.apache.commons.io.IOUtils;
+import org.boplicity.p1.model.CompactMeasurement;
 
 import java.io.IOException;
 import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
 
 public class TestObjectFactory {
 
     public static String getTestDatagram() {
+        return getResource("/test-data.txt");
+    }
+
+    public static byte[] getTestDatagramBytes() {
+        return getTestDatagram().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    public static String getDsmr5Datagram() {
+        return getResource("/test-data-dsmr5.txt");
+    }
+
+    public static byte[] getDsmr5DatagramBytes() {
+        return getDsmr5Datagram().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    /**
+     * Returns a day's worth of readings like a DSMR 5 meter sends them every second: timestamps with some jitter,
+     * power that drifts, registers that follow the power and gas that goes up every five minutes.
+     */
+    public static List<CompactMeasurement> getSyntheticMeasurements(int count, long seed) {
+        Random random = new Random(seed);
+        List<CompactMeasurement> result = new ArrayList<CompactMeasurement>(count);
+
+        long timestamp = 1557301383000L;
+        double consumptionWh = 4347922;
+        double productionWh = 348098;
+        long gasDm3 = 2962133;
+        double power = 425;
+
+        for (int i = 0; i < count; i++) {
+            timestamp += 1000 + random.nextInt(21) - 10;
+            power = Math.max(-2000, Math.min(5000, power + random.nextGaussian() * 20));
+
+            long consumptionW = Math.round(Math.max(0, power));
+            long productionW = Math.round(Math.max(0, -power));
+
+            consumptionWh += consumptionW / 3600.0;
+            productionWh += productionW / 3600.0;
+
+            if (i % 300 == 0) {
+                gasDm3 += random.nextInt(50);
+            }
+
+            result.add(new CompactMeasurement(timestamp, (long) consumptionWh, 3513714, (long) productionWh, 835640,
+                    consumptionW, productionW, gasDm3));
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns consecutive DSMR 5 telegrams a second apart, in which only the meter timestamp, the power and the voltage
+     * lines change. The checksums are not updated.
+     */
+    public static List<String> getDsmr5Datagrams(int count, long seed) {
+        Random random = new Random(seed);
+        List<String> result = new ArrayList<String>(count);
+        String datagram = getDsmr5Datagram();
+
+        for (int i = 0; i < count; i++) {
+            int power = 400 + random.nextInt(200);
+
+            result.add(datagram
+                    .replace("0-0:1.0.0(190508094303S)", String.format("0-0:1.0.0(1905080943%02dS)", i % 60))
+                    .replace("1-0:1.7.0(00.425*kW)", String.format("1-0:1.7.0(00.%03d*kW)", power))
+                    .replace("1-0:21.7.0(00.087*kW)", String.format("1-0:21.7.0(00.%03d*kW)", power / 5))
+                    .replace("1-0:32.7.0(229.0*V)", String.format("1-0:32.7.0(2%02d.%d*V)", 25 + random.nextInt(10),
+                            random.nextInt(10))));
+        }
+
+        return result;
+    }
+
+    private static String getResource(String name) {
         StringWriter stringWriter = new StringWriter();
         String result = null;
 
         try {
-            IOUtils.copy(TestObjectFactory.class.getResourceAsStream("/test-data.txt"), stringWriter);
+            IOUtils.copy(TestObjectFactory.class.getResourceAsStream(name), stringWriter);
             result = stringWriter.toString();
         } catch (IOException e) {
             e.printStackTrace();